@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Verify that Gradle keeps compiling incrementally when the processor is on the annotation processor path.
+ */
+class IncrementalCompilationTest {
+
+  @TempDir
+  Path projectDir;
+
+  @Test
+  void testChangeCompilesIncrementally() throws IOException {
+    this.write("settings.gradle", "rootProject.name = 'incremental'\n");
+    this.write("build.gradle", "plugins { id 'java' }\n"
+      + "dependencies {\n"
+      + "  compileOnly files(" + pathList("contractvalidator.annotationsPath") + ")\n"
+      + "  annotationProcessor files(" + pathList("contractvalidator.processorPath") + ")\n"
+      + "}\n"
+      + "tasks.withType(JavaCompile).configureEach {\n"
+      + "  options.compilerArgs << '-Acontractvalidator.resultStore=' + layout.buildDirectory.file('contract-results').get().asFile\n"
+      + "}\n");
+    this.write("src/main/java/test/First.java", "package test;\n"
+      + "import org.jetbrains.annotations.Contract;\n"
+      + "class First {\n"
+      + "  @Contract(\"null -> null; !null -> _\")\n"
+      + "  static String describe(final Object value) { return value == null ? null : value.toString(); }\n"
+      + "}\n");
+    this.write("src/main/java/test/Second.java", "package test;\n"
+      + "import org.jetbrains.annotations.Contract;\n"
+      + "class Second {\n"
+      + "  @Contract(\"_ -> new\")\n"
+      + "  static Object copy(final Object value) { return new Object(); }\n"
+      + "}\n");
+
+    final BuildResult first = this.build();
+    assertEquals(TaskOutcome.SUCCESS, first.task(":compileJava").getOutcome());
+    assertTrue(Files.exists(this.projectDir.resolve("build/contract-results")));
+
+    this.write("src/main/java/test/Second.java", "package test;\n"
+      + "import org.jetbrains.annotations.Contract;\n"
+      + "class Second {\n"
+      + "  @Contract(\"null -> fail; _ -> new\")\n"
+      + "  static Object copy(final Object value) { if (value == null) throw new NullPointerException(); return new Object(); }\n"
+      + "}\n");
+
+    final BuildResult second = this.build();
+    assertEquals(TaskOutcome.SUCCESS, second.task(":compileJava").getOutcome());
+    assertFalse(second.getOutput().contains("Full recompilation is required"), second.getOutput());
+    assertTrue(second.getOutput().contains("Incremental compilation of 1 classes"), second.getOutput());
+  }
+
+  private BuildResult build() {
+    return GradleRunner.create()
+      .withProjectDir(this.projectDir.toFile())
+      .withArguments("compileJava", "--info", "--stacktrace")
+      .forwardOutput()
+      .build();
+  }
+
+  private void write(final String path, final String contents) throws IOException {
+    final Path file = this.projectDir.resolve(path);
+    Files.createDirectories(file.getParent());
+    Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String pathList(final String property) {
+    final String path = System.getProperty(property);
+    if (path == null) {
+      throw new IllegalStateException("System property " + property + " must be set by the build");
+    }
+
+    final StringBuilder builder = new StringBuilder();
+    for (final String element : path.split(File.pathSeparator)) {
+      if (builder.length() > 0) {
+        builder.append(", ");
+      }
+      builder.append('\'').append(element.replace("\\", "\\\\").replace("'", "\\'")).append('\'');
+    }
+    return builder.toString();
+  }
+
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Processing events recorded through Java Flight Recorder.
+ *
+ * <p>Every event is disabled by default, so they only appear in recordings that enable them by name, such as with
+ * {@code jfr configure} or a custom {@code .jfc} file. When an event is disabled, checking for it is a single read of
+ * a flag in the event class.</p>
+ */
+final class FlightRecorderEvents extends ProcessingEvents {
+
+  static final String CATEGORY = "Contract Validator";
+
+  // only used to check whether each event is enabled
+  private static final ParseEvent PARSE = new ParseEvent();
+  private static final ValidateEvent VALIDATE = new ValidateEvent();
+  private static final RoundEvent ROUND = new RoundEvent();
+
+  @Override
+  boolean parseEnabled() {
+    return PARSE.isEnabled();
+  }
+
+  @Override
+  Object beginParse() {
+    if (!PARSE.isEnabled()) {
+      return null;
+    }
+    final ParseEvent event = new ParseEvent();
+    event.begin();
+    return event;
+  }
+
+  @Override
+  void endParse(final Object event, final String attribute, final String text, final ParsedContract result) {
+    final ParseEvent parse = (ParseEvent) event;
+    parse.end();
+    if (parse.shouldCommit()) {
+      parse.attribute = attribute;
+      parse.contractLength = text.length();
+      parse.strategy = result.strategy().name();
+      parse.llFallback = result.strategy() == ParsedContract.Strategy.ANTLR_LL;
+      parse.syntaxErrors = result.hasSyntaxErrors();
+      parse.commit();
+    }
+  }
+
+  @Override
+  Object beginValidate() {
+    if (!VALIDATE.isEnabled()) {
+      return null;
+    }
+    final ValidateEvent event = new ValidateEvent();
+    event.begin();
+    return event;
+  }
+
+  @Override
+  void endValidate(final Object event) {
+    ((ValidateEvent) event).end();
+  }
+
+  // Committed on the processor thread once diagnostics are reported, so with parallelism the event's thread is not
+  // necessarily the one that validated.
+  @Override
+  void commitValidate(final Object event, final ElementCheck check, final int diagnostics) {
+    final ValidateEvent validate = (ValidateEvent) event;
+    if (!validate.shouldCommit()) {
+      return;
+    }
+    validate.element = check.element().getEnclosingElement() + "#" + check.element();
+    validate.valueLength = -1;
+    validate.mutatesLength = -1;
+    for (final ElementCheck.Field field : check.fields()) {
+      if (field.text == null) {
+        continue;
+      }
+      if ("value".equals(field.name)) {
+        validate.valueLength = field.text.length();
+      } else {
+        validate.mutatesLength = field.text.length();
+      }
+      if (field.verdictCached) {
+        validate.sharedVerdicts++;
+      }
+    }
+    validate.diagnostics = diagnostics;
+    validate.commit();
+  }
+
+  @Override
+  Object beginRound() {
+    if (!ROUND.isEnabled()) {
+      return null;
+    }
+    final RoundEvent event = new RoundEvent();
+    event.begin();
+    return event;
+  }
+
+  @Override
+  void endRound(final Object event, final int round, final int elements, final int diagnostics, final int suppressed) {
+    final RoundEvent roundEvent = (RoundEvent) event;
+    roundEvent.end();
+    if (roundEvent.shouldCommit()) {
+      roundEvent.round = round;
+      roundEvent.elements = elements;
+      roundEvent.diagnostics = diagnostics;
+      roundEvent.suppressed = suppressed;
+      roundEvent.commit();
+    }
+  }
+
+  @Name("ca.stellardrift.contractvalidator.ContractParse")
+  @Label("Contract Parse")
+  @Description("One contract string parsed, as opposed to found in the parse cache")
+  @Category(CATEGORY)
+  @Enabled(false)
+  @StackTrace(false)
+  static final class ParseEvent extends Event {
+    @Label("Attribute")
+    @Description("The annotation field the contract came from, value or mutates")
+    String attribute;
+
+    @Label("Contract Length")
+    int contractLength;
+
+    @Label("Strategy")
+    @Description("How the contract was parsed, from the cheapest way to the most expensive")
+    String strategy;
+
+    @Label("LL Fallback")
+    @Description("Whether ANTLR's SLL prediction failed on the contract, so it was parsed again with full LL prediction")
+    boolean llFallback;
+
+    @Label("Syntax Errors")
+    boolean syntaxErrors;
+  }
+
+  @Name("ca.stellardrift.contractvalidator.ContractValidate")
+  @Label("Contract Validate")
+  @Description("The contract of one element checked against its signature")
+  @Category(CATEGORY)
+  @Enabled(false)
+  @StackTrace(false)
+  static final class ValidateEvent extends Event {
+    @Label("Element")
+    String element;
+
+    @Label("Value Length")
+    @Description("Length of the value field, or -1 if absent")
+    int valueLength;
+
+    @Label("Mutates Length")
+    @Description("Length of the mutates field, or -1 if absent")
+    int mutatesLength;
+
+    @Label("Shared Verdicts")
+    @Description("Fields whose result was shared from another method of the same shape")
+    int sharedVerdicts;
+
+    @Label("Diagnostics")
+    int diagnostics;
+  }
+
+  @Name("ca.stellardrift.contractvalidator.ContractRound")
+  @Label("Contract Round")
+  @Description("One annotation processing round")
+  @Category(CATEGORY)
+  @Enabled(false)
+  @StackTrace(false)
+  static final class RoundEvent extends Event {
+    @Label("Round")
+    int round;
+
+    @Label("Elements")
+    int elements;
+
+    @Label("Diagnostics")
+    int diagnostics;
+
+    @Label("Suppressed Diagnostics")
+    int suppressed;
+  }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import com.sun.source.util.JavacTask;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.tools.StandardJavaFileManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Finding the contract annotation and its attributes on methods that carry many other annotations.
+ *
+ * <p>{@link #byBinaryName(Blackhole)} is the lookup the processor used before {@link ContractAnnotationType},
+ * kept here for comparison.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnnotationLookupBenchmark {
+
+  private static final int METHODS = 500;
+
+  /**
+   * The number of annotations declared before {@code @Contract} on each method.
+   */
+  @Param({"0", "4", "16"})
+  public int unrelatedAnnotations;
+
+  private StandardJavaFileManager fileManager;
+  private Elements elements;
+  private ContractAnnotationType contract;
+  private List<ExecutableElement> methods;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    this.fileManager = ContractCorpus.fileManager();
+    final JavacTask task = (JavacTask) ContractCorpus.compiler().getTask(
+      null,
+      this.fileManager,
+      diag -> {},
+      ContractCorpus.compilerOptions("-proc:none"),
+      null,
+      ContractCorpus.generateSources(METHODS, METHODS, 0, this.unrelatedAnnotations)
+    );
+    task.analyze();
+
+    this.elements = task.getElements();
+    this.contract = ContractAnnotationType.resolve(this.elements, task.getTypes(), ContractValidatorProcessor.CONTRACT_ANNOTATION);
+    final TypeElement generated = this.elements.getTypeElement("benchmark.Generated0");
+    this.methods = ElementFilter.methodsIn(generated.getEnclosedElements());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    this.fileManager.close();
+  }
+
+  @Benchmark
+  public void resolved(final Blackhole hole) {
+    for (final ExecutableElement method : this.methods) {
+      final AnnotationMirror annotation = this.contract.find(method);
+      hole.consume(this.contract.value(annotation));
+      hole.consume(this.contract.mutates(annotation));
+    }
+  }
+
+  @Benchmark
+  public void byBinaryName(final Blackhole hole) {
+    for (final ExecutableElement method : this.methods) {
+      AnnotationMirror annotation = null;
+      for (final AnnotationMirror candidate : method.getAnnotationMirrors()) {
+        if (this.elements.getBinaryName((TypeElement) candidate.getAnnotationType().asElement())
+          .contentEquals(ContractValidatorProcessor.CONTRACT_ANNOTATION)) {
+          annotation = candidate;
+          break;
+        }
+      }
+
+      AnnotationValue value = null;
+      AnnotationValue mutates = null;
+      for (final Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annotation.getElementValues().entrySet()) {
+        if (entry.getKey().getSimpleName().contentEquals("value")) {
+          value = entry.getValue();
+        } else if (entry.getKey().getSimpleName().contentEquals("mutates")) {
+          mutates = entry.getValue();
+        }
+      }
+      hole.consume(value);
+      hole.consume(mutates);
+    }
+  }
+
+}
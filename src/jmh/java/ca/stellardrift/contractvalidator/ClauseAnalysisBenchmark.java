@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Comparing the clauses of one generated contract with each other, as large generated contracts would be.
+ *
+ * <p>This is done once per distinct contract text, since {@link ParsedContract} keeps the findings.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClauseAnalysisBenchmark {
+
+  private static final String[] CONSTRAINTS = {"_", "null", "!null"};
+  private static final String[] EFFECTS = {"fail", "null", "!null", "new", "param1"};
+
+  @Param({"8", "32", "64"})
+  public int clauses;
+
+  @Param({"4", "16", "32"})
+  public int params;
+
+  private List<ContractClause> contract;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    final Random random = new Random(19);
+    final StringBuilder text = new StringBuilder();
+    for (int i = 0; i < this.clauses; i++) {
+      if (i > 0) {
+        text.append("; ");
+      }
+      for (int j = 0; j < this.params; j++) {
+        if (j > 0) {
+          text.append(", ");
+        }
+        // mostly wildcards, as in real contracts, so clauses often overlap
+        text.append(CONSTRAINTS[random.nextInt(4) == 0 ? 1 + random.nextInt(2) : 0]);
+      }
+      text.append(" -> ").append(EFFECTS[random.nextInt(EFFECTS.length)]);
+    }
+    this.contract = ParsedContract.parseValue(text.toString()).clauses();
+  }
+
+  @Benchmark
+  public int[] analyze() {
+    return ContractSemantics.analyze(this.contract);
+  }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.io.IOException;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to the first result in a fresh JVM, and the number of classes loaded to get there.
+ *
+ * <p>Every measurement is a single call in a new fork, so the cost of class loading and interpretation is
+ * included. The {@link Footprint#classesLoaded} counter reports how many classes the call loaded, which for
+ * well-formed contracts should not include the ANTLR runtime.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+public class ColdStartBenchmark {
+
+  /**
+   * Whether the contracts checked contain syntax errors, which must go through the ANTLR parser.
+   */
+  @Param({"false", "true"})
+  public boolean malformed;
+
+  private StandardJavaFileManager fileManager;
+  private List<JavaFileObject> sources;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    this.fileManager = ContractCorpus.fileManager();
+    this.sources = ContractCorpus.generateSources(10, 10, this.malformed ? 100 : 0);
+    // Load the compiler itself, so only the processor's share of start-up is measured
+    this.compile(false);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    this.fileManager.close();
+  }
+
+  /**
+   * The number of classes loaded during the measured call.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Footprint {
+    private final ClassLoadingMXBean classLoading = ManagementFactory.getClassLoadingMXBean();
+    private long before;
+    public long classesLoaded;
+
+    @Setup(Level.Iteration)
+    public void start() {
+      this.before = this.classLoading.getTotalLoadedClassCount();
+    }
+
+    void finish() {
+      this.classesLoaded = this.classLoading.getTotalLoadedClassCount() - this.before;
+    }
+  }
+
+  @Benchmark
+  public List<ContractDiagnostic> firstCheck(final Footprint footprint) {
+    final List<ContractDiagnostic> result = new ContractChecker().checkValue(
+      this.malformed ? "null -> !nul" : "null -> null; !null -> !null",
+      "method",
+      "(Ljava/lang/Object;)Ljava/lang/Object;",
+      true
+    );
+    footprint.finish();
+    return result;
+  }
+
+  @Benchmark
+  public Boolean firstRound(final Footprint footprint) {
+    final Boolean result = this.compile(true);
+    footprint.finish();
+    return result;
+  }
+
+  private Boolean compile(final boolean withValidator) {
+    final JavaCompiler.CompilationTask task = ContractCorpus.compiler().getTask(
+      null,
+      this.fileManager,
+      diag -> {},
+      ContractCorpus.compilerOptions("-proc:only"),
+      null,
+      this.sources
+    );
+    task.setProcessors(withValidator
+      ? Collections.singletonList(new ContractValidatorProcessor())
+      : Collections.emptyList());
+    return task.call();
+  }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import org.antlr.v4.runtime.Lexer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A whole compilation of generated sources, through to class files, validated in each of the ways javac can run the
+ * validator.
+ *
+ * <p>Both the processor and the plugin are found on a processor path, as they would be in a build, so each mode pays
+ * the same cost to load them.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CompileModeBenchmark {
+
+  @Param({"1000", "10000"})
+  public int methods;
+
+  @Param({"NONE", "PROCESSOR", "PLUGIN"})
+  public Validation validation;
+
+  private StandardJavaFileManager fileManager;
+  private List<JavaFileObject> sources;
+  private Path output;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    this.fileManager = ContractCorpus.fileManager();
+    this.sources = ContractCorpus.generateSources(this.methods, 500);
+    this.output = Files.createTempDirectory("contract-validator-compile");
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    this.fileManager.close();
+    try (final Stream<Path> files = Files.walk(this.output)) {
+      files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+    }
+  }
+
+  @Benchmark
+  public Boolean compile() {
+    return ContractCorpus.compiler().getTask(
+      null,
+      this.fileManager,
+      diag -> {},
+      ContractCorpus.compilerOptions(this.validation.options(this.output.toString())),
+      null,
+      this.sources
+    ).call();
+  }
+
+  /**
+   * How the validator is run.
+   */
+  public enum Validation {
+    NONE("-proc:none"),
+    PROCESSOR("-processorpath", processorPath()),
+    PLUGIN("-proc:none", "-processorpath", processorPath(), "-Xplugin:" + ContractValidatorPlugin.NAME);
+
+    private final String[] options;
+
+    Validation(final String... options) {
+      this.options = options;
+    }
+
+    String[] options(final String output) {
+      final String[] options = new String[this.options.length + 2];
+      System.arraycopy(this.options, 0, options, 0, this.options.length);
+      options[this.options.length] = "-d";
+      options[this.options.length + 1] = output;
+      return options;
+    }
+
+    private static String processorPath() {
+      final Set<String> entries = new LinkedHashSet<>();
+      for (final Class<?> type : new Class<?>[] {ContractValidatorPlugin.class, ContractValidatorProcessor.class, Lexer.class}) {
+        try {
+          entries.add(Paths.get(type.getProtectionDomain().getCodeSource().getLocation().toURI()).toString());
+        } catch (final URISyntaxException ex) {
+          throw new IllegalStateException(ex);
+        }
+      }
+      return String.join(File.pathSeparator, entries);
+    }
+  }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of single calls to {@link ContractChecker}, as an editor would make them.
+ *
+ * <p>Each call checks one of {@link ContractCorpus#SIGNATURES} against its descriptor, including parsing the
+ * descriptor and collecting diagnostics.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContractCheckerBenchmark {
+
+  /**
+   * The descriptor of each method in {@link ContractCorpus#SIGNATURES}, and whether it is static.
+   */
+  static final Object[][] DESCRIPTORS = {
+    {"(Ljava/lang/Object;)Ljava/lang/Object;", true},
+    {"(I)Ljava/lang/Object;", false},
+    {"()Ljava/lang/Object;", false},
+    {"(Ljava/lang/String;Z)Z", false},
+    {"(ZLjava/lang/String;Ljava/lang/String;)Ljava/lang/String;", false},
+    {"(Ljava/lang/Object;)V", true},
+  };
+
+  /**
+   * Whether parsed contracts are cached, or each call has to parse its contract.
+   */
+  @Param({"true", "false"})
+  public boolean cached;
+
+  /**
+   * Whether each contract is checked against the method it was written for, or against the next method over, producing errors.
+   */
+  @Param({"true", "false"})
+  public boolean matching;
+
+  private ContractChecker checker;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    this.checker = new ContractChecker(this.cached ? ContractChecker.DEFAULT_CACHE_SIZE : 0);
+  }
+
+  @State(Scope.Thread)
+  public static class Cursor {
+    int index;
+
+    int next() {
+      final int idx = this.index;
+      this.index = (idx + 1) % ContractCorpus.SIGNATURES.length;
+      return idx;
+    }
+  }
+
+  @Benchmark
+  public List<ContractDiagnostic> value(final Cursor cursor) {
+    final int idx = cursor.next();
+    final Object[] method = DESCRIPTORS[this.matching ? idx : (idx + 1) % DESCRIPTORS.length];
+    return this.checker.checkValue(ContractCorpus.SIGNATURES[idx][1], "method", (String) method[0], (Boolean) method[1]);
+  }
+
+  @Benchmark
+  public List<ContractDiagnostic> mutates(final Cursor cursor) {
+    final int idx = cursor.next();
+    final Object[] method = DESCRIPTORS[this.matching ? idx : (idx + 1) % DESCRIPTORS.length];
+    return this.checker.checkMutates(ContractCorpus.SIGNATURES[idx][2], "method", (String) method[0], (Boolean) method[1]);
+  }
+
+}
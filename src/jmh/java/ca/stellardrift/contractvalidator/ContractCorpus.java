@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Shared inputs for benchmarks.
+ */
+final class ContractCorpus {
+
+  /**
+   * Contracts as commonly found in real code, which parse under SLL without any errors.
+   */
+  static final String[] VALID_CONTRACTS = {
+    "null -> null",
+    "_ -> this",
+    "!null -> !null",
+    "-> new",
+    "null -> fail",
+    "null -> null; !null -> !null",
+    "_, null -> false; _, !null -> true",
+    "true, _, _ -> param2; false, _, _ -> param3",
+    "null, _ -> fail; _, null -> fail; _, _ -> new",
+  };
+
+  /**
+   * Contracts with parser errors, which cause the SLL attempt to bail and fall back to a full LL parse with recovery.
+   */
+  static final String[] FALLBACK_CONTRACTS = {
+    "null -> null;",
+    "_ _ -> this",
+    "null -> -> new",
+    "null, -> fail",
+    "-> param",
+  };
+
+  /**
+   * Contracts with lexer errors.
+   */
+  static final String[] MALFORMED_CONTRACTS = {
+    "nul -> null",
+    "_ => this",
+    "!null -> ?",
+    "null -> nothing; !null -> everything",
+  };
+
+  static final String[] VALID_MUTATES = {
+    "this",
+    "param",
+    "param1",
+    "this,param1",
+    "param1, param2, param3",
+  };
+
+  static final String[] FALLBACK_MUTATES = {
+    "this,",
+    "param param1",
+    ",this",
+  };
+
+  static final String[] MALFORMED_MUTATES = {
+    "that",
+    "param-1",
+    "this;param1",
+  };
+
+  /**
+   * Categories of input, as exercised by different paths through the parser.
+   */
+  enum Category {
+    VALID(VALID_CONTRACTS, VALID_MUTATES),
+    FALLBACK(FALLBACK_CONTRACTS, FALLBACK_MUTATES),
+    MALFORMED(MALFORMED_CONTRACTS, MALFORMED_MUTATES);
+
+    final String[] contracts;
+    final String[] mutates;
+
+    Category(final String[] contracts, final String[] mutates) {
+      this.contracts = contracts;
+      this.mutates = mutates;
+    }
+  }
+
+  static final ErrorConsumer NO_OP_ERRORS = (kind, message) -> {};
+
+  /**
+   * Method declarations paired with a contract and mutates string that are valid for them.
+   *
+   * <p>Each entry is {@code {declaration, value, mutates}}.</p>
+   */
+  static final String[][] SIGNATURES = {
+    {"public static Object nullToNull%d(final Object a) { return a; }", "null -> null; !null -> !null", "param"},
+    {"public Object self%d(final int a) { return this; }", "_ -> this", "this"},
+    {"public Object fresh%d() { return new Object(); }", "-> new", "this"},
+    {"public boolean isEmpty%d(final String a, final boolean b) { return b; }", "null, _ -> true; _, true -> false", "param1"},
+    {"public String select%d(final boolean flag, final String a, final String b) { return flag ? a : b; }",
+      "true, _, _ -> param2; false, _, _ -> param3", "this,param2,param3"},
+    {"public static void check%d(final Object a) { }", "null -> fail", "param1"},
+  };
+
+  private ContractCorpus() {
+  }
+
+  /**
+   * Generate compilation units containing a total of {@code methodCount} {@code @Contract}-annotated methods.
+   *
+   * @param methodCount the number of annotated methods
+   * @param methodsPerClass the maximum number of methods to put in each generated class
+   * @return the generated sources
+   */
+  static List<JavaFileObject> generateSources(final int methodCount, final int methodsPerClass) {
+    return generateSources(methodCount, methodsPerClass, 0);
+  }
+
+  /**
+   * Generate compilation units containing a total of {@code methodCount} {@code @Contract}-annotated methods.
+   *
+   * @param methodCount the number of annotated methods
+   * @param methodsPerClass the maximum number of methods to put in each generated class
+   * @param malformedPercent the percentage of methods to give syntactically invalid contracts
+   * @return the generated sources
+   */
+  static List<JavaFileObject> generateSources(final int methodCount, final int methodsPerClass, final int malformedPercent) {
+    return generateSources(methodCount, methodsPerClass, malformedPercent, 0);
+  }
+
+  /**
+   * Generate compilation units containing a total of {@code methodCount} {@code @Contract}-annotated methods.
+   *
+   * <p>Each method can also carry a number of unrelated annotations, declared before {@code @Contract} as they
+   * commonly are in framework-heavy code.</p>
+   *
+   * @param methodCount the number of annotated methods
+   * @param methodsPerClass the maximum number of methods to put in each generated class
+   * @param malformedPercent the percentage of methods to give syntactically invalid contracts
+   * @param unrelatedAnnotations the number of other annotations to put on each method
+   * @return the generated sources
+   */
+  static List<JavaFileObject> generateSources(
+    final int methodCount,
+    final int methodsPerClass,
+    final int malformedPercent,
+    final int unrelatedAnnotations
+  ) {
+    final List<JavaFileObject> sources = new ArrayList<>();
+    final StringBuilder unrelated = new StringBuilder();
+    for (int i = 0; i < unrelatedAnnotations; i++) {
+      sources.add(new StringSource(
+        "benchmark/Unrelated" + i,
+        "package benchmark;\n\npublic @interface Unrelated" + i + " {\n  String value() default \"\";\n}\n"
+      ));
+      unrelated.append("  @Unrelated").append(i).append("(\"x\")\n");
+    }
+
+    int remaining = methodCount;
+    for (int classIdx = 0; remaining > 0; classIdx++) {
+      final String className = "Generated" + classIdx;
+      final StringBuilder source = new StringBuilder()
+        .append("package benchmark;\n\n")
+        .append("import org.jetbrains.annotations.Contract;\n\n")
+        .append("public class ").append(className).append(" {\n");
+      final int count = Math.min(remaining, methodsPerClass);
+      for (int i = 0; i < count; i++) {
+        final String[] signature = SIGNATURES[i % SIGNATURES.length];
+        String value = signature[1];
+        String mutates = signature[2];
+        if ((i % 100) < malformedPercent) {
+          value = i % 2 == 0 ? FALLBACK_CONTRACTS[i % FALLBACK_CONTRACTS.length] : MALFORMED_CONTRACTS[i % MALFORMED_CONTRACTS.length];
+          mutates = i % 2 == 0 ? FALLBACK_MUTATES[i % FALLBACK_MUTATES.length] : MALFORMED_MUTATES[i % MALFORMED_MUTATES.length];
+        }
+        source.append(unrelated).append("  @Contract(value = \"").append(value).append("\", mutates = \"").append(mutates).append("\")\n")
+          .append("  ").append(String.format(Locale.ROOT, signature[0], i)).append('\n');
+      }
+      source.append("}\n");
+      sources.add(new StringSource("benchmark/" + className, source.toString()));
+      remaining -= count;
+    }
+    return sources;
+  }
+
+  /**
+   * Generate a chain of types, each extending the last and overriding all of its {@code @Contract}-annotated methods.
+   *
+   * <p>Every level also implements its own interface declaring the same methods, as layered generated code often
+   * does, so each method overrides more methods the deeper it is.</p>
+   *
+   * @param depth the number of classes in the chain
+   * @param methodsPerClass the number of annotated methods in each class
+   * @return the generated sources
+   */
+  static List<JavaFileObject> generateHierarchy(final int depth, final int methodsPerClass) {
+    final List<JavaFileObject> sources = new ArrayList<>();
+    for (int level = 0; level < depth; level++) {
+      final StringBuilder methods = new StringBuilder();
+      final StringBuilder declarations = new StringBuilder();
+      for (int i = 0; i < methodsPerClass; i++) {
+        methods.append("  @Contract(value = \"null -> fail; !null -> !null\", mutates = \"this\")\n")
+          .append("  public Object method").append(i).append("(final Object a) { return a; }\n");
+        declarations.append("  @Contract(value = \"null -> fail; !null -> !null\", mutates = \"this\")\n")
+          .append("  Object method").append(i).append("(Object a);\n");
+      }
+      sources.add(new StringSource("benchmark/Layer" + level, "package benchmark;\n\n"
+        + "import org.jetbrains.annotations.Contract;\n\n"
+        + "public interface Layer" + level + " {\n" + declarations + "}\n"));
+      sources.add(new StringSource("benchmark/Level" + level, "package benchmark;\n\n"
+        + "import org.jetbrains.annotations.Contract;\n\n"
+        + "public class Level" + level + (level == 0 ? "" : " extends Level" + (level - 1)) + " implements Layer" + level + " {\n"
+        + methods + "}\n"));
+    }
+    return sources;
+  }
+
+  /**
+   * Get a file manager for in-memory compilations that discards output and diagnostics.
+   *
+   * @return a new file manager
+   */
+  static StandardJavaFileManager fileManager() {
+    return compiler().getStandardFileManager(diag -> {}, Locale.ROOT, null);
+  }
+
+  static JavaCompiler compiler() {
+    return ToolProvider.getSystemJavaCompiler();
+  }
+
+  /**
+   * Options to compile against the benchmark classpath, which has the JetBrains annotations available.
+   *
+   * @param extra additional options to append
+   * @return compiler options
+   */
+  static List<String> compilerOptions(final String... extra) {
+    final List<String> options = new ArrayList<>();
+    options.add("-classpath");
+    options.add(System.getProperty("java.class.path"));
+    Collections.addAll(options, extra);
+    return options;
+  }
+
+  static final class StringSource extends SimpleJavaFileObject {
+    private final String contents;
+
+    StringSource(final String path, final String contents) {
+      super(URI.create("string:///" + path + Kind.SOURCE.extension), Kind.SOURCE);
+      this.contents = contents;
+    }
+
+    @Override
+    public CharSequence getCharContent(final boolean ignoreEncodingErrors) throws IOException {
+      return this.contents;
+    }
+  }
+
+}
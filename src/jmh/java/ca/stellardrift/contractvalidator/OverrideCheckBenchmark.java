@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A processing round over a deep hierarchy, where every annotated method overrides one from each level above it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OverrideCheckBenchmark {
+
+  @Param({"10", "40"})
+  public int depth;
+
+  @Param({"50"})
+  public int methodsPerClass;
+
+  @Param({"false", "true"})
+  public boolean checkOverrides;
+
+  private StandardJavaFileManager fileManager;
+  private List<JavaFileObject> sources;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    this.fileManager = ContractCorpus.fileManager();
+    this.sources = ContractCorpus.generateHierarchy(this.depth, this.methodsPerClass);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    this.fileManager.close();
+  }
+
+  @Benchmark
+  public Boolean round() {
+    final JavaCompiler.CompilationTask task = ContractCorpus.compiler().getTask(
+      null,
+      this.fileManager,
+      diag -> {},
+      ContractCorpus.compilerOptions(
+        "-proc:only",
+        "-A" + ContractValidatorProcessor.OPTION_CHECK_OVERRIDES + "=" + this.checkOverrides
+      ),
+      null,
+      this.sources
+    );
+    task.setProcessors(Collections.singletonList(new ContractValidatorProcessor()));
+    return task.call();
+  }
+
+}
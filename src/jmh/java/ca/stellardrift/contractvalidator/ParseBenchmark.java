@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of parsing alone, one operation per contract string.
+ *
+ * <p>The {@code antlr} benchmarks force the ANTLR parser for comparison with the scanner used for well-formed input. The
+ * {@code cached} benchmarks look up the same inputs in a warm {@link ContractCache}, as happens when many
+ * methods share a contract.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+  @Param({"VALID", "FALLBACK", "MALFORMED"})
+  public String category;
+
+  private String[] contracts;
+  private String[] mutates;
+  private final ContractCache cache = new ContractCache(ContractValidatorProcessor.DEFAULT_PARSE_CACHE_SIZE);
+  private int index;
+
+  @Setup
+  public void setup() {
+    final ContractCorpus.Category inputs = ContractCorpus.Category.valueOf(this.category);
+    this.contracts = inputs.contracts;
+    this.mutates = inputs.mutates;
+  }
+
+  private String next(final String[] inputs) {
+    final String input = inputs[this.index];
+    this.index = (this.index + 1) % inputs.length;
+    return input;
+  }
+
+  @Benchmark
+  public ParsedContract contract() {
+    return ParsedContract.parseValue(this.next(this.contracts));
+  }
+
+  @Benchmark
+  public ParsedContract mutates() {
+    return ParsedContract.parseMutates(this.next(this.mutates));
+  }
+
+  @Benchmark
+  public ParsedContract antlrContract() {
+    return ParsedContract.parseValueWithAntlr(this.next(this.contracts));
+  }
+
+  @Benchmark
+  public ParsedContract antlrMutates() {
+    return ParsedContract.parseMutatesWithAntlr(this.next(this.mutates));
+  }
+
+  @Benchmark
+  public ParsedContract cachedContract() {
+    return this.cache.get(this.next(this.contracts), ParsedContract::parseValue);
+  }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Checking contract strings of the kind a broken code generator might produce, and formatting every message.
+ *
+ * <p>The {@code unlimited} benchmark parses text of any length, so its time per character should stay flat as
+ * {@code length} grows. The {@code limited} benchmark uses the default length limit, rejecting longer text without
+ * parsing it.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PathologicalContractBenchmark {
+
+  /**
+   * Ways to build a long contract, as a repeated unit followed by a tail.
+   */
+  public enum Shape {
+    REPEATED_CLAUSES("null -> fail; ", "!null -> null"),
+    REPEATED_ARGUMENTS("_, ", "_ -> fail"),
+    INVALID_CHARACTERS("%", " -> fail"),
+    UNBALANCED("null null ", "-> fail"),
+    HUGE_NUMBER("9", ""),
+    ;
+
+    final String unit;
+    final String tail;
+
+    Shape(final String unit, final String tail) {
+      this.unit = unit;
+      this.tail = tail;
+    }
+  }
+
+  @Param({"REPEATED_CLAUSES", "REPEATED_ARGUMENTS", "INVALID_CHARACTERS", "UNBALANCED", "HUGE_NUMBER"})
+  public Shape shape;
+
+  @Param({"1000", "10000", "100000"})
+  public int length;
+
+  private final ContractChecker unlimited = new ContractChecker(0, 0);
+  private final ContractChecker limited = new ContractChecker(0);
+  private String contract;
+
+  @Setup
+  public void setup() {
+    final String head = this.shape == Shape.HUGE_NUMBER ? "_ -> param" : "";
+    final StringBuilder builder = new StringBuilder(head);
+    while (builder.length() + this.shape.unit.length() + this.shape.tail.length() <= this.length) {
+      builder.append(this.shape.unit);
+    }
+    this.contract = builder.append(this.shape.tail).toString();
+  }
+
+  @Benchmark
+  public int unlimited() {
+    return messages(this.unlimited.checkValue(this.contract, "check", "(Ljava/lang/Object;)Ljava/lang/Object;", false));
+  }
+
+  @Benchmark
+  public int limited() {
+    return messages(this.limited.checkValue(this.contract, "check", "(Ljava/lang/Object;)Ljava/lang/Object;", false));
+  }
+
+  private static int messages(final List<ContractDiagnostic> diagnostics) {
+    int length = 0;
+    for (final ContractDiagnostic diagnostic : diagnostics) {
+      length += diagnostic.message().length();
+    }
+    return length;
+  }
+
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.TypeElement;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Heap retained by the processor part way through a round, against the number of annotated methods.
+ *
+ * <p>The heap is measured after a full collection at the start of the round, and again every so often as diagnostics
+ * are reported. {@link Retained#retainedKilobytes} is the largest growth seen, which is what the processor holds on to
+ * while validating. With {@link ContractValidatorProcessor#OPTION_STREAMING} it should stay flat as the round grows.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ProcessorMemoryBenchmark {
+
+  /**
+   * How many diagnostics to report between measurements.
+   */
+  private static final int SAMPLE_INTERVAL = 256;
+
+  @Param({"10000", "50000", "100000"})
+  public int methods;
+
+  @Param({"false", "true"})
+  public boolean streaming;
+
+  private StandardJavaFileManager fileManager;
+  private List<JavaFileObject> sources;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    this.fileManager = ContractCorpus.fileManager();
+    // malformed contracts give diagnostics to measure at throughout the round
+    this.sources = ContractCorpus.generateSources(this.methods, 500, 2);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    this.fileManager.close();
+  }
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Retained {
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private long baseline;
+    private int reported;
+    public long retainedKilobytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      this.retainedKilobytes = 0;
+    }
+
+    void start() {
+      this.reported = 0;
+      this.baseline = this.used();
+    }
+
+    void reported() {
+      if (++this.reported % SAMPLE_INTERVAL == 0) {
+        this.retainedKilobytes = Math.max(this.retainedKilobytes, (this.used() - this.baseline) / 1024);
+      }
+    }
+
+    private long used() {
+      System.gc();
+      return this.memory.getHeapMemoryUsage().getUsed();
+    }
+  }
+
+  @Benchmark
+  public Boolean round(final Retained retained) {
+    final JavaCompiler.CompilationTask task = ContractCorpus.compiler().getTask(
+      null,
+      this.fileManager,
+      diag -> {},
+      ContractCorpus.compilerOptions(
+        "-proc:only",
+        "-A" + ContractValidatorProcessor.OPTION_MAX_DIAGNOSTICS_PER_CONTRACT + "=0",
+        "-A" + ContractValidatorProcessor.OPTION_MAX_DIAGNOSTICS_PER_ROUND + "=0",
+        "-A" + ContractValidatorProcessor.OPTION_STREAMING + "=" + this.streaming
+      ),
+      null,
+      this.sources
+    );
+    task.setProcessors(Collections.singletonList(new Measured(retained)));
+    return task.call();
+  }
+
+  /**
+   * Runs the contract validator, measuring the heap whenever it reports a diagnostic.
+   */
+  static final class Measured extends AbstractProcessor {
+    private final ContractValidatorProcessor delegate = new ContractValidatorProcessor();
+    private final Retained retained;
+
+    Measured(final Retained retained) {
+      this.retained = retained;
+    }
+
+    @Override
+    public synchronized void init(final ProcessingEnvironment env) {
+      super.init(env);
+      final Messager messager = env.getMessager();
+      final Messager measuring = (Messager) Proxy.newProxyInstance(
+        Messager.class.getClassLoader(),
+        new Class<?>[] {Messager.class},
+        (proxy, method, args) -> {
+          this.retained.reported();
+          try {
+            return method.invoke(messager, args);
+          } catch (final InvocationTargetException ex) {
+            throw ex.getCause();
+          }
+        }
+      );
+      this.delegate.init((ProcessingEnvironment) Proxy.newProxyInstance(
+        ProcessingEnvironment.class.getClassLoader(),
+        new Class<?>[] {ProcessingEnvironment.class},
+        (proxy, method, args) -> {
+          if (method.getName().equals("getMessager")) {
+            return measuring;
+          }
+          try {
+            return method.invoke(env, args);
+          } catch (final InvocationTargetException ex) {
+            throw ex.getCause();
+          }
+        }
+      ));
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+      if (!roundEnv.processingOver()) {
+        this.retained.start();
+      }
+      return this.delegate.process(annotations, roundEnv);
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+      return this.delegate.getSupportedAnnotationTypes();
+    }
+
+    @Override
+    public Set<String> getSupportedOptions() {
+      return this.delegate.getSupportedOptions();
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+      return this.delegate.getSupportedSourceVersion();
+    }
+  }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.processing.Processor;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A full annotation processing round over generated sources.
+ *
+ * <p>Compilation runs with {@code -proc:only}, so the difference between {@link #withValidator()} and
+ * {@link #withoutValidator()} is the cost of the processor itself.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ProcessorRoundBenchmark {
+
+  @Param({"1000", "10000", "100000"})
+  public int methods;
+
+  /**
+   * The percentage of methods with syntax errors in their contracts, which must go through the ANTLR parser.
+   */
+  @Param({"0"})
+  public int malformedPercent;
+
+  @Param({"1024"})
+  public int parseCacheSize;
+
+  /**
+   * The number of validation results to share between methods of the same shape, where {@code 0} validates every method.
+   */
+  @Param({"0", "4096"})
+  public int verdictCacheSize;
+
+  /**
+   * The number of threads to validate on, where {@code 1} validates on the compiler thread.
+   */
+  @Param({"1"})
+  public int parallelism;
+
+  private StandardJavaFileManager fileManager;
+  private List<JavaFileObject> sources;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    this.fileManager = ContractCorpus.fileManager();
+    this.sources = ContractCorpus.generateSources(this.methods, 500, this.malformedPercent);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    this.fileManager.close();
+  }
+
+  @Benchmark
+  public Boolean withValidator() {
+    return this.compile(Collections.singletonList(new ContractValidatorProcessor()));
+  }
+
+  @Benchmark
+  public Boolean withoutValidator() {
+    return this.compile(Collections.emptyList());
+  }
+
+  private Boolean compile(final List<Processor> processors) {
+    final JavaCompiler.CompilationTask task = ContractCorpus.compiler().getTask(
+      null,
+      this.fileManager,
+      diag -> {},
+      ContractCorpus.compilerOptions(
+        "-proc:only",
+        "-A" + ContractValidatorProcessor.OPTION_PARSE_CACHE_SIZE + "=" + this.parseCacheSize,
+        "-A" + ContractValidatorProcessor.OPTION_VERDICT_CACHE_SIZE + "=" + this.verdictCacheSize,
+        "-A" + ContractValidatorProcessor.OPTION_PARALLELISM + "=" + this.parallelism
+      ),
+      null,
+      this.sources
+    );
+    task.setProcessors(processors);
+    return task.call();
+  }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import javax.tools.JavaFileObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A scan of a whole source tree on disk, most of which has no contracts at all, as a pre-commit hook would run it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SourceTreeBenchmark {
+
+  private static final int FILES_PER_PACKAGE = 100;
+  private static final PrintStream DISCARD = new PrintStream(new OutputStream() {
+    @Override
+    public void write(final int b) {
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) {
+    }
+  });
+
+  @Param({"30000"})
+  public int files;
+
+  @Param({"10"})
+  public int annotatedPercent;
+
+  private Path root;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    this.root = Files.createTempDirectory("contract-validator-sources");
+    final int annotated = this.files * this.annotatedPercent / 100;
+    final List<JavaFileObject> sources = ContractCorpus.generateSources(annotated * 20, 20, 5);
+    for (int i = 0; i < this.files; i++) {
+      final Path dir = Files.createDirectories(this.root.resolve("p" + i / FILES_PER_PACKAGE));
+      final String contents;
+      if (i < sources.size()) {
+        contents = sources.get(i).getCharContent(false).toString().replace("Generated" + i + " {", "Source" + i + " {");
+      } else {
+        contents = unannotated(i);
+      }
+      Files.write(dir.resolve("Source" + i + ".java"), contents.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    try (final Stream<Path> files = Files.walk(this.root)) {
+      files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+    }
+  }
+
+  @Benchmark
+  public int scan() {
+    return SourceTreeValidator.run(new String[] {this.root.toString()}, DISCARD, DISCARD);
+  }
+
+  private static String unannotated(final int idx) {
+    final StringBuilder source = new StringBuilder()
+      .append("package benchmark;\n\n")
+      .append("import java.util.ArrayList;\n")
+      .append("import java.util.List;\n\n")
+      .append("/**\n * A class without contracts, of a typical size.\n */\n")
+      .append("public class Source").append(idx).append(" {\n")
+      .append("  private final List<String> values = new ArrayList<>();\n\n");
+    for (int i = 0; i < 20; i++) {
+      source.append(String.format(
+        Locale.ROOT,
+        "  public String value%1$d(final int index) {\n"
+          + "    // bounds are checked by the list\n"
+          + "    return index < 0 ? \"none\" : this.values.get(index %% %1$d + 1);\n"
+          + "  }\n\n",
+        i
+      ));
+    }
+    return source.append("}\n").toString();
+  }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Validation of already-parsed contracts that need no diagnostics, as done for most methods in a compilation.
+ *
+ * <p>This path should allocate nothing. Run {@link #main(String[])} to measure it with the GC profiler, failing if
+ * any benchmark allocates more than {@link #MAX_BYTES_PER_OPERATION}.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValidationAllocationBenchmark {
+
+  /**
+   * The most memory a benchmark may allocate per operation, in bytes, allowing for the profiler's rounding.
+   */
+  static final double MAX_BYTES_PER_OPERATION = 1;
+
+  private final MethodShape[] methods = new MethodShape[ContractCorpus.SIGNATURES.length];
+  private final ParsedContract[] values = new ParsedContract[ContractCorpus.SIGNATURES.length];
+  private final ParsedContract[] mutates = new ParsedContract[ContractCorpus.SIGNATURES.length];
+  private int index;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    for (int i = 0; i < ContractCorpus.SIGNATURES.length; i++) {
+      final Object[] descriptor = ContractCheckerBenchmark.DESCRIPTORS[i];
+      this.methods[i] = MethodShape.ofDescriptor("method" + i, (String) descriptor[0], (Boolean) descriptor[1]);
+      this.values[i] = ParsedContract.parseValue(ContractCorpus.SIGNATURES[i][1]);
+      this.mutates[i] = ParsedContract.parseMutates(ContractCorpus.SIGNATURES[i][2]);
+
+      final ContractChecker.Collector collector = new ContractChecker.Collector();
+      ContractChecker.validateValue(this.methods[i], collector, this.values[i]);
+      ContractChecker.validateMutates(this.methods[i], collector, this.mutates[i]);
+      if (!collector.diagnostics().isEmpty()) {
+        throw new IllegalStateException("Fixture method " + i + " has diagnostics: " + collector.diagnostics());
+      }
+    }
+  }
+
+  @Benchmark
+  public void value() {
+    final int idx = this.nextIndex();
+    ContractChecker.validateValue(this.methods[idx], ContractCorpus.NO_OP_ERRORS, this.values[idx]);
+  }
+
+  @Benchmark
+  public void mutates() {
+    final int idx = this.nextIndex();
+    ContractChecker.validateMutates(this.methods[idx], ContractCorpus.NO_OP_ERRORS, this.mutates[idx]);
+  }
+
+  private int nextIndex() {
+    final int idx = this.index;
+    this.index = (idx + 1) % this.methods.length;
+    return idx;
+  }
+
+  /**
+   * Run these benchmarks with the GC profiler, failing if any of them allocates.
+   *
+   * @param args ignored
+   * @throws RunnerException if the benchmarks could not be run
+   */
+  public static void main(final String[] args) throws RunnerException {
+    final Collection<RunResult> results = new Runner(new OptionsBuilder()
+      .include(ValidationAllocationBenchmark.class.getName())
+      .addProfiler(GCProfiler.class)
+      .build()).run();
+
+    boolean allocated = false;
+    for (final RunResult result : results) {
+      final String benchmark = result.getParams().getBenchmark();
+      final Result<?> bytes = result.getSecondaryResults().get("gc.alloc.rate.norm");
+      if (bytes == null) {
+        throw new IllegalStateException("No allocation was measured for " + benchmark);
+      }
+      System.out.printf("%s: %.3f bytes/op%n", benchmark, bytes.getScore());
+      if (bytes.getScore() > MAX_BYTES_PER_OPERATION) {
+        allocated = true;
+      }
+    }
+    if (allocated) {
+      System.err.printf("Validating a contract without diagnostics allocated more than %s bytes%n", MAX_BYTES_PER_OPERATION);
+      System.exit(1);
+    }
+  }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import com.sun.source.util.JavacTask;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.StandardJavaFileManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the validators over already-parsed contracts, one operation per method.
+ *
+ * <p>Elements come from a real javac analysis of {@link ContractCorpus#SIGNATURES}, so the validators see
+ * the same model implementation they do during annotation processing.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValidatorBenchmark {
+
+  /**
+   * Whether each contract is checked against the method it was written for, or against the next method over, producing errors.
+   */
+  @Param({"true", "false"})
+  public boolean matching;
+
+  private StandardJavaFileManager fileManager;
+  private final List<MethodShape> methods = new ArrayList<>();
+  private final List<ParsedContract> values = new ArrayList<>();
+  private final List<ParsedContract> mutates = new ArrayList<>();
+  private int index;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    this.fileManager = ContractCorpus.fileManager();
+    final JavacTask task = (JavacTask) ContractCorpus.compiler().getTask(
+      null,
+      this.fileManager,
+      diag -> {},
+      ContractCorpus.compilerOptions("-proc:none"),
+      null,
+      ContractCorpus.generateSources(ContractCorpus.SIGNATURES.length, ContractCorpus.SIGNATURES.length)
+    );
+    task.analyze();
+
+    final TypeElement generated = task.getElements().getTypeElement("benchmark.Generated0");
+    final List<ExecutableElement> declared = ElementFilter.methodsIn(generated.getEnclosedElements());
+    for (int i = 0; i < ContractCorpus.SIGNATURES.length; i++) {
+      final String[] signature = ContractCorpus.SIGNATURES[i];
+      final String methodName = String.format(Locale.ROOT, signature[0], i);
+      for (final ExecutableElement method : declared) {
+        if (methodName.contains(" " + method.getSimpleName() + "(")) {
+          this.methods.add(MethodShape.of(method));
+          break;
+        }
+      }
+      this.values.add(ParsedContract.parseValue(signature[1]));
+      this.mutates.add(ParsedContract.parseMutates(signature[2]));
+    }
+
+    if (this.methods.size() != ContractCorpus.SIGNATURES.length) {
+      throw new IllegalStateException("Only resolved " + this.methods.size() + " fixture methods");
+    }
+    if (!this.matching) {
+      Collections.rotate(this.methods, 1);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    this.fileManager.close();
+  }
+
+  @Benchmark
+  public void value() {
+    final int idx = this.nextIndex();
+    ContractValueValidator.validate(this.methods.get(idx), ContractCorpus.NO_OP_ERRORS, this.values.get(idx));
+  }
+
+  @Benchmark
+  public void mutates() {
+    final int idx = this.nextIndex();
+    ContractMutatesValidator.validate(this.methods.get(idx), ContractCorpus.NO_OP_ERRORS, this.mutates.get(idx));
+  }
+
+  private int nextIndex() {
+    final int idx = this.index;
+    this.index = (idx + 1) % this.methods.size();
+    return idx;
+  }
+
+}
@@ -0,0 +1,472 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A minimal class file reader, pulling out the contract annotations on each method.
+ *
+ * <p>Only the constant pool, method table and annotation attributes are read. Classes whose constant pool does not
+ * mention the contract annotation are rejected right after the constant pool, which is the common case for most
+ * classes in a dependency tree.</p>
+ *
+ * <p>Constructors can have parameters in their descriptor that are not in the source, such as the name and ordinal of
+ * an enum constant or the enclosing instance of an inner class. These are left out of the descriptor that contracts
+ * are checked against, going by the {@code MethodParameters} attribute when the constructor has one and by the kind
+ * of class otherwise.</p>
+ */
+final class ClassFileReader {
+
+  private static final int MAGIC = 0xCAFEBABE;
+  private static final int ACC_STATIC = 0x0008;
+  private static final int ACC_SYNTHETIC = 0x1000;
+  private static final int ACC_ENUM = 0x4000;
+  private static final int ACC_MANDATED = 0x8000;
+  private static final String CONSTRUCTOR = "<init>";
+
+  private static final byte[] CONTRACT_DESCRIPTOR = "Lorg/jetbrains/annotations/Contract;".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] INVISIBLE_ANNOTATIONS = "RuntimeInvisibleAnnotations".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] METHOD_PARAMETERS = "MethodParameters".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] INNER_CLASSES = "InnerClasses".getBytes(StandardCharsets.UTF_8);
+
+  // constant pool tags
+  private static final int CONSTANT_UTF8 = 1;
+  private static final int CONSTANT_INTEGER = 3;
+  private static final int CONSTANT_FLOAT = 4;
+  private static final int CONSTANT_LONG = 5;
+  private static final int CONSTANT_DOUBLE = 6;
+  private static final int CONSTANT_CLASS = 7;
+  private static final int CONSTANT_STRING = 8;
+  private static final int CONSTANT_FIELDREF = 9;
+  private static final int CONSTANT_METHODREF = 10;
+  private static final int CONSTANT_INTERFACE_METHODREF = 11;
+  private static final int CONSTANT_NAME_AND_TYPE = 12;
+  private static final int CONSTANT_METHOD_HANDLE = 15;
+  private static final int CONSTANT_METHOD_TYPE = 16;
+  private static final int CONSTANT_DYNAMIC = 17;
+  private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+  private static final int CONSTANT_MODULE = 19;
+  private static final int CONSTANT_PACKAGE = 20;
+
+  private final ByteBuffer buffer;
+  private int[] offsets; // position of each constant pool entry, after its tag
+  private int contractIndex;
+  private int invisibleAnnotationsIndex;
+  private int visibleAnnotationsIndex;
+  private int methodParametersIndex;
+  private int innerClassesIndex;
+
+  private ClassFileReader(final ByteBuffer buffer) {
+    this.buffer = buffer;
+  }
+
+  /**
+   * Read every method with a contract annotation from a class file.
+   *
+   * @param classFile the class file contents
+   * @return the annotated methods, in declaration order
+   * @throws IllegalArgumentException if the class file is malformed
+   */
+  static List<ContractMethod> read(final ByteBuffer classFile) {
+    try {
+      return new ClassFileReader(classFile.slice()).read();
+    } catch (final BufferUnderflowException | IndexOutOfBoundsException ex) {
+      throw new IllegalArgumentException("Truncated or malformed class file", ex);
+    }
+  }
+
+  private List<ContractMethod> read() {
+    final ByteBuffer buf = this.buffer;
+    if (buf.getInt() != MAGIC) {
+      throw new IllegalArgumentException("Not a class file");
+    }
+    buf.getShort(); // minor
+    buf.getShort(); // major
+
+    if (!this.readConstantPool()) {
+      return Collections.emptyList();
+    }
+
+    final int classAccess = buf.getShort() & 0xffff;
+    final int thisClass = buf.getShort() & 0xffff;
+    final String className = this.classConstant(thisClass).replace('/', '.');
+    final int superClass = buf.getShort() & 0xffff;
+    final boolean isEnum = (classAccess & ACC_ENUM) != 0 && superClass != 0 && this.classConstant(superClass).equals("java/lang/Enum");
+    final int interfaceCount = buf.getShort() & 0xffff;
+    buf.position(buf.position() + 2 * interfaceCount);
+
+    final int fieldCount = buf.getShort() & 0xffff;
+    for (int i = 0; i < fieldCount; i++) {
+      buf.position(buf.position() + 6); // access, name, descriptor
+      this.skipAttributes();
+    }
+
+    final List<ContractMethod> methods = new ArrayList<>();
+    final List<int[]> parameterFlags = new ArrayList<>();
+    boolean constructors = false;
+    final int methodCount = buf.getShort() & 0xffff;
+    for (int i = 0; i < methodCount; i++) {
+      final int access = buf.getShort() & 0xffff;
+      final int nameIndex = buf.getShort() & 0xffff;
+      final int descriptorIndex = buf.getShort() & 0xffff;
+
+      ContractMethod method = null;
+      int[] flags = null;
+      final int attributeCount = buf.getShort() & 0xffff;
+      for (int j = 0; j < attributeCount; j++) {
+        final int attributeName = buf.getShort() & 0xffff;
+        final int length = buf.getInt();
+        final int end = buf.position() + length;
+        if (method == null && (attributeName == this.invisibleAnnotationsIndex || attributeName == this.visibleAnnotationsIndex)) {
+          method = this.readAnnotations(className, access, nameIndex, descriptorIndex);
+        } else if (attributeName == this.methodParametersIndex && attributeName != 0) {
+          flags = new int[buf.get() & 0xff];
+          for (int k = 0; k < flags.length; k++) {
+            buf.getShort(); // name
+            flags[k] = buf.getShort() & 0xffff;
+          }
+        }
+        buf.position(end);
+      }
+      if (method != null) {
+        methods.add(method);
+        parameterFlags.add(flags);
+        constructors |= method.name.equals(CONSTRUCTOR);
+      }
+    }
+
+    if (constructors) {
+      final int outerInstance = isEnum ? 0 : this.outerInstance(thisClass);
+      for (int i = methods.size() - 1; i >= 0; i--) {
+        final ContractMethod method = methods.get(i);
+        if (method.name.equals(CONSTRUCTOR)) {
+          final String declared = declaredDescriptor(method.descriptor, parameterFlags.get(i), isEnum ? 2 : outerInstance);
+          if (declared == null) {
+            methods.remove(i); // the parameters of the source can't be told apart
+          } else {
+            methods.set(i, method.withDeclaredDescriptor(declared));
+          }
+        }
+      }
+    }
+    return methods;
+  }
+
+  /**
+   * Find how many leading constructor parameters an inner class has that are not declared in the source, from the
+   * class attributes following the methods.
+   *
+   * @param thisClass the constant pool index of this class
+   * @return {@code 1} for an inner member class, {@code -1} if unknown, or {@code 0}
+   */
+  private int outerInstance(final int thisClass) {
+    final ByteBuffer buf = this.buffer;
+    final int count = buf.getShort() & 0xffff;
+    for (int i = 0; i < count; i++) {
+      final int attributeName = buf.getShort() & 0xffff;
+      final int length = buf.getInt();
+      final int end = buf.position() + length;
+      if (attributeName == this.innerClassesIndex && attributeName != 0) {
+        final int classes = buf.getShort() & 0xffff;
+        for (int j = 0; j < classes; j++) {
+          final int inner = buf.getShort() & 0xffff;
+          final int outer = buf.getShort() & 0xffff;
+          buf.getShort(); // simple name
+          final int flags = buf.getShort() & 0xffff;
+          if (inner == thisClass && (flags & ACC_STATIC) == 0) {
+            // local and anonymous classes have no outer class entry, and only capture an instance in instance code
+            return outer != 0 ? 1 : -1;
+          }
+        }
+      }
+      buf.position(end);
+    }
+    return 0;
+  }
+
+  /**
+   * Remove the parameters a constructor has that are not declared in the source from its descriptor.
+   *
+   * @param descriptor the descriptor
+   * @param flags the access flags of each parameter from its {@code MethodParameters}, or {@code null} if there are none
+   * @param leading the number of leading parameters to drop if there are no flags, or {@code -1} if unknown
+   * @return the descriptor with only the declared parameters, or {@code null} if they are unknown
+   */
+  static String declaredDescriptor(final String descriptor, final int[] flags, final int leading) {
+    final List<String> params = new ArrayList<>();
+    int idx = 1;
+    while (idx < descriptor.length() && descriptor.charAt(idx) != ')') {
+      final int start = idx;
+      while (idx < descriptor.length() && descriptor.charAt(idx) == '[') {
+        idx++;
+      }
+      if (idx < descriptor.length() && descriptor.charAt(idx) == 'L') {
+        idx = descriptor.indexOf(';', idx);
+        if (idx == -1) {
+          return descriptor; // malformed, to be reported when checked
+        }
+      }
+      params.add(descriptor.substring(start, ++idx));
+    }
+    if (idx >= descriptor.length()) {
+      return descriptor;
+    }
+
+    final StringBuilder declared = new StringBuilder("(");
+    if (flags != null && flags.length == params.size()) {
+      for (int i = 0; i < flags.length; i++) {
+        if ((flags[i] & (ACC_SYNTHETIC | ACC_MANDATED)) == 0) {
+          declared.append(params.get(i));
+        }
+      }
+    } else if (leading < 0) {
+      return null;
+    } else {
+      for (int i = Math.min(leading, params.size()); i < params.size(); i++) {
+        declared.append(params.get(i));
+      }
+    }
+    return declared.append(descriptor, idx, descriptor.length()).toString();
+  }
+
+  /**
+   * Index the constant pool.
+   *
+   * @return whether the contract annotation is referenced at all
+   */
+  private boolean readConstantPool() {
+    final ByteBuffer buf = this.buffer;
+    final int count = buf.getShort() & 0xffff;
+    this.offsets = new int[count];
+    for (int i = 1; i < count; i++) {
+      final int tag = buf.get();
+      final int offset = buf.position();
+      this.offsets[i] = offset;
+      switch (tag) {
+        case CONSTANT_UTF8:
+          final int length = buf.getShort() & 0xffff;
+          if (this.contractIndex == 0 && this.utf8Equals(i, CONTRACT_DESCRIPTOR)) {
+            this.contractIndex = i;
+          } else if (this.invisibleAnnotationsIndex == 0 && this.utf8Equals(i, INVISIBLE_ANNOTATIONS)) {
+            this.invisibleAnnotationsIndex = i;
+          } else if (this.visibleAnnotationsIndex == 0 && this.utf8Equals(i, VISIBLE_ANNOTATIONS)) {
+            this.visibleAnnotationsIndex = i;
+          } else if (this.methodParametersIndex == 0 && this.utf8Equals(i, METHOD_PARAMETERS)) {
+            this.methodParametersIndex = i;
+          } else if (this.innerClassesIndex == 0 && this.utf8Equals(i, INNER_CLASSES)) {
+            this.innerClassesIndex = i;
+          }
+          buf.position(offset + 2 + length);
+          break;
+        case CONSTANT_CLASS: case CONSTANT_STRING: case CONSTANT_METHOD_TYPE: case CONSTANT_MODULE: case CONSTANT_PACKAGE:
+          buf.position(buf.position() + 2);
+          break;
+        case CONSTANT_METHOD_HANDLE:
+          buf.position(buf.position() + 3);
+          break;
+        case CONSTANT_INTEGER: case CONSTANT_FLOAT: case CONSTANT_FIELDREF: case CONSTANT_METHODREF: case CONSTANT_INTERFACE_METHODREF:
+        case CONSTANT_NAME_AND_TYPE: case CONSTANT_DYNAMIC: case CONSTANT_INVOKE_DYNAMIC:
+          buf.position(buf.position() + 4);
+          break;
+        case CONSTANT_LONG: case CONSTANT_DOUBLE:
+          buf.position(buf.position() + 8);
+          i++; // takes two slots
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown constant pool tag " + tag + " at index " + i);
+      }
+    }
+    return this.contractIndex != 0;
+  }
+
+  private void skipAttributes() {
+    final ByteBuffer buf = this.buffer;
+    final int count = buf.getShort() & 0xffff;
+    for (int i = 0; i < count; i++) {
+      buf.getShort(); // name
+      final int length = buf.getInt();
+      buf.position(buf.position() + length);
+    }
+  }
+
+  private ContractMethod readAnnotations(final String className, final int access, final int nameIndex, final int descriptorIndex) {
+    final ByteBuffer buf = this.buffer;
+    final int count = buf.getShort() & 0xffff;
+    for (int i = 0; i < count; i++) {
+      final int type = buf.getShort() & 0xffff;
+      if (type != this.contractIndex) {
+        this.skipElementValuePairs();
+        continue;
+      }
+
+      String value = null;
+      String mutates = null;
+      final int pairs = buf.getShort() & 0xffff;
+      for (int j = 0; j < pairs; j++) {
+        final int elementName = buf.getShort() & 0xffff;
+        if (buf.get(buf.position()) == 's') {
+          buf.get();
+          final int constant = buf.getShort() & 0xffff;
+          final String name = this.utf8(elementName);
+          if (name.equals("value")) {
+            value = this.utf8(constant);
+          } else if (name.equals("mutates")) {
+            mutates = this.utf8(constant);
+          }
+        } else {
+          this.skipElementValue();
+        }
+      }
+      final String descriptor = this.utf8(descriptorIndex);
+      return new ContractMethod(className, this.utf8(nameIndex), descriptor, descriptor, (access & ACC_STATIC) != 0, value, mutates);
+    }
+    return null;
+  }
+
+  private void skipElementValuePairs() {
+    final ByteBuffer buf = this.buffer;
+    final int pairs = buf.getShort() & 0xffff;
+    for (int i = 0; i < pairs; i++) {
+      buf.getShort(); // name
+      this.skipElementValue();
+    }
+  }
+
+  private void skipElementValue() {
+    final ByteBuffer buf = this.buffer;
+    final int tag = buf.get();
+    switch (tag) {
+      case 'B': case 'C': case 'D': case 'F': case 'I': case 'J': case 'S': case 'Z': case 's': case 'c':
+        buf.getShort();
+        break;
+      case 'e':
+        buf.getInt(); // type name and constant name
+        break;
+      case '@':
+        buf.getShort(); // type
+        this.skipElementValuePairs();
+        break;
+      case '[':
+        final int count = buf.getShort() & 0xffff;
+        for (int i = 0; i < count; i++) {
+          this.skipElementValue();
+        }
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown element value tag " + (char) tag);
+    }
+  }
+
+  private String classConstant(final int index) {
+    return this.utf8(this.buffer.getShort(this.entryOffset(index, CONSTANT_CLASS)) & 0xffff);
+  }
+
+  private int entryOffset(final int index, final int expectedTag) {
+    final int offset = index < this.offsets.length ? this.offsets[index] : 0;
+    if (offset == 0 || this.buffer.get(offset - 1) != expectedTag) {
+      throw new IllegalArgumentException("Constant " + index + " is not of the expected type " + expectedTag);
+    }
+    return offset;
+  }
+
+  private boolean utf8Equals(final int index, final byte[] expected) {
+    final int offset = this.offsets[index];
+    if ((this.buffer.getShort(offset) & 0xffff) != expected.length) {
+      return false;
+    }
+    for (int i = 0; i < expected.length; i++) {
+      if (this.buffer.get(offset + 2 + i) != expected[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Decode a modified UTF-8 constant.
+   *
+   * @param index the constant pool index
+   * @return the decoded string
+   */
+  private String utf8(final int index) {
+    final int offset = this.entryOffset(index, CONSTANT_UTF8);
+    final ByteBuffer buf = this.buffer;
+    final int length = buf.getShort(offset) & 0xffff;
+    final char[] chars = new char[length];
+    int count = 0;
+    for (int pos = offset + 2, end = pos + length; pos < end; count++) {
+      final int b = buf.get(pos++) & 0xff;
+      if (b < 0x80) {
+        chars[count] = (char) b;
+      } else if ((b & 0xe0) == 0xc0) {
+        chars[count] = (char) (((b & 0x1f) << 6) | (buf.get(pos++) & 0x3f));
+      } else {
+        chars[count] = (char) (((b & 0x0f) << 12) | ((buf.get(pos++) & 0x3f) << 6) | (buf.get(pos++) & 0x3f));
+      }
+    }
+    return new String(chars, 0, count);
+  }
+
+  /**
+   * A method with a contract annotation, as found in a class file.
+   */
+  static final class ContractMethod {
+    final String className;
+    final String name;
+    final String descriptor;
+    final String declaredDescriptor;
+    final boolean isStatic;
+    final String value;
+    final String mutates;
+
+    ContractMethod(
+      final String className,
+      final String name,
+      final String descriptor,
+      final String declaredDescriptor,
+      final boolean isStatic,
+      final String value,
+      final String mutates
+    ) {
+      this.className = className;
+      this.name = name;
+      this.descriptor = descriptor;
+      this.declaredDescriptor = declaredDescriptor;
+      this.isStatic = isStatic;
+      this.value = value;
+      this.mutates = mutates;
+    }
+
+    ContractMethod withDeclaredDescriptor(final String declaredDescriptor) {
+      return new ContractMethod(this.className, this.name, this.descriptor, declaredDescriptor, this.isStatic, this.value, this.mutates);
+    }
+
+    @Override
+    public String toString() {
+      return this.className + '#' + this.name + this.descriptor;
+    }
+  }
+
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.tools.Diagnostic;
+
+/**
+ * Check the contracts in already compiled classes, such as those in dependency jars.
+ *
+ * <p>{@code @Contract} has class retention, so it is kept in the {@code RuntimeInvisibleAnnotations} of each method.
+ * Class files are read directly from directories and jars, and checked in parallel against the signature in each
+ * method's descriptor. Diagnostics are printed in a stable order, sorted by file.</p>
+ *
+ * <p>Usage: {@code ClassFileValidator [--threads <count>] <jar, directory, or class file>...}. The exit code is
+ * {@code 0} when no errors were found, {@code 1} if there were errors, and {@code 2} if the inputs could not be
+ * read.</p>
+ */
+public final class ClassFileValidator {
+
+  private final ContractChecker checker = new ContractChecker();
+
+  private ClassFileValidator() {
+  }
+
+  public static void main(final String... args) {
+    System.exit(run(args, System.out, System.err));
+  }
+
+  /**
+   * Validate every class file found in the paths given as arguments.
+   *
+   * @param args the command-line arguments
+   * @param out the stream to print diagnostics to
+   * @param err the stream to print usage and summary information to
+   * @return the exit code
+   */
+  static int run(final String[] args, final PrintStream out, final PrintStream err) {
+    int threads = Runtime.getRuntime().availableProcessors();
+    final List<Path> inputs = new ArrayList<>();
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("--threads") && i + 1 < args.length) {
+        try {
+          threads = Integer.parseInt(args[++i]);
+        } catch (final NumberFormatException ex) {
+          threads = 0;
+        }
+        if (threads < 1) {
+          err.println("--threads must be a positive integer, but was '" + args[i] + "'");
+          return 2;
+        }
+      } else if (args[i].equals("--help") || args[i].startsWith("-")) {
+        err.println("Usage: ClassFileValidator [--threads <count>] <jar, directory, or class file>...");
+        return 2;
+      } else {
+        inputs.add(Paths.get(args[i]));
+      }
+    }
+    if (inputs.isEmpty()) {
+      err.println("Usage: ClassFileValidator [--threads <count>] <jar, directory, or class file>...");
+      return 2;
+    }
+
+    final List<ZipFile> archives = new ArrayList<>();
+    final ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      final List<ClassFile> classFiles = new ArrayList<>();
+      for (final Path input : inputs) {
+        collect(input, classFiles, archives);
+      }
+
+      final ClassFileValidator validator = new ClassFileValidator();
+      ForEachTask.run(pool, classFiles, validator::validate);
+
+      int errors = 0;
+      int warnings = 0;
+      int failures = 0;
+      int annotated = 0;
+      for (final ClassFile file : classFiles) {
+        for (final String message : file.messages) {
+          out.println(message);
+        }
+        errors += file.errors;
+        warnings += file.warnings;
+        annotated += file.annotatedMethods;
+        if (file.failure != null) {
+          err.println(file.location + ": unable to read class: " + file.failure);
+          failures++;
+        }
+      }
+
+      err.printf(
+        Locale.ROOT,
+        "Checked %d annotated method(s) in %d class file(s): %d error(s), %d warning(s)%n",
+        annotated,
+        classFiles.size(),
+        errors,
+        warnings
+      );
+      return failures > 0 ? 2 : errors > 0 ? 1 : 0;
+    } catch (final IOException ex) {
+      err.println("Unable to read inputs: " + ex);
+      return 2;
+    } finally {
+      pool.shutdown();
+      for (final ZipFile archive : archives) {
+        try {
+          archive.close();
+        } catch (final IOException ignored) {
+          // read-only, nothing to lose
+        }
+      }
+    }
+  }
+
+  private static void collect(final Path input, final List<ClassFile> classFiles, final List<ZipFile> archives) throws IOException {
+    if (Files.isDirectory(input)) {
+      final List<Path> found;
+      try (final Stream<Path> files = Files.walk(input)) {
+        found = files
+          .filter(file -> file.getFileName().toString().endsWith(".class") && Files.isRegularFile(file))
+          .sorted()
+          .collect(Collectors.toList());
+      }
+      for (final Path file : found) {
+        classFiles.add(new ClassFile(file.toString(), () -> Files.readAllBytes(file)));
+      }
+    } else if (input.getFileName().toString().endsWith(".class")) {
+      classFiles.add(new ClassFile(input.toString(), () -> Files.readAllBytes(input)));
+    } else {
+      // ZipFile maps the central directory and can read entries from several threads at once
+      final ZipFile archive = new ZipFile(input.toFile());
+      archives.add(archive);
+      final List<ZipEntry> found = archive.stream()
+        .filter(entry -> !entry.isDirectory() && entry.getName().endsWith(".class"))
+        .sorted(Comparator.comparing(ZipEntry::getName))
+        .collect(Collectors.toList());
+      for (final ZipEntry entry : found) {
+        classFiles.add(new ClassFile(input + "!/" + entry.getName(), () -> readEntry(archive, entry)));
+      }
+    }
+  }
+
+  private static byte[] readEntry(final ZipFile archive, final ZipEntry entry) throws IOException {
+    final long size = entry.getSize();
+    try (final InputStream is = archive.getInputStream(entry)) {
+      if (size < 0 || size > Integer.MAX_VALUE) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = is.read(buffer)) != -1) {
+          out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+      }
+
+      final byte[] contents = new byte[(int) size];
+      int offset = 0;
+      int read;
+      while (offset < contents.length && (read = is.read(contents, offset, contents.length - offset)) != -1) {
+        offset += read;
+      }
+      if (offset != contents.length) {
+        throw new IOException("Entry " + entry.getName() + " was shorter than its declared size");
+      }
+      return contents;
+    }
+  }
+
+  private void validate(final ClassFile file) {
+    final List<ClassFileReader.ContractMethod> methods;
+    try {
+      methods = ClassFileReader.read(ByteBuffer.wrap(file.contents.read()));
+    } catch (final IOException | IllegalArgumentException ex) {
+      file.failure = ex.getMessage();
+      return;
+    }
+
+    file.annotatedMethods = methods.size();
+    for (final ClassFileReader.ContractMethod method : methods) {
+      final List<ContractDiagnostic> diagnostics = new ArrayList<>(0);
+      try {
+        if (method.value != null) {
+          diagnostics.addAll(this.checker.checkValue(method.value, method.name, method.declaredDescriptor, method.isStatic));
+        }
+        if (method.mutates != null) {
+          diagnostics.addAll(this.checker.checkMutates(method.mutates, method.name, method.declaredDescriptor, method.isStatic));
+        }
+      } catch (final IllegalArgumentException ex) {
+        file.failure = ex.getMessage();
+        return;
+      }
+
+      for (final ContractDiagnostic diagnostic : diagnostics) {
+        file.report(diagnostic.kind(), method, diagnostic.message());
+      }
+    }
+  }
+
+  /**
+   * A class file to check, and the results of checking it.
+   */
+  static final class ClassFile {
+    final String location;
+    final Contents contents;
+    final List<String> messages = new ArrayList<>(0);
+    int annotatedMethods;
+    int errors;
+    int warnings;
+    String failure;
+
+    ClassFile(final String location, final Contents contents) {
+      this.location = location;
+      this.contents = contents;
+    }
+
+    void report(final Diagnostic.Kind kind, final ClassFileReader.ContractMethod method, final CharSequence message) {
+      if (kind == Diagnostic.Kind.ERROR) {
+        this.errors++;
+      } else if (kind == Diagnostic.Kind.WARNING || kind == Diagnostic.Kind.MANDATORY_WARNING) {
+        this.warnings++;
+      }
+      this.messages.add(this.location + ": " + kind.name().toLowerCase(Locale.ROOT) + ": " + method + ": " + message);
+    }
+  }
+
+  /**
+   * A source of class file bytes.
+   */
+  @FunctionalInterface
+  interface Contents {
+    byte[] read() throws IOException;
+  }
+
+}
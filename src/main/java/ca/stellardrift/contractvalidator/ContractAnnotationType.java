@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.util.Map;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+/**
+ * The {@code Contract} annotation type and its attributes, resolved once per round.
+ *
+ * <p>Annotated elements often carry many other annotations, so finding the contract annotation compares types by
+ * identity first, only asking the compiler to compare types when the simple names match.</p>
+ */
+final class ContractAnnotationType {
+
+  private final Types types;
+  private final TypeElement type;
+  private final ExecutableElement value;
+  private final ExecutableElement mutates;
+
+  private ContractAnnotationType(final Types types, final TypeElement type, final ExecutableElement value, final ExecutableElement mutates) {
+    this.types = types;
+    this.type = type;
+    this.value = value;
+    this.mutates = mutates;
+  }
+
+  /**
+   * Resolve the annotation type from the compile classpath.
+   *
+   * @param elements the element utilities
+   * @param types the type utilities
+   * @param binaryName the binary name of the annotation type
+   * @return the resolved type, or {@code null} if it is not available
+   */
+  static ContractAnnotationType resolve(final Elements elements, final Types types, final String binaryName) {
+    final TypeElement type = elements.getTypeElement(binaryName);
+    if (type == null) {
+      return null;
+    }
+
+    ExecutableElement value = null;
+    ExecutableElement mutates = null;
+    for (final ExecutableElement attribute : ElementFilter.methodsIn(type.getEnclosedElements())) {
+      if (attribute.getSimpleName().contentEquals("value")) {
+        value = attribute;
+      } else if (attribute.getSimpleName().contentEquals("mutates")) {
+        mutates = attribute; // only present in newer versions of the annotations
+      }
+    }
+    return new ContractAnnotationType(types, type, value, mutates);
+  }
+
+  TypeElement type() {
+    return this.type;
+  }
+
+  /**
+   * Find the contract annotation on an element.
+   *
+   * @param element the annotated element
+   * @return the annotation, or {@code null} if the element is not annotated
+   */
+  AnnotationMirror find(final Element element) {
+    for (final AnnotationMirror annotation : element.getAnnotationMirrors()) {
+      final Element annotationType = annotation.getAnnotationType().asElement();
+      if (annotationType == this.type) {
+        return annotation;
+      } else if (annotationType.getSimpleName().equals(this.type.getSimpleName())
+        && this.types.isSameType(annotation.getAnnotationType(), this.type.asType())) {
+        return annotation;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Get the explicitly specified {@code value} of a contract annotation.
+   *
+   * @param annotation the annotation
+   * @return the value, or {@code null} if not specified
+   */
+  AnnotationValue value(final AnnotationMirror annotation) {
+    return this.get(annotation, this.value);
+  }
+
+  /**
+   * Get the explicitly specified {@code mutates} of a contract annotation.
+   *
+   * @param annotation the annotation
+   * @return the value, or {@code null} if not specified
+   */
+  AnnotationValue mutates(final AnnotationMirror annotation) {
+    return this.get(annotation, this.mutates);
+  }
+
+  private AnnotationValue get(final AnnotationMirror annotation, final ExecutableElement attribute) {
+    if (attribute == null) {
+      return null;
+    }
+
+    final Map<? extends ExecutableElement, ? extends AnnotationValue> values = annotation.getElementValues();
+    final AnnotationValue result = values.get(attribute);
+    if (result != null || annotation.getAnnotationType().asElement() == this.type) {
+      return result;
+    }
+
+    // the same type, but a different instance of its elements
+    for (final Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : values.entrySet()) {
+      if (entry.getKey().getSimpleName().equals(attribute.getSimpleName())) {
+        return entry.getValue();
+      }
+    }
+    return null;
+  }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A bounded cache of parsed contracts, keyed by contract text.
+ *
+ * <p>Many methods share the same few contract strings, so parsing each distinct string once saves most of
+ * the work of parsing. The least recently used entry is evicted when the cache is full.</p>
+ *
+ * <p>This cache is not thread-safe.</p>
+ */
+final class ContractCache {
+
+  private final int maximumSize;
+  private final Map<String, ParsedContract> entries;
+  private long hits;
+  private long misses;
+
+  /**
+   * Create a new cache.
+   *
+   * @param maximumSize the maximum number of entries to hold, or {@code 0} to disable caching
+   */
+  ContractCache(final int maximumSize) {
+    if (maximumSize < 0) {
+      throw new IllegalArgumentException("Maximum size must be non-negative, but was " + maximumSize);
+    }
+    this.maximumSize = maximumSize;
+    this.entries = new LinkedHashMap<String, ParsedContract>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<String, ParsedContract> eldest) {
+        return this.size() > ContractCache.this.maximumSize;
+      }
+    };
+  }
+
+  /**
+   * Get the parsed form of a contract, parsing it if necessary.
+   *
+   * @param text the contract text
+   * @param parser the function to parse text not already cached
+   * @return the parsed contract
+   */
+  ParsedContract get(final String text, final Function<String, ParsedContract> parser) {
+    ParsedContract result = this.lookup(text);
+    if (result == null) {
+      result = parser.apply(text);
+      this.put(text, result);
+    }
+    return result;
+  }
+
+  /**
+   * Get the parsed form of a contract only if it is already cached.
+   *
+   * @param text the contract text
+   * @return the parsed contract, or {@code null} on a miss
+   */
+  ParsedContract lookup(final String text) {
+    final ParsedContract result = this.entries.get(text);
+    if (result != null) {
+      this.hits++;
+    } else {
+      this.misses++;
+    }
+    return result;
+  }
+
+  /**
+   * Add a contract parsed after a {@link #lookup(String) lookup} missed.
+   *
+   * @param text the contract text
+   * @param parsed the parsed contract
+   */
+  void put(final String text, final ParsedContract parsed) {
+    if (this.maximumSize > 0) {
+      this.entries.put(text, parsed);
+    }
+  }
+
+  int size() {
+    return this.entries.size();
+  }
+
+  long hits() {
+    return this.hits;
+  }
+
+  long misses() {
+    return this.misses;
+  }
+
+}
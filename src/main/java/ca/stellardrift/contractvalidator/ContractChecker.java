@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import javax.tools.Diagnostic;
+
+/**
+ * Checks contract strings against the signature of the method they are declared on.
+ *
+ * <p>Signatures are described by a JVM method descriptor, such as {@code (Ljava/lang/String;I)Z}, and whether the
+ * method is static, so no compiler is needed. This makes checks cheap enough to run on every keystroke in an
+ * editor, and is what both the annotation processor and {@link ClassFileValidator} are built on.</p>
+ *
+ * <p>Instances are thread-safe. Parsed contracts are cached by their text and shared between threads, so a single
+ * instance should be reused for as long as possible.</p>
+ */
+public final class ContractChecker {
+
+  /**
+   * The number of distinct contract strings of each kind cached by default.
+   */
+  public static final int DEFAULT_CACHE_SIZE = 1024;
+
+  /**
+   * The longest contract string parsed by default.
+   */
+  public static final int DEFAULT_MAX_CONTRACT_LENGTH = ParsedContract.DEFAULT_MAX_LENGTH;
+
+  private final int maximumCacheSize;
+  private final Function<String, ParsedContract> valueParser;
+  private final Function<String, ParsedContract> mutatesParser;
+  private final ConcurrentHashMap<String, ParsedContract> values = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, ParsedContract> mutates = new ConcurrentHashMap<>();
+
+  /**
+   * Create a checker caching up to {@value #DEFAULT_CACHE_SIZE} contracts of each kind, and parsing contracts of up
+   * to {@value #DEFAULT_MAX_CONTRACT_LENGTH} characters.
+   */
+  public ContractChecker() {
+    this(DEFAULT_CACHE_SIZE);
+  }
+
+  /**
+   * Create a checker with a custom cache size.
+   *
+   * <p>When the cache of either kind of contract fills up, it is emptied.</p>
+   *
+   * @param maximumCacheSize the maximum number of contracts of each kind to cache, or {@code 0} to disable caching
+   * @throws IllegalArgumentException if the size is negative
+   */
+  public ContractChecker(final int maximumCacheSize) {
+    this(maximumCacheSize, DEFAULT_MAX_CONTRACT_LENGTH);
+  }
+
+  /**
+   * Create a checker with a custom cache size and contract length limit.
+   *
+   * <p>Contract strings longer than the limit are reported as a single problem without being parsed. Parsing takes
+   * time linear in the length of the string, so this bounds the time spent checking any one contract.</p>
+   *
+   * @param maximumCacheSize the maximum number of contracts of each kind to cache, or {@code 0} to disable caching
+   * @param maximumContractLength the longest contract string to parse, or {@code 0} for no limit
+   * @throws IllegalArgumentException if either value is negative
+   */
+  public ContractChecker(final int maximumCacheSize, final int maximumContractLength) {
+    if (maximumCacheSize < 0) {
+      throw new IllegalArgumentException("Maximum cache size must be non-negative, but was " + maximumCacheSize);
+    }
+    if (maximumContractLength < 0) {
+      throw new IllegalArgumentException("Maximum contract length must be non-negative, but was " + maximumContractLength);
+    }
+    this.maximumCacheSize = maximumCacheSize;
+    this.valueParser = text -> ParsedContract.parseValue(text, maximumContractLength);
+    this.mutatesParser = text -> ParsedContract.parseMutates(text, maximumContractLength);
+  }
+
+  /**
+   * Check the {@code value} field of a contract.
+   *
+   * @param contract the contract text
+   * @param methodName the name of the method, used in messages
+   * @param descriptor the JVM descriptor of the method
+   * @param isStatic whether the method is static
+   * @return the problems found, in the order they occur, or an empty list if the contract is valid
+   * @throws IllegalArgumentException if the descriptor is malformed
+   */
+  public List<ContractDiagnostic> checkValue(
+    final String contract,
+    final String methodName,
+    final String descriptor,
+    final boolean isStatic
+  ) {
+    return this.checkValue(contract, MethodShape.ofDescriptor(methodName, descriptor, isStatic));
+  }
+
+  /**
+   * Check the {@code value} field of a contract against a method that has already been read.
+   *
+   * @param contract the contract text
+   * @param shape the method
+   * @return the problems found, in the order they occur, or an empty list if the contract is valid
+   */
+  List<ContractDiagnostic> checkValue(final String contract, final MethodShape shape) {
+    final Collector errors = new Collector();
+    validateValue(shape, errors, this.parse(this.values, contract, this.valueParser));
+    return errors.diagnostics();
+  }
+
+  /**
+   * Check the {@code mutates} field of a contract.
+   *
+   * @param mutates the mutates text
+   * @param methodName the name of the method, used in messages
+   * @param descriptor the JVM descriptor of the method
+   * @param isStatic whether the method is static
+   * @return the problems found, in the order they occur, or an empty list if the field is valid
+   * @throws IllegalArgumentException if the descriptor is malformed
+   */
+  public List<ContractDiagnostic> checkMutates(
+    final String mutates,
+    final String methodName,
+    final String descriptor,
+    final boolean isStatic
+  ) {
+    return this.checkMutates(mutates, MethodShape.ofDescriptor(methodName, descriptor, isStatic));
+  }
+
+  /**
+   * Check the {@code mutates} field of a contract against a method that has already been read.
+   *
+   * @param mutates the mutates text
+   * @param shape the method
+   * @return the problems found, in the order they occur, or an empty list if the field is valid
+   */
+  List<ContractDiagnostic> checkMutates(final String mutates, final MethodShape shape) {
+    final Collector errors = new Collector();
+    validateMutates(shape, errors, this.parse(this.mutates, mutates, this.mutatesParser));
+    return errors.diagnostics();
+  }
+
+  private ParsedContract parse(
+    final ConcurrentHashMap<String, ParsedContract> cache,
+    final String text,
+    final Function<String, ParsedContract> parser
+  ) {
+    ParsedContract parsed = cache.get(text);
+    if (parsed == null) {
+      parsed = parser.apply(text);
+      if (this.maximumCacheSize > 0) {
+        if (cache.size() >= this.maximumCacheSize) {
+          cache.clear();
+        }
+        final ParsedContract existing = cache.putIfAbsent(text, parsed);
+        if (existing != null) {
+          parsed = existing;
+        }
+      }
+    }
+    return parsed;
+  }
+
+  /**
+   * Report syntax errors in a parsed {@code value} field, then check it against a method.
+   *
+   * @param shape the method
+   * @param errors the consumer for any problems
+   * @param contract the parsed contract
+   */
+  static void validateValue(final MethodShape shape, final ErrorConsumer errors, final ParsedContract contract) {
+    contract.reportSyntaxErrors(errors);
+    ContractValueValidator.validate(shape, errors, contract);
+  }
+
+  /**
+   * Report syntax errors in a parsed {@code mutates} field, then check it against a method.
+   *
+   * @param shape the method
+   * @param errors the consumer for any problems
+   * @param contract the parsed contract
+   */
+  static void validateMutates(final MethodShape shape, final ErrorConsumer errors, final ParsedContract contract) {
+    contract.reportSyntaxErrors(errors);
+    ContractMutatesValidator.validate(shape, errors, contract);
+  }
+
+  /**
+   * Collects diagnostics, only allocating once there is one to hold.
+   */
+  static final class Collector implements ErrorConsumer {
+    private List<ContractDiagnostic> diagnostics;
+
+    @Override
+    public void print(final Diagnostic.Kind kind, final CharSequence message) {
+      this.print(kind, -1, -1, "%s", message);
+    }
+
+    @Override
+    public void print(final Diagnostic.Kind kind, final String format, final Object... args) {
+      this.print(kind, -1, -1, format, args);
+    }
+
+    @Override
+    public void print(final Diagnostic.Kind kind, final int start, final int end, final String format, final Object... args) {
+      if (this.diagnostics == null) {
+        this.diagnostics = new ArrayList<>(2);
+      }
+      this.diagnostics.add(new ContractDiagnostic(kind, start, end, format, args));
+    }
+
+    List<ContractDiagnostic> diagnostics() {
+      return this.diagnostics == null ? Collections.emptyList() : Collections.unmodifiableList(this.diagnostics);
+    }
+  }
+
+}
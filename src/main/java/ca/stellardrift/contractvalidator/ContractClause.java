@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+/**
+ * One {@code constraints -> effect} clause of a contract value.
+ *
+ * <p>Positions are character offsets into the contract text, with exclusive ends. Terms are shared between
+ * clauses, so their positions are held here instead.</p>
+ */
+final class ContractClause {
+
+  private final ContractTerm[] args;
+  private final ContractTerm effect;
+  private final int start;
+  private final int end;
+  private final int[] positions;
+
+  /**
+   * Create a new clause.
+   *
+   * @param args the argument constraints, or {@code null} if the clause has no argument list. Individual elements may be
+   *     {@code null} when a constraint could not be parsed
+   * @param effect the effect, or {@code null} if it could not be parsed
+   * @param start the offset of the start of the clause
+   * @param end the offset of the end of the clause
+   * @param positions the start and end offset of each argument in turn, followed by those of the effect
+   */
+  ContractClause(final ContractTerm[] args, final ContractTerm effect, final int start, final int end, final int[] positions) {
+    this.args = args;
+    this.effect = effect;
+    this.start = start;
+    this.end = end;
+    this.positions = positions;
+  }
+
+  boolean hasArgs() {
+    return this.args != null;
+  }
+
+  int argCount() {
+    return this.args == null ? 0 : this.args.length;
+  }
+
+  ContractTerm arg(final int idx) {
+    return this.args[idx];
+  }
+
+  ContractTerm effect() {
+    return this.effect;
+  }
+
+  int start() {
+    return this.start;
+  }
+
+  int end() {
+    return this.end;
+  }
+
+  int argStart(final int idx) {
+    return this.positions[2 * idx];
+  }
+
+  int argEnd(final int idx) {
+    return this.positions[2 * idx + 1];
+  }
+
+  int effectStart() {
+    return this.positions[this.positions.length - 2];
+  }
+
+  int effectEnd() {
+    return this.positions[this.positions.length - 1];
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder builder = new StringBuilder();
+    if (this.args != null) {
+      for (int i = 0; i < this.args.length; i++) {
+        if (i > 0) {
+          builder.append(", ");
+        }
+        builder.append(this.args[i]);
+      }
+      builder.append(' ');
+    }
+    return builder.append("-> ").append(this.effect).toString();
+  }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import javax.tools.Diagnostic;
+
+/**
+ * A problem found in a contract string by a {@link ContractChecker}.
+ *
+ * <p>Positions are character offsets into the checked string, with an exclusive end, so that tools can highlight the
+ * offending text. They are {@code -1} when a problem is not about any particular part of the string.</p>
+ *
+ * <p>Instances are immutable. The message is only formatted when it is first requested.</p>
+ */
+public final class ContractDiagnostic {
+
+  private final Diagnostic.Kind kind;
+  private final int startOffset;
+  private final int endOffset;
+  private final String format;
+  private final Object[] args;
+  private volatile String message;
+
+  ContractDiagnostic(final Diagnostic.Kind kind, final int startOffset, final int endOffset, final String format, final Object[] args) {
+    this.kind = kind;
+    this.startOffset = startOffset;
+    this.endOffset = endOffset;
+    this.format = format;
+    this.args = args;
+  }
+
+  /**
+   * Get the severity of this diagnostic.
+   *
+   * @return the kind, either {@link Diagnostic.Kind#ERROR} or {@link Diagnostic.Kind#WARNING}
+   */
+  public Diagnostic.Kind kind() {
+    return this.kind;
+  }
+
+  /**
+   * Get the offset of the first character this diagnostic is about.
+   *
+   * @return the start offset, or {@code -1} if unknown
+   */
+  public int startOffset() {
+    return this.startOffset;
+  }
+
+  /**
+   * Get the offset after the last character this diagnostic is about.
+   *
+   * <p>This is equal to the start offset for a problem at a single point, such as unexpected end of input.</p>
+   *
+   * @return the end offset, or {@code -1} if unknown
+   */
+  public int endOffset() {
+    return this.endOffset;
+  }
+
+  String format() {
+    return this.format;
+  }
+
+  Object[] args() {
+    return this.args;
+  }
+
+  /**
+   * Get the human-readable description of this diagnostic.
+   *
+   * @return the message
+   */
+  public String message() {
+    String message = this.message;
+    if (message == null) {
+      this.message = message = String.format(this.format, this.args);
+    }
+    return message;
+  }
+
+  @Override
+  public String toString() {
+    return this.kind + " [" + this.startOffset + ", " + this.endOffset + "): " + this.message();
+  }
+
+}
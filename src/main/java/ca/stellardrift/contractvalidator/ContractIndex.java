@@ -0,0 +1,512 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.processing.Filer;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * A compact binary index of the contracts declared within one top-level type, published alongside its class files.
+ *
+ * <p>Later compilations can look up the contracts of methods on their classpath without reading annotations from
+ * those classes or parsing their contracts again. Each top-level type gets its own resource beside its class file, so
+ * the index holding any method can be found directly through the compiler's file manager, which only looks for
+ * resources in jars within package directories. This also keeps the processor isolating for Gradle, since every index
+ * has exactly one originating type.</p>
+ *
+ * <p>An index is a header, an open-addressed hash table of entry offsets keyed by owner, method name and descriptor,
+ * and then the entries. A lookup hashes the key, probes the table and decodes only the entry it finds. Contracts are
+ * stored in a normalized form: keywords by kind, and parameters by index however they were written.</p>
+ */
+final class ContractIndex {
+
+  /**
+   * The extension of index resources, which are named after their type.
+   */
+  static final String EXTENSION = ".contracts";
+
+  static final int MAGIC = 0x43494458; // CIDX
+  static final int VERSION = 1;
+  private static final int HEADER_SIZE = 16; // magic, version, entry count, table size
+  private static final int SLOT_SIZE = 8; // key hash, entry offset
+  private static final int NO_ARGS = 0xFF;
+  private static final int MAX_PARAM_INDEX = 0xFFFF;
+  private static final ContractTerm.Kind[] KINDS = ContractTerm.Kind.values();
+
+  private final ByteBuffer buffer;
+  private final int count;
+  private final int tableSize;
+
+  private ContractIndex(final ByteBuffer buffer, final int count, final int tableSize) {
+    this.buffer = buffer;
+    this.count = count;
+    this.tableSize = tableSize;
+  }
+
+  /**
+   * Get the package an index resource is in.
+   *
+   * @param topLevelBinaryName the binary name of the top-level type
+   * @return the package name, empty for the unnamed package
+   */
+  static String packageName(final String topLevelBinaryName) {
+    final int split = topLevelBinaryName.lastIndexOf('.');
+    return split == -1 ? "" : topLevelBinaryName.substring(0, split);
+  }
+
+  /**
+   * Get the name of an index resource within its package.
+   *
+   * @param topLevelBinaryName the binary name of the top-level type
+   * @return the resource name
+   */
+  static String relativeName(final String topLevelBinaryName) {
+    return topLevelBinaryName.substring(topLevelBinaryName.lastIndexOf('.') + 1) + EXTENSION;
+  }
+
+  /**
+   * Find the published index for a top-level type on the compile classpath.
+   *
+   * @param filer the filer to find the resource through
+   * @param topLevelBinaryName the binary name of the top-level type
+   * @return the index, or {@code null} if the type has none
+   * @throws IOException if an index exists but could not be read
+   */
+  static ContractIndex find(final Filer filer, final String topLevelBinaryName) throws IOException {
+    final FileObject file;
+    try {
+      file = filer.getResource(StandardLocation.CLASS_PATH, packageName(topLevelBinaryName), relativeName(topLevelBinaryName));
+    } catch (final FileNotFoundException | IllegalArgumentException ex) {
+      return null;
+    }
+    return load(file);
+  }
+
+  /**
+   * Load an index, mapping it into memory when it is a plain file.
+   *
+   * @param file the index resource
+   * @return the index
+   * @throws IOException if the file could not be read or is not a valid index
+   */
+  static ContractIndex load(final FileObject file) throws IOException {
+    final URI uri = file.toUri();
+    if ("file".equals(uri.getScheme())) {
+      try (final FileChannel channel = FileChannel.open(Paths.get(uri), StandardOpenOption.READ)) {
+        return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+      }
+    }
+
+    // jar entries are usually compressed, so they have to be read
+    try (final InputStream in = file.openInputStream()) {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      final byte[] chunk = new byte[8192];
+      for (int read = in.read(chunk); read != -1; read = in.read(chunk)) {
+        bytes.write(chunk, 0, read);
+      }
+      return read(ByteBuffer.wrap(bytes.toByteArray()));
+    }
+  }
+
+  /**
+   * Read an index from a buffer, checking its header and table bounds.
+   *
+   * @param buffer the index contents, which are not copied
+   * @return the index
+   * @throws IOException if the buffer does not hold a valid index
+   */
+  static ContractIndex read(final ByteBuffer buffer) throws IOException {
+    if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+      throw new IOException("Not a contract index");
+    }
+    if (buffer.getInt(4) != VERSION) {
+      throw new IOException("Unsupported contract index version " + buffer.getInt(4));
+    }
+    final int count = buffer.getInt(8);
+    final int tableSize = buffer.getInt(12);
+    if (count < 0 || tableSize <= count || Integer.bitCount(tableSize) != 1
+      || (long) HEADER_SIZE + (long) tableSize * SLOT_SIZE > buffer.limit()) {
+      throw new IOException("Corrupt contract index header");
+    }
+    return new ContractIndex(buffer, count, tableSize);
+  }
+
+  /**
+   * Get the number of methods in this index.
+   *
+   * @return the entry count
+   */
+  int size() {
+    return this.count;
+  }
+
+  /**
+   * Look up the contract of a method.
+   *
+   * @param owner the binary name of the type declaring the method
+   * @param name the method name, {@code <init>} for constructors
+   * @param descriptor the method descriptor
+   * @return the method's contract, or {@code null} if it is not in this index
+   * @throws IllegalStateException if the entry found is corrupt
+   */
+  Entry lookup(final String owner, final String name, final String descriptor) {
+    final byte[] key = key(owner, name, descriptor);
+    final int hash = hash(key);
+    final int mask = this.tableSize - 1;
+    for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+      final int position = HEADER_SIZE + slot * SLOT_SIZE;
+      final int offset = this.buffer.getInt(position + 4);
+      if (offset == 0) {
+        return null;
+      }
+      if (this.buffer.getInt(position) == hash && this.keyMatches(offset, key)) {
+        try {
+          return this.decode(offset + 2 + key.length);
+        } catch (final IndexOutOfBoundsException | IllegalArgumentException ex) {
+          throw new IllegalStateException("Corrupt contract index entry for " + owner + '#' + name + descriptor, ex);
+        }
+      }
+    }
+  }
+
+  private boolean keyMatches(final int offset, final byte[] key) {
+    if (offset + 2 + key.length > this.buffer.limit() || (this.buffer.getShort(offset) & 0xFFFF) != key.length) {
+      return false;
+    }
+    for (int i = 0; i < key.length; i++) {
+      if (this.buffer.get(offset + 2 + i) != key[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private Entry decode(final int offset) {
+    final ByteBuffer in = this.buffer.duplicate();
+    in.position(offset);
+    ParsedContract value = null;
+    if (in.get() != 0) {
+      final int clauseCount = in.getShort() & 0xFFFF;
+      final List<ContractClause> clauses = new ArrayList<>(clauseCount);
+      for (int i = 0; i < clauseCount; i++) {
+        final int argCount = in.get() & 0xFF;
+        ContractTerm[] args = null;
+        if (argCount != NO_ARGS) {
+          args = new ContractTerm[argCount];
+          for (int arg = 0; arg < argCount; arg++) {
+            args[arg] = readTerm(in);
+          }
+        }
+        final ContractTerm effect = readTerm(in);
+        final int[] positions = new int[2 * (args == null ? 0 : args.length) + 2];
+        Arrays.fill(positions, -1);
+        clauses.add(new ContractClause(args, effect, -1, -1, positions));
+      }
+      value = new ParsedContract(ParsedContract.Strategy.INDEX, Collections.emptyList(), clauses, Collections.emptyList(), new int[0]);
+    }
+
+    ParsedContract mutates = null;
+    if (in.get() != 0) {
+      final int termCount = in.getShort() & 0xFFFF;
+      final List<ContractTerm> terms = new ArrayList<>(termCount);
+      for (int i = 0; i < termCount; i++) {
+        terms.add(readTerm(in));
+      }
+      final int[] positions = new int[2 * termCount];
+      Arrays.fill(positions, -1);
+      mutates = new ParsedContract(ParsedContract.Strategy.INDEX, Collections.emptyList(), Collections.emptyList(), terms, positions);
+    }
+    return new Entry(value, mutates);
+  }
+
+  private static ContractTerm readTerm(final ByteBuffer in) {
+    final int kind = in.get() & 0xFF;
+    if (kind >= KINDS.length) {
+      throw new IllegalArgumentException("Unknown term kind " + kind);
+    }
+    if (KINDS[kind] == ContractTerm.Kind.PARAM) {
+      return ContractTerm.param(Integer.toString(in.getShort() & 0xFFFF));
+    }
+    return ContractTerm.of(KINDS[kind]);
+  }
+
+  /**
+   * Compute the descriptor of a method as it will appear in its class file.
+   *
+   * @param types the type utilities
+   * @param elements the element utilities
+   * @param method the method
+   * @return the descriptor, or {@code null} if part of the signature could not be resolved
+   */
+  static String descriptor(final Types types, final Elements elements, final ExecutableElement method) {
+    final StringBuilder builder = new StringBuilder().append('(');
+    for (final VariableElement param : method.getParameters()) {
+      if (!appendDescriptor(builder, types, elements, param.asType())) {
+        return null;
+      }
+    }
+    builder.append(')');
+    return appendDescriptor(builder, types, elements, method.getReturnType()) ? builder.toString() : null;
+  }
+
+  private static boolean appendDescriptor(final StringBuilder builder, final Types types, final Elements elements, final TypeMirror type) {
+    final TypeMirror erased = types.erasure(type);
+    switch (erased.getKind()) {
+      case ARRAY:
+        builder.append('[');
+        return appendDescriptor(builder, types, elements, ((ArrayType) erased).getComponentType());
+      case DECLARED:
+        final TypeElement element = (TypeElement) ((DeclaredType) erased).asElement();
+        builder.append('L').append(elements.getBinaryName(element).toString().replace('.', '/')).append(';');
+        return true;
+      default:
+        final char primitive = primitiveDescriptor(erased.getKind());
+        if (primitive == 0) {
+          return false; // unresolved
+        }
+        builder.append(primitive);
+        return true;
+    }
+  }
+
+  private static char primitiveDescriptor(final TypeKind kind) {
+    switch (kind) {
+      case BOOLEAN:
+        return 'Z';
+      case BYTE:
+        return 'B';
+      case CHAR:
+        return 'C';
+      case SHORT:
+        return 'S';
+      case INT:
+        return 'I';
+      case LONG:
+        return 'J';
+      case FLOAT:
+        return 'F';
+      case DOUBLE:
+        return 'D';
+      case VOID:
+        return 'V';
+      default:
+        return 0;
+    }
+  }
+
+  private static byte[] key(final String owner, final String name, final String descriptor) {
+    return (owner + '#' + name + descriptor).getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static int hash(final byte[] key) {
+    // FNV-1a, stable between JVMs
+    int hash = 0x811c9dc5;
+    for (final byte b : key) {
+      hash = (hash ^ (b & 0xFF)) * 0x01000193;
+    }
+    return hash;
+  }
+
+  /**
+   * The contract of one method in an index.
+   */
+  static final class Entry {
+    private final ParsedContract value;
+    private final ParsedContract mutates;
+
+    Entry(final ParsedContract value, final ParsedContract mutates) {
+      this.value = value;
+      this.mutates = mutates;
+    }
+
+    /**
+     * Get the method's contract value.
+     *
+     * @return the clauses, or {@code null} if the method declared no {@code value}
+     */
+    ParsedContract value() {
+      return this.value;
+    }
+
+    /**
+     * Get what the method declares it mutates.
+     *
+     * @return the mutated terms, or {@code null} if the method declared no {@code mutates}
+     */
+    ParsedContract mutates() {
+      return this.mutates;
+    }
+  }
+
+  /**
+   * Collects the contracts of one top-level type to publish as an index.
+   */
+  static final class Builder {
+    private final List<byte[]> keys = new ArrayList<>();
+    private final List<byte[]> bodies = new ArrayList<>();
+
+    /**
+     * Add a method's contract.
+     *
+     * <p>Contracts with syntax errors, or parameter numbers too large to be meaningful, are left out.</p>
+     *
+     * @param owner the binary name of the type declaring the method
+     * @param name the method name
+     * @param descriptor the method descriptor
+     * @param value the parsed contract value, or {@code null} if none was declared
+     * @param mutates the parsed {@code mutates} field, or {@code null} if none was declared
+     * @return whether the method was added
+     */
+    boolean add(final String owner, final String name, final String descriptor, final ParsedContract value, final ParsedContract mutates) {
+      final byte[] key = key(owner, name, descriptor);
+      if (key.length > 0xFFFF || !indexable(value) || !indexable(mutates)) {
+        return false;
+      }
+
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      final DataOutputStream out = new DataOutputStream(bytes);
+      try {
+        out.writeBoolean(value != null);
+        if (value != null) {
+          out.writeShort(value.clauses().size());
+          for (final ContractClause clause : value.clauses()) {
+            out.writeByte(clause.hasArgs() ? clause.argCount() : NO_ARGS);
+            for (int i = 0; i < clause.argCount(); i++) {
+              writeTerm(out, clause.arg(i));
+            }
+            writeTerm(out, clause.effect());
+          }
+        }
+        out.writeBoolean(mutates != null);
+        if (mutates != null) {
+          out.writeShort(mutates.mutated().size());
+          for (final ContractTerm term : mutates.mutated()) {
+            writeTerm(out, term);
+          }
+        }
+      } catch (final IOException ex) {
+        throw new UncheckedIOException(ex); // in memory
+      }
+      this.keys.add(key);
+      this.bodies.add(bytes.toByteArray());
+      return true;
+    }
+
+    private static boolean indexable(final ParsedContract contract) {
+      if (contract == null) {
+        return true;
+      }
+      if (contract.hasSyntaxErrors() || contract.clauses().size() > 0xFFFF || contract.mutated().size() > 0xFFFF) {
+        return false;
+      }
+      for (final ContractClause clause : contract.clauses()) {
+        if (clause.argCount() >= NO_ARGS || !indexable(clause.effect())) {
+          return false;
+        }
+        for (int i = 0; i < clause.argCount(); i++) {
+          if (!indexable(clause.arg(i))) {
+            return false;
+          }
+        }
+      }
+      for (final ContractTerm term : contract.mutated()) {
+        if (!indexable(term)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private static boolean indexable(final ContractTerm term) {
+      return term != null
+        && (term.kind() != ContractTerm.Kind.PARAM || (term.index() >= 0 && term.index() <= MAX_PARAM_INDEX));
+    }
+
+    private static void writeTerm(final DataOutputStream out, final ContractTerm term) throws IOException {
+      out.writeByte(term.kind().ordinal());
+      if (term.kind() == ContractTerm.Kind.PARAM) {
+        out.writeShort(term.index());
+      }
+    }
+
+    boolean isEmpty() {
+      return this.keys.isEmpty();
+    }
+
+    /**
+     * Lay out the index.
+     *
+     * @return the index contents
+     */
+    byte[] build() {
+      final int count = this.keys.size();
+      int tableSize = 2;
+      while (tableSize < count * 2) {
+        tableSize <<= 1; // at most half full, so probes stay short and always reach an empty slot
+      }
+      int size = HEADER_SIZE + tableSize * SLOT_SIZE;
+      for (int i = 0; i < count; i++) {
+        size += 2 + this.keys.get(i).length + this.bodies.get(i).length;
+      }
+
+      final ByteBuffer out = ByteBuffer.allocate(size);
+      out.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(tableSize);
+      out.position(HEADER_SIZE + tableSize * SLOT_SIZE);
+      final int mask = tableSize - 1;
+      for (int i = 0; i < count; i++) {
+        final byte[] key = this.keys.get(i);
+        final int hash = hash(key);
+        int slot = hash & mask;
+        while (out.getInt(HEADER_SIZE + slot * SLOT_SIZE + 4) != 0) {
+          slot = (slot + 1) & mask;
+        }
+        out.putInt(HEADER_SIZE + slot * SLOT_SIZE, hash);
+        out.putInt(HEADER_SIZE + slot * SLOT_SIZE + 4, out.position());
+        out.putShort((short) key.length).put(key).put(this.bodies.get(i));
+      }
+      return out.array();
+    }
+  }
+
+}
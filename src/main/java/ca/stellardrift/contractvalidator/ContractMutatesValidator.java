@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.util.List;
+import javax.tools.Diagnostic;
+
+/**
+ * Validate the {@code mutates} field of Contract annotations.
+ *
+ * <p>rules:</p>
+ * <ul>
+ * <li>error: `this` can only be used on non-static methods</li>
+ * <li>error: `param&lt;n&gt;` can only be used for 1-(number of parameters)</li>
+ * <li>warn: param used multiple times</li>
+ * </ul>
+ *
+ * <p>Specifiers are told apart by the parameter they refer to, tracked in a bit set, so nothing is allocated to
+ * validate a contract that needs no diagnostics.</p>
+ */
+final class ContractMutatesValidator {
+
+  /**
+   * The most parameters a method can have.
+   *
+   * <p>Repeats of larger parameter numbers are not looked for, since they are already errors.</p>
+   */
+  static final int MAX_PARAMETERS = 255;
+
+  private ContractMutatesValidator() {
+  }
+
+  /**
+   * Validate a parsed {@code mutates} field against a method.
+   *
+   * @param target the method the contract is declared on
+   * @param messager the consumer for any problems
+   * @param contract the parsed contract
+   */
+  static void validate(final MethodShape target, final ErrorConsumer messager, final ParsedContract contract) {
+    boolean seenThis = false;
+    long seen = 0; // one bit for each parameter number from 0 to 63, so the invalid parameter 0 is told apart too
+    long[] seenBeyond = null; // the remaining parameters, only allocated if a contract refers to them
+    final List<ContractTerm> mutated = contract.mutated();
+    for (int i = 0; i < mutated.size(); i++) {
+      final ContractTerm element = mutated.get(i);
+      final int start = contract.mutatedStart(i);
+      final int end = contract.mutatedEnd(i);
+
+      // param is shorthand for param1, and the same specifier however it is written
+      final int bit = element.index();
+      if (element.kind() == ContractTerm.Kind.THIS || bit >= 0 && bit <= MAX_PARAMETERS) {
+        final boolean repeated;
+        if (element.kind() == ContractTerm.Kind.THIS) {
+          repeated = seenThis;
+          seenThis = true;
+        } else if (bit < Long.SIZE) {
+          repeated = (seen & 1L << bit) != 0;
+          seen |= 1L << bit;
+        } else {
+          if (seenBeyond == null) {
+            seenBeyond = new long[MAX_PARAMETERS / Long.SIZE];
+          }
+          final int word = bit / Long.SIZE - 1;
+          repeated = (seenBeyond[word] & 1L << bit) != 0; // shifts only use the low six bits
+          seenBeyond[word] |= 1L << bit;
+        }
+        if (repeated) {
+          messager.print(Diagnostic.Kind.WARNING, start, end, "Invalid mutates clause: specifier '%s' seen multiple times", element);
+        }
+      }
+
+      if (element.kind() == ContractTerm.Kind.THIS) {
+        validateMutatesThis(target, messager, start, end);
+      } else {
+        validateMutatesParam(target, messager, element, start, end);
+      }
+    }
+  }
+
+  private static void validateMutatesParam(
+    final MethodShape target,
+    final ErrorConsumer messager,
+    final ContractTerm param,
+    final int start,
+    final int end
+  ) {
+    if (param.number() == null) {
+      // the no-number equivalent can only be used when there is exactly one parameter
+      if (target.paramCount() != 1) {
+        messager.print(Diagnostic.Kind.ERROR, start, end, "An unqualified 'param' was used when there was not exactly one parameter.");
+      }
+    } else {
+      final int paramNum = param.index();
+      if (paramNum == ContractTerm.INVALID_INDEX) {
+        messager.print(
+          Diagnostic.Kind.ERROR,
+          start,
+          end,
+          "Number '%s' was not a valid integer",
+          ParsedContract.abbreviate(param.number())
+        );
+        return;
+      }
+
+      final int possibleParameters = target.paramCount();
+      if (paramNum > possibleParameters) {
+        messager.print(
+          Diagnostic.Kind.ERROR,
+          start,
+          end,
+          "Method '%s' was declared to mutate parameter %d, but only %d parameters exist",
+          target.name(),
+          paramNum,
+          possibleParameters
+        );
+      } else if (paramNum < 1) {
+        messager.print(Diagnostic.Kind.ERROR, start, end, "Mutates clause referenced parameter 0, but parameter numbers start from 1");
+      }
+    }
+  }
+
+  private static void validateMutatesThis(final MethodShape target, final ErrorConsumer messager, final int start, final int end) {
+    if (target.isStatic()) {
+      messager.print(Diagnostic.Kind.ERROR, start, end, "Invalid contract: 'this' cannot be mutated from a static context");
+    }
+  }
+
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A single-pass recognizer for well-formed contract strings.
+ *
+ * <p>This accepts exactly the language of {@code JbContract.g4}, reading directly from the input string
+ * rather than producing tokens or a parse tree. It does no error reporting or recovery: any malformed input is
+ * rejected, so that the ANTLR parser can produce its usual messages.</p>
+ */
+final class ContractScanner {
+
+  // Token types. Keywords use the ordinal of their ContractTerm.Kind.
+  private static final int EOF = -1;
+  private static final int ERROR = -2;
+  private static final int COMMA = -3;
+  private static final int SEMICOLON = -4;
+  private static final int ARROW = -5;
+  private static final int NUMBER = -6;
+
+  private static final ContractTerm.Kind[] KINDS = ContractTerm.Kind.values();
+
+  private final String input;
+  private int pos;
+  private int token;
+  private int tokenStart;
+  private int lastEnd;
+
+  private ContractScanner(final String input) {
+    this.input = input;
+    this.next();
+  }
+
+  /**
+   * Scan the {@code value} field of a contract.
+   *
+   * @param input the contract text
+   * @return the parsed contract, or {@code null} if the input is not well-formed
+   */
+  static ParsedContract scanValue(final String input) {
+    final ContractScanner scanner = new ContractScanner(input);
+    final List<ContractClause> clauses = new ArrayList<>();
+    do {
+      final ContractClause clause = scanner.clause();
+      if (clause == null) {
+        return null;
+      }
+      clauses.add(clause);
+    } while (scanner.accept(SEMICOLON));
+
+    if (scanner.token != EOF) {
+      return null;
+    }
+    return new ParsedContract(
+      ParsedContract.Strategy.SCANNER,
+      Collections.emptyList(),
+      Collections.unmodifiableList(clauses),
+      Collections.emptyList(),
+      new int[0]
+    );
+  }
+
+  /**
+   * Scan the {@code mutates} field of a contract.
+   *
+   * @param input the mutates text
+   * @return the parsed contract, or {@code null} if the input is not well-formed
+   */
+  static ParsedContract scanMutates(final String input) {
+    final ContractScanner scanner = new ContractScanner(input);
+    final List<ContractTerm> mutated = new ArrayList<>();
+    int[] positions = new int[8];
+    do {
+      final int start = scanner.tokenStart;
+      final ContractTerm element;
+      if (scanner.accept(ContractTerm.Kind.THIS.ordinal())) {
+        element = ContractTerm.of(ContractTerm.Kind.THIS);
+      } else if (scanner.accept(ContractTerm.Kind.PARAM.ordinal())) {
+        element = scanner.token == NUMBER ? scanner.numberedParam() : ContractTerm.param(null);
+      } else {
+        return null;
+      }
+      positions = ParsedContract.addPosition(positions, mutated.size(), start, scanner.lastEnd);
+      mutated.add(element);
+    } while (scanner.accept(COMMA));
+
+    if (scanner.token != EOF) {
+      return null;
+    }
+    return new ParsedContract(
+      ParsedContract.Strategy.SCANNER,
+      Collections.emptyList(),
+      Collections.emptyList(),
+      Collections.unmodifiableList(mutated),
+      Arrays.copyOf(positions, 2 * mutated.size())
+    );
+  }
+
+  // clause: args? '->' effect;
+  private ContractClause clause() {
+    final int start = this.tokenStart;
+    ContractTerm[] args = null;
+    int[] positions = new int[4];
+    if (this.token != ARROW) {
+      final List<ContractTerm> constraints = new ArrayList<>();
+      do {
+        final int argStart = this.tokenStart;
+        final ContractTerm constraint = this.constraint();
+        if (constraint == null) {
+          return null;
+        }
+        positions = ParsedContract.addPosition(positions, constraints.size(), argStart, this.lastEnd);
+        constraints.add(constraint);
+      } while (this.accept(COMMA));
+      args = constraints.toArray(new ContractTerm[0]);
+    }
+
+    if (!this.accept(ARROW)) {
+      return null;
+    }
+
+    final int effectStart = this.tokenStart;
+    final ContractTerm effect = this.effect();
+    if (effect == null) {
+      return null;
+    }
+    final int argCount = args == null ? 0 : args.length;
+    positions = ParsedContract.addPosition(positions, argCount, effectStart, this.lastEnd);
+    return new ContractClause(args, effect, start, this.lastEnd, Arrays.copyOf(positions, 2 * argCount + 2));
+  }
+
+  // constraint: '_' | 'null' | '!null' | 'false' | 'true';
+  private ContractTerm constraint() {
+    if (this.token < 0) {
+      return null;
+    }
+
+    final ContractTerm.Kind kind = KINDS[this.token];
+    switch (kind) {
+      case ANY:
+      case NULL:
+      case NOT_NULL:
+      case FALSE:
+      case TRUE:
+        this.next();
+        return ContractTerm.of(kind);
+      default:
+        return null;
+    }
+  }
+
+  // effect: constraint | 'param' NUMBER | 'fail' | 'this' | 'new';
+  private ContractTerm effect() {
+    if (this.token < 0) {
+      return null;
+    }
+
+    final ContractTerm.Kind kind = KINDS[this.token];
+    switch (kind) {
+      case PARAM:
+        this.next();
+        return this.token == NUMBER ? this.numberedParam() : null;
+      case FAIL:
+      case THIS:
+      case NEW:
+        this.next();
+        return ContractTerm.of(kind);
+      default:
+        return this.constraint();
+    }
+  }
+
+  /**
+   * Consume the current number token as the number of a parameter.
+   *
+   * @return the parameter term
+   */
+  private ContractTerm numberedParam() {
+    final ContractTerm param = ContractTerm.param(this.input, this.tokenStart, this.pos);
+    this.next();
+    return param;
+  }
+
+  private boolean accept(final int type) {
+    if (this.token == type) {
+      this.next();
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Advance to the next token, skipping whitespace.
+   */
+  private void next() {
+    final String input = this.input;
+    final int length = input.length();
+    int pos = this.pos;
+    this.lastEnd = pos;
+    while (pos < length && isWhitespace(input.charAt(pos))) {
+      pos++;
+    }
+
+    this.tokenStart = pos;
+    if (pos == length) {
+      this.token = EOF;
+      this.pos = pos;
+      return;
+    }
+
+    final char c = input.charAt(pos);
+    int type = ERROR;
+    switch (c) {
+      case ',': type = COMMA; pos++; break;
+      case ';': type = SEMICOLON; pos++; break;
+      case '_': type = this.keyword(ContractTerm.Kind.ANY, pos); break;
+      case '-':
+        if (input.startsWith("->", pos)) {
+          type = ARROW;
+          pos += 2;
+        }
+        break;
+      case '!': type = this.keyword(ContractTerm.Kind.NOT_NULL, pos); break;
+      case 'n':
+        type = this.keyword(ContractTerm.Kind.NULL, pos);
+        if (type == ERROR) {
+          type = this.keyword(ContractTerm.Kind.NEW, pos);
+        }
+        break;
+      case 'f':
+        type = this.keyword(ContractTerm.Kind.FALSE, pos);
+        if (type == ERROR) {
+          type = this.keyword(ContractTerm.Kind.FAIL, pos);
+        }
+        break;
+      case 't':
+        type = this.keyword(ContractTerm.Kind.TRUE, pos);
+        if (type == ERROR) {
+          type = this.keyword(ContractTerm.Kind.THIS, pos);
+        }
+        break;
+      case 'p': type = this.keyword(ContractTerm.Kind.PARAM, pos); break;
+      default:
+        if (isDigit(c)) {
+          type = NUMBER;
+          do {
+            pos++;
+          } while (pos < length && isDigit(input.charAt(pos)));
+        }
+    }
+
+    if (type >= 0) {
+      pos += KINDS[type].keyword.length();
+    }
+    this.token = type;
+    this.pos = pos;
+  }
+
+  private int keyword(final ContractTerm.Kind kind, final int pos) {
+    return this.input.startsWith(kind.keyword, pos) ? kind.ordinal() : ERROR;
+  }
+
+  // WS: [ \r\n\t]+ -> skip;
+  private static boolean isWhitespace(final char c) {
+    return c == ' ' || c == '\r' || c == '\n' || c == '\t';
+  }
+
+  // NUMBER: [0-9]+;
+  private static boolean isDigit(final char c) {
+    return c >= '0' && c <= '9';
+  }
+
+}
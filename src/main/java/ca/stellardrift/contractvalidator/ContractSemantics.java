@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compares the clauses of a contract value with each other, finding clauses that can never apply, that contradict
+ * an earlier clause, or that a later clause makes redundant.
+ *
+ * <p>Clauses apply in order, the first whose constraints match deciding the outcome. Each clause is packed into two
+ * values: a {@code long} holding two bits per argument for the values its constraint accepts, and three bits for the
+ * outcomes its effect allows. One clause covers another when its argument bits are a superset, two clauses can both
+ * match a call when every argument's bits intersect, and two effects contradict when their outcome bits are disjoint,
+ * so every comparison is a handful of bitwise operations.</p>
+ *
+ * <p>The analysis only depends on the contract text, so its findings are kept by {@link ParsedContract} and shared
+ * between every method using that contract.</p>
+ */
+final class ContractSemantics {
+
+  /**
+   * A clause whose arguments are all covered by an earlier clause.
+   */
+  static final int UNREACHABLE = 0;
+
+  /**
+   * A clause with the same arguments as an earlier clause, but an effect that cannot hold alongside it.
+   */
+  static final int CONTRADICTION = 1;
+
+  /**
+   * A clause covered by a later clause with the same effect, with nothing between them that could change the outcome.
+   */
+  static final int REDUNDANT = 2;
+
+  /**
+   * The most arguments that can be packed into one {@code long}.
+   */
+  static final int MAX_ARGS = Long.SIZE / 2;
+
+  /**
+   * The most clauses to compare.
+   *
+   * <p>Every clause is compared with those before and after it, so this keeps the cost of analyzing a long generated
+   * contract bounded, well past anything written by hand.</p>
+   */
+  static final int MAX_CLAUSES = 128;
+
+  private static final int[] NONE = new int[0];
+
+  // Argument bits: the first for null or false, the second for non-null or true. A method's signature decides which
+  // pair an argument uses, and constraints of the wrong kind are already errors, so two bits are enough.
+  private static final long ARG_LOW = 0b01;
+  private static final long ARG_HIGH = 0b10;
+  private static final long ARG_ANY = ARG_LOW | ARG_HIGH;
+  private static final long EVERY_LOW_BIT = 0x5555_5555_5555_5555L;
+
+  // Effect bits: whether the method can fail, can return null or false, and can return non-null or true
+  private static final int EFFECT_FAIL = 0b001;
+  private static final int EFFECT_LOW = 0b010;
+  private static final int EFFECT_HIGH = 0b100;
+  private static final int EFFECT_ANY = EFFECT_FAIL | EFFECT_LOW | EFFECT_HIGH;
+
+  private ContractSemantics() {
+  }
+
+  /**
+   * Find problems between the clauses of a contract value.
+   *
+   * <p>Contracts whose clauses cannot be compared produce no findings: those with missing terms, with clauses of
+   * different lengths, with more than {@value #MAX_ARGS} arguments, or with more than {@value #MAX_CLAUSES} clauses.</p>
+   *
+   * @param clauses the clauses of the contract
+   * @return the findings, as consecutive triples of kind, clause index, and the index of the other clause involved
+   */
+  static int[] analyze(final List<ContractClause> clauses) {
+    final int count = clauses.size();
+    if (count < 2 || count > MAX_CLAUSES) {
+      return NONE;
+    }
+
+    final int arity = arity(clauses);
+    if (arity < 0) {
+      return NONE;
+    }
+    final long full = arity == MAX_ARGS ? -1L : (1L << 2 * arity) - 1;
+    final long lowBits = EVERY_LOW_BIT & full;
+
+    final long[] args = new long[count];
+    final int[] effects = new int[count];
+    for (int i = 0; i < count; i++) {
+      final ContractClause clause = clauses.get(i);
+      long packed = full;
+      if (clause.hasArgs()) {
+        packed = 0;
+        for (int arg = 0; arg < arity; arg++) {
+          packed |= constraint(clause.arg(arg)) << 2 * arg;
+        }
+      }
+      args[i] = packed;
+      effects[i] = effect(clause.effect(), packed, arity);
+    }
+
+    int[] findings = NONE;
+    int found = 0;
+    final boolean[] reported = new boolean[count];
+    for (int later = 1; later < count; later++) {
+      for (int earlier = 0; earlier < later; earlier++) {
+        if ((args[later] & ~args[earlier]) == 0) {
+          final int kind = args[later] == args[earlier] && (effects[later] & effects[earlier]) == 0 ? CONTRADICTION : UNREACHABLE;
+          findings = add(findings, found++, kind, later, earlier);
+          reported[later] = true;
+          break;
+        }
+      }
+    }
+
+    for (int earlier = 0; earlier < count - 1; earlier++) {
+      if (reported[earlier]) {
+        continue;
+      }
+      final ContractTerm effect = clauses.get(earlier).effect();
+      for (int later = earlier + 1; later < count; later++) {
+        if ((args[earlier] & ~args[later]) == 0 && !reported[later] && effect.sameAs(clauses.get(later).effect())
+          && !decidedBetween(args, clauses, earlier, later, lowBits)) {
+          findings = add(findings, found++, REDUNDANT, earlier, later);
+          break;
+        }
+      }
+    }
+    return found == 0 ? NONE : Arrays.copyOf(findings, 3 * found);
+  }
+
+  /**
+   * Get the number of arguments shared by every clause with an argument list.
+   *
+   * @param clauses the clauses
+   * @return the number of arguments, or {@code -1} if the clauses cannot be compared
+   */
+  private static int arity(final List<ContractClause> clauses) {
+    int arity = -1;
+    boolean anyWithoutArgs = false;
+    for (final ContractClause clause : clauses) {
+      if (clause.effect() == null) {
+        return -1;
+      }
+      if (!clause.hasArgs()) {
+        anyWithoutArgs = true;
+        continue;
+      }
+      if (arity == -1) {
+        arity = clause.argCount();
+      } else if (arity != clause.argCount()) {
+        return -1;
+      }
+      for (int i = 0; i < arity; i++) {
+        if (clause.arg(i) == null) {
+          return -1;
+        }
+      }
+    }
+    if (arity == -1) {
+      // no clause has arguments, which is only valid for a method without parameters
+      return anyWithoutArgs ? 0 : -1;
+    }
+    return arity > MAX_ARGS ? -1 : arity;
+  }
+
+  /**
+   * Get whether a clause between two others could match some of the same calls as the first, with another effect.
+   *
+   * <p>If so, the first clause decides those calls differently than the later one would, so it is not redundant.</p>
+   */
+  private static boolean decidedBetween(
+    final long[] args,
+    final List<ContractClause> clauses,
+    final int earlier,
+    final int later,
+    final long lowBits
+  ) {
+    final ContractTerm effect = clauses.get(earlier).effect();
+    for (int between = earlier + 1; between < later; between++) {
+      final long shared = args[earlier] & args[between];
+      if (((shared | shared >>> 1) & lowBits) == lowBits && !effect.sameAs(clauses.get(between).effect())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static long constraint(final ContractTerm term) {
+    switch (term.kind()) {
+      case NULL:
+      case FALSE:
+        return ARG_LOW;
+      case NOT_NULL:
+      case TRUE:
+        return ARG_HIGH;
+      default:
+        return ARG_ANY;
+    }
+  }
+
+  private static int effect(final ContractTerm term, final long args, final int arity) {
+    switch (term.kind()) {
+      case FAIL:
+        return EFFECT_FAIL;
+      case NULL:
+      case FALSE:
+        return EFFECT_LOW;
+      case NOT_NULL:
+      case TRUE:
+      case NEW:
+      case THIS:
+        return EFFECT_HIGH;
+      case PARAM:
+        // returning a parameter gives whatever that parameter is constrained to in this clause
+        final int index = term.index();
+        if (index >= 1 && index <= arity) {
+          return (int) (args >>> 2 * (index - 1) & ARG_ANY) << 1;
+        }
+        return EFFECT_LOW | EFFECT_HIGH;
+      default:
+        return EFFECT_ANY;
+    }
+  }
+
+  private static int[] add(int[] findings, final int count, final int kind, final int clause, final int other) {
+    if (findings.length < 3 * count + 3) {
+      findings = Arrays.copyOf(findings, Math.max(6, findings.length * 2));
+    }
+    findings[3 * count] = kind;
+    findings[3 * count + 1] = clause;
+    findings[3 * count + 2] = other;
+    return findings;
+  }
+
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+/**
+ * A single keyword or parameter reference within a contract.
+ *
+ * <p>Terms are immutable. Keyword terms are shared, so only parameter references are allocated.</p>
+ */
+final class ContractTerm {
+
+  /**
+   * The types of term that can appear in a contract.
+   */
+  enum Kind {
+    ANY("_"),
+    NULL("null"),
+    NOT_NULL("!null"),
+    FALSE("false"),
+    TRUE("true"),
+    FAIL("fail"),
+    THIS("this"),
+    NEW("new"),
+    PARAM("param");
+
+    final String keyword;
+
+    Kind(final String keyword) {
+      this.keyword = keyword;
+    }
+  }
+
+  /**
+   * The index given for a parameter number that could not be represented as an integer.
+   */
+  static final int INVALID_INDEX = -1;
+
+  private static final ContractTerm[] KEYWORDS;
+
+  static {
+    final Kind[] kinds = Kind.values();
+    KEYWORDS = new ContractTerm[kinds.length];
+    for (final Kind kind : kinds) {
+      KEYWORDS[kind.ordinal()] = new ContractTerm(kind, null, INVALID_INDEX);
+    }
+  }
+
+  private final Kind kind;
+  private final String number;
+  private final int index;
+
+  private ContractTerm(final Kind kind, final String number, final int index) {
+    this.kind = kind;
+    this.number = number;
+    this.index = index;
+  }
+
+  /**
+   * Get the term for a keyword.
+   *
+   * @param kind the keyword kind
+   * @return a shared term instance
+   */
+  static ContractTerm of(final Kind kind) {
+    return KEYWORDS[kind.ordinal()];
+  }
+
+  /**
+   * Get a term referencing a parameter.
+   *
+   * @param number the parameter number as written, or {@code null} for an unqualified {@code param}
+   * @return a parameter term
+   */
+  static ContractTerm param(final String number) {
+    if (number == null) {
+      return new ContractTerm(Kind.PARAM, null, 1); // param is shorthand for param1
+    }
+    return new ContractTerm(Kind.PARAM, number, parseIndex(number, 0, number.length()));
+  }
+
+  /**
+   * Get a term referencing a parameter, by a number within some text.
+   *
+   * @param text the text containing the number
+   * @param start the offset of the first digit
+   * @param end the offset after the last digit
+   * @return a parameter term
+   */
+  static ContractTerm param(final String text, final int start, final int end) {
+    return new ContractTerm(Kind.PARAM, text.substring(start, end), parseIndex(text, start, end));
+  }
+
+  /**
+   * Read a parameter number from a run of decimal digits.
+   *
+   * <p>Unlike {@link Integer#parseInt(String)}, a number too large to represent is not exceptional, since it is
+   * written in the contract and reported as an error.</p>
+   *
+   * @param text the text containing the number
+   * @param start the offset of the first digit
+   * @param end the offset after the last digit
+   * @return the number, or {@link #INVALID_INDEX} if the range is empty, has anything but digits, or overflows an int
+   */
+  static int parseIndex(final CharSequence text, final int start, final int end) {
+    if (start >= end) {
+      return INVALID_INDEX;
+    }
+    int index = 0;
+    for (int i = start; i < end; i++) {
+      final int digit = text.charAt(i) - '0';
+      if (digit < 0 || digit > 9 || index > (Integer.MAX_VALUE - digit) / 10) {
+        return INVALID_INDEX;
+      }
+      index = index * 10 + digit;
+    }
+    return index;
+  }
+
+  Kind kind() {
+    return this.kind;
+  }
+
+  /**
+   * Get the parameter number as written in the source contract.
+   *
+   * @return the parameter number, or {@code null} if this is not a qualified parameter reference
+   */
+  String number() {
+    return this.number;
+  }
+
+  /**
+   * Get the one-based index of the referenced parameter.
+   *
+   * @return the parameter index, or {@link #INVALID_INDEX} if the number was not a valid integer
+   */
+  int index() {
+    return this.index;
+  }
+
+  /**
+   * Get whether this term is a constraint only applicable to reference types.
+   *
+   * @return whether this is a nullity constraint
+   */
+  boolean isNonPrimitiveConstraint() {
+    return this.kind == Kind.NULL || this.kind == Kind.NOT_NULL;
+  }
+
+  /**
+   * Get whether this term is a constraint only applicable to booleans.
+   *
+   * @return whether this is a boolean constraint
+   */
+  boolean isBooleanConstraint() {
+    return this.kind == Kind.TRUE || this.kind == Kind.FALSE;
+  }
+
+  /**
+   * Get whether this term means the same as another, however each was written.
+   *
+   * @param other the other term
+   * @return whether both are the same keyword, or refer to the same parameter
+   */
+  boolean sameAs(final ContractTerm other) {
+    return this.kind == other.kind && (this.kind != Kind.PARAM || this.index == other.index);
+  }
+
+  @Override
+  public String toString() {
+    return this.number == null ? this.kind.keyword : this.kind.keyword + this.number;
+  }
+
+}
@@ -18,176 +18,921 @@
 package ca.stellardrift.contractvalidator;
 
 import com.google.auto.service.AutoService;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
-import java.util.function.BiFunction;
+import java.util.WeakHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import javax.annotation.processing.AbstractProcessor;
 import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
 import javax.annotation.processing.Processor;
 import javax.annotation.processing.RoundEnvironment;
 import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.AnnotationValue;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.util.Elements;
 import javax.tools.Diagnostic;
-import org.antlr.v4.runtime.BailErrorStrategy;
-import org.antlr.v4.runtime.CharStream;
-import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CommonTokenStream;
-import org.antlr.v4.runtime.DefaultErrorStrategy;
-import org.antlr.v4.runtime.atn.PredictionMode;
-import org.antlr.v4.runtime.misc.ParseCancellationException;
-import org.antlr.v4.runtime.tree.ParseTree;
-import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
 
 @AutoService(Processor.class)
 @SupportedAnnotationTypes(ContractValidatorProcessor.CONTRACT_ANNOTATION)
+@SupportedOptions({
+  ContractValidatorProcessor.OPTION_PARSE_CACHE_SIZE,
+  ContractValidatorProcessor.OPTION_PARSE_CACHE_STATS,
+  ContractValidatorProcessor.OPTION_VERDICT_CACHE_SIZE,
+  ContractValidatorProcessor.OPTION_VERDICT_FILE,
+  ContractValidatorProcessor.OPTION_RESULT_STORE,
+  ContractValidatorProcessor.OPTION_PARALLELISM,
+  ContractValidatorProcessor.OPTION_STREAMING,
+  ContractValidatorProcessor.OPTION_CONTRACT_INDEX,
+  ContractValidatorProcessor.OPTION_CHECK_OVERRIDES,
+  ContractValidatorProcessor.OPTION_OVERRIDE_ERRORS,
+  ContractValidatorProcessor.OPTION_MAX_CONTRACT_LENGTH,
+  ContractValidatorProcessor.OPTION_STATS,
+  ContractValidatorProcessor.OPTION_STATS_FILE,
+  ContractValidatorProcessor.OPTION_MAX_DIAGNOSTICS_PER_CONTRACT,
+  ContractValidatorProcessor.OPTION_MAX_DIAGNOSTICS_PER_ROUND
+})
 public class ContractValidatorProcessor extends AbstractProcessor {
 
   public static final String CONTRACT_ANNOTATION = "org.jetbrains.annotations.Contract";
 
+  /**
+   * The maximum number of distinct contract strings to keep parsed, per annotation field.
+   *
+   * <p>Set to {@code 0} to parse every annotation individually.</p>
+   */
+  public static final String OPTION_PARSE_CACHE_SIZE = "contractvalidator.parseCacheSize";
+
+  /**
+   * Whether to print a note with parse and verdict cache hit and miss counts at the end of processing.
+   */
+  public static final String OPTION_PARSE_CACHE_STATS = "contractvalidator.parseCacheStats";
+
+  /**
+   * The maximum number of validation results to keep, per annotation field.
+   *
+   * <p>Results are shared between methods with the same contract text whose signatures only differ in ways
+   * validation ignores, skipping both parsing and validation. Set to {@code 0} to validate every annotation
+   * individually.</p>
+   */
+  public static final String OPTION_VERDICT_CACHE_SIZE = "contractvalidator.verdictCacheSize";
+
+  /**
+   * A file to share validation results through, between builds and between compilers running at the same time.
+   *
+   * <p>Results already in the file are used before any contract is parsed. The file is loaded once per JVM, and new
+   * results are added to it at the end of processing.</p>
+   */
+  public static final String OPTION_VERDICT_FILE = "contractvalidator.verdictFile";
+
+  /**
+   * A file to record types that validated cleanly, so unchanged types can be skipped in later compilations.
+   *
+   * <p>This is most useful for incremental builds, where types are often recompiled only because something they
+   * depend on has changed.</p>
+   */
+  public static final String OPTION_RESULT_STORE = "contractvalidator.resultStore";
+
+  /**
+   * The number of threads to validate contracts on.
+   *
+   * <p>With more than one thread, large rounds are parsed and validated in parallel. Diagnostics are still reported
+   * in the same order as when validating on the compiler's own thread.</p>
+   */
+  public static final String OPTION_PARALLELISM = "contractvalidator.parallelism";
+
+  /**
+   * Whether to find annotated elements by walking each root element of a round in turn, rather than all at once.
+   *
+   * <p>Elements are validated and reported in batches of at most a few types, so memory use no longer grows with the
+   * size of the round. Diagnostics are reported in the same order either way.</p>
+   */
+  public static final String OPTION_STREAMING = "contractvalidator.streaming";
+
+  /**
+   * Whether to publish an index of the contracts in each top-level type, for compilations depending on this one.
+   *
+   * <p>Each top-level type with any {@code @Contract} methods gets an index beside its class file, named after the
+   * type with the extension {@code .contracts}.</p>
+   */
+  public static final String OPTION_CONTRACT_INDEX = "contractvalidator.contractIndex";
+
+  /**
+   * Whether to check that contracts keep the guarantees of the contracts on the methods they override.
+   *
+   * <p>Enabled by default. Contracts of supertypes on the classpath are read from their published index when there
+   * is one, see {@link #OPTION_CONTRACT_INDEX}.</p>
+   */
+  public static final String OPTION_CHECK_OVERRIDES = "contractvalidator.checkOverrides";
+
+  /**
+   * Whether overrides that contradict an inherited clause, or mutate more than the method they override, are errors.
+   *
+   * <p>Disabled by default, so they are reported as warnings, and builds that passed before override checks existed
+   * keep passing.</p>
+   */
+  public static final String OPTION_OVERRIDE_ERRORS = "contractvalidator.overrideErrors";
+
+  /**
+   * The longest contract string to parse, or {@code 0} for no limit.
+   *
+   * <p>Longer strings are reported as errors without being parsed. Parsing takes time linear in the length of the
+   * string, so this bounds the time spent on any single contract.</p>
+   */
+  public static final String OPTION_MAX_CONTRACT_LENGTH = "contractvalidator.maxContractLength";
+
+  /**
+   * Whether to print a note summarizing how much work the processor did, and how long it took.
+   */
+  public static final String OPTION_STATS = "contractvalidator.stats";
+
+  /**
+   * A path relative to the class output directory to write processing statistics to, as JSON.
+   */
+  public static final String OPTION_STATS_FILE = "contractvalidator.statsFile";
+
+  /**
+   * The most diagnostics to print for a single contract string on one element, or {@code 0} for no limit.
+   */
+  public static final String OPTION_MAX_DIAGNOSTICS_PER_CONTRACT = "contractvalidator.maxDiagnosticsPerContract";
+
+  /**
+   * The most diagnostics to print in a single round, or {@code 0} for no limit.
+   *
+   * <p>The first error is always printed.</p>
+   */
+  public static final String OPTION_MAX_DIAGNOSTICS_PER_ROUND = "contractvalidator.maxDiagnosticsPerRound";
+
+  static final int DEFAULT_PARSE_CACHE_SIZE = 1024;
+  static final int DEFAULT_VERDICT_CACHE_SIZE = 4096;
+  static final int DEFAULT_MAX_DIAGNOSTICS_PER_CONTRACT = 10;
+  static final int DEFAULT_MAX_DIAGNOSTICS_PER_ROUND = 100; // as with javac's -Xmaxerrs
+  static final int DEFAULT_MAX_CONTRACT_LENGTH = ParsedContract.DEFAULT_MAX_LENGTH;
+
+  /**
+   * The fewest elements in a round for parallel validation to be worth handing off to other threads.
+   */
+  static final int PARALLEL_THRESHOLD = 256;
+
+  /**
+   * The number of annotated elements to gather before validating them, when streaming.
+   *
+   * <p>Batches only end between root elements, and are large enough to still be validated in parallel.</p>
+   */
+  static final int STREAMING_BATCH_SIZE = PARALLEL_THRESHOLD;
+
+  private static final Map<Elements, Boolean> PLUGIN_COMPILATIONS = Collections.synchronizedMap(new WeakHashMap<>());
+
+  private ContractCache valueCache;
+  private ContractCache mutatesCache;
+  private Function<String, ParsedContract> valueParser;
+  private Function<String, ParsedContract> mutatesParser;
+  private int maxContractLength;
+  private VerdictCache valueVerdicts;
+  private VerdictCache mutatesVerdicts;
+  private VerdictFile verdictFile;
+  private boolean reportCacheStats;
+  private ValidationResultStore resultStore;
+  private ForkJoinPool pool;
+  private boolean streaming;
+  private boolean writeContractIndex;
+  private boolean checkOverrides;
+  private Diagnostic.Kind overrideSeverity;
+  private OverrideChecks overrides; // created each round
+  private final Set<String> sourceTypes = new HashSet<>(); // binary names of the root types of every round
+  private Predicate<TypeElement> fromSource = type ->
+    this.sourceTypes.contains(this.processingEnv.getElementUtils().getBinaryName(type).toString());
+  private ContractAnnotationType contract; // resolved each round
+  private ProcessingStats stats;
+  private ProcessingEvents events = ProcessingEvents.NONE;
+  private Object roundEvent;
+  private int rounds;
+  private int roundElements;
+  private int roundDiagnostics;
+  private DiagnosticBudget budget;
+
   @Override
   public SourceVersion getSupportedSourceVersion() {
     // We only have to be compatible with the JB annotations -- it is unlikely we will have to process arbitrary source features.
     return SourceVersion.latestSupported();
   }
 
+  @Override
+  public synchronized void init(final ProcessingEnvironment processingEnv) {
+    super.init(processingEnv);
+    final int cacheSize = this.intOption(OPTION_PARSE_CACHE_SIZE, DEFAULT_PARSE_CACHE_SIZE);
+    this.valueCache = new ContractCache(cacheSize);
+    this.mutatesCache = new ContractCache(cacheSize);
+    final int maxContractLength = this.intOption(OPTION_MAX_CONTRACT_LENGTH, DEFAULT_MAX_CONTRACT_LENGTH);
+    this.maxContractLength = maxContractLength;
+    this.valueParser = text -> ParsedContract.parseValue(text, maxContractLength);
+    this.mutatesParser = text -> ParsedContract.parseMutates(text, maxContractLength);
+    final String verdictFile = processingEnv.getOptions().get(OPTION_VERDICT_FILE);
+    if (verdictFile != null) {
+      try {
+        this.verdictFile = VerdictFile.open(Paths.get(verdictFile));
+      } catch (final IOException | InvalidPathException ex) {
+        processingEnv.getMessager().printMessage(
+          Diagnostic.Kind.WARNING,
+          String.format("Unable to read validation verdicts from %s: %s", verdictFile, ex)
+        );
+      }
+    }
+    final int verdictCacheSize = this.intOption(OPTION_VERDICT_CACHE_SIZE, DEFAULT_VERDICT_CACHE_SIZE);
+    this.valueVerdicts = new VerdictCache(verdictCacheSize, this.verdictFile, "value", maxContractLength);
+    this.mutatesVerdicts = new VerdictCache(verdictCacheSize, this.verdictFile, "mutates", maxContractLength);
+    this.reportCacheStats = Boolean.parseBoolean(processingEnv.getOptions().get(OPTION_PARSE_CACHE_STATS));
+
+    if (Boolean.parseBoolean(processingEnv.getOptions().get(OPTION_STATS)) || processingEnv.getOptions().get(OPTION_STATS_FILE) != null) {
+      this.stats = new ProcessingStats();
+    }
+
+    this.events = ProcessingEvents.load();
+
+    this.budget = new DiagnosticBudget(
+      this.intOption(OPTION_MAX_DIAGNOSTICS_PER_CONTRACT, DEFAULT_MAX_DIAGNOSTICS_PER_CONTRACT),
+      this.intOption(OPTION_MAX_DIAGNOSTICS_PER_ROUND, DEFAULT_MAX_DIAGNOSTICS_PER_ROUND)
+    );
+
+    this.streaming = Boolean.parseBoolean(processingEnv.getOptions().get(OPTION_STREAMING));
+    this.writeContractIndex = Boolean.parseBoolean(processingEnv.getOptions().get(OPTION_CONTRACT_INDEX));
+    this.checkOverrides = !"false".equalsIgnoreCase(processingEnv.getOptions().get(OPTION_CHECK_OVERRIDES));
+    this.overrideSeverity = Boolean.parseBoolean(processingEnv.getOptions().get(OPTION_OVERRIDE_ERRORS))
+      ? Diagnostic.Kind.ERROR
+      : Diagnostic.Kind.WARNING;
+    final int parallelism = this.intOption(OPTION_PARALLELISM, 1);
+    if (parallelism > 1) {
+      this.pool = new ForkJoinPool(parallelism);
+    }
+
+    final String resultStore = processingEnv.getOptions().get(OPTION_RESULT_STORE);
+    if (resultStore != null) {
+      try {
+        this.resultStore = ValidationResultStore.load(Paths.get(resultStore));
+      } catch (final IOException | InvalidPathException ex) {
+        processingEnv.getMessager().printMessage(
+          Diagnostic.Kind.WARNING,
+          String.format("Unable to read validation results from %s, all types will be validated: %s", resultStore, ex)
+        );
+      }
+    }
+  }
+
+  private int intOption(final String option, final int defaultValue) {
+    final String value = this.processingEnv.getOptions().get(option);
+    if (value == null) {
+      return defaultValue;
+    }
+
+    try {
+      final int parsed = Integer.parseInt(value);
+      if (parsed >= 0) {
+        return parsed;
+      }
+    } catch (final NumberFormatException ignored) {
+      // fall through
+    }
+    this.processingEnv.getMessager().printMessage(
+      Diagnostic.Kind.WARNING,
+      String.format("Option %s must be a non-negative integer, but was '%s'. Using default value of %d", option, value, defaultValue)
+    );
+    return defaultValue;
+  }
+
   @Override
   public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
-    final TypeElement contractAnnotation = this.processingEnv.getElementUtils().getTypeElement(CONTRACT_ANNOTATION);
-    if (contractAnnotation == null) {
+    if (PLUGIN_COMPILATIONS.containsKey(this.processingEnv.getElementUtils()) || !this.beginRound()) {
+      return false;
+    }
+
+    for (final Element root : roundEnv.getRootElements()) {
+      if (root instanceof TypeElement) {
+        this.sourceTypes.add(this.processingEnv.getElementUtils().getBinaryName((TypeElement) root).toString());
+      }
+    }
+    if (this.streaming) {
+      this.validateRootElements(roundEnv.getRootElements());
+    } else {
+      this.validateAllElements(roundEnv.getElementsAnnotatedWith(this.contract.type()));
+    }
+    this.endRound(roundEnv.processingOver());
+    return false; // never claim
+  }
+
+  /**
+   * Mark a compilation as validated by the compiler plugin, so that a processor discovered in the same compilation
+   * does nothing.
+   *
+   * @param elements the compilation's element utilities, which are shared by the plugin and any processors
+   */
+  static void validatedByPlugin(final Elements elements) {
+    PLUGIN_COMPILATIONS.put(elements, Boolean.TRUE);
+  }
+
+  /**
+   * Set how to tell whether a top-level type is compiled from source, for compilations that know better than the
+   * root elements of each round.
+   *
+   * @param fromSource whether a top-level type is compiled from source, rather than read from a class file
+   */
+  void fromSource(final Predicate<TypeElement> fromSource) {
+    this.fromSource = fromSource;
+  }
+
+  /**
+   * Prepare to validate the elements of a round.
+   *
+   * @return whether the round can be validated
+   */
+  boolean beginRound() {
+    this.contract = ContractAnnotationType.resolve(this.processingEnv.getElementUtils(), this.processingEnv.getTypeUtils(), CONTRACT_ANNOTATION);
+    if (this.contract == null) {
       this.processingEnv.getMessager()
         .printMessage(Diagnostic.Kind.ERROR, "Failed to resolve the Contract annotation on the compile classpath, validation cannot occur");
       return false;
     }
+    this.roundEvent = this.events.beginRound();
+    this.rounds++;
+    this.roundElements = 0;
+    this.roundDiagnostics = 0;
 
-    this.validateAllElements(roundEnv.getElementsAnnotatedWith(contractAnnotation));
+    if (this.checkOverrides) {
+      this.overrides = new OverrideChecks(
+        this.processingEnv.getElementUtils(),
+        this.processingEnv.getTypeUtils(),
+        this.processingEnv.getFiler(),
+        this.fromSource,
+        this.contract,
+        text -> this.parseCached(this.valueCache, this.valueParser, text),
+        text -> this.parseCached(this.mutatesCache, this.mutatesParser, text),
+        this.overrideSeverity
+      );
+    }
+    return true;
+  }
 
-    return false; // never claim
+  /**
+   * Finish a round, reporting what was held back until its end.
+   *
+   * @param processingOver whether this was the last round, after which everything kept between rounds is saved
+   */
+  void endRound(final boolean processingOver) {
+    this.overrides = null;
+    final int suppressed = this.budget.endRound();
+    if (suppressed > 0) {
+      this.processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, String.format(
+        "%d more contract diagnostic(s) suppressed. The limits can be changed with the %s and %s options",
+        suppressed,
+        OPTION_MAX_DIAGNOSTICS_PER_CONTRACT,
+        OPTION_MAX_DIAGNOSTICS_PER_ROUND
+      ));
+    }
+    if (this.stats != null) {
+      this.stats.endRound();
+    }
+    if (this.roundEvent != null) {
+      this.events.endRound(this.roundEvent, this.rounds, this.roundElements, this.roundDiagnostics, suppressed);
+      this.roundEvent = null;
+    }
+
+    if (processingOver && this.pool != null) {
+      this.pool.shutdown();
+      this.pool = null;
+    }
+
+    if (processingOver && this.resultStore != null) {
+      try {
+        this.resultStore.save();
+      } catch (final IOException ex) {
+        this.processingEnv.getMessager().printMessage(
+          Diagnostic.Kind.WARNING,
+          String.format("Unable to save validation results to %s: %s", this.processingEnv.getOptions().get(OPTION_RESULT_STORE), ex)
+        );
+      }
+    }
+
+    int verdictsWritten = 0;
+    if (processingOver && this.verdictFile != null) {
+      try {
+        verdictsWritten = this.verdictFile.flush();
+      } catch (final IOException ex) {
+        this.processingEnv.getMessager().printMessage(
+          Diagnostic.Kind.WARNING,
+          String.format("Unable to save validation verdicts to %s: %s", this.processingEnv.getOptions().get(OPTION_VERDICT_FILE), ex)
+        );
+      }
+    }
+
+    if (processingOver && this.stats != null) {
+      this.reportStats();
+    }
+
+    if (processingOver && this.reportCacheStats) {
+      this.processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, String.format(
+        "Contract parse cache: %d hits, %d misses",
+        this.valueCache.hits() + this.mutatesCache.hits(),
+        this.valueCache.misses() + this.mutatesCache.misses()
+      ));
+      final long verdictHits = this.valueVerdicts.hits() + this.mutatesVerdicts.hits();
+      final long verdictLookups = verdictHits + this.valueVerdicts.misses() + this.mutatesVerdicts.misses();
+      this.processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, String.format(
+        Locale.ROOT,
+        "Contract verdict cache: %d hits, %d misses (%.1f%% hit rate)",
+        verdictHits,
+        verdictLookups - verdictHits,
+        verdictLookups == 0 ? 0d : 100d * verdictHits / verdictLookups
+      ));
+      if (this.verdictFile != null) {
+        this.processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, String.format(
+          "Contract verdict file: %d hits, %d verdict(s) written",
+          this.valueVerdicts.fileHits() + this.mutatesVerdicts.fileHits(),
+          verdictsWritten
+        ));
+      }
+    }
   }
 
-  private void validateAllElements(final Set<? extends Element> elements) {
+  private void reportStats() {
     final Messager log = this.processingEnv.getMessager();
+    if (Boolean.parseBoolean(this.processingEnv.getOptions().get(OPTION_STATS))) {
+      final StringBuilder message = new StringBuilder(this.stats.summary());
+      final List<ProcessingStats.SlowContract> slowest = this.stats.slowest();
+      if (!slowest.isEmpty()) {
+        message.append(System.lineSeparator()).append("Slowest contracts to parse:");
+        for (final ProcessingStats.SlowContract contract : slowest) {
+          message.append(System.lineSeparator())
+            .append(String.format(Locale.ROOT, "  %8.3f ms  \"%s\"", contract.nanos / 1_000_000d, contract.text));
+        }
+      }
+      log.printMessage(Diagnostic.Kind.NOTE, message);
+    }
+
+    final String statsFile = this.processingEnv.getOptions().get(OPTION_STATS_FILE);
+    if (statsFile != null) {
+      try {
+        final FileObject output = this.processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", statsFile);
+        try (final Writer writer = output.openWriter()) {
+          this.stats.writeJson(writer);
+        }
+      } catch (final IOException | IllegalArgumentException ex) {
+        log.printMessage(Diagnostic.Kind.WARNING, String.format("Unable to write processor statistics to %s: %s", statsFile, ex));
+      }
+    }
+  }
+
+  /**
+   * Validate the annotated elements within each root element, a batch at a time.
+   *
+   * <p>Nothing is kept from one batch to the next except what the caches hold, so peak memory depends on the largest
+   * type rather than the whole round.</p>
+   *
+   * @param roots the root elements of the round
+   */
+  void validateRootElements(final Collection<? extends Element> roots) {
+    final AnnotatedElements scanner = new AnnotatedElements(this.contract);
+    final List<Element> batch = new ArrayList<>();
+    for (final Element root : roots) {
+      scanner.scan(root, batch);
+      if (batch.size() >= STREAMING_BATCH_SIZE) {
+        this.validateAllElements(batch);
+        batch.clear();
+      }
+    }
+    if (!batch.isEmpty()) {
+      this.validateAllElements(batch);
+    }
+  }
+
+  private void validateAllElements(final Collection<? extends Element> elements) {
+    this.roundElements += elements.size();
+    if (this.stats != null) {
+      this.stats.elementsSeen(elements.size());
+    }
+
+    if (this.writeContractIndex) {
+      this.writeContractIndexes(elements);
+    }
+
+    if (this.resultStore == null) {
+      this.validateElements(new ArrayList<>(elements));
+      return;
+    }
+
+    // Group by originating type to consult the result store
+    final Map<TypeElement, List<Element>> byType = new LinkedHashMap<>();
     for (final Element element : elements) {
-      final ElementKind kind = element.getKind();
-      if (kind != ElementKind.METHOD && kind != ElementKind.CONSTRUCTOR) {
-        log.printMessage(
-          Diagnostic.Kind.ERROR, "A @Contract annotation was found on an element that was neither a method or a constructor.", element);
+      byType.computeIfAbsent(originatingType(element), k -> new ArrayList<>()).add(element);
+    }
+
+    final List<Element> toValidate = new ArrayList<>(elements.size());
+    final List<String> typeNames = new ArrayList<>();
+    final List<Long> fingerprints = new ArrayList<>();
+    final List<Integer> typeEnds = new ArrayList<>();
+    for (final Map.Entry<TypeElement, List<Element>> entry : byType.entrySet()) {
+      final String typeName = this.processingEnv.getElementUtils().getBinaryName(entry.getKey()).toString();
+      final ValidationResultStore.Fingerprint fingerprint = new ValidationResultStore.Fingerprint()
+        .add(this.maxContractLength); // decides which contracts are parsed at all
+      for (final Element element : entry.getValue()) {
+        this.fingerprint(fingerprint, element);
+      }
+
+      if (!this.resultStore.isValid(typeName, fingerprint.value())) {
+        toValidate.addAll(entry.getValue());
+        typeNames.add(typeName);
+        fingerprints.add(fingerprint.value());
+        typeEnds.add(toValidate.size());
+      }
+    }
+
+    final int[] reported = this.validateElements(toValidate);
+    int element = 0;
+    for (int type = 0; type < typeNames.size(); type++) {
+      int typeReported = 0;
+      for (final int end = typeEnds.get(type); element < end; element++) {
+        typeReported += reported[element];
+      }
+      this.resultStore.record(typeNames.get(type), fingerprints.get(type), typeReported == 0);
+    }
+  }
+
+  /**
+   * Publish an index of the contracts in each top-level type that elements belong to.
+   *
+   * <p>Every annotated element of a type must be passed in the same call. Types skipped by the result store are
+   * still indexed, since their index is replaced along with the rest of their output.</p>
+   *
+   * @param elements the annotated elements
+   */
+  private void writeContractIndexes(final Collection<? extends Element> elements) {
+    final Map<TypeElement, ContractIndex.Builder> byType = new LinkedHashMap<>();
+    for (final Element element : elements) {
+      if (element.getKind() != ElementKind.METHOD && element.getKind() != ElementKind.CONSTRUCTOR) {
         continue;
       }
       final ExecutableElement executable = (ExecutableElement) element;
+      final AnnotationMirror annotation = this.contract.find(executable);
+      final String descriptor = ContractIndex.descriptor(this.processingEnv.getTypeUtils(), this.processingEnv.getElementUtils(), executable);
+      if (annotation == null || descriptor == null) {
+        continue;
+      }
+      final AnnotationValue value = this.contract.value(annotation);
+      final AnnotationValue mutates = this.contract.mutates(annotation);
+      if ((value != null && !(value.getValue() instanceof String)) || (mutates != null && !(mutates.getValue() instanceof String))) {
+        continue;
+      }
+
+      byType.computeIfAbsent(originatingType(element), k -> new ContractIndex.Builder()).add(
+        this.processingEnv.getElementUtils().getBinaryName((TypeElement) element.getEnclosingElement()).toString(),
+        executable.getSimpleName().toString(),
+        descriptor,
+        value == null ? null : this.parseCached(this.valueCache, this.valueParser, (String) value.getValue()),
+        mutates == null ? null : this.parseCached(this.mutatesCache, this.mutatesParser, (String) mutates.getValue())
+      );
+    }
 
-      final AnnotationMirror contractAnnotation = getAnnotationOfType(element, CONTRACT_ANNOTATION);
-      if (contractAnnotation == null) {
-        log.printMessage(Diagnostic.Kind.ERROR, "Could not actually find annotation", element);
+    for (final Map.Entry<TypeElement, ContractIndex.Builder> entry : byType.entrySet()) {
+      if (entry.getValue().isEmpty()) {
         continue;
       }
+      final String typeName = this.processingEnv.getElementUtils().getBinaryName(entry.getKey()).toString();
+      try {
+        final FileObject index = this.processingEnv.getFiler()
+          .createResource(StandardLocation.CLASS_OUTPUT, ContractIndex.packageName(typeName), ContractIndex.relativeName(typeName), entry.getKey());
+        try (final OutputStream out = index.openOutputStream()) {
+          out.write(entry.getValue().build());
+        }
+      } catch (final IOException | IllegalArgumentException ex) {
+        this.processingEnv.getMessager().printMessage(
+          Diagnostic.Kind.WARNING,
+          String.format("Unable to write contract index for %s: %s", typeName, ex)
+        );
+      }
+    }
+  }
+
+  /**
+   * Validate elements and report diagnostics for each in order.
+   *
+   * @param elements the annotated elements
+   * @return the number of diagnostics reported for each element
+   */
+  private int[] validateElements(final List<Element> elements) {
+    final Messager log = this.processingEnv.getMessager();
+    final int[] reported = new int[elements.size()];
+    if (this.pool == null || elements.size() < PARALLEL_THRESHOLD) {
+      for (int i = 0; i < reported.length; i++) {
+        final ElementCheck check = this.prepare(elements.get(i), null);
+        this.validate(check);
+        reported[i] = this.report(check, log);
+      }
+      return reported;
+    }
+
+    // Snapshot everything validation needs on this thread, gathering the distinct texts that need parsing
+    final Map<ContractCache, Map<String, List<ElementCheck.Field>>> unparsed = new IdentityHashMap<>();
+    final List<ElementCheck> checks = new ArrayList<>(elements.size());
+    for (final Element element : elements) {
+      checks.add(this.prepare(element, unparsed));
+    }
+
+    final List<List<ElementCheck.Field>> toParse = new ArrayList<>();
+    for (final Map<String, List<ElementCheck.Field>> pending : unparsed.values()) {
+      toParse.addAll(pending.values());
+    }
+    this.forEachInParallel(toParse, fields -> {
+      final ElementCheck.Field first = fields.get(0);
+      final ParsedContract parsed = this.parse(first.name, first.parser, first.text);
+      for (final ElementCheck.Field field : fields) {
+        field.parsed = parsed;
+      }
+    });
+    for (final Map.Entry<ContractCache, Map<String, List<ElementCheck.Field>>> entry : unparsed.entrySet()) {
+      for (final List<ElementCheck.Field> fields : entry.getValue().values()) {
+        entry.getKey().put(fields.get(0).text, fields.get(0).parsed);
+      }
+    }
+
+    this.forEachInParallel(checks, this::validate);
 
-      validateContractValue(executable, contractAnnotation);
-      validateContractMutates(executable, contractAnnotation);
+    // Report back on this thread, in the same order as sequential validation
+    for (int i = 0; i < reported.length; i++) {
+      reported[i] = this.report(checks.get(i), log);
     }
+    return reported;
   }
 
-  private void validateContractValue(final ExecutableElement containingElement, final AnnotationMirror contractAnnotation) {
-    this.tryAndParse(containingElement, contractAnnotation, "value", ContractValueValidationListener::new, JbContractParser::contract);
+  /**
+   * Finish a validated element on the processor thread, reporting its diagnostics.
+   *
+   * @param check the validated element
+   * @param log the messager to report to
+   * @return the number of diagnostics recorded for the element
+   */
+  private int report(final ElementCheck check, final Messager log) {
+    if (this.overrides != null) {
+      this.overrides.check(check);
+    }
+    check.rememberVerdicts();
+    final int reported = check.replay(log, this.budget);
+    this.roundDiagnostics += reported;
+    if (check.event != null) {
+      this.events.commitValidate(check.event, check, reported);
+      check.event = null;
+    }
+    return reported;
   }
 
-  // a comma-separated list of this, param, or param<n> with no repetitions
-  private void validateContractMutates(final ExecutableElement containingElement, final AnnotationMirror contractAnnotation) {
-    this.tryAndParse(containingElement, contractAnnotation, "mutates", ContractMutatesValidationListener::new, JbContractParser::mutates);
+  private ParsedContract parse(final String attribute, final Function<String, ParsedContract> parser, final String text) {
+    final Object event = this.events.beginParse();
+    final long start = this.stats == null ? 0 : System.nanoTime();
+    final ParsedContract result = parser.apply(text);
+    if (this.stats != null) {
+      this.stats.recordParse(text, result, System.nanoTime() - start);
+    }
+    if (event != null) {
+      this.events.endParse(event, attribute, text, result);
+    }
+    return result;
   }
 
-  private void tryAndParse(
-    final ExecutableElement containing,
-    final AnnotationMirror annotation,
-    final String annotationField,
-    final BiFunction<ExecutableElement, ErrorConsumer, JbContractListener> listenerMaker,
-    final Function<JbContractParser, ? extends ParseTree> rootNode
-  ) {
-    final AnnotationValue annotationValue = getAnnotationValue(annotation, annotationField);
-    if (annotationValue == null) {
-      return;
+  private ParsedContract parseCached(final ContractCache cache, final Function<String, ParsedContract> parser, final String text) {
+    if (this.stats == null && !this.events.parseEnabled()) {
+      return cache.get(text, parser);
+    }
+    final String attribute = cache == this.mutatesCache ? "mutates" : "value";
+    return cache.get(text, t -> this.parse(attribute, parser, t));
+  }
+
+  private void validate(final ElementCheck check) {
+    final Object event = this.events.beginValidate();
+    final long start = this.stats == null ? 0 : System.nanoTime();
+    check.validate();
+    if (this.stats != null) {
+      this.stats.recordValidation(System.nanoTime() - start);
+    }
+    if (event != null) {
+      this.events.endValidate(event);
+      check.event = event;
+    }
+  }
+
+  private <T> void forEachInParallel(final List<T> items, final Consumer<T> action) {
+    ForEachTask.run(this.pool, items, action);
+  }
+
+  /**
+   * Capture what validation needs from an annotated element.
+   *
+   * @param element the annotated element
+   * @param unparsed fields waiting to be parsed, grouped by cache and text, or {@code null} to parse immediately
+   * @return the check, with any fields parsed unless they were added to {@code unparsed}
+   */
+  private ElementCheck prepare(final Element element, final Map<ContractCache, Map<String, List<ElementCheck.Field>>> unparsed) {
+    final ElementKind kind = element.getKind();
+    if (kind != ElementKind.METHOD && kind != ElementKind.CONSTRUCTOR) {
+      final ElementCheck check = new ElementCheck(element, null, null);
+      check.report(Diagnostic.Kind.ERROR, null, "A @Contract annotation was found on an element that was neither a method or a constructor.");
+      return check;
     }
+    final ExecutableElement executable = (ExecutableElement) element;
 
+    final AnnotationMirror contractAnnotation = this.contract.find(element);
+    if (contractAnnotation == null) {
+      final ElementCheck check = new ElementCheck(element, null, null);
+      check.report(Diagnostic.Kind.ERROR, null, "Could not actually find annotation");
+      return check;
+    }
+
+    final ElementCheck check = new ElementCheck(element, MethodShape.of(executable), contractAnnotation);
+
+    final AnnotationValue value = this.contract.value(contractAnnotation);
+    if (value != null) {
+      this.addField(
+        check,
+        "value",
+        value,
+        this.valueCache,
+        this.valueVerdicts,
+        this.valueParser,
+        ContractChecker::validateValue,
+        unparsed
+      );
+    }
+
+    // a comma-separated list of this, param, or param<n> with no repetitions
+    final AnnotationValue mutates = this.contract.mutates(contractAnnotation);
+    if (mutates != null) {
+      this.addField(
+        check,
+        "mutates",
+        mutates,
+        this.mutatesCache,
+        this.mutatesVerdicts,
+        this.mutatesParser,
+        ContractChecker::validateMutates,
+        unparsed
+      );
+    }
+    return check;
+  }
+
+  private void addField(
+    final ElementCheck check,
+    final String annotationField,
+    final AnnotationValue annotationValue,
+    final ContractCache cache,
+    final VerdictCache verdicts,
+    final Function<String, ParsedContract> parser,
+    final ElementCheck.Validator validator,
+    final Map<ContractCache, Map<String, List<ElementCheck.Field>>> unparsed
+  ) {
     final Object unknownValue = annotationValue.getValue();
     if (!(unknownValue instanceof String)) {
-      this.processingEnv.getMessager().printMessage(
-        Diagnostic.Kind.WARNING,
-        String.format(
-          "Found an annotation value for field %s, but it was a %s instead of the expected String type.",
-          annotationField,
-          unknownValue.getClass()
-        ),
-        containing,
-        annotation,
-        annotationValue
-      );
+      check.addUnexpectedField(annotationField, annotationValue, unknownValue.getClass());
       return;
     }
 
     final String valueText = (String) unknownValue;
+    final boolean shareable = check.shapeKey() != MethodShape.NO_KEY;
+    final ElementCheck.Field field = check.addField(annotationField, annotationValue, valueText, parser, validator, shareable ? verdicts : null);
 
-    // Now parse
-    final ErrorConsumer errorConsumer =
-      (kind, message) -> this.processingEnv.getMessager().printMessage(kind, message, containing, annotation, annotationValue);
-    final ParseErrorListener handler = new ParseErrorListener(valueText, errorConsumer);
-
-    // TODO: the error messages here can be a bit spammy, look at how to improve them sometime maybe?
-    // or: just bail faster. maybe suppress lexer errors, when a parser error happens, constrain the error location to be no further than the last
-    // successful token
-    final CharStream stream = CharStreams.fromString(valueText);
-    final JbContractLexer lexer = new JbContractLexer(stream);
-    lexer.removeErrorListeners();
-    lexer.addErrorListener(handler);
-
-    final CommonTokenStream tokens = new CommonTokenStream(lexer);
-    final JbContractParser parser = new JbContractParser(tokens);
-
-    ParseTree parsed;
-    // try with faster SLL(*)
-    parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
-    // no errors or recovery
-    parser.removeErrorListeners();
-    parser.setErrorHandler(new BailErrorStrategy());
-    try {
-      parsed = rootNode.apply(parser);
-    } catch (final ParseCancellationException ex) {
-      // Reset
-      tokens.seek(0);
-      parser.reset();
-      parser.addErrorListener(handler);
-      parser.setErrorHandler(new DefaultErrorStrategy());
+    // A method of the same shape may already have been validated with this contract
+    if (shareable) {
+      final List<ContractDiagnostic> verdict = verdicts.lookup(valueText, check.shapeKey());
+      if (verdict != null) {
+        field.useVerdict(verdict);
+        return;
+      }
+    }
+
+    // Now parse, or re-use an existing parse of the same text
+    if (unparsed == null) {
+      field.parsed = this.parseCached(cache, parser, valueText);
+      return;
+    }
+
+    final Map<String, List<ElementCheck.Field>> pending = unparsed.computeIfAbsent(cache, k -> new LinkedHashMap<>());
+    List<ElementCheck.Field> waiting = pending.get(valueText);
+    if (waiting == null) {
+      final ParsedContract cached = cache.lookup(valueText);
+      if (cached != null) {
+        field.parsed = cached;
+        return;
+      }
+      waiting = new ArrayList<>();
+      pending.put(valueText, waiting);
+    }
+    waiting.add(field);
+  }
 
-      // try again with full LL(*)
-      parser.getInterpreter().setPredictionMode(PredictionMode.LL);
-      parsed = rootNode.apply(parser);
+  /**
+   * Add everything that validation of an element depends on to a fingerprint.
+   *
+   * @param fingerprint the fingerprint to add to
+   * @param element the annotated element
+   */
+  private void fingerprint(final ValidationResultStore.Fingerprint fingerprint, final Element element) {
+    fingerprint.add(element.getKind().ordinal()).add(element.getSimpleName());
+    if (element instanceof ExecutableElement) {
+      final ExecutableElement executable = (ExecutableElement) element;
+      fingerprint.add(executable.getModifiers().contains(Modifier.STATIC) ? 1 : 0)
+        .add(executable.getReturnType().getKind().ordinal())
+        .add(executable.getParameters().size());
+      for (final VariableElement param : executable.getParameters()) {
+        fingerprint.add(param.asType().getKind().ordinal());
+      }
+      if (this.overrides != null) {
+        this.overrides.fingerprint(fingerprint, executable);
+      }
     }
 
-    // If parsing was possible, report any validation errors
-    ParseTreeWalker.DEFAULT.walk(listenerMaker.apply(containing, errorConsumer), parsed);
+    final AnnotationMirror contractAnnotation = this.contract.find(element);
+    if (contractAnnotation == null) {
+      fingerprint.add(-1);
+      return;
+    }
+    final Map<? extends ExecutableElement, ? extends AnnotationValue> values = contractAnnotation.getElementValues();
+    fingerprint.add(values.size());
+    for (final Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : values.entrySet()) {
+      fingerprint.add(entry.getKey().getSimpleName()).add(String.valueOf(entry.getValue().getValue()));
+    }
   }
 
-  private AnnotationMirror getAnnotationOfType(final Element element, final String type) {
-    for (final AnnotationMirror annotation : element.getAnnotationMirrors()) {
-      if (this.processingEnv.getElementUtils().getBinaryName((TypeElement) annotation.getAnnotationType().asElement()).contentEquals(type)) {
-        return annotation;
+  /**
+   * Get the top-level type an element is declared in.
+   *
+   * @param element the element
+   * @return the outermost enclosing type, or {@code null} for a package
+   */
+  static TypeElement originatingType(final Element element) {
+    TypeElement type = null;
+    for (Element current = element; current != null && current.getKind() != ElementKind.PACKAGE; current = current.getEnclosingElement()) {
+      if (current.getKind().isClass() || current.getKind().isInterface()) {
+        type = (TypeElement) current;
       }
     }
-    return null;
+    return type;
   }
 
-  private AnnotationValue getAnnotationValue(final AnnotationMirror annotation, final String field) {
-    for (final Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annotation.getElementValues().entrySet()) {
-      if (entry.getKey().getSimpleName().contentEquals(field)) {
-        return entry.getValue();
+  /**
+   * Collects elements carrying a contract annotation, in the same order as {@link RoundEnvironment#getElementsAnnotatedWith(TypeElement)}.
+   *
+   * <p>Elements are walked by hand rather than with an {@code ElementScanner}, since the scanner for any one language
+   * version rejects element kinds added after it, such as record components.</p>
+   */
+  static final class AnnotatedElements {
+    private final ContractAnnotationType contract;
+
+    AnnotatedElements(final ContractAnnotationType contract) {
+      this.contract = contract;
+    }
+
+    /**
+     * Add an element and everything declared within it that has a contract annotation.
+     *
+     * @param element the element to search
+     * @param found the list to add annotated elements to
+     */
+    void scan(final Element element, final List<Element> found) {
+      if (this.contract.find(element) != null) {
+        found.add(element);
+      }
+      if (element instanceof ExecutableElement) {
+        for (final VariableElement parameter : ((ExecutableElement) element).getParameters()) {
+          this.scan(parameter, found);
+        }
+      } else if (element instanceof TypeElement) {
+        for (final Element enclosed : element.getEnclosedElements()) {
+          this.scan(enclosed, found);
+        }
       }
     }
-    return null;
   }
 
 }
@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.util.List;
+import javax.tools.Diagnostic;
+
+/**
+ * Validate the {@code value} field of Contract annotations against the signature of the annotated method.
+ *
+ * <p>Validation keeps no state beyond the call, so nothing is allocated to validate a contract that needs no
+ * diagnostics.</p>
+ */
+final class ContractValueValidator {
+
+  private ContractValueValidator() {
+  }
+
+  /**
+   * Validate a parsed contract against a method.
+   *
+   * @param target the method the contract is declared on
+   * @param messager the consumer for any problems
+   * @param contract the parsed contract
+   */
+  static void validate(final MethodShape target, final ErrorConsumer messager, final ParsedContract contract) {
+    boolean valid = true;
+    final List<ContractClause> clauses = contract.clauses();
+    for (int i = 0; i < clauses.size(); i++) {
+      final ContractClause clause = clauses.get(i);
+      if (clause.hasArgs()) {
+        valid &= validateArgs(target, messager, clause);
+      }
+
+      final ContractTerm effect = clause.effect();
+      if (effect != null) {
+        valid &= validateEffect(target, messager, effect, clause.effectStart(), clause.effectEnd());
+      }
+    }
+
+    if (valid) {
+      // clauses can only be compared once each one is known to fit the method
+      validateClauses(messager, contract);
+    }
+  }
+
+  private static void validateClauses(final ErrorConsumer messager, final ParsedContract contract) {
+    final int[] findings = contract.clauseFindings();
+    for (int i = 0; i < findings.length; i += 3) {
+      final ContractClause clause = contract.clauses().get(findings[i + 1]);
+      final ContractClause other = contract.clauses().get(findings[i + 2]);
+      switch (findings[i]) {
+        case ContractSemantics.CONTRADICTION:
+          error(messager, clause.start(), clause.end(), "Clause '%s' contradicts the earlier clause '%s' with the same arguments", clause, other);
+          break;
+        case ContractSemantics.UNREACHABLE:
+          messager.print(
+            Diagnostic.Kind.WARNING,
+            clause.start(),
+            clause.end(),
+            "Clause '%s' can never apply, since the earlier clause '%s' covers all of its arguments",
+            clause,
+            other
+          );
+          break;
+        default:
+          messager.print(
+            Diagnostic.Kind.WARNING,
+            clause.start(),
+            clause.end(),
+            "Clause '%s' is redundant, since the later clause '%s' has the same effect",
+            clause,
+            other
+          );
+      }
+    }
+  }
+
+  private static boolean validateArgs(final MethodShape target, final ErrorConsumer messager, final ContractClause clause) {
+    boolean valid = true;
+    final int providedArgs = clause.argCount();
+    final int paramCount = target.paramCount();
+    if (providedArgs < paramCount) {
+      valid = error(
+        messager,
+        clause.start(),
+        clause.end(),
+        "Clause only specified %d parameter(s), but method '%s' had %d parameter(s)",
+        providedArgs,
+        target.name(),
+        paramCount
+      );
+    } else if (providedArgs > paramCount) {
+      valid = error(
+        messager,
+        clause.start(),
+        clause.end(),
+        "Clause specified %d parameter(s), but method '%s' had only %d parameter(s)",
+        providedArgs,
+        target.name(),
+        paramCount
+      );
+    }
+
+    for (int i = 0; i < providedArgs; i++) {
+      final ContractTerm constraint = clause.arg(i);
+      if (constraint != null && i < paramCount) {
+        valid &= validateConstraint(messager, constraint, clause.argStart(i), clause.argEnd(i), target.paramKind(i), target.paramType(i));
+      }
+    }
+    return valid;
+  }
+
+  private static boolean validateEffect(
+    final MethodShape target,
+    final ErrorConsumer messager,
+    final ContractTerm effect,
+    final int start,
+    final int end
+  ) {
+    switch (effect.kind()) {
+      case PARAM:
+        return validateParamEffect(target, messager, effect, start, end);
+      case THIS:
+        return validateNonStaticEffect(target, messager, effect, start, end);
+      default:
+        // a constraint on the return value
+        return validateConstraint(messager, effect, start, end, target.returnKind(), target.returnType());
+    }
+  }
+
+  // Validate each constraint and effect, returning whether it was valid
+
+  private static boolean validateConstraint(
+    final ErrorConsumer messager,
+    final ContractTerm constraint,
+    final int start,
+    final int end,
+    final byte activeKind,
+    final Object activeType
+  ) {
+    if (constraint.isNonPrimitiveConstraint()) {
+      // the active argument must not be a primitive
+      if (activeKind != MethodShape.REFERENCE) {
+        return error(
+          messager,
+          start,
+          end,
+          "Constraint '%s' is only applicable to non-primitive types, but it was used to refer to a '%s'",
+          constraint,
+          activeType
+        );
+      }
+    } else if (constraint.isBooleanConstraint()) {
+      // the active argument must be a boolean
+      if (activeKind != MethodShape.BOOLEAN) {
+        return error(
+          messager,
+          start,
+          end,
+          "Constraint '%s' is only applicable to boolean values, but it was used to refer to a '%s'",
+          constraint,
+          activeType
+        );
+      }
+    }
+    return true;
+  }
+
+  private static boolean validateParamEffect(
+    final MethodShape target,
+    final ErrorConsumer messager,
+    final ContractTerm effect,
+    final int start,
+    final int end
+  ) {
+    // we must be a valid parameter number
+    final int paramNum = effect.index();
+    if (paramNum == ContractTerm.INVALID_INDEX) {
+      return error(messager, start, end, "Number '%s' was not a valid integer", ParsedContract.abbreviate(effect.number()));
+    }
+
+    final int possibleParameters = target.paramCount();
+    if (paramNum > possibleParameters) {
+      return error(
+        messager,
+        start,
+        end,
+        "Return value was declared to affect parameter %d, but only %d parameter(s) exist",
+        paramNum,
+        possibleParameters
+      );
+    } else if (paramNum < 1) {
+      return error(messager, start, end, "Return value referenced parameter 0, but parameter numbers start from 1");
+    }
+    return true;
+  }
+
+  private static boolean validateNonStaticEffect(
+    final MethodShape target,
+    final ErrorConsumer messager,
+    final ContractTerm effect,
+    final int start,
+    final int end
+  ) {
+    // cannot be in a static context
+    if (target.isStatic()) {
+      return error(
+        messager,
+        start,
+        end,
+        "Effect keyword '%s' can only be referenced from a non-static context, but method '%s' was static.",
+        effect,
+        target.name()
+      );
+    }
+    return true;
+  }
+
+  /**
+   * Report an error.
+   *
+   * @param messager the consumer to report to
+   * @param start the start offset of the offending text
+   * @param end the end offset of the offending text
+   * @param format the message format
+   * @param args the message arguments
+   * @return {@code false}, for the caller to return as whether the checked part was valid
+   */
+  private static boolean error(final ErrorConsumer messager, final int start, final int end, final String format, final Object... args) {
+    messager.print(Diagnostic.Kind.ERROR, start, end, format, args);
+    return false;
+  }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import javax.tools.Diagnostic;
+
+/**
+ * Limits on how many diagnostics are printed, so one broken contract or a broken code generator does not flood
+ * the build log.
+ *
+ * <p>The first error of a compilation is always printed, even over budget, so that suppression can never let a
+ * failing build pass.</p>
+ */
+final class DiagnosticBudget {
+
+  private final int perContract;
+  private final int perRound;
+  private int roundReported;
+  private int roundSuppressed;
+  private boolean errorReported;
+
+  /**
+   * Create a new budget.
+   *
+   * @param perContract the most diagnostics to print for any one annotation value, or {@code 0} for no limit
+   * @param perRound the most diagnostics to print in one round, or {@code 0} for no limit
+   */
+  DiagnosticBudget(final int perContract, final int perRound) {
+    this.perContract = perContract;
+    this.perRound = perRound;
+  }
+
+  /**
+   * Decide whether to print a diagnostic, counting it either way.
+   *
+   * @param kind the kind of diagnostic
+   * @param contractReported the number of diagnostics already counted for the same annotation value
+   * @return whether the diagnostic should be printed
+   */
+  boolean tryReport(final Diagnostic.Kind kind, final int contractReported) {
+    final boolean firstError = kind == Diagnostic.Kind.ERROR && !this.errorReported;
+    if (!firstError
+      && ((this.perContract > 0 && contractReported >= this.perContract) || (this.perRound > 0 && this.roundReported >= this.perRound))) {
+      this.roundSuppressed++;
+      return false;
+    }
+
+    this.roundReported++;
+    this.errorReported |= kind == Diagnostic.Kind.ERROR;
+    return true;
+  }
+
+  /**
+   * Finish a round, starting the next with a fresh budget.
+   *
+   * @return the number of diagnostics suppressed in the round that ended
+   */
+  int endRound() {
+    final int suppressed = this.roundSuppressed;
+    this.roundReported = 0;
+    this.roundSuppressed = 0;
+    return suppressed;
+  }
+
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import javax.annotation.processing.Messager;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.tools.Diagnostic;
+
+/**
+ * The validation of a single annotated element.
+ *
+ * <p>A check is prepared on the processor thread, capturing everything validation needs from the compiler. It can
+ * then be parsed and validated on any one thread, with diagnostics held back until
+ * {@link #replay(Messager, DiagnosticBudget)} is called on the processor thread. Message arguments are only
+ * formatted at that point, so compiler objects referenced by them are never touched from other threads.</p>
+ */
+final class ElementCheck {
+
+  private final Element element;
+  private final MethodShape shape;
+  private final AnnotationMirror annotation;
+  private final long shapeKey;
+  private final List<Field> fields = new ArrayList<>(2);
+  private List<Deferred> diagnostics;
+  Object event; // a validation event waiting to be committed, if recording
+
+  ElementCheck(final Element element, final MethodShape shape, final AnnotationMirror annotation) {
+    this.element = element;
+    this.shape = shape;
+    this.annotation = annotation;
+    this.shapeKey = shape == null ? MethodShape.NO_KEY : shape.key();
+  }
+
+  Element element() {
+    return this.element;
+  }
+
+  List<Field> fields() {
+    return this.fields;
+  }
+
+  /**
+   * Get the key of the checked method's shape.
+   *
+   * @return the shape key, or {@link MethodShape#NO_KEY} if results for this element can't be shared
+   */
+  long shapeKey() {
+    return this.shapeKey;
+  }
+
+  /**
+   * Add a field to be parsed and validated.
+   *
+   * @param name the name of the annotation field
+   * @param value the annotation value holding the contract text
+   * @param text the contract text
+   * @param parser the parser for the text
+   * @param validator the validator for the parsed contract
+   * @param verdicts the cache to share results through, or {@code null} if they can't be shared
+   * @return the new field
+   */
+  Field addField(
+    final String name,
+    final AnnotationValue value,
+    final String text,
+    final Function<String, ParsedContract> parser,
+    final Validator validator,
+    final VerdictCache verdicts
+  ) {
+    final Field field = new Field(name, value, text, null, parser, validator, verdicts);
+    this.fields.add(field);
+    return field;
+  }
+
+  /**
+   * Add a field whose value was not a string, to be reported in order with other fields.
+   *
+   * @param name the name of the annotation field
+   * @param value the annotation value
+   * @param type the type the value actually had
+   */
+  void addUnexpectedField(final String name, final AnnotationValue value, final Class<?> type) {
+    this.fields.add(new Field(name, value, null, type, null, null, null));
+  }
+
+  /**
+   * Record a diagnostic against this check's element.
+   *
+   * @param kind the kind of diagnostic
+   * @param value the annotation value to report against, if any
+   * @param format the message format
+   * @param args the message arguments
+   */
+  void report(final Diagnostic.Kind kind, final AnnotationValue value, final String format, final Object... args) {
+    this.add(new Deferred(kind, value, format, args));
+  }
+
+  /**
+   * Record an already formatted diagnostic against this check's element.
+   *
+   * @param kind the kind of diagnostic
+   * @param value the annotation value to report against, if any
+   * @param message the message
+   */
+  void report(final Diagnostic.Kind kind, final AnnotationValue value, final CharSequence message) {
+    this.add(new Deferred(kind, value, message.toString(), null));
+  }
+
+  private void add(final Deferred diagnostic) {
+    if (this.diagnostics == null) {
+      this.diagnostics = new ArrayList<>();
+    }
+    this.diagnostics.add(diagnostic);
+  }
+
+  /**
+   * Validate every field, which must all have been parsed unless their verdict was already known.
+   *
+   * <p>Fields that can share their results are validated against a template of the method, which is resolved
+   * back to this method as diagnostics are recorded.</p>
+   */
+  void validate() {
+    MethodShape template = null;
+    for (final Field field : this.fields) {
+      if (field.unexpectedType != null) {
+        this.report(
+          Diagnostic.Kind.WARNING,
+          field.value,
+          "Found an annotation value for field %s, but it was a %s instead of the expected String type.",
+          field.name,
+          field.unexpectedType
+        );
+        continue;
+      }
+
+      if (field.verdicts != null) {
+        if (field.verdict == null) {
+          if (template == null) {
+            template = this.shape.template();
+          }
+          final ContractChecker.Collector collector = new ContractChecker.Collector();
+          field.validator.validate(template, collector, field.parsed);
+          field.verdict = collector.diagnostics();
+        }
+
+        for (final ContractDiagnostic diagnostic : field.verdict) {
+          this.report(diagnostic.kind(), field.value, diagnostic.format(), this.resolve(diagnostic.args()));
+        }
+        continue;
+      }
+
+      final ErrorConsumer errors = new ErrorConsumer() {
+        @Override
+        public void print(final Diagnostic.Kind kind, final CharSequence message) {
+          ElementCheck.this.report(kind, field.value, message);
+        }
+
+        @Override
+        public void print(final Diagnostic.Kind kind, final String format, final Object... args) {
+          ElementCheck.this.report(kind, field.value, format, args);
+        }
+      };
+      field.validator.validate(this.shape, errors, field.parsed);
+    }
+  }
+
+  private Object[] resolve(final Object[] args) {
+    Object[] resolved = args;
+    for (int i = 0; i < args.length; i++) {
+      final Object arg = this.shape.resolve(args[i]);
+      if (arg != args[i]) {
+        if (resolved == args) {
+          resolved = args.clone();
+        }
+        resolved[i] = arg;
+      }
+    }
+    return resolved;
+  }
+
+  /**
+   * Share the verdict of each newly validated field through its cache.
+   *
+   * <p>This must be called on the processor thread.</p>
+   */
+  void rememberVerdicts() {
+    for (final Field field : this.fields) {
+      if (field.verdicts != null && !field.verdictCached && field.verdict != null) {
+        field.verdicts.put(field.text, this.shapeKey, field.verdict);
+      }
+    }
+  }
+
+  /**
+   * Print recorded diagnostics in the order they were recorded, as far as the budget allows.
+   *
+   * <p>Messages are only formatted if they are printed. This must be called on the processor thread.</p>
+   *
+   * @param messager the messager to print to
+   * @param budget the budget deciding which diagnostics to print
+   * @return the number of diagnostics recorded, whether or not they were printed
+   */
+  int replay(final Messager messager, final DiagnosticBudget budget) {
+    if (this.diagnostics == null) {
+      return 0;
+    }
+
+    // diagnostics for each annotation value are recorded together
+    AnnotationValue contract = null;
+    int contractReported = 0;
+    for (final Deferred diagnostic : this.diagnostics) {
+      if (diagnostic.value != contract) {
+        contract = diagnostic.value;
+        contractReported = 0;
+      }
+      if (!budget.tryReport(diagnostic.kind, contractReported++)) {
+        continue;
+      }
+
+      final String message = diagnostic.args == null ? diagnostic.format : String.format(diagnostic.format, diagnostic.args);
+      if (diagnostic.value == null && this.annotation == null) {
+        messager.printMessage(diagnostic.kind, message, this.element);
+      } else {
+        messager.printMessage(diagnostic.kind, message, this.element, this.annotation, diagnostic.value);
+      }
+    }
+    return this.diagnostics.size();
+  }
+
+  /**
+   * One field of a contract annotation.
+   */
+  static final class Field {
+    final String name;
+    final AnnotationValue value;
+    final String text;
+    final Class<?> unexpectedType;
+    final Function<String, ParsedContract> parser;
+    final Validator validator;
+    final VerdictCache verdicts;
+    ParsedContract parsed;
+    List<ContractDiagnostic> verdict; // diagnostics against the method's template
+    boolean verdictCached;
+
+    Field(
+      final String name,
+      final AnnotationValue value,
+      final String text,
+      final Class<?> unexpectedType,
+      final Function<String, ParsedContract> parser,
+      final Validator validator,
+      final VerdictCache verdicts
+    ) {
+      this.name = name;
+      this.value = value;
+      this.text = text;
+      this.unexpectedType = unexpectedType;
+      this.parser = parser;
+      this.validator = validator;
+      this.verdicts = verdicts;
+    }
+
+    /**
+     * Use a cached verdict, so the field does not need to be parsed.
+     *
+     * @param verdict the cached diagnostics
+     */
+    void useVerdict(final List<ContractDiagnostic> verdict) {
+      this.verdict = verdict;
+      this.verdictCached = true;
+    }
+  }
+
+  /**
+   * A check of a parsed contract against the signature it was declared on, including reporting its syntax errors.
+   *
+   * @see ContractChecker#validateValue(MethodShape, ErrorConsumer, ParsedContract)
+   */
+  @FunctionalInterface
+  interface Validator {
+    void validate(MethodShape shape, ErrorConsumer errors, ParsedContract contract);
+  }
+
+  private static final class Deferred {
+    final Diagnostic.Kind kind;
+    final AnnotationValue value;
+    final String format;
+    final Object[] args;
+
+    Deferred(final Diagnostic.Kind kind, final AnnotationValue value, final String format, final Object[] args) {
+      this.kind = kind;
+      this.value = value;
+      this.format = format;
+      this.args = args;
+    }
+  }
+
+}
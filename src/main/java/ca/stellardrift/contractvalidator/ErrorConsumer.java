@@ -21,12 +21,42 @@ import javax.tools.Diagnostic;
 
 /**
  * A consumer for error information, where information about the location is
- * specified by the provider
+ * specified by the provider.
+ *
+ * <p>Messages about part of a contract carry its position within the contract text. Consumers that can only
+ * report against the whole contract may ignore it.</p>
  */
 @FunctionalInterface
 interface ErrorConsumer {
 
-  // TODO: allow passing the position in the parsed stream, probably via a Token
   void print(final Diagnostic.Kind kind, final CharSequence message);
 
+  /**
+   * Print a message built from a format string.
+   *
+   * <p>Consumers that only report messages later may retain the arguments and format them then, so arguments
+   * must not be modified after they are passed.</p>
+   *
+   * @param kind the kind of message
+   * @param format the format string, as for {@link String#format(String, Object...)}
+   * @param args the format arguments
+   */
+  default void print(final Diagnostic.Kind kind, final String format, final Object... args) {
+    this.print(kind, String.format(format, args));
+  }
+
+  /**
+   * Print a message about part of the contract text.
+   *
+   * @param kind the kind of message
+   * @param start the offset of the first character the message is about, or {@code -1} if unknown
+   * @param end the offset after the last character the message is about, or {@code -1} if unknown
+   * @param format the format string, as for {@link String#format(String, Object...)}
+   * @param args the format arguments
+   * @see #print(Diagnostic.Kind, String, Object...) for restrictions on the arguments
+   */
+  default void print(final Diagnostic.Kind kind, final int start, final int end, final String format, final Object... args) {
+    this.print(kind, format, args);
+  }
+
 }
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * Apply an action to each item of a list, splitting the list between the threads of a pool.
+ */
+final class ForEachTask<T> extends RecursiveAction {
+  private static final long serialVersionUID = 1L;
+  private static final int BATCH_SIZE = 64;
+
+  private final List<T> items;
+  private final int start;
+  private final int end;
+  private final Consumer<T> action;
+
+  private ForEachTask(final List<T> items, final int start, final int end, final Consumer<T> action) {
+    this.items = items;
+    this.start = start;
+    this.end = end;
+    this.action = action;
+  }
+
+  /**
+   * Apply an action to every item, waiting for all to complete.
+   *
+   * @param pool the pool to run in
+   * @param items the items, which must support fast random access
+   * @param action the action, which must be safe to call from multiple threads at once
+   * @param <T> the item type
+   */
+  static <T> void run(final ForkJoinPool pool, final List<T> items, final Consumer<T> action) {
+    pool.invoke(new ForEachTask<>(items, 0, items.size(), action));
+  }
+
+  @Override
+  protected void compute() {
+    if (this.end - this.start <= BATCH_SIZE) {
+      for (int i = this.start; i < this.end; i++) {
+        this.action.accept(this.items.get(i));
+      }
+      return;
+    }
+
+    final int middle = (this.start + this.end) >>> 1;
+    invokeAll(
+      new ForEachTask<>(this.items, this.start, middle, this.action),
+      new ForEachTask<>(this.items, middle, this.end, this.action)
+    );
+  }
+
+}
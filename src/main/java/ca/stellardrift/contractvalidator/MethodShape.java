@@ -0,0 +1,378 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+
+/**
+ * The parts of a method signature that contract validation depends on.
+ *
+ * <p>A shape is captured from the compiler's model on the processor thread. Its accessors never call back into the
+ * compiler, so it can be validated against on any thread. The name and type references are only used to describe
+ * the method in diagnostics, which are formatted once they are back on the processor thread.</p>
+ *
+ * <p>Shapes can also be created from a JVM method descriptor, for checking compiled classes.</p>
+ *
+ * <p>Validation only depends on the kinds of each type, so shapes with the same kinds share a {@link #key()}. A
+ * {@link #template()} of a shape stands in for every shape with the same key, with placeholders that are
+ * {@link #resolve(Object) resolved} back to this shape's names and types when diagnostics are formatted.</p>
+ */
+final class MethodShape {
+
+  /**
+   * Any type that is not a primitive, including {@code void}.
+   */
+  static final byte REFERENCE = 0;
+  static final byte BOOLEAN = 1;
+  static final byte PRIMITIVE = 2;
+
+  /**
+   * The key of shapes with too many parameters to pack into a {@code long}.
+   */
+  static final long NO_KEY = -1;
+  private static final int MAX_KEYED_PARAMS = 27; // 9 bits of flags and count, then 2 bits per parameter
+
+  private final Object name;
+  private final boolean isStatic;
+  private final byte[] paramKinds;
+  private final Object[] paramTypes;
+  private final byte returnKind;
+  private final Object returnType;
+
+  MethodShape(
+    final Object name,
+    final boolean isStatic,
+    final byte[] paramKinds,
+    final Object[] paramTypes,
+    final byte returnKind,
+    final Object returnType
+  ) {
+    this.name = name;
+    this.isStatic = isStatic;
+    this.paramKinds = paramKinds;
+    this.paramTypes = paramTypes;
+    this.returnKind = returnKind;
+    this.returnType = returnType;
+  }
+
+  /**
+   * Capture the shape of a method.
+   *
+   * <p>This must be called on the processor thread.</p>
+   *
+   * @param element the method or constructor
+   * @return the shape
+   */
+  static MethodShape of(final ExecutableElement element) {
+    final List<? extends VariableElement> params = element.getParameters();
+    final int paramCount = params.size();
+    final byte[] paramKinds = new byte[paramCount];
+    final TypeMirror[] paramTypes = new TypeMirror[paramCount];
+    for (int i = 0; i < paramCount; i++) {
+      paramTypes[i] = params.get(i).asType();
+      paramKinds[i] = kindOf(paramTypes[i]);
+    }
+
+    final TypeMirror returnType = element.getReturnType();
+    return new MethodShape(
+      element.getSimpleName(),
+      element.getModifiers().contains(Modifier.STATIC),
+      paramKinds,
+      paramTypes,
+      kindOf(returnType),
+      returnType
+    );
+  }
+
+  /**
+   * Create the shape of a method from its JVM descriptor.
+   *
+   * @param name the method name
+   * @param descriptor the method descriptor, such as {@code (ILjava/lang/String;)Z}
+   * @param isStatic whether the method is static
+   * @return the shape
+   * @throws IllegalArgumentException if the descriptor is malformed
+   */
+  static MethodShape ofDescriptor(final String name, final String descriptor, final boolean isStatic) {
+    if (descriptor.isEmpty() || descriptor.charAt(0) != '(') {
+      throw new IllegalArgumentException("Not a method descriptor: " + descriptor);
+    }
+
+    final List<String> paramTypes = new ArrayList<>();
+    int idx = 1;
+    while (idx < descriptor.length() && descriptor.charAt(idx) != ')') {
+      final int end = descriptorTypeEnd(descriptor, idx);
+      paramTypes.add(descriptor.substring(idx, end));
+      idx = end;
+    }
+    if (idx >= descriptor.length() || descriptorTypeEnd(descriptor, idx + 1) != descriptor.length()) {
+      throw new IllegalArgumentException("Not a method descriptor: " + descriptor);
+    }
+
+    final int paramCount = paramTypes.size();
+    final byte[] paramKinds = new byte[paramCount];
+    final Object[] paramNames = new Object[paramCount];
+    for (int i = 0; i < paramCount; i++) {
+      paramKinds[i] = kindOf(paramTypes.get(i).charAt(0));
+      paramNames[i] = new DescriptorType(paramTypes.get(i));
+    }
+    final String returnType = descriptor.substring(idx + 1);
+    return new MethodShape(name, isStatic, paramKinds, paramNames, kindOf(returnType.charAt(0)), new DescriptorType(returnType));
+  }
+
+  private static int descriptorTypeEnd(final String descriptor, final int start) {
+    int idx = start;
+    while (idx < descriptor.length() && descriptor.charAt(idx) == '[') {
+      idx++;
+    }
+    if (idx >= descriptor.length()) {
+      throw new IllegalArgumentException("Not a method descriptor: " + descriptor);
+    }
+
+    switch (descriptor.charAt(idx)) {
+      case 'L':
+        final int end = descriptor.indexOf(';', idx);
+        if (end == -1) {
+          throw new IllegalArgumentException("Not a method descriptor: " + descriptor);
+        }
+        return end + 1;
+      case 'Z': case 'B': case 'C': case 'S': case 'I': case 'J': case 'F': case 'D': case 'V':
+        return idx + 1;
+      default:
+        throw new IllegalArgumentException("Not a method descriptor: " + descriptor);
+    }
+  }
+
+  private static byte kindOf(final char descriptorType) {
+    switch (descriptorType) {
+      case 'Z':
+        return BOOLEAN;
+      case 'B': case 'C': case 'S': case 'I': case 'J': case 'F': case 'D':
+        return PRIMITIVE;
+      default:
+        return REFERENCE;
+    }
+  }
+
+  static byte kindOf(final TypeMirror type) {
+    final TypeKind kind = type.getKind();
+    if (kind == TypeKind.BOOLEAN) {
+      return BOOLEAN;
+    } else if (kind.isPrimitive()) {
+      return PRIMITIVE;
+    } else {
+      return REFERENCE;
+    }
+  }
+
+  /**
+   * Get the simple name of the method, for use in diagnostics.
+   *
+   * @return the method name
+   */
+  Object name() {
+    return this.name;
+  }
+
+  /**
+   * Get a key identifying every shape that validation treats the same as this one.
+   *
+   * @return the packed static flag, return kind, parameter count and parameter kinds, or {@link #NO_KEY}
+   */
+  long key() {
+    final int paramCount = this.paramKinds.length;
+    if (paramCount > MAX_KEYED_PARAMS) {
+      return NO_KEY;
+    }
+
+    long key = (this.isStatic ? 1 : 0) | (long) this.returnKind << 1 | (long) paramCount << 3;
+    for (int i = 0; i < paramCount; i++) {
+      key |= (long) this.paramKinds[i] << (9 + 2 * i);
+    }
+    return key;
+  }
+
+  /**
+   * Get a shape with the same key as this one, but placeholders in place of the name and types.
+   *
+   * @return the template shape
+   */
+  MethodShape template() {
+    final int paramCount = this.paramKinds.length;
+    final Object[] paramTypes = new Object[paramCount];
+    for (int i = 0; i < paramCount; i++) {
+      paramTypes[i] = i < Placeholder.PARAMS.length ? Placeholder.PARAMS[i] : new Placeholder(i);
+    }
+    return new MethodShape(Placeholder.NAME, this.isStatic, this.paramKinds, paramTypes, this.returnKind, Placeholder.RETURN);
+  }
+
+  /**
+   * Replace a placeholder from a {@link #template()} with the value it stands for in this shape.
+   *
+   * @param arg a diagnostic argument
+   * @return the resolved argument, or {@code arg} itself if it is not a placeholder
+   */
+  Object resolve(final Object arg) {
+    if (!(arg instanceof Placeholder)) {
+      return arg;
+    }
+
+    final int index = ((Placeholder) arg).index;
+    if (index == Placeholder.NAME_INDEX) {
+      return this.name;
+    } else if (index == Placeholder.RETURN_INDEX) {
+      return this.returnType;
+    } else {
+      return this.paramTypes[index];
+    }
+  }
+
+  boolean isStatic() {
+    return this.isStatic;
+  }
+
+  int paramCount() {
+    return this.paramKinds.length;
+  }
+
+  byte paramKind(final int index) {
+    return this.paramKinds[index];
+  }
+
+  /**
+   * Get the declared type of a parameter, for use in diagnostics.
+   *
+   * <p>This is a {@link TypeMirror} for shapes captured from the compiler.</p>
+   *
+   * @param index the zero-based parameter index
+   * @return the parameter type
+   */
+  Object paramType(final int index) {
+    return this.paramTypes[index];
+  }
+
+  byte returnKind() {
+    return this.returnKind;
+  }
+
+  /**
+   * Get the declared return type, for use in diagnostics.
+   *
+   * @return the return type
+   */
+  Object returnType() {
+    return this.returnType;
+  }
+
+  /**
+   * A stand-in for the name or one of the types of a method.
+   */
+  static final class Placeholder {
+    static final int NAME_INDEX = -1;
+    static final int RETURN_INDEX = -2;
+    static final Placeholder NAME = new Placeholder(NAME_INDEX);
+    static final Placeholder RETURN = new Placeholder(RETURN_INDEX);
+    static final Placeholder[] PARAMS = new Placeholder[MAX_KEYED_PARAMS];
+
+    static {
+      for (int i = 0; i < PARAMS.length; i++) {
+        PARAMS[i] = new Placeholder(i);
+      }
+    }
+
+    final int index;
+
+    private Placeholder(final int index) {
+      this.index = index;
+    }
+
+    /**
+     * Get the placeholder with an index.
+     *
+     * @param index the index of a parameter, or {@link #NAME_INDEX} or {@link #RETURN_INDEX}
+     * @return the placeholder
+     * @throws IllegalArgumentException if the index is out of range
+     */
+    static Placeholder of(final int index) {
+      if (index == NAME_INDEX) {
+        return NAME;
+      } else if (index == RETURN_INDEX) {
+        return RETURN;
+      } else if (index >= 0 && index < PARAMS.length) {
+        return PARAMS[index];
+      }
+      throw new IllegalArgumentException("No placeholder with index " + index);
+    }
+
+    @Override
+    public String toString() {
+      return this.index == NAME_INDEX ? "<name>" : this.index == RETURN_INDEX ? "<return>" : "<param" + (this.index + 1) + ">";
+    }
+  }
+
+  /**
+   * A type from a descriptor, displayed as it would be written in source.
+   */
+  static final class DescriptorType {
+    private final String descriptor;
+
+    DescriptorType(final String descriptor) {
+      this.descriptor = descriptor;
+    }
+
+    @Override
+    public String toString() {
+      int dimensions = 0;
+      while (this.descriptor.charAt(dimensions) == '[') {
+        dimensions++;
+      }
+
+      final StringBuilder builder = new StringBuilder();
+      final char type = this.descriptor.charAt(dimensions);
+      switch (type) {
+        case 'Z': builder.append("boolean"); break;
+        case 'B': builder.append("byte"); break;
+        case 'C': builder.append("char"); break;
+        case 'S': builder.append("short"); break;
+        case 'I': builder.append("int"); break;
+        case 'J': builder.append("long"); break;
+        case 'F': builder.append("float"); break;
+        case 'D': builder.append("double"); break;
+        case 'V': builder.append("void"); break;
+        default: // L...;
+          builder.append(this.descriptor, dimensions + 1, this.descriptor.length() - 1);
+          for (int i = 0; i < builder.length(); i++) {
+            if (builder.charAt(i) == '/' || builder.charAt(i) == '$') {
+              builder.setCharAt(i, '.');
+            }
+          }
+      }
+      for (int i = 0; i < dimensions; i++) {
+        builder.append("[]");
+      }
+      return builder.toString();
+    }
+  }
+
+}
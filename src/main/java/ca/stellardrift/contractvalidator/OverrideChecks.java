@@ -0,0 +1,422 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import javax.annotation.processing.Filer;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+/**
+ * Checks that a method's contract keeps the guarantees of the contracts on the methods it overrides.
+ *
+ * <p>An override must not contradict an inherited clause, should not drop one, and must not mutate anything the
+ * overridden method does not. Contradictions and broader mutations are reported as warnings unless they are
+ * configured to be errors, since code that compiled cleanly before these checks existed may rely on them. Finding overridden methods naively means asking the compiler about every method of
+ * every supertype, so each part of the work is done once per type and kept for the round: the direct supertypes of
+ * each type, each type's overridable methods by name, and the parsed contract of each supertype method. Contracts of
+ * types on the classpath are read from their published {@link ContractIndex} when there is one, but types compiled
+ * from source are always read from their annotations, since any index for them may be out of date.</p>
+ *
+ * <p>Instances hold compiler objects, so they must only be used on the processor thread, and only for one round.</p>
+ */
+final class OverrideChecks {
+
+  private static final Inherited NONE = new Inherited(null, null, null);
+
+  private final Elements elements;
+  private final Types types;
+  private final Filer filer;
+  private final Predicate<TypeElement> fromSource;
+  private final ContractAnnotationType contract;
+  private final Function<String, ParsedContract> parseValue;
+  private final Function<String, ParsedContract> parseMutates;
+  private final Diagnostic.Kind severity;
+
+  private final Map<TypeElement, List<TypeElement>> supertypes = new HashMap<>();
+  private final Map<TypeElement, Map<String, List<ExecutableElement>>> methodTables = new HashMap<>();
+  private final Map<ExecutableElement, Inherited> contracts = new HashMap<>();
+  private final Map<String, ContractIndex> indexes = new HashMap<>();
+
+  /**
+   * Create checks for one round.
+   *
+   * @param elements the element utilities
+   * @param types the type utilities
+   * @param filer the filer to find published indexes through
+   * @param fromSource whether a top-level type is compiled from source, rather than read from a class file
+   * @param contract the contract annotation type
+   * @param parseValue a parser for contract values, usually cached
+   * @param parseMutates a parser for {@code mutates} fields, usually cached
+   * @param severity the kind to report contradicting clauses and broader mutations as
+   */
+  OverrideChecks(
+    final Elements elements,
+    final Types types,
+    final Filer filer,
+    final Predicate<TypeElement> fromSource,
+    final ContractAnnotationType contract,
+    final Function<String, ParsedContract> parseValue,
+    final Function<String, ParsedContract> parseMutates,
+    final Diagnostic.Kind severity
+  ) {
+    this.elements = elements;
+    this.types = types;
+    this.filer = filer;
+    this.fromSource = fromSource;
+    this.contract = contract;
+    this.parseValue = parseValue;
+    this.parseMutates = parseMutates;
+    this.severity = severity;
+  }
+
+  /**
+   * Compare the contract of a checked method against every method it overrides, recording any problems on the check.
+   *
+   * @param check the check of an annotated element, after its fields have been validated
+   */
+  void check(final ElementCheck check) {
+    if (check.element().getKind() != ElementKind.METHOD || check.fields().isEmpty()) {
+      return;
+    }
+    final List<ExecutableElement> overridden = this.overridden((ExecutableElement) check.element());
+    if (overridden.isEmpty()) {
+      return;
+    }
+
+    for (final ElementCheck.Field field : check.fields()) {
+      if (field.text == null) {
+        continue; // not a string
+      }
+      final boolean isValue = field.name.equals("value");
+      final ParsedContract parsed = field.parsed != null ? field.parsed : (isValue ? this.parseValue : this.parseMutates).apply(field.text);
+      if (parsed.hasSyntaxErrors()) {
+        continue;
+      }
+
+      for (final ExecutableElement superMethod : overridden) {
+        final Inherited inherited = this.contract(superMethod);
+        if (isValue && inherited.value != null) {
+          this.checkValue(check, field.value, parsed, inherited);
+        } else if (!isValue && inherited.mutates != null) {
+          this.checkMutates(check, field.value, parsed, inherited);
+        }
+      }
+    }
+  }
+
+  /**
+   * Add the contracts a method inherits to the fingerprint of its type, so the type is checked again when they change.
+   *
+   * @param fingerprint the fingerprint to add to
+   * @param method the annotated method
+   */
+  void fingerprint(final ValidationResultStore.Fingerprint fingerprint, final ExecutableElement method) {
+    if (method.getKind() != ElementKind.METHOD) {
+      return;
+    }
+    for (final ExecutableElement superMethod : this.overridden(method)) {
+      final Inherited inherited = this.contract(superMethod);
+      fingerprint.add(inherited.name)
+        .add(inherited.value == null ? null : inherited.value.toString())
+        .add(inherited.mutates == null ? null : inherited.mutates.toString());
+    }
+  }
+
+  /**
+   * Check that every inherited clause is kept.
+   *
+   * <p>An inherited clause is kept when the first clause of the override to apply to all of its inputs has the same
+   * effect, or a more specific one. Clauses of the override that only apply to some of those inputs are ignored.</p>
+   */
+  private void checkValue(final ElementCheck check, final AnnotationValue value, final ParsedContract override, final Inherited inherited) {
+    for (final ContractClause superClause : inherited.value.clauses()) {
+      ContractClause covering = null;
+      for (final ContractClause clause : override.clauses()) {
+        if (covers(clause, superClause)) {
+          covering = clause;
+          break;
+        }
+      }
+
+      if (covering == null) {
+        check.report(
+          Diagnostic.Kind.WARNING,
+          value,
+          "The clause '%s' of overridden method %s is not kept by this contract",
+          superClause,
+          inherited.name
+        );
+      } else if (!refines(covering.effect(), superClause.effect())) {
+        check.report(
+          this.severity,
+          value,
+          "Clause '%s' contradicts the clause '%s' of overridden method %s",
+          covering,
+          superClause,
+          inherited.name
+        );
+      }
+    }
+  }
+
+  private void checkMutates(final ElementCheck check, final AnnotationValue value, final ParsedContract override, final Inherited inherited) {
+    for (final ContractTerm term : override.mutated()) {
+      boolean declared = false;
+      for (final ContractTerm superTerm : inherited.mutates.mutated()) {
+        if (term.sameAs(superTerm)) {
+          declared = true;
+          break;
+        }
+      }
+      if (!declared) {
+        check.report(
+          this.severity,
+          value,
+          "Mutates '%s', but overridden method %s only mutates '%s'",
+          term,
+          inherited.name,
+          inherited.mutates
+        );
+      }
+    }
+  }
+
+  /**
+   * Get whether a clause applies to every input another clause does.
+   */
+  private static boolean covers(final ContractClause clause, final ContractClause other) {
+    if (clause.argCount() != other.argCount()) {
+      return false;
+    }
+    for (int i = 0; i < clause.argCount(); i++) {
+      final ContractTerm arg = clause.arg(i);
+      if (arg == null || other.arg(i) == null || (arg.kind() != ContractTerm.Kind.ANY && !arg.sameAs(other.arg(i)))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Get whether an effect guarantees at least as much as an inherited one.
+   */
+  private static boolean refines(final ContractTerm effect, final ContractTerm inherited) {
+    if (effect == null || inherited == null || inherited.kind() == ContractTerm.Kind.ANY || effect.sameAs(inherited)) {
+      return true;
+    }
+    // both are never null
+    return inherited.kind() == ContractTerm.Kind.NOT_NULL
+      && (effect.kind() == ContractTerm.Kind.NEW || effect.kind() == ContractTerm.Kind.THIS);
+  }
+
+  /**
+   * Find the nearest methods with a contract that a method overrides.
+   *
+   * <p>Each path up the hierarchy is followed until it reaches an overridden method with a contract. Methods further
+   * up are not needed, since that method was itself checked against them, which keeps deep hierarchies linear.</p>
+   *
+   * @param method the overriding method
+   * @return the overridden methods, nearest supertypes first
+   */
+  private List<ExecutableElement> overridden(final ExecutableElement method) {
+    if (!overridable(method)) {
+      return Collections.emptyList();
+    }
+    final TypeElement owner = (TypeElement) method.getEnclosingElement();
+    final List<ExecutableElement> result = new ArrayList<>(2);
+    this.findOverridden(method, owner, owner, new HashSet<>(), result);
+    return result;
+  }
+
+  private void findOverridden(
+    final ExecutableElement method,
+    final TypeElement owner,
+    final TypeElement type,
+    final Set<TypeElement> visited,
+    final List<ExecutableElement> result
+  ) {
+    for (final TypeElement supertype : this.directSupertypes(type)) {
+      if (!visited.add(supertype)) {
+        continue;
+      }
+
+      boolean found = false;
+      final List<ExecutableElement> candidates = this.methodTable(supertype).get(method.getSimpleName().toString());
+      if (candidates != null) {
+        for (final ExecutableElement candidate : candidates) {
+          if (candidate.getParameters().size() == method.getParameters().size()
+            && this.elements.overrides(method, candidate, owner)
+            && this.contract(candidate) != NONE) {
+            result.add(candidate);
+            found = true;
+          }
+        }
+      }
+      if (!found) {
+        this.findOverridden(method, owner, supertype, visited, result);
+      }
+    }
+  }
+
+  /**
+   * Get the direct supertypes of a type, resolving them only once per round.
+   *
+   * @param type the type
+   * @return its direct supertypes, superclass first
+   */
+  private List<TypeElement> directSupertypes(final TypeElement type) {
+    List<TypeElement> result = this.supertypes.get(type);
+    if (result == null) {
+      result = new ArrayList<>(2);
+      for (final TypeMirror supertype : this.types.directSupertypes(type.asType())) {
+        if (supertype.getKind() == TypeKind.DECLARED) {
+          result.add((TypeElement) ((DeclaredType) supertype).asElement());
+        }
+      }
+      this.supertypes.put(type, result);
+    }
+    return result;
+  }
+
+  /**
+   * Get the methods of a type that could be overridden, by name.
+   *
+   * @param type the declaring type
+   * @return the type's instance methods, grouped by name
+   */
+  private Map<String, List<ExecutableElement>> methodTable(final TypeElement type) {
+    Map<String, List<ExecutableElement>> table = this.methodTables.get(type);
+    if (table == null) {
+      table = new HashMap<>();
+      for (final ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+        if (overridable(method)) {
+          table.computeIfAbsent(method.getSimpleName().toString(), k -> new ArrayList<>(1)).add(method);
+        }
+      }
+      this.methodTables.put(type, table);
+    }
+    return table;
+  }
+
+  private static boolean overridable(final ExecutableElement method) {
+    return !method.getModifiers().contains(Modifier.STATIC) && !method.getModifiers().contains(Modifier.PRIVATE);
+  }
+
+  /**
+   * Get the contract of a supertype method, from its type's published index if there is one, or its annotation.
+   *
+   * @param method the supertype method
+   * @return the method's contract, with {@code null} fields for any that are absent or malformed, or {@link #NONE}
+   *     if it has neither
+   */
+  private Inherited contract(final ExecutableElement method) {
+    Inherited result = this.contracts.get(method);
+    if (result != null) {
+      return result;
+    }
+
+    final TypeElement owner = (TypeElement) method.getEnclosingElement();
+    final String ownerName = this.elements.getBinaryName(owner).toString();
+    final String displayName = ownerName + '#' + method.getSimpleName();
+    final TypeElement topLevel = ContractValidatorProcessor.originatingType(owner);
+    final ContractIndex index = this.fromSource.test(topLevel) ? null : this.index(topLevel);
+    final String descriptor = index == null ? null : ContractIndex.descriptor(this.types, this.elements, method);
+    if (descriptor != null) {
+      final ContractIndex.Entry entry = index.lookup(ownerName, method.getSimpleName().toString(), descriptor);
+      result = entry == null ? NONE : inherited(displayName, entry.value(), entry.mutates());
+    } else {
+      final AnnotationMirror annotation = this.contract.find(method);
+      if (annotation == null) {
+        result = NONE;
+      } else {
+        result = inherited(
+          displayName,
+          this.parse(this.contract.value(annotation), this.parseValue),
+          this.parse(this.contract.mutates(annotation), this.parseMutates)
+        );
+      }
+    }
+    this.contracts.put(method, result);
+    return result;
+  }
+
+  private static Inherited inherited(final String name, final ParsedContract value, final ParsedContract mutates) {
+    return value == null && mutates == null ? NONE : new Inherited(name, value, mutates);
+  }
+
+  private ParsedContract parse(final AnnotationValue value, final Function<String, ParsedContract> parser) {
+    if (value == null || !(value.getValue() instanceof String)) {
+      return null;
+    }
+    final ParsedContract parsed = parser.apply((String) value.getValue());
+    return parsed.hasSyntaxErrors() ? null : parsed;
+  }
+
+  private ContractIndex index(final TypeElement topLevel) {
+    final String name = this.elements.getBinaryName(topLevel).toString();
+    if (this.indexes.containsKey(name)) {
+      return this.indexes.get(name);
+    }
+
+    ContractIndex index;
+    try {
+      index = ContractIndex.find(this.filer, name);
+    } catch (final IOException | RuntimeException ex) {
+      index = null; // fall back to annotations
+    }
+    this.indexes.put(name, index);
+    return index;
+  }
+
+  /**
+   * The contract of an overridden method.
+   */
+  static final class Inherited {
+    final String name;
+    final ParsedContract value;
+    final ParsedContract mutates;
+
+    Inherited(final String name, final ParsedContract value, final ParsedContract mutates) {
+      this.name = name;
+      this.value = value;
+      this.mutates = mutates;
+    }
+  }
+
+}
@@ -20,20 +20,43 @@ package ca.stellardrift.contractvalidator;
 import java.util.BitSet;
 import javax.tools.Diagnostic;
 import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.Lexer;
 import org.antlr.v4.runtime.Parser;
 import org.antlr.v4.runtime.RecognitionException;
 import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenStream;
 import org.antlr.v4.runtime.atn.ATNConfigSet;
 import org.antlr.v4.runtime.dfa.DFA;
 
+/**
+ * Collects the syntax errors of one recognizer, giving up on the input after {@link #MAX_ERRORS}.
+ *
+ * <p>Each message quotes only an excerpt of the input around the error, so the cost of reporting does not grow with
+ * the length of the input.</p>
+ */
 class ParseErrorListener extends BaseErrorListener {
 
-  private final String input;
-  private final ErrorConsumer messager;
+  /**
+   * The most syntax errors to report before abandoning the input, matching the number of diagnostics printed per
+   * contract by default.
+   */
+  static final int MAX_ERRORS = ContractValidatorProcessor.DEFAULT_MAX_DIAGNOSTICS_PER_CONTRACT;
+
+  private String input;
+  private ErrorConsumer messager;
+  private int errors;
 
-  public ParseErrorListener(final String input, final ErrorConsumer messager) {
+  /**
+   * Prepare to receive errors for a new input.
+   *
+   * @param input the input text
+   * @param messager the consumer for errors, or {@code null} to discard them
+   */
+  void reset(final String input, final ErrorConsumer messager) {
     this.input = input;
     this.messager = messager;
+    this.errors = 0;
   }
 
   @Override
@@ -41,23 +64,28 @@ class ParseErrorListener extends BaseErrorListener {
     final Recognizer<?, ?> recognizer, final Object offendingSymbol, final int line, final int charPositionInLine, final String msg,
     final RecognitionException e
   ) {
-    final StringBuilder errorMessage = new StringBuilder(msg.length() + (this.input.length() * 2));
-
-    errorMessage
-      .append(msg)
-      .append(System.lineSeparator())
-      .append(System.lineSeparator())
-      .append("at: ")
-      .append(this.input)
-      .append(System.lineSeparator());
+    if (this.messager == null) {
+      return;
+    }
 
-    // then a pointer
-    for (int i = 0; i < (4 + charPositionInLine); ++i) {
-      errorMessage.append(' ');
+    // a lexer error covers the characters read since the start of the token it failed to match
+    int start = charPositionInLine;
+    int end = start + 1;
+    if (offendingSymbol instanceof Token && ((Token) offendingSymbol).getStartIndex() >= 0) {
+      final Token token = (Token) offendingSymbol;
+      start = token.getStartIndex();
+      end = Math.max(start, token.getStopIndex() + 1); // EOF is empty
+    } else if (recognizer instanceof Lexer) {
+      final Lexer lexer = (Lexer) recognizer;
+      start = lexer._tokenStartCharIndex;
+      end = Math.min(lexer.getInputStream().index() + 1, this.input.length());
     }
-    errorMessage.append('^');
 
-    messager.print(Diagnostic.Kind.ERROR, errorMessage);
+    // the message, then the input around the offending position with a pointer under it
+    this.messager.print(Diagnostic.Kind.ERROR, start, end, "%s%n%n%s", msg, ParsedContract.excerpt(this.input, start));
+    if (++this.errors >= MAX_ERRORS) {
+      throw new TooManyErrors();
+    }
   }
 
   @Override
@@ -65,8 +93,32 @@ class ParseErrorListener extends BaseErrorListener {
     final Parser recognizer, final DFA dfa, final int startIndex, final int stopIndex, final boolean exact, final BitSet ambigAlts,
     final ATNConfigSet configs
   ) {
-    this.messager.print(Diagnostic.Kind.WARNING, "Ambiguity occurred from " + startIndex + " to " + stopIndex);
+    if (this.messager == null) {
+      return;
+    }
+
+    // the indices are of tokens rather than characters
+    final TokenStream tokens = recognizer.getTokenStream();
+    this.messager.print(
+      Diagnostic.Kind.WARNING,
+      tokens.get(startIndex).getStartIndex(),
+      tokens.get(stopIndex).getStopIndex() + 1,
+      "Ambiguity occurred from %d to %d",
+      startIndex,
+      stopIndex
+    );
     super.reportAmbiguity(recognizer, dfa, startIndex, stopIndex, exact, ambigAlts, configs);
   }
 
+  /**
+   * Thrown to abandon parsing once {@link #MAX_ERRORS} syntax errors have been reported.
+   */
+  static final class TooManyErrors extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    TooManyErrors() {
+      super("Too many syntax errors", null, false, false);
+    }
+  }
+
 }
@@ -0,0 +1,377 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.tools.Diagnostic;
+
+/**
+ * The signature-independent result of parsing one contract string.
+ *
+ * <p>Instances are immutable, so one parse can be shared between every element using the same contract text. Any
+ * syntax errors are retained to be reported again for each element.</p>
+ *
+ * <p>Positions are character offsets into the contract text, with exclusive ends, or {@code -1} where unknown.</p>
+ */
+final class ParsedContract {
+
+  /**
+   * The longest contract text parsed by default.
+   *
+   * <p>Well past anything written by hand, but short enough that a generated contract cannot make parsing and
+   * reporting expensive.</p>
+   */
+  static final int DEFAULT_MAX_LENGTH = 8192;
+
+  /**
+   * The most characters of contract text quoted either side of a position in a message.
+   */
+  static final int EXCERPT_RADIUS = 32;
+
+  private final Strategy strategy;
+  private final List<SyntaxError> syntaxErrors;
+  private final List<ContractClause> clauses;
+  private final List<ContractTerm> mutated;
+  private final int[] mutatedPositions;
+  private volatile int[] clauseFindings;
+
+  /**
+   * Create a new parsed contract.
+   *
+   * @param strategy how the contract was parsed
+   * @param syntaxErrors the syntax errors encountered
+   * @param clauses the clauses of a contract value
+   * @param mutated the terms of a mutates field
+   * @param mutatedPositions the start and end offset of each mutated term in turn
+   */
+  ParsedContract(
+    final Strategy strategy,
+    final List<SyntaxError> syntaxErrors,
+    final List<ContractClause> clauses,
+    final List<ContractTerm> mutated,
+    final int[] mutatedPositions
+  ) {
+    this.strategy = strategy;
+    this.syntaxErrors = syntaxErrors;
+    this.clauses = clauses;
+    this.mutated = mutated;
+    this.mutatedPositions = mutatedPositions;
+  }
+
+  /**
+   * Parse the {@code value} field of a contract, if it is no longer than {@link #DEFAULT_MAX_LENGTH}.
+   *
+   * @param text the contract text
+   * @return the parsed contract
+   * @see #parseValue(String, int) for details on the parsing strategy
+   */
+  static ParsedContract parseValue(final String text) {
+    return parseValue(text, DEFAULT_MAX_LENGTH);
+  }
+
+  /**
+   * Parse the {@code value} field of a contract.
+   *
+   * <p>Well-formed contracts are read directly by {@link ContractScanner}, only falling back to the ANTLR parser
+   * to describe syntax errors. Either way, parsing takes time linear in the length of the text, and text longer than
+   * the limit is rejected without being read at all.</p>
+   *
+   * @param text the contract text
+   * @param maxLength the longest text to parse, or {@code 0} for no limit
+   * @return the parsed contract
+   */
+  static ParsedContract parseValue(final String text, final int maxLength) {
+    if (maxLength > 0 && text.length() > maxLength) {
+      return tooLong(text, maxLength);
+    }
+    final ParsedContract scanned = ContractScanner.scanValue(text);
+    return scanned != null ? scanned : ParsingContext.parseValue(text, true);
+  }
+
+  /**
+   * Parse the {@code mutates} field of a contract, if it is no longer than {@link #DEFAULT_MAX_LENGTH}.
+   *
+   * @param text the mutates text
+   * @return the parsed contract
+   * @see #parseValue(String, int) for details on the parsing strategy
+   */
+  static ParsedContract parseMutates(final String text) {
+    return parseMutates(text, DEFAULT_MAX_LENGTH);
+  }
+
+  /**
+   * Parse the {@code mutates} field of a contract.
+   *
+   * @param text the mutates text
+   * @param maxLength the longest text to parse, or {@code 0} for no limit
+   * @return the parsed contract
+   * @see #parseValue(String, int) for details on the parsing strategy
+   */
+  static ParsedContract parseMutates(final String text, final int maxLength) {
+    if (maxLength > 0 && text.length() > maxLength) {
+      return tooLong(text, maxLength);
+    }
+    final ParsedContract scanned = ContractScanner.scanMutates(text);
+    return scanned != null ? scanned : ParsingContext.parseMutates(text, true);
+  }
+
+  private static ParsedContract tooLong(final String text, final int maxLength) {
+    final SyntaxError error = new SyntaxError(
+      Diagnostic.Kind.ERROR,
+      "Contract text is %d characters long, more than the limit of %d, so it was not parsed",
+      new Object[] {text.length(), maxLength},
+      -1,
+      -1
+    );
+    return new ParsedContract(Strategy.REJECTED, Collections.singletonList(error), Collections.emptyList(), Collections.emptyList(), new int[0]);
+  }
+
+  /**
+   * Parse the {@code value} field of a contract with the ANTLR parser, reporting syntax errors and recovering from them.
+   *
+   * @param text the contract text
+   * @return the parsed contract
+   */
+  static ParsedContract parseValueWithAntlr(final String text) {
+    return ParsingContext.parseValue(text, false);
+  }
+
+  /**
+   * Parse the {@code mutates} field of a contract with the ANTLR parser, reporting syntax errors and recovering from them.
+   *
+   * @param text the mutates text
+   * @return the parsed contract
+   */
+  static ParsedContract parseMutatesWithAntlr(final String text) {
+    return ParsingContext.parseMutates(text, false);
+  }
+
+  /**
+   * Record the position of a term in an array of start and end offsets.
+   *
+   * @param positions the positions so far
+   * @param count the number of terms already recorded
+   * @param start the start offset of the new term
+   * @param end the end offset of the new term
+   * @return the positions, grown if needed
+   */
+  static int[] addPosition(int[] positions, final int count, final int start, final int end) {
+    if (positions.length < 2 * count + 2) {
+      positions = Arrays.copyOf(positions, Math.max(positions.length * 2, 2 * count + 2));
+    }
+    positions[2 * count] = start;
+    positions[2 * count + 1] = end;
+    return positions;
+  }
+
+  /**
+   * Quote part of some contract text for a message, with a marker under one position.
+   *
+   * <p>Around {@link #EXCERPT_RADIUS} characters are quoted either side of the position, so messages stay short
+   * however long the text is. Line breaks and tabs are shown as spaces to keep the marker aligned.</p>
+   *
+   * @param text the contract text
+   * @param position the offset to mark, which may be the end of the text
+   * @return the excerpt, as two lines
+   */
+  static String excerpt(final String text, final int position) {
+    // a window of a fixed width, moved inside the text when the position is near either end
+    final int from = Math.max(0, Math.min(position - EXCERPT_RADIUS, text.length() - 2 * EXCERPT_RADIUS));
+    final int to = Math.min(text.length(), from + 2 * EXCERPT_RADIUS);
+    final StringBuilder builder = new StringBuilder("at: ");
+    if (from > 0) {
+      builder.append("...");
+    }
+    final int marker = builder.length() + position - from;
+    for (int i = from; i < to; i++) {
+      final char c = text.charAt(i);
+      builder.append(c == '\n' || c == '\r' || c == '\t' ? ' ' : c);
+    }
+    if (to < text.length()) {
+      builder.append("...");
+    }
+    builder.append(System.lineSeparator());
+    for (int i = 0; i < marker; i++) {
+      builder.append(' ');
+    }
+    return builder.append('^').toString();
+  }
+
+  /**
+   * Shorten a piece of contract text to quote in a message.
+   *
+   * @param text the text
+   * @return the text, or its start if it is longer than twice {@link #EXCERPT_RADIUS}
+   */
+  static String abbreviate(final String text) {
+    return text.length() <= 2 * EXCERPT_RADIUS ? text : text.substring(0, 2 * EXCERPT_RADIUS) + "...";
+  }
+
+  /**
+   * Get how this contract was parsed.
+   *
+   * @return the parsing strategy that produced this result
+   */
+  Strategy strategy() {
+    return this.strategy;
+  }
+
+  boolean hasSyntaxErrors() {
+    return !this.syntaxErrors.isEmpty();
+  }
+
+  /**
+   * Report any syntax errors encountered while parsing.
+   *
+   * @param errors the consumer to report to
+   */
+  void reportSyntaxErrors(final ErrorConsumer errors) {
+    for (final SyntaxError error : this.syntaxErrors) {
+      if (error.args == null) {
+        errors.print(error.kind, error.start, error.end, "%s", error.format);
+      } else {
+        errors.print(error.kind, error.start, error.end, error.format, error.args);
+      }
+    }
+  }
+
+  /**
+   * Get the clauses of a contract value.
+   *
+   * @return the clauses, empty for a parsed {@code mutates} field
+   */
+  List<ContractClause> clauses() {
+    return this.clauses;
+  }
+
+  /**
+   * Get the elements declared to be mutated.
+   *
+   * @return the mutated terms, empty for a parsed {@code value} field
+   */
+  List<ContractTerm> mutated() {
+    return this.mutated;
+  }
+
+  /**
+   * Get the problems between the clauses of this contract, finding them on first use.
+   *
+   * <p>Contracts with syntax errors are not analyzed, since recovery may have left clauses incomplete.</p>
+   *
+   * @return the findings of {@link ContractSemantics#analyze(List)}
+   */
+  int[] clauseFindings() {
+    int[] findings = this.clauseFindings;
+    if (findings == null) {
+      // racing threads compute the same result, so there is no need to lock
+      findings = this.syntaxErrors.isEmpty() ? ContractSemantics.analyze(this.clauses) : new int[0];
+      this.clauseFindings = findings;
+    }
+    return findings;
+  }
+
+  int mutatedStart(final int idx) {
+    return this.mutatedPositions[2 * idx];
+  }
+
+  int mutatedEnd(final int idx) {
+    return this.mutatedPositions[2 * idx + 1];
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder builder = new StringBuilder();
+    for (final ContractClause clause : this.clauses) {
+      if (builder.length() > 0) {
+        builder.append("; ");
+      }
+      builder.append(clause);
+    }
+    for (final ContractTerm term : this.mutated) {
+      if (builder.length() > 0) {
+        builder.append(", ");
+      }
+      builder.append(term);
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Where a parsed contract came from, with the ways a contract can be parsed listed from fastest to slowest.
+   */
+  enum Strategy {
+    /**
+     * Read by {@link ContractScanner} without involving ANTLR.
+     */
+    SCANNER,
+    /**
+     * Parsed by ANTLR in SLL prediction mode.
+     */
+    ANTLR_SLL,
+    /**
+     * Parsed by ANTLR with full LL prediction and error recovery from the start, since the text was already known to
+     * be malformed.
+     */
+    ANTLR_LL_DIRECT,
+    /**
+     * Parsed by ANTLR after the SLL attempt failed, falling back to full LL prediction with error recovery.
+     */
+    ANTLR_LL,
+    /**
+     * Read from a {@link ContractIndex} published by another compilation, with no positions.
+     */
+    INDEX,
+    /**
+     * Not parsed, since the text was longer than the limit.
+     */
+    REJECTED
+  }
+
+  /**
+   * A syntax error message, retained to be reported against every element sharing a contract.
+   *
+   * <p>Messages are kept unformatted, since they may never be emitted.</p>
+   */
+  static final class SyntaxError {
+    final Diagnostic.Kind kind;
+    final String format;
+    final Object[] args;
+    final int start;
+    final int end;
+
+    /**
+     * Create a new syntax error.
+     *
+     * @param kind the kind of diagnostic
+     * @param format the message format, or the whole message if {@code args} is {@code null}
+     * @param args the format arguments
+     * @param start the offset of the start of the offending text
+     * @param end the offset of the end of the offending text
+     */
+    SyntaxError(final Diagnostic.Kind kind, final String format, final Object[] args, final int start, final int end) {
+      this.kind = kind;
+      this.format = format;
+      this.args = args;
+      this.start = start;
+      this.end = end;
+    }
+  }
+
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.tools.Diagnostic;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+
+/**
+ * Builds a {@link ParsedContract} from parser events as the input is parsed, so no parse tree has to be kept.
+ *
+ * <p>Rules are handled as they exit, when labelled alternatives have been resolved. Positions are taken from the
+ * tokens each rule matched.</p>
+ */
+final class ParsedContractBuilder extends JbContractBaseListener implements ErrorConsumer {
+
+  private final List<ParsedContract.SyntaxError> syntaxErrors = new ArrayList<>();
+  private final List<ContractClause> clauses = new ArrayList<>();
+  private final List<ContractTerm> mutated = new ArrayList<>();
+  private int[] mutatedPositions = new int[8];
+
+  // clause state
+  private final List<ContractTerm> args = new ArrayList<>();
+  private int[] argPositions = new int[8];
+  private boolean hasArgs;
+  private ContractTerm effect;
+  private int effectStart;
+  private int effectEnd;
+
+  /**
+   * Discard all state, including syntax errors.
+   */
+  void reset() {
+    this.syntaxErrors.clear();
+    this.resetStructure();
+  }
+
+  /**
+   * Discard parsed structure, keeping any syntax errors.
+   */
+  void resetStructure() {
+    this.clauses.clear();
+    this.mutated.clear();
+    this.args.clear();
+    this.hasArgs = false;
+    this.effect = null;
+    this.effectStart = -1;
+    this.effectEnd = -1;
+  }
+
+  /**
+   * Create a contract from the events received so far.
+   *
+   * @param strategy how the contract was parsed
+   * @return the parsed contract
+   */
+  ParsedContract build(final ParsedContract.Strategy strategy) {
+    return new ParsedContract(
+      strategy,
+      copy(this.syntaxErrors),
+      copy(this.clauses),
+      copy(this.mutated),
+      Arrays.copyOf(this.mutatedPositions, 2 * this.mutated.size())
+    );
+  }
+
+  private static <T> List<T> copy(final List<T> items) {
+    return items.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(items));
+  }
+
+  @Override
+  public void print(final Diagnostic.Kind kind, final CharSequence message) {
+    this.syntaxErrors.add(new ParsedContract.SyntaxError(kind, message.toString(), null, -1, -1));
+  }
+
+  @Override
+  public void print(final Diagnostic.Kind kind, final String format, final Object... args) {
+    this.print(kind, -1, -1, format, args);
+  }
+
+  @Override
+  public void print(final Diagnostic.Kind kind, final int start, final int end, final String format, final Object... args) {
+    this.syntaxErrors.add(new ParsedContract.SyntaxError(kind, format, args, start, end));
+  }
+
+  /**
+   * Get the offset of the first character matched by a rule.
+   *
+   * @param ctx the rule
+   * @return the start offset
+   */
+  private static int start(final ParserRuleContext ctx) {
+    return ctx.getStart().getStartIndex();
+  }
+
+  /**
+   * Get the offset after the last character matched by a rule.
+   *
+   * <p>A rule that matched nothing ends where it starts.</p>
+   *
+   * @param ctx the rule
+   * @return the end offset
+   */
+  private static int end(final ParserRuleContext ctx) {
+    final Token stop = ctx.getStop();
+    final int start = start(ctx);
+    return stop == null ? start : Math.max(start, stop.getStopIndex() + 1);
+  }
+
+  // value
+
+  @Override
+  public void enterClause(final JbContractParser.ClauseContext ctx) {
+    this.args.clear();
+    this.hasArgs = false;
+    this.effect = null;
+    this.effectStart = -1;
+    this.effectEnd = -1;
+  }
+
+  @Override
+  public void enterArgs(final JbContractParser.ArgsContext ctx) {
+    this.hasArgs = true;
+  }
+
+  @Override
+  public void exitClause(final JbContractParser.ClauseContext ctx) {
+    final ContractTerm[] args = this.hasArgs ? this.args.toArray(new ContractTerm[0]) : null;
+    final int[] positions = Arrays.copyOf(this.argPositions, 2 * this.args.size() + 2);
+    positions[positions.length - 2] = this.effectStart;
+    positions[positions.length - 1] = this.effectEnd;
+    this.clauses.add(new ContractClause(args, this.effect, start(ctx), end(ctx), positions));
+  }
+
+  @Override
+  public void exitEveryRule(final ParserRuleContext ctx) {
+    if (ctx instanceof JbContractParser.ConstraintContext) {
+      // an unlabelled context is one where no alternative could be matched, but it still takes up an argument position
+      final ContractTerm constraint = constraint((JbContractParser.ConstraintContext) ctx);
+      if (ctx.getParent() instanceof JbContractParser.ArgsContext) {
+        this.argPositions = ParsedContract.addPosition(this.argPositions, this.args.size(), start(ctx), end(ctx));
+        this.args.add(constraint);
+      } else {
+        this.effect = constraint;
+      }
+    } else if (ctx instanceof JbContractParser.EffectContext) {
+      this.effectStart = start(ctx);
+      this.effectEnd = end(ctx);
+    }
+  }
+
+  @Override
+  public void exitParamEffect(final JbContractParser.ParamEffectContext ctx) {
+    this.effect = ctx.num == null ? null : ContractTerm.param(ctx.num.getText());
+  }
+
+  @Override
+  public void exitNonStaticEffect(final JbContractParser.NonStaticEffectContext ctx) {
+    this.effect = ContractTerm.of(ContractTerm.Kind.THIS);
+  }
+
+  @Override
+  public void exitOtherEffect(final JbContractParser.OtherEffectContext ctx) {
+    // constraints have already been handled
+    switch (ctx.getStart().getType()) {
+      case JbContractLexer.FAIL:
+        this.effect = ContractTerm.of(ContractTerm.Kind.FAIL);
+        break;
+      case JbContractLexer.NEW:
+        this.effect = ContractTerm.of(ContractTerm.Kind.NEW);
+        break;
+      default:
+        break;
+    }
+  }
+
+  private static ContractTerm constraint(final JbContractParser.ConstraintContext ctx) {
+    if (ctx.getClass() == JbContractParser.ConstraintContext.class) {
+      return null; // no alternative could be matched
+    }
+
+    switch (ctx.getStart().getType()) {
+      case JbContractLexer.ANY: return ContractTerm.of(ContractTerm.Kind.ANY);
+      case JbContractLexer.NULL: return ContractTerm.of(ContractTerm.Kind.NULL);
+      case JbContractLexer.NONNULL: return ContractTerm.of(ContractTerm.Kind.NOT_NULL);
+      case JbContractLexer.FALSE: return ContractTerm.of(ContractTerm.Kind.FALSE);
+      case JbContractLexer.TRUE: return ContractTerm.of(ContractTerm.Kind.TRUE);
+      default: return null;
+    }
+  }
+
+  // mutates
+
+  @Override
+  public void exitMutatesThis(final JbContractParser.MutatesThisContext ctx) {
+    this.mutatedPositions = ParsedContract.addPosition(this.mutatedPositions, this.mutated.size(), start(ctx), end(ctx));
+    this.mutated.add(ContractTerm.of(ContractTerm.Kind.THIS));
+  }
+
+  @Override
+  public void exitMutatesParam(final JbContractParser.MutatesParamContext ctx) {
+    this.mutatedPositions = ParsedContract.addPosition(this.mutatedPositions, this.mutated.size(), start(ctx), end(ctx));
+    this.mutated.add(ContractTerm.param(ctx.num == null ? null : ctx.num.getText()));
+  }
+
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import javax.tools.Diagnostic;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.atn.ATNState;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+
+/**
+ * A reusable ANTLR lexer and parser.
+ *
+ * <p>Recognizers, error strategies and listeners are created once and reset for each input, so that parsing
+ * only allocates what the input itself requires. No parse tree is built: the contract is assembled by a parse
+ * listener as rules complete. Instances are not thread-safe, so each parse borrows one from a small shared pool,
+ * creating one if none is free.</p>
+ *
+ * <p>The pool is only reachable from this class, rather than from the threads that parse, so contexts are not
+ * kept alive on long-lived compiler threads once the processor that loaded them is gone.</p>
+ *
+ * <p>Parsing is abandoned once either recognizer has reported {@link ParseErrorListener#MAX_ERRORS} errors, so
+ * malformed input can only ever be recovered from a bounded number of times.</p>
+ */
+final class ParsingContext {
+
+  private static final AtomicReferenceArray<ParsingContext> POOL =
+    new AtomicReferenceArray<>(2 * Runtime.getRuntime().availableProcessors());
+
+  private final ParseErrorListener lexerErrors = new ParseErrorListener();
+  private final ParseErrorListener parserErrors = new ParseErrorListener();
+  private final BailErrorStrategy bail = new BailErrorStrategy();
+  private final DefaultErrorStrategy recover = new DefaultErrorStrategy() {
+    @Override
+    protected String getTokenErrorDisplay(final Token token) {
+      // tokens such as numbers can be as long as the input
+      return ParsedContract.abbreviate(super.getTokenErrorDisplay(token));
+    }
+  };
+  private final ParsedContractBuilder builder = new ParsedContractBuilder();
+  private final JbContractLexer lexer;
+  private final CommonTokenStream tokens;
+  private final JbContractParser parser;
+
+  private ParsingContext() {
+    this.lexer = new JbContractLexer(null);
+    this.lexer.removeErrorListeners();
+    this.lexer.addErrorListener(this.lexerErrors);
+
+    this.tokens = new CommonTokenStream(this.lexer);
+    this.parser = new JbContractParser(this.tokens);
+    this.parser.setBuildParseTree(false);
+    this.parser.addParseListener(this.builder);
+    this.parser.removeErrorListeners();
+    this.parser.addErrorListener(this.parserErrors);
+  }
+
+  /**
+   * Parse the {@code value} field of a contract.
+   *
+   * @param text the contract text
+   * @param malformed whether the text is already known to be malformed, so there is no point trying SLL prediction
+   * @return the parsed contract
+   */
+  static ParsedContract parseValue(final String text, final boolean malformed) {
+    final ParsingContext context = acquire();
+    final ParsedContract result = context.parse(text, JbContractParser::contract, malformed);
+    context.release();
+    return result;
+  }
+
+  /**
+   * Parse the {@code mutates} field of a contract.
+   *
+   * @param text the mutates text
+   * @param malformed whether the text is already known to be malformed, so there is no point trying SLL prediction
+   * @return the parsed contract
+   */
+  static ParsedContract parseMutates(final String text, final boolean malformed) {
+    final ParsingContext context = acquire();
+    final ParsedContract result = context.parse(text, JbContractParser::mutates, malformed);
+    context.release();
+    return result;
+  }
+
+  /**
+   * Take a context from the pool, or create one if the pool is empty.
+   *
+   * <p>A context is only returned to the pool once it has finished a parse, so one left part way through by an
+   * exception is dropped rather than reused.</p>
+   *
+   * @return a context for the calling thread's exclusive use
+   */
+  private static ParsingContext acquire() {
+    for (int i = 0; i < POOL.length(); i++) {
+      final ParsingContext context = POOL.get(i);
+      if (context != null && POOL.compareAndSet(i, context, null)) {
+        return context;
+      }
+    }
+    return new ParsingContext();
+  }
+
+  /**
+   * Return this context to the pool, dropping it if the pool is full.
+   */
+  private void release() {
+    for (int i = 0; i < POOL.length(); i++) {
+      if (POOL.get(i) == null && POOL.compareAndSet(i, null, this)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Parse a contract string, collecting syntax errors and the parsed structure as the parser runs.
+   *
+   * @param valueText the contract text
+   * @param rootNode the parser rule to start from
+   * @param malformed whether to go straight to LL prediction with error recovery
+   * @return the parsed contract
+   */
+  private ParsedContract parse(final String valueText, final Consumer<JbContractParser> rootNode, final boolean malformed) {
+    try {
+      return this.attempt(valueText, rootNode, malformed);
+    } catch (final ParseErrorListener.TooManyErrors ex) {
+      // a lexer error can abandon the parser while it enters a rule, before it can unwind, and a stale state would be
+      // taken as the caller of the next root rule
+      this.parser.setState(ATNState.INVALID_STATE_NUMBER);
+      this.builder.print(
+        Diagnostic.Kind.NOTE,
+        "Stopped parsing after %d syntax errors, so the rest of the contract was not checked",
+        ParseErrorListener.MAX_ERRORS
+      );
+      return this.builder.build(malformed ? ParsedContract.Strategy.ANTLR_LL_DIRECT : ParsedContract.Strategy.ANTLR_LL);
+    }
+  }
+
+  /**
+   * Parse a contract string, first with SLL prediction and no recovery unless it is already known to be malformed.
+   */
+  private ParsedContract attempt(final String valueText, final Consumer<JbContractParser> rootNode, final boolean malformed) {
+    // TODO: the error messages here can be a bit spammy, look at how to improve them sometime maybe?
+    // maybe suppress lexer errors, when a parser error happens, constrain the error location to be no further than the last
+    // successful token
+    this.builder.reset();
+    this.lexerErrors.reset(valueText, this.builder);
+    this.lexer.setInputStream(CharStreams.fromString(valueText));
+    this.tokens.setTokenSource(this.lexer);
+    if (malformed) {
+      // The scanner has already rejected this text, so an SLL attempt could only bail
+      this.parserErrors.reset(valueText, this.builder);
+      this.parser.setErrorHandler(this.recover);
+      this.parser.setTokenStream(this.tokens);
+      this.parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+      rootNode.accept(this.parser);
+      return this.builder.build(ParsedContract.Strategy.ANTLR_LL_DIRECT);
+    }
+    this.parserErrors.reset(valueText, null); // no errors from the first attempt
+
+    // try with faster SLL(*), with no recovery
+    this.parser.setErrorHandler(this.bail);
+    this.parser.setTokenStream(this.tokens); // also resets the parser
+    this.parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+    try {
+      rootNode.accept(this.parser);
+      return this.builder.build(ParsedContract.Strategy.ANTLR_SLL);
+    } catch (final ParseCancellationException ex) {
+      // Reset, now reporting errors. Lexer errors have already been seen
+      this.builder.resetStructure();
+      this.parserErrors.reset(valueText, this.builder);
+      this.parser.setErrorHandler(this.recover);
+      this.parser.reset();
+
+      // try again with full LL(*)
+      this.parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+      rootNode.accept(this.parser);
+      return this.builder.build(ParsedContract.Strategy.ANTLR_LL);
+    }
+  }
+
+}
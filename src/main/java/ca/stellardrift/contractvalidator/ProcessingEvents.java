@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+/**
+ * Hooks for recording what the processor does as Java Flight Recorder events.
+ *
+ * <p>The processor targets Java 8, which has no {@code jdk.jfr} API, so the events themselves are built separately
+ * against Java 11 and loaded by {@link #load()} where they can be. Otherwise, and whenever the events are not enabled
+ * in a recording, every hook does nothing: each {@code begin} method returns {@code null}, and the matching
+ * {@code end} method is then never called.</p>
+ *
+ * <p>Parse and validation events may be started from any thread. Validation and round events are committed on the
+ * processor thread.</p>
+ */
+class ProcessingEvents {
+
+  /**
+   * Hooks that never record anything.
+   */
+  static final ProcessingEvents NONE = new ProcessingEvents();
+
+  private static final String IMPLEMENTATION = "ca.stellardrift.contractvalidator.FlightRecorderEvents";
+
+  /**
+   * Load the Flight Recorder events if they were built and this JVM supports them.
+   *
+   * @return the available hooks
+   */
+  static ProcessingEvents load() {
+    try {
+      return (ProcessingEvents) Class.forName(IMPLEMENTATION, true, ProcessingEvents.class.getClassLoader())
+        .getDeclaredConstructor()
+        .newInstance();
+    } catch (final ReflectiveOperationException | LinkageError ex) {
+      // built without event support, or running on a JVM without jdk.jfr
+      return NONE;
+    }
+  }
+
+  /**
+   * Get whether parses are currently being recorded.
+   *
+   * @return whether {@link #beginParse()} could return an event
+   */
+  boolean parseEnabled() {
+    return false;
+  }
+
+  /**
+   * Start timing a parse of one contract string.
+   *
+   * @return the event, or {@code null} if parses are not being recorded
+   */
+  Object beginParse() {
+    return null;
+  }
+
+  /**
+   * Finish and commit a parse event.
+   *
+   * @param event the event returned by {@link #beginParse()}
+   * @param attribute the annotation field the text came from
+   * @param text the contract text
+   * @param result the parse result
+   */
+  void endParse(final Object event, final String attribute, final String text, final ParsedContract result) {
+  }
+
+  /**
+   * Start timing the validation of one element.
+   *
+   * @return the event, or {@code null} if validations are not being recorded
+   */
+  Object beginValidate() {
+    return null;
+  }
+
+  /**
+   * Stop timing a validation, on the thread it was validated on.
+   *
+   * @param event the event returned by {@link #beginValidate()}
+   */
+  void endValidate(final Object event) {
+  }
+
+  /**
+   * Commit a validation event once its diagnostics have been reported.
+   *
+   * @param event the event returned by {@link #beginValidate()}
+   * @param check the validated element
+   * @param diagnostics the number of diagnostics recorded for the element
+   */
+  void commitValidate(final Object event, final ElementCheck check, final int diagnostics) {
+  }
+
+  /**
+   * Start timing a processing round.
+   *
+   * @return the event, or {@code null} if rounds are not being recorded
+   */
+  Object beginRound() {
+    return null;
+  }
+
+  /**
+   * Finish and commit a round event.
+   *
+   * @param event the event returned by {@link #beginRound()}
+   * @param round the one-based number of the round
+   * @param elements the number of annotated elements seen
+   * @param diagnostics the number of diagnostics recorded
+   * @param suppressed the number of diagnostics held back by the diagnostic budget
+   */
+  void endRound(final Object event, final int round, final int elements, final int diagnostics, final int suppressed) {
+  }
+
+}
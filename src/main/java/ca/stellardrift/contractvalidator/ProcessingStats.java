@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and timings collected while processing, to judge how much the processor adds to a build.
+ *
+ * <p>Parses and validations may be recorded from any thread. Everything else must happen on the processor
+ * thread.</p>
+ */
+final class ProcessingStats {
+
+  /**
+   * How many of the slowest contract strings to report.
+   */
+  static final int SLOWEST_COUNT = 10;
+
+  private final List<Round> rounds = new ArrayList<>();
+  private final Round total = new Round();
+  private Round current = new Round();
+  private final PriorityQueue<SlowContract> slowest = new PriorityQueue<>(SlowContract.BY_TIME); // fastest at the head
+
+  /**
+   * Record that a round is validating elements.
+   *
+   * @param count the number of annotated elements seen
+   */
+  void elementsSeen(final int count) {
+    this.current.elements += count;
+  }
+
+  /**
+   * Record one actual parse of a contract string, as opposed to a cache hit.
+   *
+   * @param text the contract text
+   * @param result the parse result
+   * @param nanos the time taken to parse
+   */
+  synchronized void recordParse(final String text, final ParsedContract result, final long nanos) {
+    final Round round = this.current;
+    round.parsed++;
+    round.parseNanos.addAndGet(nanos);
+    switch (result.strategy()) {
+      case SCANNER:
+        round.scanned++;
+        break;
+      case ANTLR_LL_DIRECT:
+        round.llDirect++;
+        break;
+      case ANTLR_LL:
+        round.llFallbacks++;
+        break;
+      default:
+        break;
+    }
+
+    if (this.slowest.size() < SLOWEST_COUNT || this.slowest.peek().nanos < nanos) {
+      for (final SlowContract existing : this.slowest) {
+        if (existing.text.equals(text)) {
+          if (existing.nanos >= nanos) {
+            return;
+          }
+          this.slowest.remove(existing);
+          break;
+        }
+      }
+      this.slowest.add(new SlowContract(text, nanos));
+      if (this.slowest.size() > SLOWEST_COUNT) {
+        this.slowest.poll();
+      }
+    }
+  }
+
+  /**
+   * Record the validation of one element.
+   *
+   * @param nanos the time taken to validate, including preparing diagnostics but not reporting them
+   */
+  void recordValidation(final long nanos) {
+    this.current.validateNanos.addAndGet(nanos);
+  }
+
+  /**
+   * Finish the current round, adding it to the totals.
+   */
+  void endRound() {
+    final Round round = this.current;
+    this.rounds.add(round);
+    this.total.add(round);
+    this.current = new Round();
+  }
+
+  /**
+   * Summarize the totals for every round so far in a single line.
+   *
+   * @return the summary
+   */
+  String summary() {
+    return String.format(
+      Locale.ROOT,
+      "Contract validation: %d elements in %d round(s), %d contract strings parsed (%d by the fast path, %d malformed parsed with LL, "
+        + "%d fell back from SLL to LL), "
+        + "%.3f ms parsing, %.3f ms validating",
+      this.total.elements,
+      this.rounds.size(),
+      this.total.parsed,
+      this.total.scanned,
+      this.total.llDirect,
+      this.total.llFallbacks,
+      millis(this.total.parseNanos.get()),
+      millis(this.total.validateNanos.get())
+    );
+  }
+
+  /**
+   * Get the slowest contract strings parsed so far, slowest first.
+   *
+   * @return the slowest contracts
+   */
+  synchronized List<SlowContract> slowest() {
+    final List<SlowContract> result = new ArrayList<>(this.slowest);
+    result.sort(Collections.reverseOrder(SlowContract.BY_TIME));
+    return result;
+  }
+
+  /**
+   * Write the totals, each round, and the slowest contracts as a JSON document.
+   *
+   * @param writer the writer to write to
+   * @throws IOException if unable to write
+   */
+  void writeJson(final Writer writer) throws IOException {
+    writer.write("{\n  \"total\": ");
+    this.total.writeJson(writer);
+    writer.write(",\n  \"rounds\": [");
+    for (int i = 0; i < this.rounds.size(); i++) {
+      writer.write(i == 0 ? "\n    " : ",\n    ");
+      this.rounds.get(i).writeJson(writer);
+    }
+    writer.write("\n  ],\n  \"slowestContracts\": [");
+    final List<SlowContract> slowest = this.slowest();
+    for (int i = 0; i < slowest.size(); i++) {
+      writer.write(i == 0 ? "\n    " : ",\n    ");
+      writer.write("{\"contract\": ");
+      writeString(writer, slowest.get(i).text);
+      writer.write(String.format(Locale.ROOT, ", \"parseMillis\": %.3f}", millis(slowest.get(i).nanos)));
+    }
+    writer.write("\n  ]\n}\n");
+  }
+
+  private static double millis(final long nanos) {
+    return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  private static void writeString(final Writer writer, final String value) throws IOException {
+    writer.write('"');
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        writer.write('\\');
+        writer.write(c);
+      } else if (c < 0x20) {
+        writer.write(String.format(Locale.ROOT, "\\u%04x", (int) c));
+      } else {
+        writer.write(c);
+      }
+    }
+    writer.write('"');
+  }
+
+  /**
+   * Counters for a single round, or the total of several.
+   */
+  static final class Round {
+    int elements;
+    int parsed;
+    int scanned;
+    int llDirect;
+    int llFallbacks;
+    final AtomicLong parseNanos = new AtomicLong();
+    final AtomicLong validateNanos = new AtomicLong();
+
+    void add(final Round other) {
+      this.elements += other.elements;
+      this.parsed += other.parsed;
+      this.scanned += other.scanned;
+      this.llDirect += other.llDirect;
+      this.llFallbacks += other.llFallbacks;
+      this.parseNanos.addAndGet(other.parseNanos.get());
+      this.validateNanos.addAndGet(other.validateNanos.get());
+    }
+
+    void writeJson(final Writer writer) throws IOException {
+      writer.write(String.format(
+        Locale.ROOT,
+        "{\"elements\": %d, \"contractsParsed\": %d, \"fastPathParses\": %d, \"llDirect\": %d, "
+          + "\"llFallbacks\": %d, "
+          + "\"parseMillis\": %.3f, \"validateMillis\": %.3f}",
+        this.elements,
+        this.parsed,
+        this.scanned,
+        this.llDirect,
+        this.llFallbacks,
+        millis(this.parseNanos.get()),
+        millis(this.validateNanos.get())
+      ));
+    }
+  }
+
+  /**
+   * A contract string and the longest time it took to parse.
+   */
+  static final class SlowContract {
+    static final Comparator<SlowContract> BY_TIME = Comparator.comparingLong(contract -> contract.nanos);
+
+    final String text;
+    final long nanos;
+
+    SlowContract(final String text, final long nanos) {
+      this.text = text;
+      this.nanos = nanos;
+    }
+  }
+
+}
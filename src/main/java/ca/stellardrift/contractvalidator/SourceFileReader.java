@@ -0,0 +1,650 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A minimal Java source reader, pulling out the contract annotations on each method along with the parts of its
+ * signature that validation needs.
+ *
+ * <p>Sources are tokenized, but not parsed. Each {@code @Contract} is recognized by its name, and the method it
+ * annotates is read from the declaration header that follows: its modifiers, return type, name and parameter types
+ * as written. Since nothing is attributed, a type is only known to be primitive if it is spelled as a primitive
+ * keyword, and contract text is only known if it is written as string literals.</p>
+ */
+final class SourceFileReader {
+
+  private static final String CONTRACT = "Contract";
+  private static final String ANNOTATIONS_PACKAGE = "org.jetbrains.annotations";
+
+  /**
+   * The name given to constructors, as the compiler does.
+   */
+  static final String CONSTRUCTOR_NAME = "<init>";
+
+  private static final List<String> MODIFIERS = Arrays.asList(
+    "public", "protected", "private", "static", "abstract", "final", "native", "synchronized", "strictfp", "default"
+  );
+
+  // token types
+  private static final int EOF = -1;
+  private static final int IDENTIFIER = 0;
+  private static final int STRING = 1;
+  private static final int OTHER_LITERAL = 2;
+  private static final int PUNCTUATION = 3;
+
+  private final String source;
+  private int pos;
+  private int token;
+  private int tokenStart;
+  private int tokenEnd;
+  private int lastEnd; // the end of the token before the current one
+  private boolean contractImported;
+
+  private SourceFileReader(final String source) {
+    this.source = source;
+  }
+
+  /**
+   * Read every method with a contract annotation from a source file.
+   *
+   * @param source the source file contents
+   * @return the annotated methods, in declaration order
+   */
+  static List<ContractMethod> read(final String source) {
+    if (!source.contains(CONTRACT)) {
+      return Collections.emptyList();
+    }
+    return new SourceFileReader(source).read();
+  }
+
+  private List<ContractMethod> read() {
+    final List<ContractMethod> methods = new ArrayList<>();
+    boolean staticSeen = false; // since the last declaration ended
+    this.next();
+    while (this.token != EOF) {
+      if (this.token == IDENTIFIER) {
+        if (this.tokenIs("import")) {
+          this.readImport();
+          continue;
+        } else if (this.tokenIs("static")) {
+          staticSeen = true;
+        }
+        this.next();
+      } else if (this.isPunctuation('@')) {
+        final int annotationStart = this.tokenStart;
+        this.next();
+        if (this.tokenIs("interface")) {
+          continue;
+        }
+        final String name = this.qualifiedName();
+        if (this.isPunctuation('(')) {
+          if (this.isContract(name)) {
+            final ContractMethod method = this.readMethod(annotationStart, staticSeen);
+            if (method != null) {
+              methods.add(method);
+            }
+          } else {
+            this.skipBalanced('(', ')');
+          }
+        }
+      } else {
+        if (this.isPunctuation(';') || this.isPunctuation('{') || this.isPunctuation('}')) {
+          staticSeen = false;
+        }
+        this.next();
+      }
+    }
+    return methods;
+  }
+
+  private void readImport() {
+    this.next();
+    if (this.tokenIs("static")) {
+      this.next();
+    }
+    final String name = this.qualifiedName();
+    if (name.equals(ANNOTATIONS_PACKAGE + '.' + CONTRACT)
+      || name.equals(ANNOTATIONS_PACKAGE) && this.isPunctuation('*')) {
+      this.contractImported = true;
+    }
+    while (this.token != EOF && !this.isPunctuation(';')) {
+      this.next();
+    }
+  }
+
+  private boolean isContract(final String name) {
+    return name.equals(ANNOTATIONS_PACKAGE + '.' + CONTRACT) || this.contractImported && name.equals(CONTRACT);
+  }
+
+  /**
+   * Read a contract annotation's arguments, then the header of the method it annotates.
+   *
+   * @param annotationStart the offset of the {@code @} of the annotation
+   * @param staticSeen whether {@code static} came before the annotation
+   * @return the method, or {@code null} if the annotation is not on a method
+   */
+  private ContractMethod readMethod(final int annotationStart, final boolean staticSeen) {
+    // arguments: a single value, or name = value pairs
+    Literal value = null;
+    Literal mutates = null;
+    this.next();
+    while (this.token != EOF && !this.isPunctuation(')')) {
+      String field = "value";
+      if (this.token == IDENTIFIER) {
+        final int identifierStart = this.tokenStart;
+        final int identifierEnd = this.tokenEnd;
+        this.next();
+        if (this.isPunctuation('=')) {
+          field = this.source.substring(identifierStart, identifierEnd);
+          this.next();
+        } else {
+          this.skipExpression(); // a constant, which can't be resolved without attribution
+          field = null;
+        }
+      }
+      if (field != null) {
+        final Literal literal = this.literal();
+        if (field.equals("value")) {
+          value = literal;
+        } else if (field.equals("mutates")) {
+          mutates = literal;
+        }
+      }
+      if (this.isPunctuation(',')) {
+        this.next();
+      }
+    }
+    this.next();
+
+    boolean isStatic = staticSeen;
+    int typeStart = -1;
+    String name = null;
+    int nameStart = -1;
+    int typeEnd = -1;
+    while (this.token != EOF) {
+      if (this.token == IDENTIFIER) {
+        if (typeStart == -1 && MODIFIERS.contains(this.tokenText())) {
+          isStatic |= this.tokenIs("static");
+        } else {
+          if (typeStart == -1) {
+            typeStart = this.tokenStart;
+          }
+          name = this.tokenText();
+          nameStart = this.tokenStart;
+          typeEnd = this.lastEnd;
+        }
+        this.next();
+      } else if (this.isPunctuation('@')) {
+        this.skipAnnotation();
+      } else if (this.isPunctuation('<')) {
+        this.skipBalanced('<', '>'); // type parameters, or type arguments of the return type
+      } else if (this.isPunctuation('.') || this.isPunctuation('[') || this.isPunctuation(']')) {
+        this.next();
+      } else if (this.isPunctuation('(') && name != null) {
+        final boolean constructor = nameStart == typeStart;
+        final String returnType = constructor ? "void" : this.typeText(typeStart, typeEnd);
+        final List<Parameter> params = this.parameters();
+        final byte[] paramKinds = new byte[params.size()];
+        final Object[] paramTypes = new Object[params.size()];
+        for (int i = 0; i < paramKinds.length; i++) {
+          paramKinds[i] = params.get(i).kind;
+          paramTypes[i] = params.get(i).type;
+        }
+        final MethodShape shape = new MethodShape(
+          constructor ? CONSTRUCTOR_NAME : name,
+          isStatic,
+          paramKinds,
+          paramTypes,
+          kindOf(returnType),
+          returnType
+        );
+        return new ContractMethod(shape, annotationStart, value, mutates);
+      } else {
+        return null; // a field, type, parameter or anything else but a method
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Read the parameters of a method, from its opening parenthesis to just after its closing parenthesis.
+   *
+   * @return the parameters, without any receiver parameter
+   */
+  private List<Parameter> parameters() {
+    final List<Parameter> params = new ArrayList<>();
+    this.next();
+    while (this.token != EOF && !this.isPunctuation(')')) {
+      int typeStart = -1;
+      int typeEnd = -1;
+      String name = null;
+      int dimensions = 0; // brackets since the last identifier, so after the name once it has been read
+      int annotationStart = -1; // of annotations after the type, which belong to a varargs array
+      int varargsStart = -1;
+      while (this.token != EOF && !this.isPunctuation(',') && !this.isPunctuation(')')) {
+        if (this.token == IDENTIFIER) {
+          if (typeStart == -1 && this.tokenIs("final")) {
+            this.next();
+            continue;
+          }
+          if (typeStart == -1) {
+            typeStart = this.tokenStart;
+          }
+          name = this.tokenText();
+          typeEnd = this.lastEnd;
+          dimensions = 0;
+          annotationStart = -1;
+          this.next();
+        } else if (this.isPunctuation('@')) {
+          if (typeStart != -1 && annotationStart == -1) {
+            annotationStart = this.tokenStart;
+          }
+          this.skipAnnotation();
+        } else if (this.isPunctuation('<')) {
+          this.skipBalanced('<', '>');
+        } else {
+          if (this.isEllipsis()) {
+            varargsStart = annotationStart != -1 ? annotationStart : this.tokenStart;
+          }
+          if (this.isPunctuation('[')) {
+            dimensions++;
+          }
+          this.next();
+        }
+      }
+      if (this.isPunctuation(',')) {
+        this.next();
+      }
+
+      if (name == null || typeEnd <= typeStart || name.equals("this")) {
+        continue; // a receiver parameter, or something unreadable
+      }
+      // varargs, and brackets after the name, make an array of the type as written
+      final StringBuilder type = new StringBuilder(this.typeText(typeStart, varargsStart != -1 ? varargsStart : typeEnd));
+      if (varargsStart != -1) {
+        type.append("[]");
+      }
+      for (int i = 0; i < dimensions; i++) {
+        type.append("[]");
+      }
+      params.add(new Parameter(type.toString(), kindOf(type.toString())));
+    }
+    this.next();
+    return params;
+  }
+
+  /**
+   * Read a value made of string literals, concatenated with {@code +}.
+   *
+   * @return the literal, or {@code null} if the value is anything else
+   */
+  private Literal literal() {
+    final StringBuilder text = new StringBuilder();
+    int[] offsets = new int[16];
+    int start = -1;
+    while (this.token == STRING) {
+      if (start == -1) {
+        start = this.tokenStart;
+      }
+      final int end = this.tokenEnd - 1;
+      if (end <= this.tokenStart || this.source.charAt(end) != '"') {
+        break; // unterminated
+      }
+      int idx = this.tokenStart + 1;
+      while (idx < end) {
+        if (offsets.length <= text.length() + 1) {
+          offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[text.length()] = idx;
+        idx = this.unescape(idx, end, text);
+      }
+      offsets[text.length()] = end;
+      this.next();
+      if (!this.isPunctuation('+')) {
+        return new Literal(text.toString(), start, Arrays.copyOf(offsets, text.length() + 1));
+      }
+      this.next();
+    }
+    this.skipExpression();
+    return null;
+  }
+
+  /**
+   * Append the character at a position in a string literal, decoding any escape sequence.
+   *
+   * @param idx the offset of the character
+   * @param end the offset of the closing quote
+   * @param text the text to append to
+   * @return the offset of the next character
+   */
+  private int unescape(final int idx, final int end, final StringBuilder text) {
+    final char c = this.source.charAt(idx);
+    if (c != '\\' || idx + 1 >= end) {
+      text.append(c);
+      return idx + 1;
+    }
+
+    final char escaped = this.source.charAt(idx + 1);
+    switch (escaped) {
+      case 'b': text.append('\b'); return idx + 2;
+      case 't': text.append('\t'); return idx + 2;
+      case 'n': text.append('\n'); return idx + 2;
+      case 'f': text.append('\f'); return idx + 2;
+      case 'r': text.append('\r'); return idx + 2;
+      case 's': text.append(' '); return idx + 2;
+      case 'u':
+        int unicode = idx + 1;
+        while (unicode < end && this.source.charAt(unicode) == 'u') {
+          unicode++;
+        }
+        if (unicode + 4 <= end) {
+          try {
+            text.append((char) Integer.parseInt(this.source.substring(unicode, unicode + 4), 16));
+            return unicode + 4;
+          } catch (final NumberFormatException ignored) {
+            // not a valid escape, so javac will have reported it
+          }
+        }
+        text.append(escaped);
+        return idx + 2;
+      default:
+        if (escaped >= '0' && escaped <= '7') {
+          // up to three octal digits, at most \377
+          final int maxLength = escaped <= '3' ? 3 : 2;
+          int octalEnd = idx + 1;
+          int octal = 0;
+          while (octalEnd < end && octalEnd - idx - 1 < maxLength && this.source.charAt(octalEnd) >= '0' && this.source.charAt(octalEnd) <= '7') {
+            octal = octal * 8 + this.source.charAt(octalEnd) - '0';
+            octalEnd++;
+          }
+          text.append((char) octal);
+          return octalEnd;
+        }
+        text.append(escaped); // quotes and backslashes
+        return idx + 2;
+    }
+  }
+
+  private String typeText(final int start, final int end) {
+    // as written, but on one line
+    final StringBuilder text = new StringBuilder(end - start);
+    boolean space = false;
+    for (int i = start; i < end; i++) {
+      final char c = this.source.charAt(i);
+      if (Character.isWhitespace(c)) {
+        space = text.length() > 0;
+      } else {
+        if (space) {
+          text.append(' ');
+          space = false;
+        }
+        text.append(c);
+      }
+    }
+    return text.toString();
+  }
+
+  private static byte kindOf(final String type) {
+    switch (type) {
+      case "boolean":
+        return MethodShape.BOOLEAN;
+      case "byte": case "char": case "short": case "int": case "long": case "float": case "double":
+        return MethodShape.PRIMITIVE;
+      default:
+        return MethodShape.REFERENCE;
+    }
+  }
+
+  // Token-level helpers
+
+  private String qualifiedName() {
+    if (this.token != IDENTIFIER) {
+      return "";
+    }
+    final StringBuilder name = new StringBuilder(this.tokenText());
+    this.next();
+    while (this.isPunctuation('.')) {
+      this.next();
+      if (this.token != IDENTIFIER) {
+        break; // a wildcard, left as the current token
+      }
+      name.append('.').append(this.tokenText());
+      this.next();
+    }
+    return name.toString();
+  }
+
+  private void skipAnnotation() {
+    this.next();
+    this.qualifiedName();
+    if (this.isPunctuation('(')) {
+      this.skipBalanced('(', ')');
+    }
+  }
+
+  /**
+   * Skip from an opening bracket to just after the matching closing bracket.
+   *
+   * @param open the opening bracket, which must be the current token
+   * @param close the closing bracket
+   */
+  private void skipBalanced(final char open, final char close) {
+    int depth = 0;
+    do {
+      if (this.isPunctuation(open)) {
+        depth++;
+      } else if (this.isPunctuation(close)) {
+        depth--;
+      }
+      this.next();
+    } while (depth > 0 && this.token != EOF);
+  }
+
+  /**
+   * Skip to the end of an annotation argument, at a comma or closing parenthesis outside any brackets.
+   */
+  private void skipExpression() {
+    int depth = 0;
+    while (this.token != EOF) {
+      if (this.isPunctuation('(') || this.isPunctuation('{') || this.isPunctuation('[')) {
+        depth++;
+      } else if (this.isPunctuation(')') || this.isPunctuation('}') || this.isPunctuation(']')) {
+        if (depth == 0) {
+          return;
+        }
+        depth--;
+      } else if (depth == 0 && this.isPunctuation(',')) {
+        return;
+      }
+      this.next();
+    }
+  }
+
+  private boolean isPunctuation(final char c) {
+    return this.token == PUNCTUATION && this.tokenEnd - this.tokenStart == 1 && this.source.charAt(this.tokenStart) == c;
+  }
+
+  private boolean isEllipsis() {
+    return this.token == PUNCTUATION && this.tokenEnd - this.tokenStart == 3;
+  }
+
+  private boolean tokenIs(final String identifier) {
+    return this.token == IDENTIFIER
+      && this.tokenEnd - this.tokenStart == identifier.length()
+      && this.source.startsWith(identifier, this.tokenStart);
+  }
+
+  private String tokenText() {
+    return this.source.substring(this.tokenStart, this.tokenEnd);
+  }
+
+  /**
+   * Move to the next token, skipping whitespace and comments.
+   */
+  private void next() {
+    this.lastEnd = this.tokenEnd;
+    final String source = this.source;
+    final int length = source.length();
+    int pos = this.pos;
+    while (pos < length) {
+      final char c = source.charAt(pos);
+      if (c == '/' && pos + 1 < length && source.charAt(pos + 1) == '/') {
+        while (pos < length && source.charAt(pos) != '\n' && source.charAt(pos) != '\r') {
+          pos++;
+        }
+      } else if (c == '/' && pos + 1 < length && source.charAt(pos + 1) == '*') {
+        final int end = source.indexOf("*/", pos + 2);
+        pos = end == -1 ? length : end + 2;
+      } else if (Character.isWhitespace(c)) {
+        pos++;
+      } else {
+        break;
+      }
+    }
+
+    this.tokenStart = pos;
+    if (pos >= length) {
+      this.token = EOF;
+      this.tokenEnd = this.pos = length;
+      return;
+    }
+
+    final char c = source.charAt(pos);
+    if (Character.isJavaIdentifierStart(c)) {
+      pos++;
+      while (pos < length && Character.isJavaIdentifierPart(source.charAt(pos))) {
+        pos++;
+      }
+      this.token = IDENTIFIER;
+    } else if (c >= '0' && c <= '9' || c == '.' && pos + 1 < length && source.charAt(pos + 1) >= '0' && source.charAt(pos + 1) <= '9') {
+      pos++;
+      while (pos < length && (Character.isJavaIdentifierPart(source.charAt(pos)) || source.charAt(pos) == '.')) {
+        pos++;
+      }
+      this.token = OTHER_LITERAL;
+    } else if (c == '"' && source.startsWith("\"\"\"", pos)) {
+      // a text block, which is not read as contract text
+      pos += 3;
+      while (pos < length && !source.startsWith("\"\"\"", pos)) {
+        pos += source.charAt(pos) == '\\' ? 2 : 1;
+      }
+      pos = Math.min(length, pos + 3);
+      this.token = OTHER_LITERAL;
+    } else if (c == '"' || c == '\'') {
+      pos++;
+      while (pos < length) {
+        final char next = source.charAt(pos);
+        if (next == '\\') {
+          pos += 2;
+          continue;
+        } else if (next == '\n' || next == '\r') {
+          break; // unterminated
+        }
+        pos++;
+        if (next == c) {
+          break;
+        }
+      }
+      pos = Math.min(length, pos);
+      this.token = c == '"' ? STRING : OTHER_LITERAL;
+    } else if (c == '.' && source.startsWith("...", pos)) {
+      pos += 3;
+      this.token = PUNCTUATION;
+    } else {
+      pos++;
+      this.token = PUNCTUATION;
+    }
+    this.tokenEnd = this.pos = pos;
+  }
+
+  /**
+   * The contract text of one annotation field, with where each character came from.
+   */
+  static final class Literal {
+    final String text;
+    final int start;
+    final int[] offsets;
+
+    /**
+     * Create a new literal.
+     *
+     * @param text the decoded text
+     * @param start the offset of the opening quote of the first string literal
+     * @param offsets the offset in the source of each character of the text, then of the closing quote
+     */
+    Literal(final String text, final int start, final int[] offsets) {
+      this.text = text;
+      this.start = start;
+      this.offsets = offsets;
+    }
+
+    /**
+     * Find where a position in the text was written in the source.
+     *
+     * @param position an offset into the text, or {@code -1} if unknown
+     * @return the source offset, or the start of the literal for an unknown position
+     */
+    int sourceOffset(final int position) {
+      if (position < 0) {
+        return this.start;
+      }
+      return this.offsets[Math.min(position, this.offsets.length - 1)];
+    }
+  }
+
+  /**
+   * A parameter as written in a method header.
+   */
+  private static final class Parameter {
+    final String type;
+    final byte kind;
+
+    Parameter(final String type, final byte kind) {
+      this.type = type;
+      this.kind = kind;
+    }
+  }
+
+  /**
+   * A method annotated with a contract.
+   */
+  static final class ContractMethod {
+    final MethodShape shape;
+    final int annotationStart;
+    final Literal value;
+    final Literal mutates;
+
+    ContractMethod(final MethodShape shape, final int annotationStart, final Literal value, final Literal mutates) {
+      this.shape = shape;
+      this.annotationStart = annotationStart;
+      this.value = value;
+      this.mutates = mutates;
+    }
+
+    @Override
+    public String toString() {
+      return this.shape.name().toString();
+    }
+  }
+
+}
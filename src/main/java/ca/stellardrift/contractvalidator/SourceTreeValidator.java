@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import javax.tools.Diagnostic;
+
+/**
+ * Check the contracts in Java source trees without compiling them, such as from a pre-commit hook.
+ *
+ * <p>Each source file is read by {@link SourceFileReader}, which finds methods annotated with {@code @Contract} and
+ * reads their signatures as written. Files are checked in parallel, with the same rules applied by the annotation
+ * processor, and diagnostics are printed as {@code file:line:column} in a stable order, sorted by file. Files are
+ * read as UTF-8, and columns count characters from {@code 1}.</p>
+ *
+ * <p>Without attribution, only primitive types spelled as keywords are known to be primitive, contracts given as
+ * constants rather than string literals are skipped, and overriding methods are not compared.</p>
+ *
+ * <p>Usage: {@code SourceTreeValidator [--threads <count>] <directory or source file>...}. The exit code is
+ * {@code 0} when no errors were found, {@code 1} if there were errors, and {@code 2} if the inputs could not be
+ * read.</p>
+ */
+public final class SourceTreeValidator {
+
+  private static final String EXTENSION = ".java";
+  private static final byte[] CONTRACT = "Contract".getBytes(StandardCharsets.US_ASCII);
+
+  private final ContractChecker checker = new ContractChecker();
+
+  private SourceTreeValidator() {
+  }
+
+  public static void main(final String... args) {
+    System.exit(run(args, System.out, System.err));
+  }
+
+  /**
+   * Validate every source file found in the paths given as arguments.
+   *
+   * @param args the command-line arguments
+   * @param out the stream to print diagnostics to
+   * @param err the stream to print usage and summary information to
+   * @return the exit code
+   */
+  static int run(final String[] args, final PrintStream out, final PrintStream err) {
+    int threads = Runtime.getRuntime().availableProcessors();
+    final List<Path> inputs = new ArrayList<>();
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("--threads") && i + 1 < args.length) {
+        try {
+          threads = Integer.parseInt(args[++i]);
+        } catch (final NumberFormatException ex) {
+          threads = 0;
+        }
+        if (threads < 1) {
+          err.println("--threads must be a positive integer, but was '" + args[i] + "'");
+          return 2;
+        }
+      } else if (args[i].equals("--help") || args[i].startsWith("-")) {
+        err.println("Usage: SourceTreeValidator [--threads <count>] <directory or source file>...");
+        return 2;
+      } else {
+        inputs.add(Paths.get(args[i]));
+      }
+    }
+    if (inputs.isEmpty()) {
+      err.println("Usage: SourceTreeValidator [--threads <count>] <directory or source file>...");
+      return 2;
+    }
+
+    final ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      final List<SourceFile> sourceFiles = new ArrayList<>();
+      for (final Path input : inputs) {
+        collect(input, sourceFiles);
+      }
+
+      final SourceTreeValidator validator = new SourceTreeValidator();
+      ForEachTask.run(pool, sourceFiles, validator::validate);
+
+      int errors = 0;
+      int warnings = 0;
+      int failures = 0;
+      int annotated = 0;
+      for (final SourceFile file : sourceFiles) {
+        for (final String message : file.messages) {
+          out.println(message);
+        }
+        errors += file.errors;
+        warnings += file.warnings;
+        annotated += file.annotatedMethods;
+        if (file.failure != null) {
+          err.println(file.path + ": unable to read source: " + file.failure);
+          failures++;
+        }
+      }
+
+      err.printf(
+        Locale.ROOT,
+        "Checked %d annotated method(s) in %d source file(s): %d error(s), %d warning(s)%n",
+        annotated,
+        sourceFiles.size(),
+        errors,
+        warnings
+      );
+      return failures > 0 ? 2 : errors > 0 ? 1 : 0;
+    } catch (final IOException ex) {
+      err.println("Unable to read inputs: " + ex);
+      return 2;
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private static void collect(final Path input, final List<SourceFile> sourceFiles) throws IOException {
+    if (!Files.isDirectory(input)) {
+      sourceFiles.add(new SourceFile(input));
+      return;
+    }
+
+    final List<Path> found = new ArrayList<>();
+    Files.walkFileTree(input, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+        // skip .git and the like, which can be large and never hold sources to check
+        final Path name = dir.getFileName();
+        return !dir.equals(input) && name != null && name.toString().startsWith(".")
+          ? FileVisitResult.SKIP_SUBTREE
+          : FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+        if (attrs.isRegularFile() && file.getFileName().toString().endsWith(EXTENSION)) {
+          found.add(file);
+        }
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    Collections.sort(found);
+    for (final Path file : found) {
+      sourceFiles.add(new SourceFile(file));
+    }
+  }
+
+  private void validate(final SourceFile file) {
+    final String source;
+    try {
+      final byte[] contents = Files.readAllBytes(file.path);
+      if (!contains(contents, CONTRACT)) {
+        return; // most files, which are not worth decoding
+      }
+      source = new String(contents, StandardCharsets.UTF_8);
+    } catch (final IOException ex) {
+      file.failure = ex.toString();
+      return;
+    }
+
+    final List<SourceFileReader.ContractMethod> methods = SourceFileReader.read(source);
+    file.annotatedMethods = methods.size();
+    int[] lineStarts = null;
+    for (final SourceFileReader.ContractMethod method : methods) {
+      for (int field = 0; field < 2; field++) {
+        final SourceFileReader.Literal literal = field == 0 ? method.value : method.mutates;
+        if (literal == null) {
+          continue;
+        }
+        final List<ContractDiagnostic> diagnostics = field == 0
+          ? this.checker.checkValue(literal.text, method.shape)
+          : this.checker.checkMutates(literal.text, method.shape);
+        for (final ContractDiagnostic diagnostic : diagnostics) {
+          if (lineStarts == null) {
+            lineStarts = lineStarts(source);
+          }
+          file.report(diagnostic.kind(), lineStarts, literal.sourceOffset(diagnostic.startOffset()), diagnostic.message());
+        }
+      }
+    }
+  }
+
+  private static boolean contains(final byte[] contents, final byte[] needle) {
+    final byte first = needle[0];
+    outer:
+    for (int i = 0, max = contents.length - needle.length; i <= max; i++) {
+      if (contents[i] != first) {
+        continue;
+      }
+      for (int j = 1; j < needle.length; j++) {
+        if (contents[i + j] != needle[j]) {
+          continue outer;
+        }
+      }
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Find the offset each line starts at, with lines ended by any of {@code \n}, {@code \r\n} or {@code \r}.
+   *
+   * @param source the source text
+   * @return the start offsets, in ascending order
+   */
+  static int[] lineStarts(final String source) {
+    int[] starts = new int[64];
+    int count = 1;
+    for (int i = 0; i < source.length(); i++) {
+      final char c = source.charAt(i);
+      if (c == '\n' || c == '\r' && (i + 1 == source.length() || source.charAt(i + 1) != '\n')) {
+        if (count == starts.length) {
+          starts = Arrays.copyOf(starts, count * 2);
+        }
+        starts[count++] = i + 1;
+      }
+    }
+    return Arrays.copyOf(starts, count);
+  }
+
+  /**
+   * A source file to check, and the results of checking it.
+   */
+  static final class SourceFile {
+    final Path path;
+    final List<String> messages = new ArrayList<>(0);
+    int annotatedMethods;
+    int errors;
+    int warnings;
+    String failure;
+
+    SourceFile(final Path path) {
+      this.path = path;
+    }
+
+    void report(final Diagnostic.Kind kind, final int[] lineStarts, final int offset, final CharSequence message) {
+      if (kind == Diagnostic.Kind.ERROR) {
+        this.errors++;
+      } else if (kind == Diagnostic.Kind.WARNING || kind == Diagnostic.Kind.MANDATORY_WARNING) {
+        this.warnings++;
+      }
+      int line = Arrays.binarySearch(lineStarts, offset);
+      if (line < 0) {
+        line = -line - 2; // the line starting before the offset
+      }
+      final int column = offset - lineStarts[line] + 1;
+      this.messages.add(this.path + ":" + (line + 1) + ":" + column + ": " + kind.name().toLowerCase(Locale.ROOT) + ": " + message);
+    }
+  }
+
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An on-disk record of types whose contracts were found valid, so they can be skipped when recompiled unchanged.
+ *
+ * <p>Each type is stored with a fingerprint of everything validation depends on: the contract strings and the
+ * relevant parts of each annotated method's signature. A type is only skipped when its fingerprint matches, and a
+ * store written by another build of the validator is ignored, so a stale or foreign store can cause extra work but
+ * never hide an error.</p>
+ */
+final class ValidationResultStore {
+
+  /**
+   * Header of the store file, naming the {@link ValidatorBuild validator build} that wrote it, so that results found
+   * under any other build's rules are discarded.
+   */
+  static final String HEADER = "contract-validator results v3 " + Long.toHexString(ValidatorBuild.ID);
+
+  private final Path file;
+  private final Map<String, Long> validTypes;
+  private boolean dirty;
+
+  private ValidationResultStore(final Path file, final Map<String, Long> validTypes) {
+    this.file = file;
+    this.validTypes = validTypes;
+  }
+
+  /**
+   * Load a store from disk.
+   *
+   * <p>A missing, corrupt, or outdated file produces an empty store.</p>
+   *
+   * @param file the file to load from and save to
+   * @return the store
+   * @throws IOException if the file exists but could not be read
+   */
+  static ValidationResultStore load(final Path file) throws IOException {
+    final Map<String, Long> types = new HashMap<>();
+    try (final BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      if (!HEADER.equals(reader.readLine())) {
+        return new ValidationResultStore(file, types);
+      }
+
+      String line;
+      while ((line = reader.readLine()) != null) {
+        final int split = line.indexOf('\t');
+        if (split == -1) {
+          types.clear();
+          break;
+        }
+        try {
+          types.put(line.substring(0, split), Long.parseUnsignedLong(line.substring(split + 1), 16));
+        } catch (final NumberFormatException ex) {
+          types.clear();
+          break;
+        }
+      }
+    } catch (final NoSuchFileException ex) {
+      // new store
+    }
+    return new ValidationResultStore(file, types);
+  }
+
+  /**
+   * Get whether a type has previously been validated without any diagnostics.
+   *
+   * @param type the binary name of the type
+   * @param fingerprint the current fingerprint of the type
+   * @return whether validation can be skipped
+   */
+  boolean isValid(final String type, final long fingerprint) {
+    final Long existing = this.validTypes.get(type);
+    return existing != null && existing == fingerprint;
+  }
+
+  /**
+   * Record the outcome of validating a type.
+   *
+   * @param type the binary name of the type
+   * @param fingerprint the fingerprint of the type
+   * @param valid whether validation produced no diagnostics at all
+   */
+  void record(final String type, final long fingerprint, final boolean valid) {
+    if (valid) {
+      final Long previous = this.validTypes.put(type, fingerprint);
+      this.dirty |= previous == null || previous != fingerprint;
+    } else {
+      this.dirty |= this.validTypes.remove(type) != null;
+    }
+  }
+
+  /**
+   * Write any changes back to disk.
+   *
+   * <p>The file is replaced atomically where supported, so concurrent readers never see a partial store.</p>
+   *
+   * @throws IOException if the store could not be written
+   */
+  void save() throws IOException {
+    if (!this.dirty) {
+      return;
+    }
+
+    final Path parent = this.file.toAbsolutePath().getParent();
+    Files.createDirectories(parent);
+    final Path temp = Files.createTempFile(parent, this.file.getFileName().toString(), ".tmp");
+    try {
+      try (final BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+        writer.write(HEADER);
+        writer.newLine();
+        for (final Map.Entry<String, Long> entry : new TreeMap<>(this.validTypes).entrySet()) {
+          writer.write(entry.getKey());
+          writer.write('\t');
+          writer.write(Long.toHexString(entry.getValue()));
+          writer.newLine();
+        }
+      }
+      try {
+        Files.move(temp, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (final AtomicMoveNotSupportedException ex) {
+        Files.move(temp, this.file, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+    this.dirty = false;
+  }
+
+  /**
+   * A 64-bit FNV-1a hash over the inputs to validation.
+   */
+  static final class Fingerprint {
+    private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private long hash = OFFSET_BASIS;
+
+    Fingerprint add(final int value) {
+      for (int shift = 0; shift < Integer.SIZE; shift += Byte.SIZE) {
+        this.hash = (this.hash ^ ((value >>> shift) & 0xff)) * PRIME;
+      }
+      return this;
+    }
+
+    Fingerprint add(final CharSequence value) {
+      if (value == null) {
+        return this.add(-1);
+      }
+
+      final int length = value.length();
+      this.add(length);
+      for (int i = 0; i < length; i++) {
+        final char c = value.charAt(i);
+        this.hash = (this.hash ^ (c & 0xff)) * PRIME;
+        this.hash = (this.hash ^ (c >>> Byte.SIZE)) * PRIME;
+      }
+      return this;
+    }
+
+    Fingerprint add(final byte[] value, final int length) {
+      for (int i = 0; i < length; i++) {
+        this.hash = (this.hash ^ (value[i] & 0xff)) * PRIME;
+      }
+      return this;
+    }
+
+    long value() {
+      return this.hash;
+    }
+  }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Identifies the build of the validator, so that results saved by one build are never trusted by another whose rules
+ * may differ.
+ *
+ * <p>A release is identified by the implementation version in its jar's manifest. Snapshots, and classes loaded
+ * straight from a build directory, keep the same version as their rules change, so they are identified by a hash of
+ * their contents instead. If neither can be read, the identity is random, and saved results are only reused within
+ * one JVM.</p>
+ */
+final class ValidatorBuild {
+
+  /**
+   * The identity of the running build.
+   */
+  static final long ID = identify();
+
+  private static final String SNAPSHOT = "-SNAPSHOT";
+
+  private ValidatorBuild() {
+  }
+
+  private static long identify() {
+    final Package pkg = ValidatorBuild.class.getPackage();
+    final String version = pkg == null ? null : pkg.getImplementationVersion();
+    if (version != null && !version.endsWith(SNAPSHOT)) {
+      return new ValidationResultStore.Fingerprint().add(version).value();
+    }
+
+    final CodeSource source = ValidatorBuild.class.getProtectionDomain().getCodeSource();
+    final URL location = source == null ? null : source.getLocation();
+    if (location != null) {
+      try {
+        return contents(Paths.get(location.toURI()));
+      } catch (final IOException | URISyntaxException | IllegalArgumentException | FileSystemNotFoundException ex) {
+        // not a readable file, so fall back to an identity of our own
+      }
+    }
+    return new Random().nextLong();
+  }
+
+  /**
+   * Hash a jar, or every file in a class directory.
+   *
+   * @param location the jar or directory the validator was loaded from
+   * @return the hash
+   * @throws IOException if any file could not be read
+   */
+  static long contents(final Path location) throws IOException {
+    final ValidationResultStore.Fingerprint fingerprint = new ValidationResultStore.Fingerprint();
+    if (!Files.isDirectory(location)) {
+      add(fingerprint, location);
+      return fingerprint.value();
+    }
+
+    final List<Path> files;
+    try (final Stream<Path> walk = Files.walk(location)) {
+      files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+    }
+    for (final Path file : files) {
+      fingerprint.add(location.relativize(file).toString());
+      add(fingerprint, file);
+    }
+    return fingerprint.value();
+  }
+
+  private static void add(final ValidationResultStore.Fingerprint fingerprint, final Path file) throws IOException {
+    final byte[] buffer = new byte[8192];
+    try (final InputStream in = Files.newInputStream(file)) {
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        fingerprint.add(buffer, read);
+      }
+    }
+  }
+
+}
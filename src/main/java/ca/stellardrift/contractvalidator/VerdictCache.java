@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded cache of validation results, keyed by contract text and {@link MethodShape#key() signature shape}.
+ *
+ * <p>The same contract is often declared on many methods with the same shape, such as {@code null -> null} on
+ * methods taking and returning an object. Validating that combination once lets every later occurrence skip both
+ * parsing and validation. Diagnostics are stored as validated against a {@link MethodShape#template() template},
+ * so they can be resolved against each method they are reported for. The least recently used entry is evicted
+ * when the cache is full.</p>
+ *
+ * <p>A cache can be backed by a {@link VerdictFile}, which is consulted on a miss and given every new verdict.</p>
+ *
+ * <p>This cache is not thread-safe.</p>
+ */
+final class VerdictCache {
+
+  private final int maximumSize;
+  private final VerdictFile file;
+  private final String field;
+  private final int maxContractLength;
+  private final Map<Key, List<ContractDiagnostic>> entries;
+  private long hits;
+  private long fileHits;
+  private long misses;
+
+  /**
+   * Create a new cache.
+   *
+   * @param maximumSize the maximum number of entries to hold, or {@code 0} to disable caching
+   */
+  VerdictCache(final int maximumSize) {
+    this(maximumSize, null, null, 0);
+  }
+
+  /**
+   * Create a new cache, backed by a file.
+   *
+   * @param maximumSize the maximum number of entries to hold in memory, or {@code 0} to only use the file
+   * @param file the file to share verdicts through, or {@code null}
+   * @param field the name of the annotation field whose verdicts are cached, distinguishing them in the file
+   * @param maxContractLength the longest contract that is parsed, or {@code 0} for no limit, also distinguishing
+   *     verdicts in the file
+   */
+  VerdictCache(final int maximumSize, final VerdictFile file, final String field, final int maxContractLength) {
+    if (maximumSize < 0) {
+      throw new IllegalArgumentException("Maximum size must be non-negative, but was " + maximumSize);
+    }
+    this.maximumSize = maximumSize;
+    this.file = file;
+    this.field = field;
+    this.maxContractLength = maxContractLength;
+    this.entries = new LinkedHashMap<Key, List<ContractDiagnostic>>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<Key, List<ContractDiagnostic>> eldest) {
+        return this.size() > VerdictCache.this.maximumSize;
+      }
+    };
+  }
+
+  /**
+   * Get the diagnostics for a contract on a shape, if they are cached.
+   *
+   * @param text the contract text
+   * @param shapeKey the key of the method's shape
+   * @return the diagnostics, or {@code null} on a miss
+   */
+  List<ContractDiagnostic> lookup(final String text, final long shapeKey) {
+    if (this.maximumSize == 0 && this.file == null) {
+      return null;
+    }
+
+    final Key key = new Key(text, shapeKey);
+    List<ContractDiagnostic> result = this.entries.get(key);
+    if (result == null && this.file != null) {
+      result = this.file.lookup(this.field, this.maxContractLength, text, shapeKey);
+      if (result != null) {
+        this.fileHits++;
+        if (this.maximumSize > 0) {
+          this.entries.put(key, result);
+        }
+      }
+    }
+
+    if (result != null) {
+      this.hits++;
+    } else {
+      this.misses++;
+    }
+    return result;
+  }
+
+  /**
+   * Add the diagnostics for a contract after a {@link #lookup(String, long) lookup} missed.
+   *
+   * @param text the contract text
+   * @param shapeKey the key of the method's shape
+   * @param verdict the diagnostics, as reported against the shape's template
+   */
+  void put(final String text, final long shapeKey, final List<ContractDiagnostic> verdict) {
+    if (this.maximumSize > 0) {
+      this.entries.put(new Key(text, shapeKey), verdict);
+    }
+    if (this.file != null) {
+      this.file.add(this.field, this.maxContractLength, text, shapeKey, verdict);
+    }
+  }
+
+  int size() {
+    return this.entries.size();
+  }
+
+  long hits() {
+    return this.hits;
+  }
+
+  /**
+   * Get the number of hits that were found in the backing file, rather than in memory.
+   *
+   * @return the number of file hits, included in {@link #hits()}
+   */
+  long fileHits() {
+    return this.fileHits;
+  }
+
+  long misses() {
+    return this.misses;
+  }
+
+  private static final class Key {
+    final String text;
+    final long shape;
+
+    Key(final String text, final long shape) {
+      this.text = text;
+      this.shape = shape;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      final Key that = (Key) other;
+      return this.shape == that.shape && this.text.equals(that.text);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * this.text.hashCode() + Long.hashCode(this.shape);
+    }
+  }
+
+}
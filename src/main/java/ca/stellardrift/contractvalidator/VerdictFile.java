@@ -0,0 +1,466 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.CRC32;
+import javax.tools.Diagnostic;
+
+/**
+ * An on-disk cache of validation verdicts, shared between builds and between compiler processes.
+ *
+ * <p>Verdicts are stored as in a {@link VerdictCache}: the diagnostics for a contract on a
+ * {@link MethodShape#key() shape}, validated against a template of that shape. A verdict with no diagnostics is a
+ * known-good contract. Verdicts are also keyed by the contract length limit they were found under, since that
+ * decides whether a contract is parsed at all.</p>
+ *
+ * <p>The file is a header followed by a log of records, each framed by its length and a CRC-32 checksum. It is
+ * memory mapped and indexed once per compiler JVM, and decoded lazily as verdicts are looked up. New verdicts are
+ * appended at the end of processing, and the file is compacted once most of its records are duplicates.</p>
+ *
+ * <p>A file written by another build of the validator, or with the wrong header, is ignored and replaced, and
+ * reading stops at the first damaged record, so a corrupt or outdated file can cost extra work but never produce a
+ * wrong verdict. Writes are serialized between processes through a lock on a sibling {@code .lock} file, and within a
+ * JVM through a monitor for each file.</p>
+ */
+final class VerdictFile {
+
+  private static final int MAGIC = 0x43565644; // CVVD
+  /**
+   * Version of the file's layout. Verdicts are also discarded when the file was written by any other
+   * {@link ValidatorBuild validator build}, so this only needs to change with the layout itself.
+   */
+  static final int FORMAT = 5;
+  private static final int HEADER_SIZE = 16;
+  private static final int FRAME_SIZE = 8; // length and checksum
+  private static final int MIN_COMPACTION_RECORDS = 64;
+
+  private static final byte ARG_PLACEHOLDER = 0;
+  private static final byte ARG_INTEGER = 1;
+  private static final byte ARG_STRING = 2;
+
+  private static final Diagnostic.Kind[] KINDS = Diagnostic.Kind.values();
+  private static final ConcurrentMap<Path, VerdictFile> OPEN = new ConcurrentHashMap<>();
+  private static final ConcurrentMap<Path, Object> WRITE_LOCKS = new ConcurrentHashMap<>(); // file locks are per-JVM
+
+  private final Path file;
+  private ByteBuffer mapped;
+  private Map<Long, Integer> index; // key hash to the offset of a record's body
+  private final Map<Long, byte[]> pending = new LinkedHashMap<>();
+
+  private VerdictFile(final Path file, final ByteBuffer mapped, final Map<Long, Integer> index) {
+    this.file = file;
+    this.mapped = mapped;
+    this.index = index;
+  }
+
+  /**
+   * Get the verdict file at a path, loading it if this JVM has not already.
+   *
+   * <p>A missing, corrupt, or outdated file produces an empty cache.</p>
+   *
+   * @param file the cache file
+   * @return the verdict file
+   * @throws IOException if the file exists but could not be read
+   */
+  static VerdictFile open(final Path file) throws IOException {
+    final Path normalized = file.toAbsolutePath().normalize();
+    final VerdictFile existing = OPEN.get(normalized);
+    if (existing != null) {
+      return existing;
+    }
+
+    final VerdictFile loaded = load(normalized);
+    final VerdictFile raced = OPEN.putIfAbsent(normalized, loaded);
+    return raced != null ? raced : loaded;
+  }
+
+  /**
+   * Load a verdict file, without sharing the instance with other callers.
+   *
+   * @param file the absolute path to the cache file
+   * @return the verdict file
+   * @throws IOException if the file exists but could not be read
+   */
+  static VerdictFile load(final Path file) throws IOException {
+    final ByteBuffer mapped;
+    try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      mapped = map(channel);
+    } catch (final NoSuchFileException ex) {
+      return new VerdictFile(file, ByteBuffer.allocate(0), new HashMap<>());
+    }
+
+    final Map<Long, Integer> index = new HashMap<>();
+    new Scan(mapped, index);
+    return new VerdictFile(file, mapped, index);
+  }
+
+  private static ByteBuffer map(final FileChannel channel) throws IOException {
+    final long size = channel.size();
+    if (size > Integer.MAX_VALUE) {
+      return ByteBuffer.allocate(0); // too large to map, treat as corrupt
+    }
+    return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+  }
+
+  /**
+   * Look up a verdict.
+   *
+   * @param field the annotation field the contract is from
+   * @param maxLength the longest contract that is parsed, or {@code 0} for no limit
+   * @param text the contract text
+   * @param shapeKey the key of the method's shape
+   * @return the diagnostics against the shape's template, or {@code null} if no verdict is known
+   */
+  synchronized List<ContractDiagnostic> lookup(final String field, final int maxLength, final String text, final long shapeKey) {
+    final long hash = hash(field, maxLength, text, shapeKey);
+    final byte[] added = this.pending.get(hash);
+    if (added != null) {
+      return decode(ByteBuffer.wrap(added), field, maxLength, text, shapeKey);
+    }
+
+    final Integer offset = this.index.get(hash);
+    return offset == null ? null : decode((ByteBuffer) this.mapped.duplicate().position(offset), field, maxLength, text, shapeKey);
+  }
+
+  /**
+   * Record a verdict, to be written by the next {@link #flush()}.
+   *
+   * @param field the annotation field the contract is from
+   * @param maxLength the longest contract that is parsed, or {@code 0} for no limit
+   * @param text the contract text
+   * @param shapeKey the key of the method's shape
+   * @param verdict the diagnostics against the shape's template
+   */
+  synchronized void add(
+    final String field,
+    final int maxLength,
+    final String text,
+    final long shapeKey,
+    final List<ContractDiagnostic> verdict
+  ) {
+    final long hash = hash(field, maxLength, text, shapeKey);
+    if (this.index.containsKey(hash) || this.pending.containsKey(hash)) {
+      return;
+    }
+
+    final byte[] body = encode(hash, field, maxLength, text, shapeKey, verdict);
+    if (body != null) {
+      this.pending.put(hash, body);
+    }
+  }
+
+  /**
+   * Write verdicts added since the last flush to disk.
+   *
+   * <p>Records are appended to the file as it is now, which may include records from other processes. When the file
+   * is new, damaged, outdated, or mostly duplicates, it is rewritten instead and replaced atomically where
+   * supported. Verdicts already in the file are not written again.</p>
+   *
+   * @return the number of verdicts written
+   * @throws IOException if the file could not be written
+   */
+  synchronized int flush() throws IOException {
+    if (this.pending.isEmpty()) {
+      return 0;
+    }
+
+    final Path parent = this.file.getParent();
+    Files.createDirectories(parent);
+    final Path lockFile = parent.resolve(this.file.getFileName() + ".lock");
+    synchronized (WRITE_LOCKS.computeIfAbsent(this.file, k -> new Object())) {
+      try (final FileChannel lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+        final FileLock lock = lockChannel.lock();
+        try {
+          return this.flushLocked();
+        } finally {
+          lock.release();
+        }
+      }
+    }
+  }
+
+  private int flushLocked() throws IOException {
+    final ByteBuffer current = this.mapFile();
+    final Map<Long, Integer> currentIndex = new HashMap<>();
+    final Scan scan = new Scan(current, currentIndex);
+    this.pending.keySet().removeAll(currentIndex.keySet()); // written by another process meanwhile
+
+    final int written = this.pending.size();
+    if (scan.end != current.limit() || scan.records > 2 * currentIndex.size() + MIN_COMPACTION_RECORDS) {
+      this.rewrite(current, currentIndex);
+    } else if (written > 0) {
+      this.append(current.limit());
+    }
+    this.pending.clear();
+
+    // pick up everything now in the file, including the records just written
+    this.mapped = this.mapFile();
+    this.index = new HashMap<>();
+    new Scan(this.mapped, this.index);
+    return written;
+  }
+
+  private ByteBuffer mapFile() throws IOException {
+    try (final FileChannel channel = FileChannel.open(this.file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      return map(channel);
+    }
+  }
+
+  private void append(final long position) throws IOException {
+    final ByteArrayOutputStream records = new ByteArrayOutputStream();
+    for (final byte[] body : this.pending.values()) {
+      writeRecord(records, body);
+    }
+
+    try (final FileChannel channel = FileChannel.open(this.file, StandardOpenOption.WRITE)) {
+      final ByteBuffer buffer = ByteBuffer.wrap(records.toByteArray());
+      long offset = position;
+      while (buffer.hasRemaining()) {
+        offset += channel.write(buffer, offset);
+      }
+      channel.force(false);
+    }
+  }
+
+  private void rewrite(final ByteBuffer current, final Map<Long, Integer> currentIndex) throws IOException {
+    final ByteArrayOutputStream contents = new ByteArrayOutputStream();
+    final DataOutputStream header = new DataOutputStream(contents);
+    header.writeInt(MAGIC);
+    header.writeInt(FORMAT);
+    header.writeLong(ValidatorBuild.ID);
+    for (final int offset : currentIndex.values()) {
+      final byte[] body = new byte[current.getInt(offset - 4)];
+      ((ByteBuffer) current.duplicate().position(offset)).get(body);
+      writeRecord(contents, body);
+    }
+    for (final byte[] body : this.pending.values()) {
+      writeRecord(contents, body);
+    }
+
+    final Path temp = Files.createTempFile(this.file.getParent(), this.file.getFileName().toString(), ".tmp");
+    try {
+      Files.write(temp, contents.toByteArray());
+      try {
+        Files.move(temp, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (final AtomicMoveNotSupportedException ex) {
+        Files.move(temp, this.file, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private static void writeRecord(final ByteArrayOutputStream out, final byte[] body) throws IOException {
+    final CRC32 crc = new CRC32();
+    crc.update(body, 0, body.length);
+    final DataOutputStream data = new DataOutputStream(out);
+    data.writeInt(body.length);
+    data.write(body);
+    data.writeInt((int) crc.getValue());
+  }
+
+  private static long hash(final String field, final int maxLength, final String text, final long shapeKey) {
+    return new ValidationResultStore.Fingerprint()
+      .add(field)
+      .add(maxLength)
+      .add(text)
+      .add((int) shapeKey)
+      .add((int) (shapeKey >>> Integer.SIZE))
+      .value();
+  }
+
+  /**
+   * Encode a verdict as the body of a record.
+   *
+   * @return the body, or {@code null} if the verdict has arguments that can't be stored
+   */
+  private static byte[] encode(
+    final long hash,
+    final String field,
+    final int maxLength,
+    final String text,
+    final long shapeKey,
+    final List<ContractDiagnostic> verdict
+  ) {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(bytes);
+    try {
+      out.writeLong(hash);
+      writeString(out, field);
+      out.writeInt(maxLength);
+      writeString(out, text);
+      out.writeLong(shapeKey);
+      out.writeInt(verdict.size());
+      for (final ContractDiagnostic diagnostic : verdict) {
+        out.writeByte(diagnostic.kind().ordinal());
+        out.writeInt(diagnostic.startOffset());
+        out.writeInt(diagnostic.endOffset());
+        writeString(out, diagnostic.format());
+        final Object[] args = diagnostic.args();
+        out.writeInt(args.length);
+        for (final Object arg : args) {
+          if (arg instanceof MethodShape.Placeholder) {
+            out.writeByte(ARG_PLACEHOLDER);
+            out.writeInt(((MethodShape.Placeholder) arg).index);
+          } else if (arg instanceof Integer) {
+            out.writeByte(ARG_INTEGER);
+            out.writeInt((Integer) arg);
+          } else if (arg instanceof CharSequence || arg instanceof ContractTerm) {
+            // only ever formatted with %s
+            out.writeByte(ARG_STRING);
+            writeString(out, arg.toString());
+          } else {
+            return null;
+          }
+        }
+      }
+    } catch (final IOException ex) {
+      throw new IllegalStateException(ex); // not thrown when writing to memory
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Decode the body of a record, checking it is for the expected contract.
+   *
+   * @return the verdict, or {@code null} if the record is for a different contract or could not be decoded
+   */
+  private static List<ContractDiagnostic> decode(
+    final ByteBuffer in,
+    final String field,
+    final int maxLength,
+    final String text,
+    final long shapeKey
+  ) {
+    try {
+      in.getLong(); // hash
+      if (!field.equals(readString(in)) || in.getInt() != maxLength || !text.equals(readString(in)) || in.getLong() != shapeKey) {
+        return null; // hash collision
+      }
+
+      final int count = in.getInt();
+      final List<ContractDiagnostic> verdict = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        final Diagnostic.Kind kind = KINDS[in.get()];
+        final int start = in.getInt();
+        final int end = in.getInt();
+        final String format = readString(in);
+        final Object[] args = new Object[in.getInt()];
+        for (int j = 0; j < args.length; j++) {
+          switch (in.get()) {
+            case ARG_PLACEHOLDER: args[j] = MethodShape.Placeholder.of(in.getInt()); break;
+            case ARG_INTEGER: args[j] = in.getInt(); break;
+            case ARG_STRING: args[j] = readString(in); break;
+            default: return null;
+          }
+        }
+        verdict.add(new ContractDiagnostic(kind, start, end, format, args));
+      }
+      return Collections.unmodifiableList(verdict);
+    } catch (final BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException | NegativeArraySizeException ex) {
+      return null;
+    }
+  }
+
+  private static void writeString(final DataOutputStream out, final String value) throws IOException {
+    final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(final ByteBuffer in) {
+    final byte[] bytes = new byte[in.getInt()];
+    in.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * The intact records of a file.
+   */
+  static final class Scan {
+    /**
+     * The number of intact records, including those with duplicate keys.
+     */
+    final int records;
+    /**
+     * The offset after the last intact record, or {@code -1} if the header is missing or outdated.
+     */
+    final int end;
+
+    /**
+     * Scan a file, stopping at the first damaged record.
+     *
+     * @param buffer the file contents
+     * @param index the index to add each record's key and body offset to, with later records replacing earlier ones
+     */
+    Scan(final ByteBuffer buffer, final Map<Long, Integer> index) {
+      if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT
+        || buffer.getLong(8) != ValidatorBuild.ID) {
+        this.records = 0;
+        this.end = -1;
+        return;
+      }
+
+      final CRC32 crc = new CRC32();
+      int records = 0;
+      int offset = HEADER_SIZE;
+      while (buffer.limit() - offset >= FRAME_SIZE) {
+        final int length = buffer.getInt(offset);
+        if (length < Long.BYTES || length > buffer.limit() - offset - FRAME_SIZE) {
+          break;
+        }
+
+        final ByteBuffer body = (ByteBuffer) buffer.duplicate().position(offset + 4).limit(offset + 4 + length);
+        crc.reset();
+        crc.update(body);
+        if ((int) crc.getValue() != buffer.getInt(offset + 4 + length)) {
+          break;
+        }
+
+        index.put(buffer.getLong(offset + 4), offset + 4);
+        records++;
+        offset += length + FRAME_SIZE;
+      }
+      this.records = records;
+      this.end = offset;
+    }
+  }
+
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+
+/**
+ * A generated project resembling ordinary application code, with a chosen mix of contract annotations.
+ *
+ * <p>Classes are spread over packages, hold state, call into each other, and have method bodies with enough
+ * control flow and generics that javac does a realistic amount of work for each one. Each method is given a valid
+ * contract, an invalid contract, or none, and separately may carry annotations unrelated to contracts. Generation is
+ * seeded, so the same settings always produce the same project.</p>
+ */
+final class GeneratedProject {
+
+  private static final int CLASSES_PER_PACKAGE = 50;
+
+  /**
+   * Method templates, each paired with contracts that are valid and invalid for it.
+   *
+   * <p>Each entry is {@code {declaration, valid value, valid mutates, invalid value}}, where the declaration is a
+   * format taking the method number and then the class name. An empty mutates string means none is given.</p>
+   */
+  private static final String[][] METHODS = {
+    {
+      "public String normalize%1$d(final String value) {\n"
+        + "    if (value == null) {\n"
+        + "      return null;\n"
+        + "    }\n"
+        + "    final StringBuilder result = new StringBuilder(value.length());\n"
+        + "    for (int i = 0; i < value.length(); i++) {\n"
+        + "      final char c = value.charAt(i);\n"
+        + "      result.append(Character.isWhitespace(c) ? '_' : Character.toLowerCase(c));\n"
+        + "    }\n"
+        + "    return result.toString();\n"
+        + "  }",
+      "null -> null; !null -> !null", "", "null -> null; !null -> !null; -> fail -> new",
+    },
+    {
+      "public %2$s with%1$d(final Object value) {\n"
+        + "    this.values.put(\"key%1$d\", value);\n"
+        + "    this.version++;\n"
+        + "    return this;\n"
+        + "  }",
+      "_ -> this", "this", "_, _ -> this",
+    },
+    {
+      "public static int count%1$d(final List<String> values, final boolean strict) {\n"
+        + "    Objects.requireNonNull(values, \"values\");\n"
+        + "    int count = 0;\n"
+        + "    for (final String value : values) {\n"
+        + "      if (!strict || !value.isEmpty()) {\n"
+        + "        count++;\n"
+        + "      }\n"
+        + "    }\n"
+        + "    return count;\n"
+        + "  }",
+      "null, _ -> fail", "", "null, true -> null",
+    },
+    {
+      "public boolean isBlank%1$d(final CharSequence text) {\n"
+        + "    if (text == null) {\n"
+        + "      return true;\n"
+        + "    }\n"
+        + "    return text.chars().allMatch(Character::isWhitespace);\n"
+        + "  }",
+      "null -> true", "", "null -> true; _ -> param2",
+    },
+    {
+      "public List<String> copy%1$d(final Collection<? extends String> values) {\n"
+        + "    final List<String> result = new ArrayList<>(values.size());\n"
+        + "    for (final String value : values) {\n"
+        + "      result.add(value + this.version);\n"
+        + "    }\n"
+        + "    Collections.sort(result);\n"
+        + "    return result;\n"
+        + "  }",
+      "_ -> new", "", "_ -> new; null -> false",
+    },
+    {
+      "public void addAll%1$d(final Map<String, Object> target, final Map<String, ?> source) {\n"
+        + "    for (final Map.Entry<String, ?> entry : source.entrySet()) {\n"
+        + "      target.merge(entry.getKey(), entry.getValue(), (a, b) -> a == null ? b : a);\n"
+        + "    }\n"
+        + "  }",
+      "null, _ -> fail; _, null -> fail", "param1", "null -> fail",
+    },
+    {
+      "public static String select%1$d(final boolean first, final String a, final String b) {\n"
+        + "    return first ? a : b;\n"
+        + "  }",
+      "true, _, _ -> param2; false, _, _ -> param3", "", "true, _, _ -> param2; false, _, _ -> this",
+    },
+    {
+      "public Optional<Object> find%1$d(final String key) {\n"
+        + "    final Object found = this.values.get(key);\n"
+        + "    return found == null ? Optional.empty() : Optional.of(found);\n"
+        + "  }",
+      "_ -> !null", "", "!null -> false",
+    },
+  };
+
+  /**
+   * Annotations unrelated to contracts, as found in framework-heavy code.
+   */
+  private static final String[] UNRELATED = {
+    "@Deprecated",
+    "@SuppressWarnings(\"unchecked\")",
+    "@Tag(\"service\")",
+    "@Tag(value = \"cache\", order = 2)",
+    "@Timed(name = \"operation\", percentiles = {0.5, 0.99})",
+  };
+
+  private final int classes;
+  private final int methodsPerClass;
+  private final int validPercent;
+  private final int invalidPercent;
+  private final int unrelatedPercent;
+
+  /**
+   * Describe a project to generate.
+   *
+   * @param classes the number of classes
+   * @param methodsPerClass the number of methods in each class
+   * @param validPercent the percentage of methods with a valid contract
+   * @param invalidPercent the percentage of methods with an invalid contract
+   * @param unrelatedPercent the percentage of methods with unrelated annotations, whatever their contract
+   */
+  GeneratedProject(final int classes, final int methodsPerClass, final int validPercent, final int invalidPercent, final int unrelatedPercent) {
+    if (classes < 1 || methodsPerClass < 1) {
+      throw new IllegalArgumentException("A project needs at least one class with at least one method");
+    }
+    if (validPercent < 0 || invalidPercent < 0 || validPercent + invalidPercent > 100 || unrelatedPercent < 0 || unrelatedPercent > 100) {
+      throw new IllegalArgumentException("Percentages must be between 0 and 100, and valid and invalid contracts can total at most 100");
+    }
+    this.classes = classes;
+    this.methodsPerClass = methodsPerClass;
+    this.validPercent = validPercent;
+    this.invalidPercent = invalidPercent;
+    this.unrelatedPercent = unrelatedPercent;
+  }
+
+  /**
+   * Generate the project's sources.
+   *
+   * @return the compilation units
+   */
+  List<JavaFileObject> sources() {
+    final Random random = new Random(21);
+    final List<JavaFileObject> sources = new ArrayList<>(this.classes + 2);
+    sources.add(new StringSource("project/Tag", "package project;\n\n"
+      + "import java.lang.annotation.Retention;\n"
+      + "import java.lang.annotation.RetentionPolicy;\n\n"
+      + "@Retention(RetentionPolicy.RUNTIME)\n"
+      + "public @interface Tag {\n  String value();\n  int order() default 0;\n}\n"));
+    sources.add(new StringSource("project/Timed", "package project;\n\n"
+      + "public @interface Timed {\n  String name();\n  double[] percentiles() default {};\n}\n"));
+
+    for (int classIdx = 0; classIdx < this.classes; classIdx++) {
+      final String packageName = "project.p" + classIdx / CLASSES_PER_PACKAGE;
+      final String className = "Service" + classIdx;
+      final StringBuilder source = new StringBuilder()
+        .append("package ").append(packageName).append(";\n\n")
+        .append("import java.util.*;\n")
+        .append("import org.jetbrains.annotations.Contract;\n")
+        .append("import project.Tag;\n")
+        .append("import project.Timed;\n");
+      final int dependency = classIdx == 0 ? -1 : random.nextInt(classIdx);
+      if (dependency >= 0) {
+        // depend on an earlier class, often in another package
+        source.append("import project.p").append(dependency / CLASSES_PER_PACKAGE).append(".Service").append(dependency).append(";\n");
+      }
+      source.append("\npublic class ").append(className).append(" {\n")
+        .append("  private final Map<String, Object> values = new HashMap<>();\n")
+        .append("  private int version;\n\n");
+      if (dependency >= 0) {
+        source.append("  public Object delegate(final Service").append(dependency).append(" other) {\n")
+          .append("    return other == null ? null : other.toString();\n")
+          .append("  }\n\n");
+      }
+
+      for (int i = 0; i < this.methodsPerClass; i++) {
+        final String[] method = METHODS[random.nextInt(METHODS.length)];
+        if (random.nextInt(100) < this.unrelatedPercent) {
+          source.append("  ").append(UNRELATED[random.nextInt(UNRELATED.length)]).append('\n');
+        }
+        final int contract = random.nextInt(100);
+        if (contract < this.validPercent) {
+          source.append("  @Contract(");
+          if (method[2].isEmpty()) {
+            source.append('"').append(method[1]).append('"');
+          } else {
+            source.append("value = \"").append(method[1]).append("\", mutates = \"").append(method[2]).append('"');
+          }
+          source.append(")\n");
+        } else if (contract < this.validPercent + this.invalidPercent) {
+          source.append("  @Contract(\"").append(method[3]).append("\")\n");
+        }
+        source.append("  ").append(String.format(Locale.ROOT, method[0], i, className)).append("\n\n");
+      }
+      source.append("}\n");
+      sources.add(new StringSource(packageName.replace('.', '/') + '/' + className, source.toString()));
+    }
+    return sources;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+      Locale.ROOT,
+      "%d classes of %d methods, %d%% valid and %d%% invalid contracts, %d%% unrelated annotations",
+      this.classes,
+      this.methodsPerClass,
+      this.validPercent,
+      this.invalidPercent,
+      this.unrelatedPercent
+    );
+  }
+
+  static final class StringSource extends SimpleJavaFileObject {
+    private final String contents;
+
+    StringSource(final String path, final String contents) {
+      super(URI.create("string:///" + path + Kind.SOURCE.extension), Kind.SOURCE);
+      this.contents = contents;
+    }
+
+    @Override
+    public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+      return this.contents;
+    }
+  }
+
+}
@@ -0,0 +1,566 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.Processor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Measures the processor's share of compiling generated projects, failing if it has grown past a stored baseline.
+ *
+ * <p>Microbenchmarks leave out everything else javac does, so this compiles whole projects in-process, with and
+ * without the processor. Subtracting one whole compile from another leaves mostly noise, so the processor is also
+ * timed directly: the time and allocation spent inside it, including the compiler work it causes, as a share of the
+ * compile it ran in. That share is what is compared against the baseline.</p>
+ *
+ * <p>javac stops before generating code once a processor reports an error, which would make the processor look
+ * cheaper the more invalid contracts a project has. Its errors are passed on as warnings instead, so every compile
+ * does the same work.</p>
+ *
+ * <p>Runs alternate between compiling with and without the processor, collecting garbage before each, and the
+ * median of each measurement is used. Allocation is measured on the compiling thread, so the processor runs with its
+ * default parallelism of {@code 1}.</p>
+ *
+ * <p>The baseline file is a properties file describing each scenario as {@code <name>.<setting>}, with the settings
+ * of {@link GeneratedProject} and the processor's recorded {@code time} and {@code allocation} shares. A share may
+ * exceed its baseline by {@code tolerance.time} or {@code tolerance.allocation}, as absolute fractions of the whole
+ * compile, before the check fails.</p>
+ *
+ * <p>Usage: {@code OverheadCheck [--update] [--warmup <count>] [--iterations <count>] <baseline file>}. The exit code
+ * is {@code 0} when every scenario is within its baseline, {@code 1} if any regressed, and {@code 2} if the check
+ * could not be run. With {@code --update}, the measured shares are written back as the new baseline.</p>
+ */
+public final class OverheadCheck {
+
+  private static final String USAGE = "Usage: OverheadCheck [--update] [--warmup <count>] [--iterations <count>] <baseline file>";
+  private static final String[] SETTINGS = {"classes", "methodsPerClass", "validPercent", "invalidPercent", "unrelatedPercent"};
+
+  private OverheadCheck() {
+  }
+
+  public static void main(final String... args) {
+    System.exit(run(args, System.out, System.err));
+  }
+
+  /**
+   * Measure every scenario in a baseline file, and compare against it.
+   *
+   * @param args the command-line arguments
+   * @param out the stream to print results to
+   * @param err the stream to print usage and problems to
+   * @return the exit code
+   */
+  static int run(final String[] args, final PrintStream out, final PrintStream err) {
+    boolean update = false;
+    int warmup = 2;
+    int iterations = 5;
+    Path baselineFile = null;
+    try {
+      for (int i = 0; i < args.length; i++) {
+        if (args[i].equals("--update")) {
+          update = true;
+        } else if (args[i].equals("--warmup") && i + 1 < args.length) {
+          warmup = Integer.parseInt(args[++i]);
+        } else if (args[i].equals("--iterations") && i + 1 < args.length) {
+          iterations = Integer.parseInt(args[++i]);
+        } else if (args[i].startsWith("-") || baselineFile != null) {
+          err.println(USAGE);
+          return 2;
+        } else {
+          baselineFile = Paths.get(args[i]);
+        }
+      }
+    } catch (final NumberFormatException ex) {
+      err.println("Counts must be integers: " + ex.getMessage());
+      return 2;
+    }
+    if (baselineFile == null || warmup < 0 || iterations < 1) {
+      err.println(USAGE);
+      return 2;
+    }
+
+    final Properties baseline = new Properties();
+    try (final Reader reader = Files.newBufferedReader(baselineFile, StandardCharsets.UTF_8)) {
+      baseline.load(reader);
+    } catch (final IOException ex) {
+      err.println("Unable to read baseline " + baselineFile + ": " + ex);
+      return 2;
+    }
+
+    final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    if (compiler == null) {
+      err.println("No system Java compiler is available, so the check must run on a JDK");
+      return 2;
+    }
+
+    final double timeTolerance = Double.parseDouble(baseline.getProperty("tolerance.time", "0.02"));
+    final double allocationTolerance = Double.parseDouble(baseline.getProperty("tolerance.allocation", "0.02"));
+    final List<String> updates = new ArrayList<>();
+    boolean regressed = false;
+    try (final StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, Locale.ROOT, StandardCharsets.UTF_8)) {
+      for (final String scenario : scenarios(baseline)) {
+        final int[] settings = new int[SETTINGS.length];
+        for (int i = 0; i < SETTINGS.length; i++) {
+          settings[i] = Integer.parseInt(baseline.getProperty(scenario + '.' + SETTINGS[i], "0"));
+        }
+        final GeneratedProject project = new GeneratedProject(settings[0], settings[1], settings[2], settings[3], settings[4]);
+        out.println(scenario + ": " + project);
+
+        final Result result = measure(compiler, fileManager, project, warmup, iterations);
+        if (settings[3] > 0 && result.errors == 0) {
+          err.println("The processor reported no errors for a project with invalid contracts, so it cannot have run");
+          return 2;
+        }
+
+        final double timeShare = (double) result.processorTime / result.time;
+        final double allocationShare = (double) result.processorAllocated / result.allocated;
+        regressed |= report(
+          out, "compile time", "ms",
+          result.timeWithout / 1e6, result.time / 1e6, result.processorTime / 1e6, timeShare,
+          baseline.getProperty(scenario + ".time"), timeTolerance
+        );
+        regressed |= report(
+          out, "allocation", "MB",
+          result.allocatedWithout / 1e6, result.allocated / 1e6, result.processorAllocated / 1e6, allocationShare,
+          baseline.getProperty(scenario + ".allocation"), allocationTolerance
+        );
+        updates.add(String.format(Locale.ROOT, "%s.time=%.4f", scenario, timeShare));
+        updates.add(String.format(Locale.ROOT, "%s.allocation=%.4f", scenario, allocationShare));
+      }
+    } catch (final IOException | IllegalStateException ex) {
+      err.println("Unable to compile: " + ex);
+      return 2;
+    }
+
+    if (update) {
+      try {
+        writeBaseline(baselineFile, updates);
+      } catch (final IOException ex) {
+        err.println("Unable to update baseline " + baselineFile + ": " + ex);
+        return 2;
+      }
+      out.println("Updated baseline " + baselineFile);
+      return 0;
+    }
+    if (regressed) {
+      err.println("The processor's share of compilation has regressed past the baseline in " + baselineFile
+        + ". If this is expected, re-run with --update to record the new baseline");
+      return 1;
+    }
+    return 0;
+  }
+
+  private static TreeSet<String> scenarios(final Properties baseline) {
+    final TreeSet<String> scenarios = new TreeSet<>();
+    for (final String key : baseline.stringPropertyNames()) {
+      if (key.endsWith(".classes")) {
+        scenarios.add(key.substring(0, key.length() - ".classes".length()));
+      }
+    }
+    return scenarios;
+  }
+
+  /**
+   * Print one measurement against its baseline.
+   *
+   * @return whether the measurement regressed
+   */
+  private static boolean report(
+    final PrintStream out,
+    final String name,
+    final String unit,
+    final double without,
+    final double with,
+    final double processor,
+    final double share,
+    final String recorded,
+    final double tolerance
+  ) {
+    String verdict = "no baseline";
+    boolean regressed = false;
+    if (recorded != null) {
+      final double limit = Double.parseDouble(recorded) + tolerance;
+      regressed = share > limit;
+      verdict = String.format(Locale.ROOT, "baseline %.1f%%, limit %.1f%%%s", 100 * Double.parseDouble(recorded), 100 * limit, regressed ? ": REGRESSED" : "");
+    }
+    out.printf(
+      Locale.ROOT,
+      "  %-13s %9.1f %s without, %9.1f %s with, %8.1f %s in the processor: %5.2f%% (%s)%n",
+      name,
+      without,
+      unit,
+      with,
+      unit,
+      processor,
+      unit,
+      100 * share,
+      verdict
+    );
+    return regressed;
+  }
+
+  private static Result measure(
+    final JavaCompiler compiler,
+    final StandardJavaFileManager fileManager,
+    final GeneratedProject project,
+    final int warmup,
+    final int iterations
+  ) throws IOException {
+    final List<JavaFileObject> sources = project.sources();
+    final Path output = Files.createTempDirectory("contract-overhead");
+    try {
+      for (int i = 0; i < warmup; i++) {
+        compile(compiler, fileManager, sources, output, false);
+        compile(compiler, fileManager, sources, output, true);
+      }
+
+      final long[] timeWithout = new long[iterations];
+      final long[] allocatedWithout = new long[iterations];
+      final long[] time = new long[iterations];
+      final long[] allocated = new long[iterations];
+      final long[] processorTime = new long[iterations];
+      final long[] processorAllocated = new long[iterations];
+      int errors = 0;
+      for (int i = 0; i < iterations; i++) {
+        final Run without = compile(compiler, fileManager, sources, output, false);
+        timeWithout[i] = without.nanos;
+        allocatedWithout[i] = without.allocated;
+
+        final Run with = compile(compiler, fileManager, sources, output, true);
+        time[i] = with.nanos;
+        allocated[i] = with.allocated;
+        processorTime[i] = with.processor.nanos;
+        processorAllocated[i] = with.processor.allocated;
+        errors = with.processor.errors[0];
+      }
+      return new Result(
+        median(timeWithout),
+        median(allocatedWithout),
+        median(time),
+        median(allocated),
+        median(processorTime),
+        median(processorAllocated),
+        errors
+      );
+    } finally {
+      deleteRecursively(output);
+    }
+  }
+
+  private static Run compile(
+    final JavaCompiler compiler,
+    final StandardJavaFileManager fileManager,
+    final List<JavaFileObject> sources,
+    final Path output,
+    final boolean withProcessor
+  ) {
+    final List<String> options = new ArrayList<>();
+    Collections.addAll(
+      options,
+      "-classpath", System.getProperty("java.class.path"),
+      "-d", output.toString(),
+      "-nowarn",
+      // the processor's errors are reported as warnings, so cap neither
+      "-Xmaxwarns", "1000000"
+    );
+    if (!withProcessor) {
+      options.add("-proc:none");
+    }
+
+    final int[] errors = new int[1];
+    final JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostic -> {
+      if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+        errors[0]++;
+      }
+    }, options, null, sources);
+    final Measured processor = new Measured(new ContractValidatorProcessor());
+    if (withProcessor) {
+      task.setProcessors(Collections.singletonList(processor));
+    }
+
+    System.gc();
+    final long allocatedBefore = allocatedBytes();
+    final long start = System.nanoTime();
+    task.call();
+    final long nanos = System.nanoTime() - start;
+    final long allocated = allocatedBytes() - allocatedBefore;
+    if (errors[0] > 0) {
+      throw new IllegalStateException("The generated project failed to compile, with " + errors[0] + " error(s)");
+    }
+    return new Run(nanos, allocated, processor);
+  }
+
+  private static long allocatedBytes() {
+    return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  private static long median(final long[] values) {
+    final long[] sorted = values.clone();
+    Arrays.sort(sorted);
+    return sorted.length % 2 == 1 ? sorted[sorted.length / 2] : (sorted[sorted.length / 2 - 1] + sorted[sorted.length / 2]) / 2;
+  }
+
+  /**
+   * Replace the recorded shares in a baseline file, keeping everything else as written.
+   */
+  private static void writeBaseline(final Path file, final List<String> updates) throws IOException {
+    final List<String> lines = new ArrayList<>(Files.readAllLines(file, StandardCharsets.UTF_8));
+    for (final String update : updates) {
+      final String key = update.substring(0, update.indexOf('=') + 1);
+      boolean replaced = false;
+      for (int i = 0; i < lines.size(); i++) {
+        if (lines.get(i).startsWith(key)) {
+          lines.set(i, update);
+          replaced = true;
+          break;
+        }
+      }
+      if (!replaced) {
+        lines.add(update);
+      }
+    }
+    Files.write(file, lines, StandardCharsets.UTF_8);
+  }
+
+  private static void deleteRecursively(final Path path) throws IOException {
+    if (Files.isDirectory(path)) {
+      try (final Stream<Path> children = Files.list(path)) {
+        for (final Path child : (Iterable<Path>) children::iterator) {
+          deleteRecursively(child);
+        }
+      }
+    }
+    Files.deleteIfExists(path);
+  }
+
+  /**
+   * Runs a processor, timing it and passing on the errors it reports as warnings so that javac goes on to generate
+   * code.
+   */
+  static final class Measured extends AbstractProcessor {
+    private final Processor delegate;
+    final int[] errors = new int[1];
+    long nanos;
+    long allocated;
+
+    Measured(final Processor delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public synchronized void init(final ProcessingEnvironment env) {
+      super.init(env);
+      final long allocatedBefore = allocatedBytes();
+      final long start = System.nanoTime();
+      this.delegate.init(new ForwardingEnvironment(env, new ErrorCountingMessager(env.getMessager(), this.errors)));
+      this.nanos += System.nanoTime() - start;
+      this.allocated += allocatedBytes() - allocatedBefore;
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+      final long allocatedBefore = allocatedBytes();
+      final long start = System.nanoTime();
+      try {
+        return this.delegate.process(annotations, roundEnv);
+      } finally {
+        this.nanos += System.nanoTime() - start;
+        this.allocated += allocatedBytes() - allocatedBefore;
+      }
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+      return this.delegate.getSupportedAnnotationTypes();
+    }
+
+    @Override
+    public Set<String> getSupportedOptions() {
+      return this.delegate.getSupportedOptions();
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+      return this.delegate.getSupportedSourceVersion();
+    }
+  }
+
+  private static final class ErrorCountingMessager implements Messager {
+    private final Messager delegate;
+    private final int[] errors;
+
+    ErrorCountingMessager(final Messager delegate, final int[] errors) {
+      this.delegate = delegate;
+      this.errors = errors;
+    }
+
+    private Diagnostic.Kind downgrade(final Diagnostic.Kind kind) {
+      if (kind == Diagnostic.Kind.ERROR) {
+        this.errors[0]++;
+        return Diagnostic.Kind.WARNING;
+      }
+      return kind;
+    }
+
+    @Override
+    public void printMessage(final Diagnostic.Kind kind, final CharSequence msg) {
+      this.delegate.printMessage(this.downgrade(kind), msg);
+    }
+
+    @Override
+    public void printMessage(final Diagnostic.Kind kind, final CharSequence msg, final Element e) {
+      this.delegate.printMessage(this.downgrade(kind), msg, e);
+    }
+
+    @Override
+    public void printMessage(final Diagnostic.Kind kind, final CharSequence msg, final Element e, final AnnotationMirror a) {
+      this.delegate.printMessage(this.downgrade(kind), msg, e, a);
+    }
+
+    @Override
+    public void printMessage(
+      final Diagnostic.Kind kind,
+      final CharSequence msg,
+      final Element e,
+      final AnnotationMirror a,
+      final AnnotationValue v
+    ) {
+      this.delegate.printMessage(this.downgrade(kind), msg, e, a, v);
+    }
+  }
+
+  private static final class ForwardingEnvironment implements ProcessingEnvironment {
+    private final ProcessingEnvironment delegate;
+    private final Messager messager;
+
+    ForwardingEnvironment(final ProcessingEnvironment delegate, final Messager messager) {
+      this.delegate = delegate;
+      this.messager = messager;
+    }
+
+    @Override
+    public Map<String, String> getOptions() {
+      return this.delegate.getOptions();
+    }
+
+    @Override
+    public Messager getMessager() {
+      return this.messager;
+    }
+
+    @Override
+    public Filer getFiler() {
+      return this.delegate.getFiler();
+    }
+
+    @Override
+    public Elements getElementUtils() {
+      return this.delegate.getElementUtils();
+    }
+
+    @Override
+    public Types getTypeUtils() {
+      return this.delegate.getTypeUtils();
+    }
+
+    @Override
+    public SourceVersion getSourceVersion() {
+      return this.delegate.getSourceVersion();
+    }
+
+    @Override
+    public Locale getLocale() {
+      return this.delegate.getLocale();
+    }
+  }
+
+  private static final class Run {
+    final long nanos;
+    final long allocated;
+    final Measured processor;
+
+    Run(final long nanos, final long allocated, final Measured processor) {
+      this.nanos = nanos;
+      this.allocated = allocated;
+      this.processor = processor;
+    }
+  }
+
+  private static final class Result {
+    final long timeWithout;
+    final long allocatedWithout;
+    final long time;
+    final long allocated;
+    final long processorTime;
+    final long processorAllocated;
+    final int errors;
+
+    Result(
+      final long timeWithout,
+      final long allocatedWithout,
+      final long time,
+      final long allocated,
+      final long processorTime,
+      final long processorAllocated,
+      final int errors
+    ) {
+      this.timeWithout = timeWithout;
+      this.allocatedWithout = allocatedWithout;
+      this.time = time;
+      this.allocated = allocated;
+      this.processorTime = processorTime;
+      this.processorAllocated = processorAllocated;
+      this.errors = errors;
+    }
+  }
+
+}
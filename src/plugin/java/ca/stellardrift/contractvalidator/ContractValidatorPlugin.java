@@ -0,0 +1,320 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import com.google.auto.service.AutoService;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.Plugin;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.Trees;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.FilerException;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+
+/**
+ * Validates contracts from a javac plugin, enabled with {@code -Xplugin:ContractValidator}, instead of from an
+ * annotation processor.
+ *
+ * <p>Each top-level type is validated as soon as javac has analyzed it, without javac having to run annotation
+ * processing at all. The checks are those of {@link ContractValidatorProcessor}, driven through an environment
+ * built from the compiler task, with the whole compilation as a single round. Processor options are passed as
+ * plugin arguments, such as {@code -Xplugin:"ContractValidator contractvalidator.parallelism=4"}.</p>
+ *
+ * <p>If the processor is discovered in the same compilation, it leaves validation to the plugin. Plugins have no
+ * {@link Filer}, so contract indexes and statistics files can't be written, and supertypes on the class path are
+ * checked through their annotations rather than their published index.</p>
+ */
+@AutoService(Plugin.class)
+public final class ContractValidatorPlugin implements Plugin {
+
+  /**
+   * The name to enable the plugin with.
+   */
+  public static final String NAME = "ContractValidator";
+
+  /**
+   * Processor options that need a {@link Filer}.
+   */
+  private static final Set<String> UNSUPPORTED_OPTIONS = new HashSet<>(Arrays.asList(
+    ContractValidatorProcessor.OPTION_CONTRACT_INDEX,
+    ContractValidatorProcessor.OPTION_STATS_FILE
+  ));
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public void init(final JavacTask task, final String... args) {
+    final Trees trees = Trees.instance(task);
+    final TreesMessager messager = new TreesMessager(trees);
+    final ContractValidatorProcessor processor = new ContractValidatorProcessor();
+    final Map<String, String> options = new HashMap<>();
+    for (final String arg : args) {
+      final int split = arg.indexOf('=');
+      final String option = split < 0 ? arg : arg.substring(0, split);
+      if (!processor.getSupportedOptions().contains(option)) {
+        messager.printMessage(Diagnostic.Kind.WARNING, String.format("Unknown %s plugin option '%s'", NAME, option));
+      } else if (UNSUPPORTED_OPTIONS.contains(option)) {
+        messager.printMessage(Diagnostic.Kind.WARNING, String.format("Option %s is not available to the %s plugin, and was ignored", option, NAME));
+      } else {
+        options.put(option, split < 0 ? null : arg.substring(split + 1));
+      }
+    }
+
+    ContractValidatorProcessor.validatedByPlugin(task.getElements());
+    processor.init(new PluginEnvironment(task, messager, options));
+    // every type in the compilation has a tree, even those not analyzed yet
+    processor.fromSource(type -> trees.getPath(type) != null);
+    task.addTaskListener(new Validator(task.getElements(), messager, processor));
+  }
+
+  /**
+   * Validates each top-level type once it has been analyzed, finishing the round at the end of the compilation.
+   */
+  static final class Validator implements TaskListener {
+    private static final int WAITING = 0;
+    private static final int VALIDATING = 1;
+    private static final int DONE = 2;
+
+    private final Elements elements;
+    private final TreesMessager messager;
+    private final ContractValidatorProcessor processor;
+    private int state = WAITING;
+
+    Validator(final Elements elements, final TreesMessager messager, final ContractValidatorProcessor processor) {
+      this.elements = elements;
+      this.messager = messager;
+      this.processor = processor;
+    }
+
+    @Override
+    public void finished(final TaskEvent event) {
+      if (event.getKind() == TaskEvent.Kind.PARSE) {
+        this.messager.parsed(event.getCompilationUnit());
+      } else if (event.getKind() == TaskEvent.Kind.ANALYZE) {
+        // member types are analyzed with their top-level type, and local types are not validated
+        final TypeElement type = event.getTypeElement();
+        if (type == null || type.getNestingKind() != NestingKind.TOP_LEVEL) {
+          return;
+        }
+        if (this.state == WAITING) {
+          // a compilation without the annotation available has nothing to validate
+          final boolean used = this.elements.getTypeElement(ContractValidatorProcessor.CONTRACT_ANNOTATION) != null;
+          this.state = used && this.processor.beginRound() ? VALIDATING : DONE;
+        }
+        if (this.state == VALIDATING) {
+          this.processor.validateRootElements(Collections.singletonList(type));
+        }
+      } else if (event.getKind() == TaskEvent.Kind.COMPILATION && this.state == VALIDATING) {
+        this.processor.endRound(true);
+        this.state = DONE;
+      }
+    }
+  }
+
+  /**
+   * The parts of a processing environment a compiler task can provide.
+   */
+  static final class PluginEnvironment implements ProcessingEnvironment {
+    private final JavacTask task;
+    private final Messager messager;
+    private final Map<String, String> options;
+
+    PluginEnvironment(final JavacTask task, final Messager messager, final Map<String, String> options) {
+      this.task = task;
+      this.messager = messager;
+      this.options = Collections.unmodifiableMap(options);
+    }
+
+    @Override
+    public Map<String, String> getOptions() {
+      return this.options;
+    }
+
+    @Override
+    public Messager getMessager() {
+      return this.messager;
+    }
+
+    @Override
+    public Filer getFiler() {
+      return NoFiler.INSTANCE;
+    }
+
+    @Override
+    public Elements getElementUtils() {
+      return this.task.getElements();
+    }
+
+    @Override
+    public Types getTypeUtils() {
+      return this.task.getTypes();
+    }
+
+    @Override
+    public SourceVersion getSourceVersion() {
+      return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public Locale getLocale() {
+      return Locale.getDefault();
+    }
+  }
+
+  /**
+   * Reports against the source tree of each element, annotation and value, as javac's own messager does.
+   *
+   * <p>The tree API can only report against a tree in a real compilation unit, so messages about no element in
+   * particular, such as those about options, are held back until the first unit is parsed, and reported at the start
+   * of that unit from then on.</p>
+   */
+  static final class TreesMessager implements Messager {
+    private final Trees trees;
+    private final List<Object[]> waiting = new ArrayList<>();
+    private CompilationUnitTree anyUnit;
+
+    TreesMessager(final Trees trees) {
+      this.trees = trees;
+    }
+
+    /**
+     * Note that a compilation unit has been parsed, reporting any messages that were waiting for one.
+     *
+     * @param unit the compilation unit
+     */
+    void parsed(final CompilationUnitTree unit) {
+      if (this.anyUnit == null) {
+        this.anyUnit = unit;
+        for (final Object[] message : this.waiting) {
+          this.printMessage((Diagnostic.Kind) message[0], (CharSequence) message[1]);
+        }
+        this.waiting.clear();
+      }
+    }
+
+    @Override
+    public void printMessage(final Diagnostic.Kind kind, final CharSequence msg) {
+      if (this.anyUnit == null) {
+        this.waiting.add(new Object[] {kind, msg});
+      } else {
+        this.trees.printMessage(kind, msg, this.anyUnit, this.anyUnit);
+      }
+    }
+
+    @Override
+    public void printMessage(final Diagnostic.Kind kind, final CharSequence msg, final Element e) {
+      this.print(kind, msg, this.trees.getPath(e));
+    }
+
+    @Override
+    public void printMessage(final Diagnostic.Kind kind, final CharSequence msg, final Element e, final AnnotationMirror a) {
+      this.print(kind, msg, this.trees.getPath(e, a));
+    }
+
+    @Override
+    public void printMessage(
+      final Diagnostic.Kind kind,
+      final CharSequence msg,
+      final Element e,
+      final AnnotationMirror a,
+      final AnnotationValue v
+    ) {
+      this.print(kind, msg, this.trees.getPath(e, a, v));
+    }
+
+    private void print(final Diagnostic.Kind kind, final CharSequence msg, final TreePath path) {
+      if (path == null) {
+        this.printMessage(kind, msg);
+      } else {
+        this.trees.printMessage(kind, msg, path.getLeaf(), path.getCompilationUnit());
+      }
+    }
+  }
+
+  /**
+   * A filer for a compilation that has none, which behaves as though nothing can be read or written.
+   */
+  static final class NoFiler implements Filer {
+    static final NoFiler INSTANCE = new NoFiler();
+
+    private static final String MESSAGE = "No files can be read or written by the " + NAME + " plugin";
+
+    private NoFiler() {
+    }
+
+    @Override
+    public JavaFileObject createSourceFile(final CharSequence name, final Element... originatingElements) throws IOException {
+      throw new FilerException(MESSAGE);
+    }
+
+    @Override
+    public JavaFileObject createClassFile(final CharSequence name, final Element... originatingElements) throws IOException {
+      throw new FilerException(MESSAGE);
+    }
+
+    @Override
+    public FileObject createResource(
+      final JavaFileManager.Location location,
+      final CharSequence moduleAndPkg,
+      final CharSequence relativeName,
+      final Element... originatingElements
+    ) throws IOException {
+      throw new FilerException(MESSAGE);
+    }
+
+    @Override
+    public FileObject getResource(
+      final JavaFileManager.Location location,
+      final CharSequence moduleAndPkg,
+      final CharSequence relativeName
+    ) throws IOException {
+      throw new FileNotFoundException(MESSAGE);
+    }
+  }
+
+}
@@ -39,11 +39,15 @@ public class AbstractTest {
   }
 
   protected Reflect compile(@Language("JAVA") final String classFile) {
+    return this.compile(classFile, new String[0]);
+  }
+
+  protected Reflect compile(@Language("JAVA") final String classFile, final String... options) {
     final String className = PACKAGE_BASE + "In" + this.testName + (++this.compileIndex);
     return Reflect.compile(
       className,
       classFile,
-      new CompileOptions().processors(new ContractValidatorProcessor())
+      new CompileOptions().processors(new ContractValidatorProcessor()).options(options)
     );
   }
 
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import org.jetbrains.annotations.Contract;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ClassFileValidatorTest {
+
+  private static final String SOURCE = "package test;\n"
+    + "import org.jetbrains.annotations.Contract;\n"
+    + "public abstract class Checked {\n"
+    + "  @Deprecated\n"
+    + "  @Contract(value = \"null -> fail\", pure = true)\n"
+    + "  public static void primitive(final int x, final long y) {}\n"
+    + "  @Contract(mutates = \"this\")\n"
+    + "  public static void mutatesThis(final String[] x) {}\n"
+    + "  @Contract(\"_, true -> this\")\n"
+    + "  public Object valid(final Object x, final boolean y) { return this; }\n"
+    + "}\n";
+
+  @TempDir
+  Path temp;
+
+  @Test
+  void testDirectory() throws IOException {
+    final Path classes = this.compile();
+    final Result result = run(classes.toString());
+    assertEquals(1, result.exitCode);
+    assertTrue(result.out.contains("Checked.class: error: test.Checked#primitive(IJ)V: "
+      + "Clause only specified 1 parameter(s), but method 'primitive' had 2 parameter(s)"), result.out);
+    assertTrue(result.out.contains("Constraint 'null' is only applicable to non-primitive types, but it was used to refer to a 'int'"), result.out);
+    assertTrue(result.out.contains("test.Checked#mutatesThis([Ljava/lang/String;)V: Invalid contract: 'this' cannot be mutated"), result.out);
+    assertFalse(result.out.contains("#valid"), result.out);
+    assertTrue(result.err.contains("Checked 3 annotated method(s) in 1 class file(s)"), result.err);
+  }
+
+  @Test
+  void testJar() throws IOException {
+    final Path classes = this.compile();
+    final Path jar = this.temp.resolve("checked.jar");
+    try (final JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+      out.putNextEntry(new ZipEntry("test/"));
+      out.putNextEntry(new ZipEntry("test/Checked.class"));
+      Files.copy(classes.resolve("test/Checked.class"), out);
+      out.putNextEntry(new ZipEntry("test/NotAClass.class"));
+      out.write(new byte[] {1, 2, 3, 4, 5, 6});
+    }
+
+    final Result result = run("--threads", "2", jar.toString());
+    assertEquals(2, result.exitCode); // one unreadable class
+    assertTrue(result.out.contains(jar + "!/test/Checked.class: error: test.Checked#primitive(IJ)V: "), result.out);
+    assertTrue(result.err.contains(jar + "!/test/NotAClass.class: unable to read class"), result.err);
+  }
+
+  @Test
+  void testUsage() {
+    assertEquals(2, run().exitCode);
+    assertEquals(2, run("--threads", "0", "x.jar").exitCode);
+  }
+
+  @Test
+  void testShapeFromDescriptor() {
+    final MethodShape shape = MethodShape.ofDescriptor("test", "(Z[IJLjava/util/Map$Entry;)[[Ljava/lang/String;", true);
+    assertEquals(4, shape.paramCount());
+    assertEquals(MethodShape.BOOLEAN, shape.paramKind(0));
+    assertEquals(MethodShape.REFERENCE, shape.paramKind(1));
+    assertEquals(MethodShape.PRIMITIVE, shape.paramKind(2));
+    assertEquals("int[]", shape.paramType(1).toString());
+    assertEquals("java.util.Map.Entry", shape.paramType(3).toString());
+    assertEquals("java.lang.String[][]", shape.returnType().toString());
+    assertEquals(MethodShape.REFERENCE, MethodShape.ofDescriptor("test", "()V", false).returnKind());
+
+    for (final String invalid : Arrays.asList("", "()", "(I", "(Ljava/lang/String)V", "(Q)V", "()VV")) {
+      assertThrows(IllegalArgumentException.class, () -> MethodShape.ofDescriptor("test", invalid, false), invalid);
+    }
+  }
+
+  @Test
+  void testConstructorsWithoutSyntheticParameters() throws IOException {
+    final String source = "package test;\n"
+      + "import org.jetbrains.annotations.Contract;\n"
+      + "public class Checked {\n"
+      + "  enum Kind {\n"
+      + "    A(\"a\");\n"
+      + "    @Contract(\"null -> fail\")\n"
+      + "    Kind(final String name) {}\n"
+      + "  }\n"
+      + "  class Inner {\n"
+      + "    @Contract(\"null, _ -> fail\")\n"
+      + "    Inner(final Object x, final int y) {}\n"
+      + "  }\n"
+      + "  void local() {\n"
+      + "    class Local {\n"
+      + "      @Contract(\"null -> fail\")\n"
+      + "      Local(final Object x) {}\n"
+      + "    }\n"
+      + "  }\n"
+      + "}\n";
+
+    final Result withoutFlags = run(this.compile(source).toString());
+    assertEquals("", withoutFlags.out);
+    // the outer instance of a local class is only known from its parameter flags, so it is skipped without them
+    assertTrue(withoutFlags.err.contains("Checked 2 annotated method(s)"), withoutFlags.err);
+
+    final Result withFlags = run(this.compile(source, "-parameters").toString());
+    assertEquals("", withFlags.out);
+    assertTrue(withFlags.err.contains("Checked 3 annotated method(s)"), withFlags.err);
+    assertEquals(
+      "(Ljava/lang/Object;I)V",
+      ClassFileReader.declaredDescriptor("(Ltest/Checked;Ljava/lang/Object;I)V", new int[] {0x8000, 0, 0}, -1)
+    );
+  }
+
+  private Path compile() throws IOException {
+    return this.compile(SOURCE);
+  }
+
+  private Path compile(final String contents, final String... options) throws IOException {
+    final Path classes = Files.createDirectories(this.temp.resolve("classes"));
+    final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    final JavaFileObject source = new SimpleJavaFileObject(
+      URI.create("string:///test/Checked.java"),
+      JavaFileObject.Kind.SOURCE
+    ) {
+      @Override
+      public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+        return contents;
+      }
+    };
+    final boolean success = compiler.getTask(
+      null,
+      null,
+      null,
+      options(options, "-proc:none", "-d", classes.toString(), "-classpath", annotationsPath()),
+      null,
+      Collections.singletonList(source)
+    ).call();
+    assertTrue(success);
+    return classes;
+  }
+
+  private static List<String> options(final String[] extra, final String... options) {
+    final List<String> all = new ArrayList<>(Arrays.asList(options));
+    all.addAll(Arrays.asList(extra));
+    return all;
+  }
+
+  private static String annotationsPath() {
+    try {
+      return Paths.get(Contract.class.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+    } catch (final URISyntaxException ex) {
+      throw new AssertionError(ex);
+    }
+  }
+
+  private static Result run(final String... args) {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final ByteArrayOutputStream err = new ByteArrayOutputStream();
+    final int exitCode = ClassFileValidator.run(args, printStream(out), printStream(err));
+    return new Result(exitCode, new String(out.toByteArray(), StandardCharsets.UTF_8), new String(err.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  private static PrintStream printStream(final OutputStream out) {
+    try {
+      return new PrintStream(out, true, "UTF-8");
+    } catch (final UnsupportedEncodingException ex) {
+      throw new AssertionError(ex);
+    }
+  }
+
+  static final class Result {
+    final int exitCode;
+    final String out;
+    final String err;
+
+    Result(final int exitCode, final String out, final String err) {
+      this.exitCode = exitCode;
+      this.out = out;
+      this.err = err;
+    }
+  }
+
+}
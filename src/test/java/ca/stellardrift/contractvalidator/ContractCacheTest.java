@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class ContractCacheTest {
+
+  @Test
+  void testRepeatedLookupsHit() {
+    final ContractCache cache = new ContractCache(4);
+    final ParsedContract first = cache.get("null -> null", ParsedContract::parseValue);
+    final ParsedContract second = cache.get("null -> null", ParsedContract::parseValue);
+
+    assertSame(first, second);
+    assertEquals(1, cache.hits());
+    assertEquals(1, cache.misses());
+  }
+
+  @Test
+  void testLeastRecentlyUsedEvicted() {
+    final ContractCache cache = new ContractCache(2);
+    final ParsedContract a = cache.get("null -> null", ParsedContract::parseValue);
+    cache.get("-> new", ParsedContract::parseValue);
+    cache.get("null -> null", ParsedContract::parseValue); // touch a
+    cache.get("_ -> this", ParsedContract::parseValue); // evicts "-> new"
+
+    assertEquals(2, cache.size());
+    assertSame(a, cache.get("null -> null", ParsedContract::parseValue));
+    cache.get("-> new", ParsedContract::parseValue); // must be parsed again
+    assertEquals(2, cache.hits());
+    assertEquals(4, cache.misses());
+  }
+
+  @Test
+  void testDisabledCacheAlwaysParses() {
+    final ContractCache cache = new ContractCache(0);
+    final ParsedContract first = cache.get("null -> null", ParsedContract::parseValue);
+    final ParsedContract second = cache.get("null -> null", ParsedContract::parseValue);
+
+    assertNotSame(first, second);
+    assertEquals(0, cache.hits());
+    assertEquals(2, cache.misses());
+  }
+
+}
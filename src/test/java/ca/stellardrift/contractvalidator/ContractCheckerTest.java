@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+import javax.tools.Diagnostic;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ContractCheckerTest {
+
+  private final ContractChecker checker = new ContractChecker();
+
+  @Test
+  void testValidContract() {
+    assertTrue(this.checker.checkValue("null, _ -> fail; !null, _ -> param2", "check", "(Ljava/lang/Object;I)I", true).isEmpty());
+    assertTrue(this.checker.checkMutates("this, param2", "check", "(Ljava/lang/Object;I)V", false).isEmpty());
+  }
+
+  @Test
+  void testConstraintPosition() {
+    final List<ContractDiagnostic> diagnostics = this.checker.checkValue("_, null -> true", "check", "(Ljava/lang/Object;I)Z", true);
+    assertEquals(1, diagnostics.size());
+    assertDiagnostic(
+      Diagnostic.Kind.ERROR,
+      3,
+      7,
+      "Constraint 'null' is only applicable to non-primitive types, but it was used to refer to a 'int'",
+      diagnostics.get(0)
+    );
+  }
+
+  @Test
+  void testClausePosition() {
+    final List<ContractDiagnostic> diagnostics = this.checker.checkValue("_ -> fail;  _, _ -> this", "check", "(I)V", true);
+    assertEquals(2, diagnostics.size());
+    assertDiagnostic(
+      Diagnostic.Kind.ERROR,
+      12,
+      24,
+      "Clause specified 2 parameter(s), but method 'check' had only 1 parameter(s)",
+      diagnostics.get(0)
+    );
+    assertDiagnostic(
+      Diagnostic.Kind.ERROR,
+      20,
+      24,
+      "Effect keyword 'this' can only be referenced from a non-static context, but method 'check' was static.",
+      diagnostics.get(1)
+    );
+  }
+
+  @Test
+  void testSyntaxErrorPosition() {
+    final List<ContractDiagnostic> diagnostics = this.checker.checkValue("_ _ -> fail", "check", "(I)V", false);
+    assertEquals(1, diagnostics.size());
+    assertEquals(2, diagnostics.get(0).startOffset());
+    assertEquals(3, diagnostics.get(0).endOffset());
+    assertTrue(diagnostics.get(0).message().startsWith("extraneous input '_'"), diagnostics.get(0)::message);
+  }
+
+  @Test
+  void testMutatesPosition() {
+    final List<ContractDiagnostic> diagnostics = this.checker.checkMutates("param1, param 1", "check", "(I)V", false);
+    assertEquals(1, diagnostics.size());
+    assertDiagnostic(
+      Diagnostic.Kind.WARNING,
+      8,
+      15,
+      "Invalid mutates clause: specifier 'param1' seen multiple times",
+      diagnostics.get(0)
+    );
+  }
+
+  @Test
+  void testMutatesRepeatsByParameter() {
+    // each is the first parameter, however it is written
+    final List<ContractDiagnostic> diagnostics = this.checker.checkMutates("param, param1, param01", "check", "(I)V", false);
+    assertEquals(2, diagnostics.size());
+    assertDiagnostic(Diagnostic.Kind.WARNING, 7, 13, "Invalid mutates clause: specifier 'param1' seen multiple times", diagnostics.get(0));
+    assertDiagnostic(Diagnostic.Kind.WARNING, 15, 22, "Invalid mutates clause: specifier 'param01' seen multiple times", diagnostics.get(1));
+  }
+
+  @Test
+  void testMutatesThisAndParameterZero() {
+    final String zero = "Mutates clause referenced parameter 0, but parameter numbers start from 1";
+    for (final String mutates : new String[] {"this, param0", "param0, this"}) {
+      final List<ContractDiagnostic> diagnostics = this.checker.checkMutates(mutates, "check", "(I)V", false);
+      assertEquals(1, diagnostics.size(), mutates);
+      assertEquals(zero, diagnostics.get(0).message(), mutates);
+    }
+    // still a repeat of itself
+    final List<ContractDiagnostic> diagnostics = this.checker.checkMutates("param0, param00", "check", "(I)V", false);
+    assertEquals("Invalid mutates clause: specifier 'param00' seen multiple times", diagnostics.get(1).message());
+  }
+
+  @Test
+  void testMutatesRepeatsBeyondFirstWord() {
+    final String descriptor = "(" + repeat("I", ContractMutatesValidator.MAX_PARAMETERS) + ")V";
+    assertTrue(this.checker.checkMutates("this, param63, param64, param128, param255", "check", descriptor, false).isEmpty());
+    final List<ContractDiagnostic> diagnostics = this.checker.checkMutates("param64, param200, param128, param200, param64", "check", descriptor, false);
+    assertEquals(2, diagnostics.size());
+    assertEquals("Invalid mutates clause: specifier 'param200' seen multiple times", diagnostics.get(0).message());
+    assertEquals("Invalid mutates clause: specifier 'param64' seen multiple times", diagnostics.get(1).message());
+  }
+
+  @Test
+  void testLargestParameterNumber() {
+    assertEquals(
+      "Method 'check' was declared to mutate parameter 2147483647, but only 1 parameters exist",
+      this.checker.checkMutates("param2147483647", "check", "(I)V", false).get(0).message()
+    );
+    assertEquals(
+      "Number '2147483648' was not a valid integer",
+      this.checker.checkMutates("param2147483648", "check", "(I)V", false).get(0).message()
+    );
+    assertEquals(
+      "Number '99999999999' was not a valid integer",
+      this.checker.checkValue("_ -> param99999999999", "check", "(I)I", true).get(0).message()
+    );
+  }
+
+  @Test
+  void testUncachedMatchesCached() {
+    final ContractChecker uncached = new ContractChecker(0);
+    for (int i = 0; i < 2; i++) {
+      assertEquals(
+        this.checker.checkValue("null -> true", "check", "(I)Z", false).toString(),
+        uncached.checkValue("null -> true", "check", "(I)Z", false).toString()
+      );
+    }
+  }
+
+  @Test
+  void testMalformedDescriptor() {
+    assertThrows(IllegalArgumentException.class, () -> this.checker.checkValue("_ -> fail", "check", "(I", false));
+  }
+
+  @Test
+  void testTooLong() {
+    final String contract = repeat("null, ", 20) + "_ -> fail";
+    final ContractChecker limited = new ContractChecker(0, 100);
+    final List<ContractDiagnostic> diagnostics = limited.checkValue(contract, "check", "(Ljava/lang/Object;)V", false);
+    assertEquals(1, diagnostics.size());
+    assertDiagnostic(
+      Diagnostic.Kind.ERROR,
+      -1,
+      -1,
+      "Contract text is " + contract.length() + " characters long, more than the limit of 100, so it was not parsed",
+      diagnostics.get(0)
+    );
+    assertTrue(new ContractChecker(0, 0).checkMutates(repeat("this, ", 20) + "this", "check", "()V", false).size() > 0);
+  }
+
+  @Test
+  void testSyntaxErrorsBounded() {
+    final String contract = repeat("% ", 2000) + "-> fail; " + repeat("null null ", 400);
+    final List<ContractDiagnostic> diagnostics = this.checker.checkValue(contract, "check", "()V", false);
+    assertTrue(diagnostics.size() <= 2 * ParseErrorListener.MAX_ERRORS + 1, () -> diagnostics.size() + " diagnostics");
+    final ContractDiagnostic last = diagnostics.get(diagnostics.size() - 1);
+    assertEquals(Diagnostic.Kind.NOTE, last.kind());
+    assertEquals("Stopped parsing after " + ParseErrorListener.MAX_ERRORS + " syntax errors, so the rest of the contract was not checked", last.message());
+    for (final ContractDiagnostic diagnostic : diagnostics) {
+      assertTrue(diagnostic.message().length() < 300, diagnostic::message);
+    }
+  }
+
+  @Test
+  void testLongInputExcerpted() {
+    final String contract = repeat("_, ", 100) + "_ _, " + repeat("_, ", 100) + "_ -> fail";
+    final ContractDiagnostic error = this.checker.checkValue(contract, "check", "()V", false).get(0);
+    assertEquals(302, error.startOffset());
+    final String[] lines = error.message().split("\\R");
+    assertEquals("missing '->' at '_'", lines[0]);
+    assertEquals("at: ..." + contract.substring(302 - ParsedContract.EXCERPT_RADIUS, 302 + ParsedContract.EXCERPT_RADIUS) + "...", lines[2]);
+    assertEquals("at: ...".length() + ParsedContract.EXCERPT_RADIUS, lines[3].indexOf('^'));
+
+    final List<ContractDiagnostic> number = this.checker.checkMutates("param" + repeat("9", 1000), "check", "(I)V", false);
+    assertEquals(1, number.size());
+    assertEquals("Number '" + repeat("9", 2 * ParsedContract.EXCERPT_RADIUS) + "...' was not a valid integer", number.get(0).message());
+  }
+
+  @Test
+  void testWellFormedWithoutAntlr() throws IOException, ReflectiveOperationException {
+    final URL classes = ContractChecker.class.getProtectionDomain().getCodeSource().getLocation();
+    try (final URLClassLoader loader = new WithoutAntlr(classes)) {
+      final Class<?> checkerClass = loader.loadClass(ContractChecker.class.getName());
+      final Object isolated = checkerClass.getConstructor().newInstance();
+      final Object result = checkerClass.getMethod("checkValue", String.class, String.class, String.class, boolean.class)
+        .invoke(isolated, "null -> fail; !null -> param1", "check", "(Ljava/lang/Object;)Ljava/lang/Object;", true);
+      assertEquals(0, assertInstanceOf(List.class, result).size());
+    }
+  }
+
+  private static String repeat(final String text, final int count) {
+    final StringBuilder builder = new StringBuilder(text.length() * count);
+    for (int i = 0; i < count; i++) {
+      builder.append(text);
+    }
+    return builder.toString();
+  }
+
+  private static void assertDiagnostic(
+    final Diagnostic.Kind kind,
+    final int start,
+    final int end,
+    final String message,
+    final ContractDiagnostic actual
+  ) {
+    assertEquals(kind, actual.kind());
+    assertEquals(start, actual.startOffset());
+    assertEquals(end, actual.endOffset());
+    assertEquals(message, actual.message());
+  }
+
+  /**
+   * Loads the validator's own classes in isolation, with the ANTLR runtime unavailable.
+   */
+  static final class WithoutAntlr extends URLClassLoader {
+
+    WithoutAntlr(final URL classes) {
+      super(new URL[] {classes}, ContractCheckerTest.class.getClassLoader());
+    }
+
+    @Override
+    protected Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException {
+      if (name.startsWith("org.antlr.")) {
+        throw new ClassNotFoundException(name);
+      }
+      synchronized (this.getClassLoadingLock(name)) {
+        if (name.startsWith("ca.stellardrift.contractvalidator.")) {
+          Class<?> found = this.findLoadedClass(name);
+          if (found == null) {
+            found = this.findClass(name);
+          }
+          if (resolve) {
+            this.resolveClass(found);
+          }
+          return found;
+        }
+      }
+      return super.loadClass(name, resolve);
+    }
+
+  }
+
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Processor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import org.jetbrains.annotations.Contract;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ContractIndexTest {
+
+  private static final String SOURCE = "package test;\n"
+    + "import java.util.List;\n"
+    + "import org.jetbrains.annotations.Contract;\n"
+    + "public class Indexed {\n"
+    + "  @Contract(\"null -> fail\")\n"
+    + "  public Indexed(final Object x) {}\n"
+    + "  @Contract(value = \"null, _ -> null; _, _ -> param01\", mutates = \"param2\")\n"
+    + "  public static <T extends Comparable<T>> T first(final T a, final List<? extends T> b) { return a; }\n"
+    + "  @Contract(\"null -> fail; !null -> param1\")\n"
+    + "  public Object require(final Object x) { return x; }\n"
+    + "  public static class Inner {\n"
+    + "    @Contract(mutates = \"this, param\")\n"
+    + "    public void reset(final int[][] values) {}\n"
+    + "  }\n"
+    + "}\n";
+
+  private static final String OVERRIDE_ERRORS = "-A" + ContractValidatorProcessor.OPTION_OVERRIDE_ERRORS + "=true";
+
+  @TempDir
+  Path temp;
+
+  @Test
+  void testRoundTrip() throws IOException {
+    final ContractIndex.Builder builder = new ContractIndex.Builder();
+    for (int i = 0; i < 50; i++) {
+      assertTrue(builder.add("test.Owner", "method" + i, "(Ljava/lang/Object;)Ljava/lang/Object;",
+        ParsedContract.parseValue("null -> fail; !null -> param" + (i % 3 + 1)), i % 2 == 0 ? ParsedContract.parseMutates("this, param") : null));
+    }
+    assertFalse(builder.add("test.Owner", "bad", "()V", ParsedContract.parseValue("-> %"), null));
+    assertFalse(builder.add("test.Owner", "bad", "()V", null, ParsedContract.parseMutates("param99999999999")));
+
+    final ContractIndex index = ContractIndex.read(ByteBuffer.wrap(builder.build()));
+    assertEquals(50, index.size());
+    for (int i = 0; i < 50; i++) {
+      final ContractIndex.Entry entry = index.lookup("test.Owner", "method" + i, "(Ljava/lang/Object;)Ljava/lang/Object;");
+      assertNotNull(entry);
+      assertEquals("null -> fail; !null -> param" + (i % 3 + 1), entry.value().toString());
+      assertEquals(ParsedContract.Strategy.INDEX, entry.value().strategy());
+      if (i % 2 == 0) {
+        assertEquals("this, param1", entry.mutates().toString());
+      } else {
+        assertNull(entry.mutates());
+      }
+    }
+    assertNull(index.lookup("test.Owner", "method0", "(I)Ljava/lang/Object;"));
+    assertNull(index.lookup("test.Other", "method0", "(Ljava/lang/Object;)Ljava/lang/Object;"));
+    assertNull(index.lookup("test.Owner", "bad", "()V"));
+  }
+
+  @Test
+  void testEmptyIndex() throws IOException {
+    final ContractIndex index = ContractIndex.read(ByteBuffer.wrap(new ContractIndex.Builder().build()));
+    assertEquals(0, index.size());
+    assertNull(index.lookup("test.Owner", "method", "()V"));
+  }
+
+  @Test
+  void testInvalidIndex() {
+    final byte[] valid = new ContractIndex.Builder().build();
+    assertThrows(IOException.class, () -> ContractIndex.read(ByteBuffer.wrap(new byte[] {1, 2, 3})));
+    final byte[] wrongMagic = valid.clone();
+    wrongMagic[0] = 0;
+    assertThrows(IOException.class, () -> ContractIndex.read(ByteBuffer.wrap(wrongMagic)));
+    final byte[] wrongVersion = valid.clone();
+    wrongVersion[7] = 2;
+    assertThrows(IOException.class, () -> ContractIndex.read(ByteBuffer.wrap(wrongVersion)));
+    assertThrows(IOException.class, () -> ContractIndex.read(ByteBuffer.wrap(Arrays.copyOf(valid, valid.length - 1))));
+  }
+
+  @Test
+  void testPublishedIndex() throws IOException {
+    final Path classes = this.compileIndexed();
+    final Path file = classes.resolve("test/Indexed.contracts");
+    assertTrue(Files.exists(file));
+
+    final ContractIndex index = ContractIndex.read(ByteBuffer.wrap(Files.readAllBytes(file)));
+    assertEquals(4, index.size());
+    assertEquals("null -> fail", index.lookup("test.Indexed", "<init>", "(Ljava/lang/Object;)V").value().toString());
+    final ContractIndex.Entry first = index.lookup("test.Indexed", "first", "(Ljava/lang/Comparable;Ljava/util/List;)Ljava/lang/Comparable;");
+    assertEquals("null, _ -> null; _, _ -> param1", first.value().toString());
+    assertEquals("param2", first.mutates().toString());
+    final ContractIndex.Entry reset = index.lookup("test.Indexed$Inner", "reset", "([[I)V");
+    assertNull(reset.value());
+    assertEquals("this, param1", reset.mutates().toString());
+  }
+
+  @Test
+  void testFindOnClasspath() throws IOException {
+    final Path classes = this.compileIndexed();
+    final Path jar = this.temp.resolve("indexed.jar");
+    try (final JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+      out.putNextEntry(new ZipEntry("test/Indexed.contracts"));
+      Files.copy(classes.resolve("test/Indexed.contracts"), out);
+      out.putNextEntry(new ZipEntry("test/Indexed.class"));
+      Files.copy(classes.resolve("test/Indexed.class"), out);
+    }
+
+    for (final Path classpath : Arrays.asList(classes, jar)) {
+      final FindIndex find = new FindIndex();
+      assertTrue(this.compile("Downstream", "package test;\nclass Downstream extends Indexed { Downstream() { super(null); } }\n",
+        Collections.singletonList(find), classpath.toString()));
+      assertNotNull(find.found, classpath.toString());
+      assertEquals("null -> fail", find.found.lookup("test.Indexed", "<init>", "(Ljava/lang/Object;)V").value().toString());
+      assertNull(find.missing);
+    }
+  }
+
+  @Test
+  void testOverridesCheckedAgainstIndex() throws IOException {
+    final Path classes = this.compileIndexed();
+    // the same type without any contracts, so only the index can tell the override check about them
+    final Path plain = Files.createDirectories(this.temp.resolve("plain"));
+    assertTrue(this.compile("Indexed", SOURCE.replaceAll("@Contract\\([^)]*\\)", ""), Collections.emptyList(), null, "-d", plain.toString()));
+    final Path jar = this.temp.resolve("indexed.jar");
+    try (final JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+      out.putNextEntry(new ZipEntry("test/Indexed.contracts"));
+      Files.copy(classes.resolve("test/Indexed.contracts"), out);
+      out.putNextEntry(new ZipEntry("test/Indexed.class"));
+      Files.copy(plain.resolve("test/Indexed.class"), out);
+    }
+
+    final List<String> messages = new ArrayList<>();
+    assertFalse(this.compile("Downstream", "package test;\n"
+      + "import org.jetbrains.annotations.Contract;\n"
+      + "class Downstream extends Indexed {\n"
+      + "  Downstream() { super(null); }\n"
+      + "  @Contract(\"_ -> param1\")\n"
+      + "  public Object require(final Object x) { return x; }\n"
+      + "}\n", Collections.singletonList(new ContractValidatorProcessor()), jar.toString(), messages, OVERRIDE_ERRORS));
+    assertEquals(
+      Collections.singletonList("Clause '_ -> param1' contradicts the clause 'null -> fail' of overridden method test.Indexed#require"),
+      messages
+    );
+  }
+
+  @Test
+  void testSourceTypesIgnoreTheirIndex() throws IOException {
+    final Path classes = this.compileIndexed();
+    // an edited copy of the indexed type, compiled alongside a subtype while its old index is on the classpath
+    final String edited = SOURCE.replace("\"null -> fail; !null -> param1\"", "\"null -> null; !null -> param1\"");
+    final String downstream = "package test;\n"
+      + "import org.jetbrains.annotations.Contract;\n"
+      + "class Downstream extends Indexed {\n"
+      + "  Downstream() { super(null); }\n"
+      + "  @Contract(\"null -> null\")\n"
+      + "  public Object require(final Object x) { return x; }\n"
+      + "}\n";
+
+    final List<String> messages = new ArrayList<>();
+    assertTrue(this.compile(
+      Arrays.asList(source("Indexed", edited), source("Downstream", downstream)),
+      Collections.singletonList(new ContractValidatorProcessor()),
+      classes.toString(),
+      messages,
+      OVERRIDE_ERRORS
+    ), messages.toString());
+    assertEquals(Collections.emptyList(), messages);
+  }
+
+  private Path compileIndexed() throws IOException {
+    final Path classes = Files.createDirectories(this.temp.resolve("classes"));
+    assertTrue(this.compile("Indexed", SOURCE, Collections.singletonList(new ContractValidatorProcessor()), null,
+      "-d", classes.toString(), "-A" + ContractValidatorProcessor.OPTION_CONTRACT_INDEX + "=true"));
+    return classes;
+  }
+
+  private boolean compile(final String name, final String source, final List<Processor> processors, final String classpath, final String... options) {
+    return this.compile(name, source, processors, classpath, new ArrayList<>(), options);
+  }
+
+  private boolean compile(
+    final String name,
+    final String source,
+    final List<Processor> processors,
+    final String classpath,
+    final List<String> errors,
+    final String... options
+  ) {
+    return this.compile(Collections.singletonList(source(name, source)), processors, classpath, errors, options);
+  }
+
+  private boolean compile(
+    final List<JavaFileObject> sources,
+    final List<Processor> processors,
+    final String classpath,
+    final List<String> errors,
+    final String... options
+  ) {
+    final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    final List<String> allOptions = new ArrayList<>(Arrays.asList(options));
+    allOptions.add("-classpath");
+    allOptions.add(classpath == null ? annotationsPath() : classpath + java.io.File.pathSeparator + annotationsPath());
+    if (!allOptions.contains("-d")) {
+      allOptions.add("-d");
+      allOptions.add(this.temp.resolve("downstream").toString());
+    }
+    final JavaCompiler.CompilationTask task = compiler.getTask(null, null, diag -> {
+      if (diag.getKind() == Diagnostic.Kind.ERROR) {
+        errors.add(diag.getMessage(Locale.ROOT));
+      }
+    }, allOptions, null, sources);
+    task.setProcessors(processors);
+    return task.call();
+  }
+
+  private static JavaFileObject source(final String name, final String source) {
+    return new SimpleJavaFileObject(URI.create("string:///test/" + name + ".java"), JavaFileObject.Kind.SOURCE) {
+      @Override
+      public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+        return source;
+      }
+    };
+  }
+
+  private static String annotationsPath() {
+    try {
+      return Paths.get(Contract.class.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+    } catch (final URISyntaxException ex) {
+      throw new AssertionError(ex);
+    }
+  }
+
+  /**
+   * Looks up published indexes through the filer, as a downstream compilation would.
+   */
+  @SupportedAnnotationTypes("*")
+  static final class FindIndex extends AbstractProcessor {
+    ContractIndex found;
+    ContractIndex missing;
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+      if (!roundEnv.processingOver()) {
+        try {
+          this.found = ContractIndex.find(this.processingEnv.getFiler(), "test.Indexed");
+          this.missing = ContractIndex.find(this.processingEnv.getFiler(), "test.Downstream");
+        } catch (final IOException ex) {
+          throw new AssertionError(ex);
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+      return SourceVersion.latestSupported();
+    }
+  }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Differential tests checking that the hand-written scanner accepts exactly the same language as the ANTLR grammar.
+ */
+public class ContractScannerTest {
+
+  private static final String[] VOCABULARY = {
+    "_", "null", "!null", "false", "true", "fail", "this", "new", "param",
+    "0", "1", "2", "12", "99999999999",
+    ",", ";", "->",
+    // invalid fragments
+    "-", "!", "nul", "x", "?", "=>", "paramx",
+  };
+  private static final String[] SEPARATORS = {"", "", " ", " ", "\t", "\r\n"};
+  private static final String[] CONSTRAINTS = {"_", "null", "!null", "false", "true"};
+  private static final String[] EFFECTS = {"_", "null", "!null", "false", "true", "fail", "this", "new", "param1", "param 23", "param0"};
+  private static final String[] MUTATES = {"this", "param", "param1", "param 2", "param99999999999"};
+
+  @Test
+  void testShortSequences() {
+    final List<String> inputs = new ArrayList<>();
+    inputs.add("");
+    for (final String a : VOCABULARY) {
+      inputs.add(a);
+      for (final String b : VOCABULARY) {
+        inputs.add(a + b);
+        inputs.add(a + " " + b);
+        for (final String c : VOCABULARY) {
+          inputs.add(a + " " + b + c);
+        }
+      }
+    }
+
+    for (final String input : inputs) {
+      assertSameResult(input);
+    }
+  }
+
+  @Test
+  void testRandomSequences() {
+    final Random random = new Random(0xc0ffee);
+    for (int i = 0; i < 20_000; i++) {
+      final StringBuilder input = new StringBuilder();
+      final int length = random.nextInt(10);
+      for (int j = 0; j < length; j++) {
+        input.append(pick(random, SEPARATORS)).append(pick(random, VOCABULARY));
+      }
+      assertSameResult(input.toString());
+    }
+  }
+
+  @Test
+  void testGeneratedWellFormed() {
+    final Random random = new Random(0xdecaf);
+    for (int i = 0; i < 5_000; i++) {
+      final StringBuilder contract = new StringBuilder();
+      final int clauses = 1 + random.nextInt(4);
+      for (int clause = 0; clause < clauses; clause++) {
+        if (clause > 0) {
+          contract.append(pick(random, SEPARATORS)).append(';');
+        }
+        final int args = random.nextInt(4);
+        for (int arg = 0; arg < args; arg++) {
+          if (arg > 0) {
+            contract.append(',').append(pick(random, SEPARATORS));
+          }
+          contract.append(pick(random, CONSTRAINTS));
+        }
+        contract.append(pick(random, SEPARATORS)).append("->").append(pick(random, SEPARATORS)).append(pick(random, EFFECTS));
+      }
+      assertNotNull(ContractScanner.scanValue(contract.toString()), contract::toString);
+      assertSameResult(contract.toString());
+
+      final StringBuilder mutates = new StringBuilder();
+      final int elements = 1 + random.nextInt(4);
+      for (int element = 0; element < elements; element++) {
+        if (element > 0) {
+          mutates.append(pick(random, SEPARATORS)).append(',');
+        }
+        mutates.append(pick(random, SEPARATORS)).append(pick(random, MUTATES));
+      }
+      assertNotNull(ContractScanner.scanMutates(mutates.toString()), mutates::toString);
+      assertSameResult(mutates.toString());
+    }
+  }
+
+  private static String pick(final Random random, final String[] options) {
+    return options[random.nextInt(options.length)];
+  }
+
+  private static void assertSameResult(final String input) {
+    assertSameResult(input, ContractScanner::scanValue, ParsedContract::parseValueWithAntlr);
+    assertSameResult(input, ContractScanner::scanMutates, ParsedContract::parseMutatesWithAntlr);
+  }
+
+  private static void assertSameResult(
+    final String input,
+    final Function<String, ParsedContract> scanner,
+    final Function<String, ParsedContract> antlr
+  ) {
+    final ParsedContract scanned = scanner.apply(input);
+    final ParsedContract parsed = antlr.apply(input);
+    if (parsed.hasSyntaxErrors()) {
+      assertNull(scanned, () -> "scanner accepted malformed input '" + input + "'");
+    } else {
+      assertNotNull(scanned, () -> "scanner rejected well-formed input '" + input + "'");
+      assertEquals(parsed.toString(), scanned.toString(), () -> "different result for '" + input + "'");
+      assertEquals(positions(parsed), positions(scanned), () -> "different positions for '" + input + "'");
+    }
+  }
+
+  private static String positions(final ParsedContract contract) {
+    final StringBuilder builder = new StringBuilder();
+    for (final ContractClause clause : contract.clauses()) {
+      builder.append('[').append(clause.start()).append(", ").append(clause.end()).append(") ");
+      for (int i = 0; i < clause.argCount(); i++) {
+        builder.append(clause.argStart(i)).append('-').append(clause.argEnd(i)).append(' ');
+      }
+      builder.append(clause.effectStart()).append('-').append(clause.effectEnd()).append("; ");
+    }
+    for (int i = 0; i < contract.mutated().size(); i++) {
+      builder.append(contract.mutatedStart(i)).append('-').append(contract.mutatedEnd(i)).append(' ');
+    }
+    return builder.toString();
+  }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.util.Collections;
+import java.util.List;
+import javax.tools.Diagnostic;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ContractSemanticsTest {
+
+  private final ContractChecker checker = new ContractChecker();
+
+  @Test
+  void testContradiction() {
+    final List<ContractDiagnostic> diagnostics = this.checker.checkValue("null -> null; null -> !null", "check", "(Ljava/lang/Object;)Ljava/lang/Object;", true);
+    assertEquals(1, diagnostics.size());
+    assertDiagnostic(
+      Diagnostic.Kind.ERROR,
+      14,
+      27,
+      "Clause 'null -> !null' contradicts the earlier clause 'null -> null' with the same arguments",
+      diagnostics.get(0)
+    );
+  }
+
+  @Test
+  void testReturnedParameterContradiction() {
+    final List<ContractDiagnostic> diagnostics = this.checker.checkValue("null -> param1; null -> !null", "check", "(Ljava/lang/Object;)Ljava/lang/Object;", true);
+    assertEquals(1, diagnostics.size());
+    assertEquals(Diagnostic.Kind.ERROR, diagnostics.get(0).kind());
+  }
+
+  @Test
+  void testUnreachable() {
+    final List<ContractDiagnostic> diagnostics = this.checker.checkValue("_ -> fail; null -> null", "check", "(Ljava/lang/Object;)Ljava/lang/Object;", true);
+    assertEquals(1, diagnostics.size());
+    assertDiagnostic(
+      Diagnostic.Kind.WARNING,
+      11,
+      23,
+      "Clause 'null -> null' can never apply, since the earlier clause '_ -> fail' covers all of its arguments",
+      diagnostics.get(0)
+    );
+  }
+
+  @Test
+  void testRedundant() {
+    final List<ContractDiagnostic> diagnostics = this.checker.checkValue("null, _ -> fail; _, _ -> fail", "check", "(Ljava/lang/Object;I)V", true);
+    assertEquals(1, diagnostics.size());
+    assertDiagnostic(
+      Diagnostic.Kind.WARNING,
+      0,
+      15,
+      "Clause 'null, _ -> fail' is redundant, since the later clause '_, _ -> fail' has the same effect",
+      diagnostics.get(0)
+    );
+  }
+
+  @Test
+  void testNotRedundantWhenDecidedBetween() {
+    assertTrue(
+      this.checker.checkValue("null, _ -> fail; _, null -> null; _, _ -> fail", "check", "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;", true)
+        .isEmpty()
+    );
+  }
+
+  @Test
+  void testDisjointClauses() {
+    assertTrue(this.checker.checkValue("null -> false; !null -> true", "check", "(Ljava/lang/Object;)Z", true).isEmpty());
+    assertTrue(this.checker.checkValue("true, _ -> true; _, true -> true; _, _ -> false", "check", "(ZZ)Z", true).isEmpty());
+  }
+
+  @Test
+  void testSkippedForInvalidContract() {
+    // only the constraint errors are reported, not a contradiction between clauses that do not fit the method
+    final List<ContractDiagnostic> diagnostics = this.checker.checkValue("null -> null; null -> !null", "check", "(I)Ljava/lang/Object;", true);
+    assertEquals(2, diagnostics.size());
+    assertTrue(diagnostics.get(0).message().startsWith("Constraint 'null'"), diagnostics.get(0)::message);
+    assertTrue(diagnostics.get(1).message().startsWith("Constraint 'null'"), diagnostics.get(1)::message);
+  }
+
+  @Test
+  void testWidestContract() {
+    final String wildcards = String.join(", ", Collections.nCopies(ContractSemantics.MAX_ARGS, "_"));
+    final String lastNull = String.join(", ", Collections.nCopies(ContractSemantics.MAX_ARGS - 1, "_")) + ", null";
+    final ParsedContract contract = ParsedContract.parseValue(wildcards + " -> fail; " + lastNull + " -> null");
+    assertArrayEquals(new int[] {ContractSemantics.UNREACHABLE, 1, 0}, contract.clauseFindings());
+
+    final ParsedContract tooWide = ParsedContract.parseValue("_, " + wildcards + " -> fail; _, " + lastNull + " -> null");
+    assertEquals(0, tooWide.clauseFindings().length);
+  }
+
+  @Test
+  void testLongestContract() {
+    final String clauses = String.join("; ", Collections.nCopies(ContractSemantics.MAX_CLAUSES - 1, "null -> fail"));
+    final ParsedContract contract = ParsedContract.parseValue(clauses + "; null -> null");
+    assertEquals(ContractSemantics.MAX_CLAUSES - 1, contract.clauseFindings().length / 3);
+
+    final ParsedContract tooLong = ParsedContract.parseValue(clauses + "; null -> null; null -> null");
+    assertEquals(0, tooLong.clauseFindings().length);
+  }
+
+  @Test
+  void testFindingsShared() {
+    final ParsedContract contract = ParsedContract.parseValue("-> fail; -> new");
+    assertArrayEquals(new int[] {ContractSemantics.CONTRADICTION, 1, 0}, contract.clauseFindings());
+    assertSame(contract.clauseFindings(), contract.clauseFindings());
+  }
+
+  private static void assertDiagnostic(
+    final Diagnostic.Kind kind,
+    final int start,
+    final int end,
+    final String message,
+    final ContractDiagnostic actual
+  ) {
+    assertEquals(kind, actual.kind());
+    assertEquals(start, actual.startOffset());
+    assertEquals(end, actual.endOffset());
+    assertEquals(message, actual.message());
+  }
+
+}
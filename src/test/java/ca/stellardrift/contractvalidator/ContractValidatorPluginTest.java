@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import javax.tools.Diagnostic;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import org.antlr.v4.runtime.Lexer;
+import org.jetbrains.annotations.Contract;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ContractValidatorPluginTest {
+
+  private static final String SOURCE = "package test;\n"
+    + "import org.jetbrains.annotations.Contract;\n"
+    + "class Checked {\n"
+    + "  @Contract(\"_, _ -> null\")\n"
+    + "  static Object one(final Object a) { return null; }\n"
+    + "\n"
+    + "  static final class Member {\n"
+    + "    @Contract(value = \"_ -> param2\", pure = true)\n"
+    + "    Object two(final Object a) { return a; }\n"
+    + "  }\n"
+    + "}\n";
+
+  @TempDir
+  Path temp;
+
+  @Test
+  void testReportsAtContract() {
+    final List<Diagnostic<? extends JavaFileObject>> diagnostics = new ArrayList<>();
+    assertFalse(this.compile(SOURCE, diagnostics, "-proc:none", "-Xplugin:" + ContractValidatorPlugin.NAME));
+
+    final List<String> positions = new ArrayList<>();
+    for (final Diagnostic<? extends JavaFileObject> diagnostic : diagnostics) {
+      if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+        positions.add(diagnostic.getLineNumber() + ":" + diagnostic.getColumnNumber());
+      }
+    }
+    // the string literal of each contract, on lines 4 and 8
+    assertEquals(Arrays.asList("4:13", "8:23"), sorted(positions));
+  }
+
+  @Test
+  void testSameMessagesAsProcessor() {
+    final List<Diagnostic<? extends JavaFileObject>> fromPlugin = new ArrayList<>();
+    this.compile(SOURCE, fromPlugin, "-proc:none", "-Xplugin:" + ContractValidatorPlugin.NAME);
+    final List<Diagnostic<? extends JavaFileObject>> fromProcessor = new ArrayList<>();
+    this.compile(SOURCE, fromProcessor);
+
+    assertEquals(messages(fromProcessor, Diagnostic.Kind.ERROR), messages(fromPlugin, Diagnostic.Kind.ERROR));
+    assertEquals(2, messages(fromPlugin, Diagnostic.Kind.ERROR).size());
+  }
+
+  @Test
+  void testProcessorStandsDown() {
+    final List<Diagnostic<? extends JavaFileObject>> diagnostics = new ArrayList<>();
+    // the processor is discovered as well, but each problem is only reported once
+    this.compile(SOURCE, diagnostics, "-Xplugin:" + ContractValidatorPlugin.NAME);
+    assertEquals(2, messages(diagnostics, Diagnostic.Kind.ERROR).size());
+  }
+
+  @Test
+  void testPluginOptions() {
+    final List<Diagnostic<? extends JavaFileObject>> diagnostics = new ArrayList<>();
+    this.compile(SOURCE, diagnostics, "-proc:none", "-Xplugin:" + ContractValidatorPlugin.NAME
+      + " " + ContractValidatorProcessor.OPTION_MAX_CONTRACT_LENGTH + "=5"
+      + " " + ContractValidatorProcessor.OPTION_STATS_FILE + "=stats.txt"
+      + " contractvalidator.unknown");
+
+    assertEquals(Arrays.asList(
+      "Option " + ContractValidatorProcessor.OPTION_STATS_FILE + " is not available to the ContractValidator plugin, and was ignored",
+      "Unknown ContractValidator plugin option 'contractvalidator.unknown'"
+    ), messages(diagnostics, Diagnostic.Kind.WARNING));
+    assertEquals(Arrays.asList(
+      "Contract text is 11 characters long, more than the limit of 5, so it was not parsed",
+      "Contract text is 12 characters long, more than the limit of 5, so it was not parsed"
+    ), sorted(messages(diagnostics, Diagnostic.Kind.ERROR)));
+  }
+
+  @Test
+  void testMessagesWithoutElementReportedAgainstSource() {
+    final List<Diagnostic<? extends JavaFileObject>> diagnostics = new ArrayList<>();
+    this.compile(SOURCE, diagnostics, "-proc:none", "-Xplugin:" + ContractValidatorPlugin.NAME
+      + " " + ContractValidatorProcessor.OPTION_STATS + "=true"
+      + " contractvalidator.unknown");
+
+    final List<Diagnostic<? extends JavaFileObject>> general = new ArrayList<>();
+    for (final Diagnostic<? extends JavaFileObject> diagnostic : diagnostics) {
+      final String message = diagnostic.getMessage(Locale.ROOT);
+      if (message.startsWith("Unknown ContractValidator plugin option") || message.startsWith("Contract validation:")) {
+        general.add(diagnostic);
+      }
+    }
+    assertEquals(2, general.size(), general::toString);
+    for (final Diagnostic<? extends JavaFileObject> diagnostic : general) {
+      assertEquals(URI.create("string:///test/Checked.java"), diagnostic.getSource().toUri(), diagnostic::toString);
+    }
+  }
+
+  @Test
+  void testValidSourceCompiles() {
+    final List<Diagnostic<? extends JavaFileObject>> diagnostics = new ArrayList<>();
+    assertTrue(this.compile(SOURCE.replace("_, _ -> null", "_ -> null").replace("param2", "param1"), diagnostics,
+      "-proc:none", "-Xplugin:" + ContractValidatorPlugin.NAME));
+    assertEquals(Collections.emptyList(), messages(diagnostics, Diagnostic.Kind.ERROR));
+  }
+
+  @Test
+  @EnabledForJreRange(min = JRE.JAVA_16)
+  void testRecords() {
+    final List<Diagnostic<? extends JavaFileObject>> diagnostics = new ArrayList<>();
+    assertFalse(this.compile("package test;\n"
+      + "import org.jetbrains.annotations.Contract;\n"
+      + "record Checked(String a) {\n"
+      + "  @Contract(\"_, _ -> null\")\n"
+      + "  static Object of(final Object x) { return null; }\n"
+      + "}\n", diagnostics, "-proc:none", "-Xplugin:" + ContractValidatorPlugin.NAME));
+    assertEquals(
+      Collections.singletonList("Clause specified 2 parameter(s), but method 'of' had only 1 parameter(s)"),
+      messages(diagnostics, Diagnostic.Kind.ERROR)
+    );
+  }
+
+  private boolean compile(final String source, final List<Diagnostic<? extends JavaFileObject>> diagnostics, final String... options) {
+    final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    final JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///test/Checked.java"), JavaFileObject.Kind.SOURCE) {
+      @Override
+      public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+        return source;
+      }
+    };
+    final List<String> allOptions = new ArrayList<>(Arrays.asList(options));
+    allOptions.addAll(Arrays.asList(
+      "-classpath", location(Contract.class),
+      // javac loads plugins from the processor path, so they can't be passed in like processors
+      "-processorpath", processorPath(),
+      "-d", this.temp.toString()
+    ));
+    return compiler.getTask(null, null, diagnostics::add, allOptions, null, Collections.singletonList(file)).call();
+  }
+
+  private static List<String> messages(final List<Diagnostic<? extends JavaFileObject>> diagnostics, final Diagnostic.Kind kind) {
+    final List<String> messages = new ArrayList<>();
+    for (final Diagnostic<? extends JavaFileObject> diagnostic : diagnostics) {
+      if (diagnostic.getKind() == kind) {
+        messages.add(diagnostic.getMessage(Locale.ROOT));
+      }
+    }
+    return messages;
+  }
+
+  private static List<String> sorted(final List<String> values) {
+    Collections.sort(values);
+    return values;
+  }
+
+  private static String processorPath() {
+    final Set<String> entries = new LinkedHashSet<>();
+    entries.add(location(ContractValidatorPlugin.class));
+    entries.add(location(ContractValidatorProcessor.class));
+    entries.add(location(Lexer.class));
+    return String.join(File.pathSeparator, entries);
+  }
+
+  private static String location(final Class<?> type) {
+    try {
+      return Paths.get(type.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+    } catch (final URISyntaxException ex) {
+      throw new AssertionError(ex);
+    }
+  }
+
+}
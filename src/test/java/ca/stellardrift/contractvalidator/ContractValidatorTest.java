@@ -21,6 +21,7 @@ import org.joor.ReflectException;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -148,4 +149,31 @@ public class ContractValidatorTest extends AbstractTest {
       + "}"));
   }
 
+  @Test
+  void testSyntaxErrorsReportedForEachUseOfContract() {
+    final String message = assertThrows(ReflectException.class, () -> this.compile("import org.jetbrains.annotations.Contract;\n"
+      + "\n"
+      + "class TestSharedContract {\n"
+      + "  @Contract(\"nul -> null\")\n"
+      + "  public static String first(final String x) { return x; }\n"
+      + "  @Contract(\"nul -> null\")\n"
+      + "  public static String second(final String x) { return x; }\n"
+      + "}")).getMessage();
+    assertEquals(2, message.split("token recognition error", -1).length - 1);
+  }
+
+  @Test
+  void testContractFoundAmongOtherAnnotations() {
+    assertTrue(assertThrows(ReflectException.class, () -> this.compile("import org.jetbrains.annotations.Contract;\n"
+      + "\n"
+      + "class TestOtherAnnotations {\n"
+      + "  @interface Contract2 {}\n"
+      + "  @Deprecated\n"
+      + "  @SuppressWarnings(\"unused\")\n"
+      + "  @Contract2\n"
+      + "  @Contract(value = \"null -> fail\", pure = true)\n"
+      + "  public void test(final int x) {}\n"
+      + "}")).getMessage().contains("Constraint 'null' is only applicable to non-primitive types"));
+  }
+
 }
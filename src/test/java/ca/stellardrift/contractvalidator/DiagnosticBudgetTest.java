@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import javax.tools.Diagnostic;
+import org.joor.ReflectException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DiagnosticBudgetTest extends AbstractTest {
+
+  @Test
+  void testPerContractLimit() {
+    final DiagnosticBudget budget = new DiagnosticBudget(2, 0);
+    assertTrue(budget.tryReport(Diagnostic.Kind.ERROR, 0));
+    assertTrue(budget.tryReport(Diagnostic.Kind.ERROR, 1));
+    assertFalse(budget.tryReport(Diagnostic.Kind.ERROR, 2));
+    assertTrue(budget.tryReport(Diagnostic.Kind.ERROR, 0)); // another contract
+    assertEquals(1, budget.endRound());
+  }
+
+  @Test
+  void testPerRoundLimitResetsEachRound() {
+    final DiagnosticBudget budget = new DiagnosticBudget(0, 1);
+    assertTrue(budget.tryReport(Diagnostic.Kind.ERROR, 0));
+    assertFalse(budget.tryReport(Diagnostic.Kind.ERROR, 0));
+    assertFalse(budget.tryReport(Diagnostic.Kind.WARNING, 0));
+    assertEquals(2, budget.endRound());
+    assertTrue(budget.tryReport(Diagnostic.Kind.WARNING, 0));
+  }
+
+  @Test
+  void testFirstErrorAlwaysReported() {
+    final DiagnosticBudget budget = new DiagnosticBudget(1, 1);
+    assertTrue(budget.tryReport(Diagnostic.Kind.WARNING, 0));
+    assertFalse(budget.tryReport(Diagnostic.Kind.WARNING, 1));
+    assertTrue(budget.tryReport(Diagnostic.Kind.ERROR, 2));
+    assertFalse(budget.tryReport(Diagnostic.Kind.ERROR, 0));
+  }
+
+  @Test
+  void testSuppressedDiagnosticsNoted() {
+    final String message = assertThrows(ReflectException.class, () -> this.compile("import org.jetbrains.annotations.Contract;\n"
+      + "\n"
+      + "class TestSuppressed {\n"
+      + "  @Contract(\"null, null, null -> fail\")\n"
+      + "  public void first(final int x) {}\n"
+      + "  @Contract(\"null, null, null -> fail\")\n"
+      + "  public void second(final int x) {}\n"
+      + "}", "-A" + ContractValidatorProcessor.OPTION_MAX_DIAGNOSTICS_PER_CONTRACT + "=1")).getMessage();
+    assertEquals(2, message.split("Clause specified 3 parameter\\(s\\)", -1).length - 1);
+    assertFalse(message.contains("Constraint 'null'"));
+    assertTrue(message.contains("2 more contract diagnostic(s) suppressed"));
+  }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.List;
+import java.util.stream.Collectors;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.joor.ReflectException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FlightRecorderEventsTest extends AbstractTest {
+
+  private static final String PARSE = "ca.stellardrift.contractvalidator.ContractParse";
+  private static final String VALIDATE = "ca.stellardrift.contractvalidator.ContractValidate";
+  private static final String ROUND = "ca.stellardrift.contractvalidator.ContractRound";
+
+  @TempDir
+  Path temp;
+
+  @Test
+  void testEventsLoaded() {
+    assertInstanceOf(FlightRecorderEvents.class, ProcessingEvents.load());
+  }
+
+  @Test
+  void testEventsRecorded() throws IOException {
+    final List<RecordedEvent> events;
+    try (final Recording recording = new Recording()) {
+      recording.enable(PARSE).withoutThreshold();
+      recording.enable(VALIDATE).withoutThreshold();
+      recording.enable(ROUND).withoutThreshold();
+      recording.start();
+      // the malformed contract fails compilation, but its events are still recorded
+      assertThrows(ReflectException.class, () -> this.compile("package contracttest;\n"
+        + "import org.jetbrains.annotations.Contract;\n"
+        + "class InTestEventsRecorded1 {\n"
+        + "  @Contract(value = \"null -> fail\", mutates = \"param1\")\n"
+        + "  static void check(final Object value) {}\n"
+        + "  @Contract(\"_ _ -> fail\")\n"
+        + "  static void broken(final Object value) {}\n"
+        + "}\n"));
+      recording.stop();
+      events = this.read(recording);
+    }
+
+    final List<RecordedEvent> parses = ofType(events, PARSE);
+    assertEquals(3, parses.size(), parses::toString);
+    final RecordedEvent broken = parses.stream()
+      .filter(event -> event.getInt("contractLength") == "_ _ -> fail".length())
+      .findFirst()
+      .orElseThrow(AssertionError::new);
+    assertEquals("value", broken.getString("attribute"));
+    assertEquals("ANTLR_LL_DIRECT", broken.getString("strategy")); // the scanner already found it malformed
+    assertFalse(broken.getBoolean("llFallback"));
+    assertTrue(broken.getBoolean("syntaxErrors"));
+    assertTrue(parses.stream().anyMatch(event -> "mutates".equals(event.getString("attribute")) && !event.getBoolean("llFallback")));
+
+    final List<RecordedEvent> validations = ofType(events, VALIDATE);
+    assertEquals(2, validations.size(), validations::toString);
+    final RecordedEvent check = validations.get(0);
+    assertEquals("contracttest.InTestEventsRecorded1#check(java.lang.Object)", check.getString("element"));
+    assertEquals("null -> fail".length(), check.getInt("valueLength"));
+    assertEquals("param1".length(), check.getInt("mutatesLength"));
+    assertEquals(0, check.getInt("diagnostics"));
+    assertEquals(1, validations.get(1).getInt("diagnostics"));
+
+    final List<RecordedEvent> rounds = ofType(events, ROUND);
+    assertFalse(rounds.isEmpty());
+    assertEquals(1, rounds.get(0).getInt("round"));
+    assertEquals(2, rounds.get(0).getInt("elements"));
+    assertEquals(1, rounds.get(0).getInt("diagnostics"));
+  }
+
+  @Test
+  void testDisabledByDefault() throws IOException, ParseException {
+    final List<RecordedEvent> events;
+    try (final Recording recording = new Recording(Configuration.getConfiguration("profile"))) {
+      recording.start();
+      this.compile("package contracttest;\n"
+        + "import org.jetbrains.annotations.Contract;\n"
+        + "class InTestDisabledByDefault1 {\n"
+        + "  @Contract(\"null -> fail\")\n"
+        + "  static void check(final Object value) {}\n"
+        + "}\n");
+      recording.stop();
+      events = this.read(recording);
+    }
+    assertTrue(events.stream().noneMatch(event -> event.getEventType().getCategoryNames().contains(FlightRecorderEvents.CATEGORY)));
+  }
+
+  private List<RecordedEvent> read(final Recording recording) throws IOException {
+    final Path file = this.temp.resolve("recording.jfr");
+    recording.dump(file);
+    return RecordingFile.readAllEvents(file);
+  }
+
+  private static List<RecordedEvent> ofType(final List<RecordedEvent> events, final String name) {
+    return events.stream()
+      .filter(event -> event.getEventType().getName().equals(name))
+      .collect(Collectors.toList());
+  }
+
+}
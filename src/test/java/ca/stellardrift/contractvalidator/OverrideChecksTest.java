@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import org.joor.ReflectException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OverrideChecksTest extends AbstractTest {
+
+  private static final String OVERRIDE_ERRORS = "-A" + ContractValidatorProcessor.OPTION_OVERRIDE_ERRORS + "=true";
+
+  @Test
+  void testDroppedClauseWarns() {
+    final String message = assertThrows(ReflectException.class, () -> this.compile("package contracttest;\n"
+      + "import org.jetbrains.annotations.Contract;\n"
+      + "interface Base {\n"
+      + "  @Contract(\"null -> fail; !null -> !null\")\n"
+      + "  Object check(Object value);\n"
+      + "}\n"
+      + "class InTestDroppedClauseWarns1 implements Base {\n"
+      + "  @Contract(\"!null -> !null\")\n"
+      + "  public Object check(final Object value) { return value; }\n"
+      + "}\n", "-Werror")).getMessage();
+    assertTrue(message.contains("The clause 'null -> fail' of overridden method contracttest.Base#check is not kept by this contract"), message);
+  }
+
+  @Test
+  void testContradictionWarnsByDefault() {
+    final String source = "package contracttest;\n"
+      + "import org.jetbrains.annotations.Contract;\n"
+      + "interface Base {\n"
+      + "  @Contract(value = \"null -> null\", mutates = \"param\")\n"
+      + "  Object describe(Object value);\n"
+      + "}\n"
+      + "class InTestContradictionWarnsByDefault%d implements Base {\n"
+      + "  @Contract(value = \"_ -> !null\", mutates = \"this\")\n"
+      + "  public Object describe(final Object value) { return \"\"; }\n"
+      + "}\n";
+    assertDoesNotThrow(() -> this.compile(String.format(source, 1)));
+
+    final String message = assertThrows(ReflectException.class, () -> this.compile(String.format(source, 2), "-Werror")).getMessage();
+    assertTrue(message.contains("Clause '_ -> !null' contradicts the clause 'null -> null' of overridden method contracttest.Base#describe"), message);
+    assertTrue(message.contains("Mutates 'this', but overridden method contracttest.Base#describe only mutates 'param'"), message);
+  }
+
+  @Test
+  void testContradictionFails() {
+    final String message = assertThrows(ReflectException.class, () -> this.compile("package contracttest;\n"
+      + "import org.jetbrains.annotations.Contract;\n"
+      + "abstract class Base {\n"
+      + "  @Contract(\"null -> null\")\n"
+      + "  abstract Object describe(Object value);\n"
+      + "}\n"
+      + "abstract class Middle extends Base {\n"
+      + "}\n"
+      + "class InTestContradictionFails1 extends Middle {\n"
+      + "  @Contract(\"_ -> !null\")\n"
+      + "  Object describe(final Object value) { return \"\"; }\n"
+      + "}\n", OVERRIDE_ERRORS)).getMessage();
+    assertTrue(message.contains("Clause '_ -> !null' contradicts the clause 'null -> null' of overridden method contracttest.Base#describe"), message);
+  }
+
+  @Test
+  void testBroaderMutatesFails() {
+    final String message = assertThrows(ReflectException.class, () -> this.compile("package contracttest;\n"
+      + "import java.util.List;\n"
+      + "import org.jetbrains.annotations.Contract;\n"
+      + "interface Base<T> {\n"
+      + "  @Contract(mutates = \"param\")\n"
+      + "  void fill(List<T> values);\n"
+      + "}\n"
+      + "class InTestBroaderMutatesFails1 implements Base<String> {\n"
+      + "  @Contract(mutates = \"this, param1\")\n"
+      + "  public void fill(final List<String> values) {}\n"
+      + "}\n", OVERRIDE_ERRORS)).getMessage();
+    assertTrue(message.contains("Mutates 'this', but overridden method contracttest.Base#fill only mutates 'param'"), message);
+    assertFalse(message.contains("Mutates 'param1'"), message);
+  }
+
+  @Test
+  void testStrongerOverrideCompiles() {
+    assertDoesNotThrow(() -> this.compile("package contracttest;\n"
+      + "import org.jetbrains.annotations.Contract;\n"
+      + "interface Base {\n"
+      + "  @Contract(value = \"null -> fail; !null -> !null\", mutates = \"this, param1\")\n"
+      + "  Object copy(Object value);\n"
+      + "  @Contract(\"null -> fail\")\n"
+      + "  void require(Object value);\n"
+      + "}\n"
+      + "class InTestStrongerOverrideCompiles1 implements Base {\n"
+      + "  @Contract(value = \"null -> fail; _ -> new\", mutates = \"param\")\n"
+      + "  public Object copy(final Object value) { return new Object(); }\n"
+      + "  @Contract(\"_ -> fail\")\n"
+      + "  public void require(final Object value) { throw new IllegalStateException(); }\n"
+      + "  public static void unrelated(final Object value) {}\n"
+      + "}\n", "-Werror"));
+  }
+
+  @Test
+  void testDisabled() {
+    assertDoesNotThrow(() -> this.compile("package contracttest;\n"
+      + "import org.jetbrains.annotations.Contract;\n"
+      + "interface Base {\n"
+      + "  @Contract(\"null -> null\")\n"
+      + "  Object describe(Object value);\n"
+      + "}\n"
+      + "class InTestDisabled1 implements Base {\n"
+      + "  @Contract(\"_ -> !null\")\n"
+      + "  public Object describe(final Object value) { return \"\"; }\n"
+      + "}\n", "-A" + ContractValidatorProcessor.OPTION_CHECK_OVERRIDES + "=false"));
+  }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import org.joor.ReflectException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ParallelValidationTest extends AbstractTest {
+
+  private static final String[] CONTRACTS = {
+    "null -> fail",
+    "_, _ -> param3",
+    "!null -> this",
+    "true -> null",
+    "null -> !null; _ -> new",
+    "_ -> %",
+  };
+
+  private static String source(final String className) {
+    final StringBuilder builder = new StringBuilder("package contracttest;\n"
+      + "import org.jetbrains.annotations.Contract;\n"
+      + "class " + className + " {\n");
+    for (int i = 0; i < ContractValidatorProcessor.PARALLEL_THRESHOLD * 2; i++) {
+      builder.append("  @Contract(value = \"").append(CONTRACTS[i % CONTRACTS.length]).append("\", mutates = \"param1, param1\")\n")
+        .append("  static Object method").append(i).append(i % 2 == 0 ? "(final int x)" : "(final String x)").append(" { return null; }\n");
+    }
+    return builder.append("}\n").toString();
+  }
+
+  @Test
+  void testParallelDiagnosticsMatchSequential() {
+    final String sequential = assertThrows(ReflectException.class, () -> this.compile(source("InTestParallelDiagnosticsMatchSequential1")))
+      .getMessage();
+    final String parallel = assertThrows(ReflectException.class, () -> this.compile(
+      source("InTestParallelDiagnosticsMatchSequential2"),
+      "-A" + ContractValidatorProcessor.OPTION_PARALLELISM + "=4"
+    )).getMessage();
+
+    assertTrue(sequential.contains("Constraint 'null' is only applicable to non-primitive types"));
+    assertTrue(sequential.contains("specifier 'param1' seen multiple times"));
+    // only the generated file and class names may differ
+    assertEquals(sequential.replace("()1.java", "()N.java"), parallel.replace("()2.java", "()N.java")
+      .replace("InTestParallelDiagnosticsMatchSequential2", "InTestParallelDiagnosticsMatchSequential1"));
+  }
+
+}
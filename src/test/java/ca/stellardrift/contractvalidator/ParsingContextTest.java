@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.antlr.v4.runtime.Lexer;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class ParsingContextTest {
+
+  private static final String[] CONTRACTS = {"null -> null", "_, null -> fail", "!null -> param2", "-> %", "null, -> true; ("};
+
+  @Test
+  void testConcurrentParsesMatchSequential() throws Exception {
+    final List<String> expected = new ArrayList<>();
+    for (final String contract : CONTRACTS) {
+      expected.add(ParsedContract.parseValueWithAntlr(contract).toString());
+    }
+
+    final ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      final List<Future<List<String>>> results = new ArrayList<>();
+      for (int i = 0; i < 16; i++) {
+        results.add(executor.submit(() -> {
+          final List<String> parsed = new ArrayList<>();
+          for (int round = 0; round < 200; round++) {
+            parsed.clear();
+            for (final String contract : CONTRACTS) {
+              parsed.add(ParsedContract.parseValueWithAntlr(contract).toString());
+            }
+          }
+          return parsed;
+        }));
+      }
+      for (final Future<List<String>> result : results) {
+        assertEquals(expected, result.get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void testParsingDoesNotPinClassLoader() throws Exception {
+    final WeakReference<ClassLoader> loader = parseInIsolatedLoader();
+    for (int i = 0; i < 50 && loader.get() != null; i++) {
+      System.gc();
+      Thread.sleep(20);
+    }
+    assertNull(loader.get(), "the parsing thread kept the class loader that parsed on it alive");
+  }
+
+  private static WeakReference<ClassLoader> parseInIsolatedLoader() throws Exception {
+    final URL[] classpath = {
+      ParsedContract.class.getProtectionDomain().getCodeSource().getLocation(),
+      Lexer.class.getProtectionDomain().getCodeSource().getLocation()
+    };
+    try (final URLClassLoader loader = new URLClassLoader(classpath, ClassLoader.getPlatformClassLoader())) {
+      final Method parse = loader.loadClass(ParsedContract.class.getName()).getDeclaredMethod("parseValueWithAntlr", String.class);
+      parse.setAccessible(true);
+      parse.invoke(null, "null -> %"); // on this thread, which outlives the loader
+      return new WeakReference<>(loader);
+    }
+  }
+
+}
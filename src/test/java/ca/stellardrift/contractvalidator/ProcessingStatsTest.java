@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ProcessingStatsTest {
+
+  @Test
+  void testParsesCountedByStrategy() {
+    final ProcessingStats stats = new ProcessingStats();
+    stats.elementsSeen(3);
+    stats.recordParse("null -> fail", ParsedContract.parseValue("null -> fail"), 10);
+    stats.recordParse("null -> ", ParsedContract.parseValue("null -> "), 20);
+    stats.endRound();
+    stats.elementsSeen(1);
+    stats.recordParse("_ -> param1", ParsedContract.parseValueWithAntlr("_ -> param1"), 30);
+    stats.endRound();
+
+    final String summary = stats.summary();
+    assertTrue(summary.contains("4 elements in 2 round(s)"), summary);
+    assertTrue(summary.contains("3 contract strings parsed (1 by the fast path, 1 malformed parsed with LL, 0 fell back from SLL to LL)"), summary);
+  }
+
+  @Test
+  void testOnlyFailedSllAttemptsCountedAsFallbacks() {
+    final ProcessingStats stats = new ProcessingStats();
+    final ParsedContract direct = ParsedContract.parseValue("null -> ");
+    final ParsedContract fallback = ParsedContract.parseValueWithAntlr("null -> ");
+    assertEquals(ParsedContract.Strategy.ANTLR_LL_DIRECT, direct.strategy());
+    assertEquals(ParsedContract.Strategy.ANTLR_LL, fallback.strategy());
+    assertEquals(direct.toString(), fallback.toString());
+
+    stats.recordParse("null -> ", direct, 10);
+    stats.recordParse("null -> ", fallback, 20);
+    stats.endRound();
+
+    final String summary = stats.summary();
+    assertTrue(summary.contains("2 contract strings parsed (0 by the fast path, 1 malformed parsed with LL, 1 fell back from SLL to LL)"), summary);
+  }
+
+  @Test
+  void testSlowestKeepsLongestParseOfEachString() {
+    final ProcessingStats stats = new ProcessingStats();
+    final ParsedContract parsed = ParsedContract.parseValue("_ -> _");
+    for (int i = 0; i < ProcessingStats.SLOWEST_COUNT * 2; i++) {
+      stats.recordParse("contract " + i, parsed, i);
+    }
+    stats.recordParse("contract 0", parsed, 1000);
+    stats.recordParse("contract 0", parsed, 500);
+
+    final List<ProcessingStats.SlowContract> slowest = stats.slowest();
+    assertEquals(ProcessingStats.SLOWEST_COUNT, slowest.size());
+    assertEquals("contract 0", slowest.get(0).text);
+    assertEquals(1000, slowest.get(0).nanos);
+    assertEquals("contract 19", slowest.get(1).text);
+  }
+
+  @Test
+  void testJsonEscapesContracts() throws IOException {
+    final ProcessingStats stats = new ProcessingStats();
+    stats.recordParse("\"quoted\"\t\\", ParsedContract.parseValue("\"quoted\"\t\\"), 5);
+    stats.endRound();
+
+    final StringWriter writer = new StringWriter();
+    stats.writeJson(writer);
+    assertTrue(writer.toString().contains("{\"contract\": \"\\\"quoted\\\"\\u0009\\\\\""), writer.toString());
+  }
+
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import javax.tools.Diagnostic;
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.jetbrains.annotations.Contract;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SourceTreeValidatorTest {
+
+  private static final String SOURCE = "package test;\n"
+    + "import org.jetbrains.annotations.Contract;\n"
+    + "public abstract class Checked {\n"
+    + "  @Deprecated\n"
+    + "  @Contract(value = \"null -> fail\", pure = true)\n"
+    + "  public static void primitive(final int x, final long y) {}\n"
+    + "  @Contract(mutates = \"this\")\n"
+    + "  public static void mutatesThis(final String[] x) {}\n"
+    + "  @Contract(\"_, true -> this\")\n"
+    + "  public Object valid(final Object x, final boolean y) { return this; }\n"
+    + "}\n";
+
+  @TempDir
+  Path temp;
+
+  @Test
+  void testTree() throws IOException {
+    final Path sources = this.write("src/test/Checked.java", SOURCE);
+    this.write("src/test/Unannotated.java", "package test;\nclass Unannotated {}\n");
+    this.write("src/.hidden/Skipped.java", SOURCE);
+    this.write("src/test/notes.txt", SOURCE);
+
+    final Result result = run(sources.getParent().getParent().toString());
+    assertEquals(1, result.exitCode);
+    final String file = sources.toString();
+    assertEquals(Arrays.asList(
+      file + ":5:22: error: Clause only specified 1 parameter(s), but method 'primitive' had 2 parameter(s)",
+      file + ":5:22: error: Constraint 'null' is only applicable to non-primitive types, but it was used to refer to a 'int'",
+      file + ":7:24: error: Invalid contract: 'this' cannot be mutated from a static context"
+    ), lines(result.out));
+    assertTrue(result.err.contains("Checked 3 annotated method(s) in 2 source file(s): 3 error(s), 0 warning(s)"), result.err);
+  }
+
+  @Test
+  void testSignatures() {
+    final List<SourceFileReader.ContractMethod> methods = SourceFileReader.read("import org.jetbrains.annotations.*;\n"
+      + "interface Shapes<T> {\n"
+      + "  @Contract(\"_ -> !null\") static <E extends Comparable<? super E>> java.util.List<E> of(final E @Nullable ... items) { return null; }\n"
+      + "  @Contract(pure = true) @Nullable default int[] copy(Shapes<T> this, int[] a, boolean b, double c[]) { return a; }\n"
+      + "  @Contract(\"null -> false\") boolean test(@Nullable(\"(\") final Map<String, int[]> values);\n"
+      + "  class Impl { @Contract(\"-> new\") public Impl(char c) {} }\n"
+      + "  @Contract(\"null -> null\") String field = \"\";\n"
+      + "}\n");
+    assertEquals(4, methods.size());
+
+    final MethodShape of = methods.get(0).shape;
+    assertEquals("of", of.name());
+    assertTrue(of.isStatic());
+    assertEquals("E[]", of.paramType(0));
+    assertEquals(MethodShape.REFERENCE, of.paramKind(0));
+    assertEquals("java.util.List<E>", of.returnType());
+
+    final MethodShape copy = methods.get(1).shape;
+    assertFalse(copy.isStatic());
+    assertNull(methods.get(1).value);
+    assertEquals(3, copy.paramCount()); // without the receiver
+    assertEquals(MethodShape.REFERENCE, copy.paramKind(0));
+    assertEquals(MethodShape.BOOLEAN, copy.paramKind(1));
+    assertEquals("double[]", copy.paramType(2));
+    assertEquals(MethodShape.REFERENCE, copy.paramKind(2));
+    assertEquals("int[]", copy.returnType());
+
+    final MethodShape test = methods.get(2).shape;
+    assertEquals(MethodShape.BOOLEAN, test.returnKind());
+    assertEquals("Map<String, int[]>", test.paramType(0));
+
+    final MethodShape constructor = methods.get(3).shape;
+    assertEquals(SourceFileReader.CONSTRUCTOR_NAME, constructor.name());
+    assertEquals(MethodShape.PRIMITIVE, constructor.paramKind(0));
+  }
+
+  @Test
+  void testArrayParametersMatchProcessor() throws IOException {
+    final String contents = "import org.jetbrains.annotations.Contract;\n"
+      + "class Arrays {\n"
+      + "  @Contract(\"true, true, true, true -> fail\")\n"
+      + "  static void check(final boolean[] a, final int b[], final int[] c[], final boolean... d) {}\n"
+      + "  @Contract(\"null, null -> fail\")\n"
+      + "  static void scalars(final boolean a, final int b) {}\n"
+      + "}\n";
+    final Path source = this.write("Arrays.java", contents);
+
+    final List<String> fromSource = new ArrayList<>();
+    for (final String line : lines(run(source.toString()).out)) {
+      fromSource.add(line.substring(line.indexOf(": error: ") + ": error: ".length()));
+    }
+
+    final List<String> fromProcessor = new ArrayList<>();
+    final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    try (final StandardJavaFileManager files = compiler.getStandardFileManager(null, Locale.ROOT, StandardCharsets.UTF_8)) {
+      final JavaCompiler.CompilationTask task = compiler.getTask(null, files, diagnostic -> {
+        if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+          fromProcessor.add(diagnostic.getMessage(Locale.ROOT));
+        }
+      }, Arrays.asList(
+        "-classpath", annotationsPath(),
+        "-d", Files.createDirectories(this.temp.resolve("classes")).toString()
+      ), null, files.getJavaFileObjects(source.toFile()));
+      task.setProcessors(Collections.singletonList(new ContractValidatorProcessor()));
+      task.call();
+    }
+
+    assertEquals(6, fromProcessor.size(), fromProcessor.toString());
+    assertTrue(fromProcessor.contains("Constraint 'true' is only applicable to boolean values, but it was used to refer to a 'boolean[]'"));
+    assertEquals(fromProcessor, fromSource);
+  }
+
+  @Test
+  void testPositionsInLiterals() throws IOException {
+    final Path source = this.write("Literals.java", "import org.jetbrains.annotations.Contract;\n"
+      + "class Literals {\n"
+      + "  @Contract(\"\\u005f -> fail;\" // comment\n"
+      + "    + \"\\t_, _ -> null\")\n"
+      + "  static Object a(Object o) { return o; }\n"
+      + "  @Contract(value = Constants.CONTRACT)\n"
+      + "  static Object b(Object o) { return o; }\n"
+      + "}\n");
+
+    final Result result = run(source.toString());
+    assertEquals(1, result.exitCode);
+    // the second clause starts after an escaped tab, on the second line of the concatenation, and the contract
+    // given as a constant is skipped
+    assertEquals(Arrays.asList(
+      source + ":4:10: error: Clause specified 2 parameter(s), but method 'a' had only 1 parameter(s)"
+    ), lines(result.out));
+  }
+
+  @Test
+  void testOnlyJetBrainsContracts() throws IOException {
+    final Path source = this.write("Other.java", "import com.example.Contract;\n"
+      + "class Other {\n"
+      + "  @Contract(\"_, _ -> null\") static Object a(Object o) { return o; }\n"
+      + "  @org.jetbrains.annotations.Contract(\"_, _ -> null\") static Object b(Object o) { return o; }\n"
+      + "}\n");
+
+    final Result result = run("--threads", "1", source.toString());
+    assertEquals(Arrays.asList(
+      source + ":4:40: error: Clause specified 2 parameter(s), but method 'b' had only 1 parameter(s)"
+    ), lines(result.out));
+  }
+
+  @Test
+  void testUsage() {
+    assertEquals(2, run().exitCode);
+    assertEquals(2, run("--threads", "0", "src").exitCode);
+    assertEquals(2, run(this.temp.resolve("Missing.java").toString()).exitCode);
+  }
+
+  private static String annotationsPath() {
+    try {
+      return Paths.get(Contract.class.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+    } catch (final URISyntaxException ex) {
+      throw new AssertionError(ex);
+    }
+  }
+
+  private Path write(final String name, final String contents) throws IOException {
+    final Path file = this.temp.resolve(name);
+    Files.createDirectories(file.getParent());
+    return Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static List<String> lines(final String output) {
+    return output.isEmpty() ? Collections.emptyList() : Arrays.asList(output.split("\\R"));
+  }
+
+  private static Result run(final String... args) {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final ByteArrayOutputStream err = new ByteArrayOutputStream();
+    final int exitCode = SourceTreeValidator.run(args, printStream(out), printStream(err));
+    return new Result(exitCode, new String(out.toByteArray(), StandardCharsets.UTF_8), new String(err.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  private static PrintStream printStream(final OutputStream out) {
+    try {
+      return new PrintStream(out, true, "UTF-8");
+    } catch (final UnsupportedEncodingException ex) {
+      throw new AssertionError(ex);
+    }
+  }
+
+  static final class Result {
+    final int exitCode;
+    final String out;
+    final String err;
+
+    Result(final int exitCode, final String out, final String err) {
+      this.exitCode = exitCode;
+      this.out = out;
+      this.err = err;
+    }
+  }
+
+}
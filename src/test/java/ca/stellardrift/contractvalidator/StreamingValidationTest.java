@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.util.Arrays;
+import org.joor.ReflectException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StreamingValidationTest extends AbstractTest {
+
+  private static final String[] CONTRACTS = {
+    "null -> fail",
+    "_, _ -> param3",
+    "true -> null",
+    "_ -> %",
+  };
+
+  /**
+   * Several top-level types with nested types and constructors, spanning more than one streaming batch.
+   */
+  private static String source(final String className) {
+    final StringBuilder builder = new StringBuilder("package contracttest;\n"
+      + "import org.jetbrains.annotations.Contract;\n"
+      + "class " + className + " {\n"
+      + "  @Contract(\"null -> fail\")\n"
+      + "  " + className + "(final int x) {}\n"
+      + "}\n");
+    for (int type = 0; type < 3; type++) {
+      builder.append("class Other").append(className).append(type).append(" {\n");
+      for (int i = 0; i < ContractValidatorProcessor.STREAMING_BATCH_SIZE; i++) {
+        builder.append("  @Contract(\"").append(CONTRACTS[i % CONTRACTS.length]).append("\")\n")
+          .append("  static Object method").append(i).append(i % 2 == 0 ? "(final int x)" : "(final String x)").append(" { return null; }\n");
+      }
+      builder.append("  static class Nested {\n")
+        .append("    @Contract(value = \"_ -> this\", mutates = \"param1, param1\")\n")
+        .append("    Nested self(final Object x) { return this; }\n")
+        .append("  }\n")
+        .append("}\n");
+    }
+    return builder.toString();
+  }
+
+  private String diagnostics(final int index, final String... options) {
+    final String[] allOptions = Arrays.copyOf(options, options.length + 1);
+    allOptions[options.length] = "-A" + ContractValidatorProcessor.OPTION_MAX_DIAGNOSTICS_PER_ROUND + "=0";
+    final String className = "InTestStreamingDiagnosticsMatchBulk" + index;
+    // only the generated file and class names may differ
+    return assertThrows(ReflectException.class, () -> this.compile(source(className), allOptions)).getMessage()
+      .replace("()" + index + ".java", "()N.java")
+      .replace(className, "InTestStreamingDiagnosticsMatchBulkN");
+  }
+
+  @Test
+  void testStreamingDiagnosticsMatchBulk() {
+    final String bulk = this.diagnostics(1);
+    final String streaming = this.diagnostics(2, "-A" + ContractValidatorProcessor.OPTION_STREAMING + "=true");
+    final String parallel = this.diagnostics(
+      3,
+      "-A" + ContractValidatorProcessor.OPTION_STREAMING + "=true",
+      "-A" + ContractValidatorProcessor.OPTION_PARALLELISM + "=4"
+    );
+
+    assertTrue(bulk.contains("Constraint 'null' is only applicable to non-primitive types"));
+    assertTrue(bulk.contains("()N.java:4: error"));
+    // one from the nested type in each batch
+    assertEquals(3, bulk.split("specifier 'param1' seen multiple times", -1).length - 1);
+    assertEquals(bulk, streaming);
+    assertEquals(bulk, parallel);
+  }
+
+  @Test
+  @EnabledForJreRange(min = JRE.JAVA_16)
+  void testStreamingRecords() {
+    final String message = assertThrows(ReflectException.class, () -> this.compile("package contracttest;\n"
+      + "import org.jetbrains.annotations.Contract;\n"
+      + "record InTestStreamingRecords1(String a) {\n"
+      + "  @Contract(\"_, _ -> null\")\n"
+      + "  static Object of(final Object x) { return null; }\n"
+      + "}\n", "-A" + ContractValidatorProcessor.OPTION_STREAMING + "=true")).getMessage();
+    assertTrue(message.contains("Clause specified 2 parameter(s), but method 'of' had only 1 parameter(s)"), message);
+  }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.joor.ReflectException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ValidationResultStoreTest extends AbstractTest {
+
+  @TempDir
+  Path temp;
+
+  @Test
+  void testCleanTypeRecorded() throws IOException {
+    final Path store = this.temp.resolve("results");
+    assertDoesNotThrow(() -> this.compile("package contracttest;\n"
+      + "import org.jetbrains.annotations.Contract;\n"
+      + "class InTestCleanTypeRecorded1 {\n"
+      + "  @Contract(\"null -> null; !null -> _\")\n"
+      + "  public static String toStrOrNull(final Object x) { return x == null ? null : x.toString(); }\n"
+      + "}", "-A" + ContractValidatorProcessor.OPTION_RESULT_STORE + "=" + store));
+
+    final List<String> lines = Files.readAllLines(store, StandardCharsets.UTF_8);
+    assertEquals(2, lines.size());
+    assertTrue(lines.get(1).startsWith("contracttest.InTestCleanTypeRecorded1\t"));
+  }
+
+  @Test
+  void testInvalidTypeNotRecorded() throws IOException {
+    final Path store = this.temp.resolve("results");
+    final String source = "package contracttest;\n"
+      + "import org.jetbrains.annotations.Contract;\n"
+      + "class InTestInvalidTypeNotRecorded%d {\n"
+      + "  @Contract(\"null -> fail\")\n"
+      + "  public void test(final int x) {}\n"
+      + "}";
+
+    for (int i = 1; i <= 2; i++) {
+      final String classFile = String.format(source, i);
+      assertTrue(assertThrows(ReflectException.class, () -> this.compile(classFile,
+        "-A" + ContractValidatorProcessor.OPTION_RESULT_STORE + "=" + store))
+        .getMessage().contains("Constraint 'null' is only applicable to non-primitive types"));
+    }
+    assertFalse(Files.exists(store));
+  }
+
+  @Test
+  void testLengthLimitInFingerprint() throws IOException {
+    final Path store = this.temp.resolve("results");
+    final String source = "package contracttest;\n"
+      + "import org.jetbrains.annotations.Contract;\n"
+      + "class InTestLengthLimitInFingerprint {\n"
+      + "  @Contract(\"null -> null\")\n"
+      + "  public static String test(final Object x) { return null; }\n"
+      + "}";
+    final String option = "-A" + ContractValidatorProcessor.OPTION_RESULT_STORE + "=" + store;
+    assertDoesNotThrow(() -> this.compile(source, option));
+    assertEquals(2, Files.readAllLines(store, StandardCharsets.UTF_8).size());
+
+    final String limited = assertThrows(
+      ReflectException.class,
+      () -> this.compile(source, option, "-A" + ContractValidatorProcessor.OPTION_MAX_CONTRACT_LENGTH + "=5")
+    ).getMessage();
+    assertTrue(limited.contains("Contract text is 12 characters long, more than the limit of 5, so it was not parsed"), limited);
+  }
+
+  @Test
+  void testStoreRoundTrip() throws IOException {
+    final Path file = this.temp.resolve("results");
+    final ValidationResultStore store = ValidationResultStore.load(file);
+    final long fingerprint = new ValidationResultStore.Fingerprint().add(1).add("null -> fail").value();
+    store.record("a.B", fingerprint, true);
+    store.record("a.C", fingerprint, false);
+    store.save();
+
+    final ValidationResultStore reloaded = ValidationResultStore.load(file);
+    assertTrue(reloaded.isValid("a.B", fingerprint));
+    assertFalse(reloaded.isValid("a.B", fingerprint + 1));
+    assertFalse(reloaded.isValid("a.C", fingerprint));
+  }
+
+  @Test
+  void testCorruptStoreIgnored() throws IOException {
+    final Path file = this.temp.resolve("results");
+    Files.write(file, (ValidationResultStore.HEADER + "\na.B not-a-number\n").getBytes(StandardCharsets.UTF_8));
+    assertFalse(ValidationResultStore.load(file).isValid("a.B", 0));
+
+    Files.write(file, "something else entirely\n".getBytes(StandardCharsets.UTF_8));
+    assertFalse(ValidationResultStore.load(file).isValid("a.B", 0));
+  }
+
+  @Test
+  void testOtherBuildIgnored() throws IOException {
+    final Path file = this.temp.resolve("results");
+    Files.write(file, (ValidationResultStore.HEADER + "\na.B\t0\n").getBytes(StandardCharsets.UTF_8));
+    assertTrue(ValidationResultStore.load(file).isValid("a.B", 0));
+
+    final String otherBuild = "contract-validator results v3 " + Long.toHexString(ValidatorBuild.ID + 1);
+    Files.write(file, (otherBuild + "\na.B\t0\n").getBytes(StandardCharsets.UTF_8));
+    assertFalse(ValidationResultStore.load(file).isValid("a.B", 0));
+  }
+
+}
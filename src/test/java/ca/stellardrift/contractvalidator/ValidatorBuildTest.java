@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+public class ValidatorBuildTest {
+
+  @TempDir
+  Path temp;
+
+  @Test
+  void testClassDirectoryIdentifiedByContents() throws IOException {
+    final Path classes = Files.createDirectories(this.temp.resolve("classes/ca/stellardrift"));
+    Files.write(classes.resolve("A.class"), "first".getBytes(StandardCharsets.UTF_8));
+    Files.write(classes.resolve("B.class"), "second".getBytes(StandardCharsets.UTF_8));
+    final long original = ValidatorBuild.contents(this.temp.resolve("classes"));
+
+    assertEquals(original, ValidatorBuild.contents(this.temp.resolve("classes")));
+
+    Files.write(classes.resolve("B.class"), "changed".getBytes(StandardCharsets.UTF_8));
+    assertNotEquals(original, ValidatorBuild.contents(this.temp.resolve("classes")));
+
+    Files.write(classes.resolve("B.class"), "second".getBytes(StandardCharsets.UTF_8));
+    Files.move(classes.resolve("B.class"), classes.resolve("C.class"));
+    assertNotEquals(original, ValidatorBuild.contents(this.temp.resolve("classes")));
+  }
+
+  @Test
+  void testJarIdentifiedByContents() throws IOException {
+    final Path jar = this.temp.resolve("validator.jar");
+    Files.write(jar, new byte[] {1, 2, 3});
+    final long original = ValidatorBuild.contents(jar);
+
+    Files.write(jar, new byte[] {1, 2, 4});
+    assertNotEquals(original, ValidatorBuild.contents(jar));
+  }
+
+}
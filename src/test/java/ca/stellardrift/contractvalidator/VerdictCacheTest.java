@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.util.Collections;
+import java.util.List;
+import org.joor.ReflectException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class VerdictCacheTest extends AbstractTest {
+
+  @Test
+  void testShapeKeyIgnoresReferenceTypes() {
+    final long key = MethodShape.ofDescriptor("a", "(Ljava/lang/String;I)Ljava/util/List;", false).key();
+    assertEquals(key, MethodShape.ofDescriptor("b", "(Ljava/lang/Object;S)[I", false).key());
+    assertNotEquals(key, MethodShape.ofDescriptor("a", "(Ljava/lang/String;Z)Ljava/util/List;", false).key());
+    assertNotEquals(key, MethodShape.ofDescriptor("a", "(Ljava/lang/String;I)Ljava/util/List;", true).key());
+    assertNotEquals(key, MethodShape.ofDescriptor("a", "(Ljava/lang/String;I)I", false).key());
+    assertNotEquals(key, MethodShape.ofDescriptor("a", "(Ljava/lang/String;II)Ljava/util/List;", false).key());
+  }
+
+  @Test
+  void testShapeKeyLimitedParameters() {
+    final String params = String.join("", Collections.nCopies(28, "I"));
+    assertEquals(MethodShape.NO_KEY, MethodShape.ofDescriptor("a", "(" + params + ")V", false).key());
+    assertNotEquals(MethodShape.NO_KEY, MethodShape.ofDescriptor("a", "(" + params.substring(1) + ")V", false).key());
+  }
+
+  @Test
+  void testTemplateResolvesToEachShape() {
+    final MethodShape first = MethodShape.ofDescriptor("first", "(Ljava/lang/String;)Z", false);
+    final MethodShape second = MethodShape.ofDescriptor("second", "(Ljava/lang/Object;)Z", false);
+    final MethodShape template = first.template();
+
+    assertEquals("first", first.resolve(template.name()));
+    assertEquals("second", second.resolve(template.name()));
+    assertEquals("java.lang.String", first.resolve(template.paramType(0)).toString());
+    assertEquals("java.lang.Object", second.resolve(template.paramType(0)).toString());
+    assertEquals("boolean", second.resolve(template.returnType()).toString());
+    assertEquals("unrelated", second.resolve("unrelated"));
+  }
+
+  @Test
+  void testLookupsByTextAndShape() {
+    final VerdictCache cache = new VerdictCache(4);
+    final List<ContractDiagnostic> verdict = Collections.emptyList();
+    assertNull(cache.lookup("null -> null", 1));
+    cache.put("null -> null", 1, verdict);
+
+    assertSame(verdict, cache.lookup("null -> null", 1));
+    assertNull(cache.lookup("null -> null", 2));
+    assertNull(cache.lookup("null -> !null", 1));
+    assertEquals(1, cache.hits());
+    assertEquals(3, cache.misses());
+  }
+
+  @Test
+  void testDisabledCacheNeverHits() {
+    final VerdictCache cache = new VerdictCache(0);
+    cache.put("null -> null", 1, Collections.emptyList());
+    assertNull(cache.lookup("null -> null", 1));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  void testSharedVerdictReportsEachMethod() {
+    final String message = assertThrows(ReflectException.class, () -> this.compile("import org.jetbrains.annotations.Contract;\n"
+      + "class TestSharedVerdict {\n"
+      + "  @Contract(\"true -> _\")\n"
+      + "  public void first(final int x) {}\n"
+      + "  @Contract(\"true -> _\")\n"
+      + "  public void second(final double x) {}\n"
+      + "  @Contract(value = \"_ -> this\", mutates = \"param2\")\n"
+      + "  public static Object third(final Object x) { return x; }\n"
+      + "  @Contract(value = \"_ -> this\", mutates = \"param2\")\n"
+      + "  public static String fourth(final String x) { return x; }\n"
+      + "}")).getMessage();
+
+    assertTrue(message.contains("refer to a 'int'"), message);
+    assertTrue(message.contains("refer to a 'double'"), message);
+    assertTrue(message.contains("method 'third' was static"), message);
+    assertTrue(message.contains("method 'fourth' was static"), message);
+    assertTrue(message.contains("Method 'third' was declared to mutate parameter 2"), message);
+    assertTrue(message.contains("Method 'fourth' was declared to mutate parameter 2"), message);
+  }
+
+}
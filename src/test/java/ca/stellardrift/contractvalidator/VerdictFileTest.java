@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2021 zml and contributors
+ * This file is part of contract-validator.
+ *
+ * contract-validator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * contract-validator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with contract-validator.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.stellardrift.contractvalidator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.joor.ReflectException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class VerdictFileTest extends AbstractTest {
+
+  private static final long SHAPE = MethodShape.ofDescriptor("test", "(I)Z", true).key();
+  private static final int LIMIT = ParsedContract.DEFAULT_MAX_LENGTH;
+
+  @TempDir
+  Path temp;
+
+  @Test
+  void testVerdictsSurviveReload() throws IOException {
+    final Path path = this.temp.resolve("verdicts");
+    final VerdictFile file = VerdictFile.load(path);
+    final List<ContractDiagnostic> bad = verdict("null -> null");
+    assertEquals(2, bad.size());
+    file.add("value", LIMIT, "null -> null", SHAPE, bad);
+    file.add("value", LIMIT, "_ -> true", SHAPE, Collections.emptyList());
+    assertEquals(2, file.flush());
+
+    final VerdictFile reloaded = VerdictFile.load(path);
+    assertEquals(Collections.emptyList(), reloaded.lookup("value", LIMIT, "_ -> true", SHAPE));
+    assertEquals(describe(bad), describe(reloaded.lookup("value", LIMIT, "null -> null", SHAPE)));
+    assertNull(reloaded.lookup("mutates", LIMIT, "_ -> true", SHAPE));
+    assertNull(reloaded.lookup("value", LIMIT, "_ -> true", SHAPE + 1));
+  }
+
+  @Test
+  void testDamagedTailIgnored() throws IOException {
+    final Path path = this.temp.resolve("verdicts");
+    final VerdictFile file = VerdictFile.load(path);
+    file.add("value", LIMIT, "_ -> true", SHAPE, Collections.emptyList());
+    file.flush();
+    file.add("value", LIMIT, "_ -> false", SHAPE, Collections.emptyList());
+    file.flush();
+
+    // cut the last record short, as if its writer was killed
+    final byte[] contents = Files.readAllBytes(path);
+    Files.write(path, Arrays.copyOf(contents, contents.length - 3));
+    final VerdictFile damaged = VerdictFile.load(path);
+    assertNotNull(damaged.lookup("value", LIMIT, "_ -> true", SHAPE));
+    assertNull(damaged.lookup("value", LIMIT, "_ -> false", SHAPE));
+
+    // the next write repairs the file
+    damaged.add("value", LIMIT, "_ -> false", SHAPE, Collections.emptyList());
+    damaged.flush();
+    assertNotNull(VerdictFile.load(path).lookup("value", LIMIT, "_ -> false", SHAPE));
+  }
+
+  @Test
+  void testCorruptRecordIgnored() throws IOException {
+    final Path path = this.temp.resolve("verdicts");
+    final VerdictFile file = VerdictFile.load(path);
+    file.add("value", LIMIT, "_ -> true", SHAPE, Collections.emptyList());
+    file.flush();
+
+    final byte[] contents = Files.readAllBytes(path);
+    contents[contents.length - 6] ^= 0x20;
+    Files.write(path, contents);
+    assertNull(VerdictFile.load(path).lookup("value", LIMIT, "_ -> true", SHAPE));
+  }
+
+  @Test
+  void testOtherVersionIgnored() throws IOException {
+    final Path path = this.temp.resolve("verdicts");
+    final VerdictFile file = VerdictFile.load(path);
+    file.add("value", LIMIT, "_ -> true", SHAPE, Collections.emptyList());
+    file.flush();
+
+    final byte[] contents = Files.readAllBytes(path);
+    ByteBuffer.wrap(contents).putInt(4, VerdictFile.FORMAT + 1);
+    Files.write(path, contents);
+    final VerdictFile outdated = VerdictFile.load(path);
+    assertNull(outdated.lookup("value", LIMIT, "_ -> true", SHAPE));
+
+    outdated.add("value", LIMIT, "_ -> false", SHAPE, Collections.emptyList());
+    outdated.flush();
+    assertEquals(VerdictFile.FORMAT, ByteBuffer.wrap(Files.readAllBytes(path)).getInt(4));
+  }
+
+  @Test
+  void testOtherBuildIgnored() throws IOException {
+    final Path path = this.temp.resolve("verdicts");
+    final VerdictFile file = VerdictFile.load(path);
+    file.add("value", LIMIT, "_ -> true", SHAPE, Collections.emptyList());
+    file.flush();
+
+    final byte[] contents = Files.readAllBytes(path);
+    ByteBuffer.wrap(contents).putLong(8, ValidatorBuild.ID + 1);
+    Files.write(path, contents);
+    final VerdictFile outdated = VerdictFile.load(path);
+    assertNull(outdated.lookup("value", LIMIT, "_ -> true", SHAPE));
+
+    outdated.add("value", LIMIT, "_ -> false", SHAPE, Collections.emptyList());
+    outdated.flush();
+    assertEquals(ValidatorBuild.ID, ByteBuffer.wrap(Files.readAllBytes(path)).getLong(8));
+  }
+
+  @Test
+  void testConcurrentWriters() throws Exception {
+    final Path path = this.temp.resolve("verdicts");
+    final int writers = 8;
+    final int perWriter = 50;
+    final ExecutorService executor = Executors.newFixedThreadPool(writers);
+    try {
+      final List<Future<?>> results = new ArrayList<>();
+      for (int writer = 0; writer < writers; writer++) {
+        final int id = writer;
+        results.add(executor.submit(() -> {
+          final VerdictFile file = VerdictFile.load(path); // as a separate compiler would
+          for (int i = 0; i < perWriter; i++) {
+            file.add("value", LIMIT, "_ -> param" + i, SHAPE, Collections.emptyList()); // shared with every writer
+            file.add("mutates", LIMIT, "param" + id + "_" + i, SHAPE, Collections.emptyList());
+            if (i % 10 == 9) {
+              file.flush();
+            }
+          }
+          return null;
+        }));
+      }
+      for (final Future<?> result : results) {
+        result.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    final VerdictFile file = VerdictFile.load(path);
+    for (int i = 0; i < perWriter; i++) {
+      assertNotNull(file.lookup("value", LIMIT, "_ -> param" + i, SHAPE));
+      for (int writer = 0; writer < writers; writer++) {
+        assertNotNull(file.lookup("mutates", LIMIT, "param" + writer + "_" + i, SHAPE));
+      }
+    }
+  }
+
+  @Test
+  void testProcessorUsesFile() {
+    final Path path = this.temp.resolve("verdicts");
+    final String source = "import org.jetbrains.annotations.Contract;\n"
+      + "class TestProcessorUsesFile {\n"
+      + "  @Contract(\"true -> _\")\n"
+      + "  public void first(final int x) {}\n"
+      + "}";
+    final String option = "-A" + ContractValidatorProcessor.OPTION_VERDICT_FILE + "=" + path;
+    final String first = assertThrows(ReflectException.class, () -> this.compile(source, option)).getMessage();
+    assertTrue(Files.isRegularFile(path));
+    final String second = assertThrows(ReflectException.class, () -> this.compile(source, option)).getMessage();
+
+    assertTrue(first.contains("Constraint 'true' is only applicable to boolean values, but it was used to refer to a 'int'"), first);
+    assertEquals(first.replace("()1.java", "()2.java"), second);
+  }
+
+  @Test
+  void testVerdictsKeyedByLengthLimit() throws IOException {
+    final Path path = this.temp.resolve("verdicts");
+    final VerdictFile file = VerdictFile.load(path);
+    file.add("value", LIMIT, "_ -> true", SHAPE, Collections.emptyList());
+    file.flush();
+
+    final VerdictFile reloaded = VerdictFile.load(path);
+    assertNotNull(reloaded.lookup("value", LIMIT, "_ -> true", SHAPE));
+    assertNull(reloaded.lookup("value", 5, "_ -> true", SHAPE));
+    assertNull(reloaded.lookup("value", 0, "_ -> true", SHAPE));
+  }
+
+  @Test
+  void testProcessorChecksLengthLimitOfCachedVerdicts() {
+    final Path path = this.temp.resolve("verdicts");
+    final String source = "import org.jetbrains.annotations.Contract;\n"
+      + "class TestProcessorChecksLengthLimitOfCachedVerdicts {\n"
+      + "  @Contract(\"true -> _\")\n"
+      + "  public void first(final int x) {}\n"
+      + "}";
+    final String option = "-A" + ContractValidatorProcessor.OPTION_VERDICT_FILE + "=" + path;
+    final String first = assertThrows(ReflectException.class, () -> this.compile(source, option)).getMessage();
+    final String limited = assertThrows(
+      ReflectException.class,
+      () -> this.compile(source, option, "-A" + ContractValidatorProcessor.OPTION_MAX_CONTRACT_LENGTH + "=5")
+    ).getMessage();
+
+    assertTrue(first.contains("is only applicable to boolean values"), first);
+    assertTrue(limited.contains("Contract text is 9 characters long, more than the limit of 5, so it was not parsed"), limited);
+    assertFalse(limited.contains("is only applicable to boolean values"), limited);
+  }
+
+  private static List<ContractDiagnostic> verdict(final String contract) {
+    final ContractChecker.Collector collector = new ContractChecker.Collector();
+    final MethodShape shape = MethodShape.ofDescriptor("test", "(I)Z", true);
+    ContractChecker.validateValue(shape.template(), collector, ParsedContract.parseValue(contract));
+    return collector.diagnostics();
+  }
+
+  private static String describe(final List<ContractDiagnostic> verdict) {
+    final MethodShape shape = MethodShape.ofDescriptor("test", "(I)Z", true);
+    final StringBuilder builder = new StringBuilder();
+    for (final ContractDiagnostic diagnostic : verdict) {
+      final Object[] args = diagnostic.args().clone();
+      for (int i = 0; i < args.length; i++) {
+        args[i] = shape.resolve(args[i]);
+      }
+      builder.append(diagnostic.kind()).append(' ').append(diagnostic.startOffset()).append('-').append(diagnostic.endOffset())
+        .append(' ').append(String.format(diagnostic.format(), args)).append('\n');
+    }
+    return builder.toString();
+  }
+
+}